@@ -0,0 +1,30 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.cli;
+
+/**
+ * A headless mode of the application, selected by name on the commandline
+ * and populated by JCommander before it is run.
+ */
+public interface Command {
+
+    /**
+     * Runs the command to completion.
+     *
+     * @throws Exception If the command fails.
+     */
+    void run() throws Exception;
+}
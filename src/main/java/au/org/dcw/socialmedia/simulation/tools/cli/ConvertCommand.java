@@ -0,0 +1,47 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.cli;
+
+import au.org.dcw.socialmedia.simulation.tools.io.TweetReader;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetSink;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.ParametersDelegate;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+
+@Parameters(commandNames = "convert", commandDescription = "Re-encode a stream of tweets, e.g. from Smile back to JSON")
+public class ConvertCommand implements Command {
+
+    @ParametersDelegate
+    private InputOptions in = new InputOptions();
+
+    @ParametersDelegate
+    private OutputOptions out = new OutputOptions();
+
+    @Override
+    public void run() throws IOException {
+        long count = 0;
+        try (TweetReader reader = in.open(); TweetSink sink = out.open()) {
+            JsonNode tweet;
+            while ((tweet = reader.next()) != null) {
+                sink.write(tweet);
+                count++;
+            }
+        }
+        System.err.println("Converted " + count + " tweets from " + in.format() + " to " + out.format());
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.cli;
+
+import au.org.dcw.socialmedia.simulation.tools.io.Compression;
+import au.org.dcw.socialmedia.simulation.tools.io.CorpusDiff;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetFormat;
+import au.org.dcw.socialmedia.simulation.tools.model.TweetDiff;
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Locale;
+
+@Parameters(commandNames = "diff",
+    commandDescription = "Compare two versions of a corpus, both sorted by ID, and list the tweets added, removed " +
+        "and changed")
+public class DiffCommand implements Command {
+
+    @Parameter(names = {"--before"}, description = "The old version", required = true)
+    private String before;
+
+    @Parameter(names = {"--after"}, description = "The new version", required = true)
+    private String after;
+
+    @Parameter(names = {"--input-format"},
+        description = "Format of both versions: JSON, SMILE or CBOR (default: guessed from each file name)")
+    private TweetFormat inputFormat;
+
+    @Parameter(names = {"-o", "--output"}, description = "File to write the differences to ('-' for stdout)")
+    private String output = "-";
+
+    @Override
+    public void run() throws IOException {
+        if (before.equals("-") && after.equals("-")) {
+            throw new ParameterException("Only one of --before and --after can be stdin");
+        }
+        final CorpusDiff diff = new CorpusDiff();
+        final Compression c = Compression.forFile(output);
+
+        final long start = System.currentTimeMillis();
+        try (InputStream beforeIn = open(before);
+             InputStream afterIn = open(after);
+             OutputStream out = c.compress(new BufferedOutputStream(
+                 output.equals("-") ? System.out : new FileOutputStream(output), 1 << 16
+             ));
+             JsonGenerator json = Tweets.JSON.getFactory().createGenerator(out)) {
+            json.setRootValueSeparator(null);
+            diff.run(format(before), beforeIn, format(after), afterIn, new CorpusDiff.Listener() {
+                @Override
+                public void removed(final long id) throws IOException {
+                    writeHeader(json, id, "removed");
+                    json.writeEndObject();
+                    json.writeRaw('\n');
+                }
+
+                @Override
+                public void added(final long id) throws IOException {
+                    writeHeader(json, id, "added");
+                    json.writeEndObject();
+                    json.writeRaw('\n');
+                }
+
+                @Override
+                public void changed(final long id, final List<TweetDiff.Change> changes) throws IOException {
+                    writeHeader(json, id, "changed");
+                    json.writeArrayFieldStart("changes");
+                    for (final TweetDiff.Change change : changes) {
+                        json.writeStartObject();
+                        json.writeStringField("change", change.kind.name().toLowerCase(Locale.ROOT));
+                        json.writeStringField("path", change.path);
+                        if (change.before != null) {
+                            json.writeFieldName("before");
+                            json.writeTree(change.before);
+                        }
+                        if (change.after != null) {
+                            json.writeFieldName("after");
+                            json.writeTree(change.after);
+                        }
+                        json.writeEndObject();
+                    }
+                    json.writeEndArray();
+                    json.writeEndObject();
+                    json.writeRaw('\n');
+                }
+            });
+        }
+        System.err.printf("Compared %d and %d tweets in %.1fs: %d added, %d removed, %d changed, %d the same%n",
+            diff.before(), diff.after(), (System.currentTimeMillis() - start) / 1000.0,
+            diff.added(), diff.removed(), diff.changed(), diff.same());
+    }
+
+    private static void writeHeader(final JsonGenerator json, final long id, final String status) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("id_str", Long.toString(id));
+        json.writeStringField("status", status);
+    }
+
+    private InputStream open(final String file) throws IOException {
+        final InputOptions options = new InputOptions();
+        options.input = file;
+        return options.openStream();
+    }
+
+    private TweetFormat format(final String file) {
+        return inputFormat != null ? inputFormat : TweetFormat.forFile(file);
+    }
+}
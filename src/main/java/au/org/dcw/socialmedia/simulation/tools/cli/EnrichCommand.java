@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.cli;
+
+import au.org.dcw.socialmedia.simulation.tools.io.TweetSink;
+import au.org.dcw.socialmedia.simulation.tools.place.HttpPlaceLookup;
+import au.org.dcw.socialmedia.simulation.tools.place.PlaceCache;
+import au.org.dcw.socialmedia.simulation.tools.place.PlaceLookup;
+import au.org.dcw.socialmedia.simulation.tools.place.TwitterPlaceLookup;
+import au.org.dcw.socialmedia.simulation.tools.transform.ParallelTransformer;
+import au.org.dcw.socialmedia.simulation.tools.transform.PlaceEnricher;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.ParametersDelegate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+@Parameters(commandNames = "enrich",
+    commandDescription = "Add a place to every geotagged tweet in a file, looking up each area only once")
+public class EnrichCommand implements Command {
+
+    @ParametersDelegate
+    private InputOptions in = new InputOptions();
+
+    @ParametersDelegate
+    private OutputOptions out = new OutputOptions();
+
+    @Parameter(names = {"--precision"},
+        description = "Geohash length of the areas sharing a place: 5 is about 5km across, 6 about 1km, 7 150m")
+    private int precision = 6;
+
+    @Parameter(names = {"--cache"}, description = "File to remember places in, between runs")
+    private String cacheFile;
+
+    @Parameter(names = {"--cache-size"}, description = "Number of places to keep parsed in memory")
+    private int cacheSize = 10_000;
+
+    @Parameter(names = {"--places-url"},
+        description = "Look places up here instead of Twitter, e.g. the serve command's " +
+            "http://localhost:8080/geo/search.json")
+    private String placesUrl;
+
+    @Parameter(names = {"-c", "--credentials"}, description = "Properties file with Twitter OAuth credentials")
+    private String credentialsFile = "./twitter.properties";
+
+    @Parameter(names = {"--lookups-per-minute"},
+        description = "Most places to look up in a minute (default: 1 from Twitter, 6000 from --places-url)")
+    private Double lookupsPerMinute;
+
+    @Parameter(names = {"--overwrite"}, description = "Replace places that tweets already have")
+    private boolean overwrite = false;
+
+    @Parameter(names = {"--threads"}, description = "Threads enriching at once (default: number of CPUs)")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Override
+    public void run() throws IOException {
+        if (threads < 1) {
+            throw new ParameterException("--threads must be at least 1");
+        }
+        if (cacheSize < 1) {
+            throw new ParameterException("--cache-size must be at least 1");
+        }
+        final PlaceLookup lookup;
+        if (placesUrl != null) {
+            lookup = new HttpPlaceLookup(placesUrl);
+        } else if (Files.exists(Paths.get(credentialsFile))) {
+            lookup = new TwitterPlaceLookup(TwitterPlaceLookup.makeConfig(credentialsFile, false));
+        } else {
+            throw new ParameterException("Need Twitter --credentials (" + credentialsFile + ") or a --places-url");
+        }
+        // Twitter allows 15 place searches a user every 15 minutes
+        final double rate = lookupsPerMinute != null ? lookupsPerMinute : placesUrl != null ? 6000 : 1;
+
+        final ParallelTransformer transformer = new ParallelTransformer(threads);
+        final long start = System.currentTimeMillis();
+        try (PlaceCache cache = new PlaceCache(cacheSize, cacheFile != null ? Paths.get(cacheFile) : null)) {
+            final int known = cache.size();
+            final PlaceEnricher enricher;
+            try {
+                enricher = new PlaceEnricher(lookup, cache, precision, rate).withOverwrite(overwrite);
+            } catch (IllegalArgumentException e) {
+                throw new ParameterException(e.getMessage());
+            }
+            try (InputStream input = in.openStream(); TweetSink sink = out.open(); PlaceEnricher e = enricher) {
+                transformer.run(in.format(), input, sink, e);
+            }
+            System.err.printf(
+                "Placed %d of %d tweets in %.1fs: %d areas already known, %d looked up (%d failed)%n",
+                enricher.placed(), transformer.written(), (System.currentTimeMillis() - start) / 1000.0,
+                known, enricher.lookedUp(), enricher.failed()
+            );
+        }
+    }
+}
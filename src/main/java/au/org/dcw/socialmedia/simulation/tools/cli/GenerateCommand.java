@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.cli;
+
+import au.org.dcw.socialmedia.simulation.tools.gen.ParallelTweetSource;
+import au.org.dcw.socialmedia.simulation.tools.gen.TweetGenerator;
+import au.org.dcw.socialmedia.simulation.tools.gen.TweetSource;
+import au.org.dcw.socialmedia.simulation.tools.io.RollingTweetSink;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetSink;
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.ParametersDelegate;
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonMerge;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+@Parameters(commandNames = "generate", commandDescription = "Generate tweets in bulk, without the UI")
+public class GenerateCommand implements Command {
+
+    @Parameter(names = {"-n", "--count"}, description = "Number of tweets to generate")
+    private long count = 1000;
+
+    @ParametersDelegate
+    private OutputOptions out = new OutputOptions();
+
+    @JsonMerge
+    @ParametersDelegate
+    private GeneratorOptions tweets = new GeneratorOptions();
+
+    @JsonIgnore
+    @Parameter(names = {"--checkpoint"}, description = "File in which to save progress, so the job can be resumed")
+    private String checkpointFile;
+
+    @Parameter(names = {"--checkpoint-every"}, description = "Number of tweets between checkpoints")
+    private long checkpointEvery = 1_000_000;
+
+    @JsonIgnore
+    @Parameter(names = {"--resume"},
+        description = "Carry on from the --checkpoint file, with the options saved in it, instead of starting afresh")
+    private boolean resume = false;
+
+    // (de)serialises the job's options into and out of checkpoints
+    private static final ObjectMapper JOB_MAPPER = Tweets.JSON.copy()
+        .setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE)
+        .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+
+    @Override
+    public void run() throws IOException, InterruptedException {
+        JsonNode checkpoint = null;
+        if (resume) {
+            if (checkpointFile == null) {
+                throw new ParameterException("--resume needs a --checkpoint file");
+            }
+            checkpoint = Tweets.JSON.readTree(new File(checkpointFile));
+            JOB_MAPPER.readerForUpdating(this).readValue(checkpoint.get("job"));
+        }
+
+        final TweetGenerator generator = tweets.build();
+        if (checkpoint != null) {
+            generator.restoreState(checkpoint.get("generator"));
+        }
+
+        try (TweetSink sink = out.open();
+             ParallelTweetSource drafts = tweets.parallel(generator)) {
+            final TweetSource source = tweets.cascades(drafts != null ? drafts : generator);
+            RollingTweetSink checkpointed = null;
+            if (checkpointFile != null) {
+                if (tweets.hasCascades()) {
+                    throw new ParameterException("Checkpoints can't save the conversations under way, so can't be " +
+                        "used with --reply-share, --retweet-share or --quote-share");
+                }
+                if (! (sink instanceof RollingTweetSink)) {
+                    throw new ParameterException("Checkpoints need the output to go to a file");
+                }
+                checkpointed = (RollingTweetSink) sink;
+            }
+
+            long done = 0;
+            if (checkpoint != null) {
+                checkpointed.resume(checkpoint.get("sink"));
+                done = checkpoint.get("tweets").asLong();
+                System.err.println("Resuming after " + done + " tweets");
+            }
+
+            while (done < count) {
+                sink.write(source.next());
+                done++;
+                if (checkpointed != null && done % checkpointEvery == 0 && done < count) {
+                    final ObjectNode state = JsonNodeFactory.instance.objectNode();
+                    state.set("job", JOB_MAPPER.valueToTree(this));
+                    state.put("tweets", done);
+                    state.set("generator", generator.saveState());
+                    checkpointed.checkpoint(state, Paths.get(checkpointFile));
+                }
+            }
+        }
+    }
+}
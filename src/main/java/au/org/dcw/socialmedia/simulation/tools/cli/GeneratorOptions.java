@@ -0,0 +1,321 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.cli;
+
+import au.org.dcw.socialmedia.simulation.tools.gen.CascadeSource;
+import au.org.dcw.socialmedia.simulation.tools.gen.CorpusVocabularies;
+import au.org.dcw.socialmedia.simulation.tools.gen.MarkovText;
+import au.org.dcw.socialmedia.simulation.tools.gen.ParallelTweetSource;
+import au.org.dcw.socialmedia.simulation.tools.gen.PoissonArrivals;
+import au.org.dcw.socialmedia.simulation.tools.gen.Randomness;
+import au.org.dcw.socialmedia.simulation.tools.gen.TweetGenerator;
+import au.org.dcw.socialmedia.simulation.tools.gen.TweetSource;
+import au.org.dcw.socialmedia.simulation.tools.io.Compression;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetFormat;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetReader;
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * How a command makes up its tweets, shared by commands via
+ * {@link com.beust.jcommander.ParametersDelegate}.
+ */
+public class GeneratorOptions {
+
+    @Parameter(names = {"--users"}, description = "Number of distinct authors")
+    int userCount = 1000;
+
+    @Parameter(names = {"--texts"}, description = "File of tweet texts to draw from, one per line")
+    String textsFile;
+
+    @Parameter(names = {"--start"}, description = "Timestamp of the first tweet, in epoch milliseconds (default: now)")
+    long startMillis = System.currentTimeMillis();
+
+    @Parameter(names = {"--interval-ms"}, description = "Milliseconds between consecutive tweets, unless --rate is given")
+    long intervalMillis = 1000;
+
+    @Parameter(names = {"--rate"}, description = "Average tweets per second, arriving at random (a Poisson process)")
+    Double ratePerSecond;
+
+    @Parameter(names = {"--diurnal"}, description = "Make the --rate follow a typical daily cycle")
+    boolean diurnal = false;
+
+    @Parameter(names = {"--diurnal-zone"}, description = "Time zone whose local day the --diurnal cycle follows")
+    String diurnalZone = "UTC";
+
+    @Parameter(names = {"--burst"},
+        description = "Multiply the --rate for a while, as OFFSET:DURATION:FACTOR, with OFFSET and DURATION in " +
+            "seconds from --start, e.g. 3600:600:20 (repeatable)")
+    List<String> bursts = new ArrayList<>();
+
+    @Parameter(names = {"--geo-fraction"}, description = "Proportion of tweets to geotag, in [0,1]")
+    double geoFraction = 0.0;
+
+    @Parameter(names = {"--geo-radius-km"}, description = "Radius around the initial location in which to geotag")
+    double geoRadiusKm = 10.0;
+
+    @Parameter(names = {"--media-fraction"}, description = "Proportion of tweets with a photo attached, in [0,1]")
+    double mediaFraction = 0.0;
+
+    @Parameter(names = {"--author-skew"},
+        description = "Zipf exponent of how often each user tweets: 0 for evenly, 1 or more for a few prolific users")
+    double authorSkew = 0.0;
+
+    @Parameter(names = {"--hashtags"}, description = "Number of distinct made-up hashtags to add to tweets")
+    int hashtagCount = 0;
+
+    @Parameter(names = {"--hashtags-per-tweet"},
+        description = "Average number of hashtags added to a tweet (default: 1, or as in the --vocabulary-from corpus)")
+    Double hashtagsPerTweet;
+
+    @Parameter(names = {"--mentions-per-tweet"},
+        description = "Average number of mentions of other users added to a tweet (default: 0, or as in the " +
+            "--vocabulary-from corpus)")
+    Double mentionsPerTweet;
+
+    @Parameter(names = {"--urls"}, description = "Number of distinct made-up URLs to add to tweets")
+    int urlCount = 0;
+
+    @Parameter(names = {"--urls-per-tweet"},
+        description = "Average number of URLs added to a tweet (default: 0.5, or as in the --vocabulary-from corpus)")
+    Double urlsPerTweet;
+
+    @Parameter(names = {"--key-skew"},
+        description = "Zipf exponent of how often each made-up hashtag, mention and URL is used")
+    double keySkew = 1.0;
+
+    @Parameter(names = {"--vocabulary-from"},
+        description = "Corpus whose authors, hashtags, mentions and URLs to use, as often as it uses them, " +
+            "instead of made-up ones")
+    String vocabularyFile;
+
+    @Parameter(names = {"--markov-from"},
+        description = "Corpus whose text to imitate, by learning which words follow which, instead of made-up " +
+            "gibberish (ignored with --texts)")
+    String markovFile;
+
+    @Parameter(names = {"--markov-order"},
+        description = "Number of words the next word depends on: more reads better, but copies the corpus more " +
+            "closely, from 1 to " + MarkovText.MAX_ORDER)
+    int markovOrder = 2;
+
+    @Parameter(names = {"--max-length"},
+        description = "Longest text to imitate with --markov-from, by Twitter's weighted count (CJK and emoji count two)")
+    int maxLength = Tweets.TWITTER_MAX_LENGTH;
+
+    @Parameter(names = {"--reply-share"}, description = "Proportion of tweets that reply to an earlier one, in [0,1]")
+    double replyShare = 0.0;
+
+    @Parameter(names = {"--retweet-share"}, description = "Proportion of tweets that retweet an earlier one, in [0,1]")
+    double retweetShare = 0.0;
+
+    @Parameter(names = {"--quote-share"}, description = "Proportion of tweets that quote an earlier one, in [0,1]")
+    double quoteShare = 0.0;
+
+    @Parameter(names = {"--attention-window"},
+        description = "Number of recent tweets and engagements that replies, retweets and quotes choose among, " +
+            "favouring those with the most attention already")
+    int attentionWindow = CascadeSource.DEFAULT_ATTENTION_WINDOW;
+
+    @Parameter(names = {"--seed"}, description = "Seed for the random choices, to reproduce a previous run (default: arbitrary)")
+    Long seed;
+
+    @JsonIgnore
+    @Parameter(names = {"--threads"}, description = "Number of threads making up tweets (the output is the same regardless)")
+    int threads = 1;
+
+    double geoLatitude = Double.parseDouble(System.getProperty("initial.latitude", "-34.918"));
+    double geoLongitude = Double.parseDouble(System.getProperty("initial.longitude", "138.604"));
+
+    /**
+     * Builds a generator from the options, choosing (and reporting) a seed if
+     * none was given, so that it is recorded in these options.
+     *
+     * @return A new generator.
+     * @throws IOException If the texts file can't be read.
+     */
+    public TweetGenerator build() throws IOException {
+        if (threads < 1) {
+            throw new ParameterException("--threads must be at least 1");
+        }
+        if (seed == null) {
+            seed = Randomness.unseeded().seed();
+            System.err.println("Seed: " + seed);
+        }
+
+        final TweetGenerator generator = new TweetGenerator(new Randomness(seed), userCount, startMillis, intervalMillis)
+            .withTexts(loadTexts())
+            .withGeo(geoFraction, geoLatitude, geoLongitude, geoRadiusKm)
+            .withMedia(mediaFraction);
+        addVocabularies(generator);
+        addMarkovText(generator);
+        if (ratePerSecond != null) {
+            generator.withArrivals(buildArrivals());
+        } else if (diurnal || ! bursts.isEmpty()) {
+            throw new ParameterException("--diurnal and --burst need a --rate");
+        }
+        return generator;
+    }
+
+    /**
+     * @param generator A generator built from these options.
+     * @return A parallel source drafting from the generator on {@code --threads}
+     * threads, which must be closed, or null if only one thread was asked for.
+     */
+    public ParallelTweetSource parallel(final TweetGenerator generator) {
+        return threads > 1 ? new ParallelTweetSource(generator, threads) : null;
+    }
+
+    /**
+     * @return True if some tweets are to reply to, retweet or quote others.
+     */
+    public boolean hasCascades() {
+        return replyShare > 0 || retweetShare > 0 || quoteShare > 0;
+    }
+
+    /**
+     * @param stamped The stamped tweets from a generator built from these options.
+     * @return The tweets, some made replies, retweets and quotes of others, if
+     * asked for, or else the same source.
+     */
+    public TweetSource cascades(final TweetSource stamped) {
+        if (! hasCascades()) {
+            return stamped;
+        }
+        if (! (replyShare >= 0 && retweetShare >= 0 && quoteShare >= 0 && replyShare + retweetShare + quoteShare <= 1)) {
+            throw new ParameterException("--reply-share, --retweet-share and --quote-share can't total more than 1");
+        }
+        if (attentionWindow < 1) {
+            throw new ParameterException("--attention-window must be at least 1");
+        }
+        return new CascadeSource(stamped, new Randomness(seed), replyShare, retweetShare, quoteShare, attentionWindow);
+    }
+
+    // learned from a corpus where it has them, otherwise made up if asked for
+    private void addVocabularies(final TweetGenerator generator) throws IOException {
+        if (authorSkew < 0 || keySkew < 0) {
+            throw new ParameterException("--author-skew and --key-skew can't be negative");
+        }
+        CorpusVocabularies learned = null;
+        if (vocabularyFile != null) {
+            try (TweetReader reader = new TweetReader(
+                TweetFormat.forFile(vocabularyFile), Compression.open(vocabularyFile)
+            )) {
+                learned = CorpusVocabularies.learn(reader);
+            }
+        }
+
+        if (learned != null && learned.authors() != null) {
+            generator.withAuthors(learned.authors());
+        } else {
+            generator.withAuthorSkew(authorSkew);
+        }
+        if (learned != null && learned.hashtags() != null) {
+            generator.withHashtags(learned.hashtags(), orElse(hashtagsPerTweet, learned.hashtagsPerTweet()));
+        } else if (hashtagCount > 0) {
+            generator.withHashtags(generator.madeUpHashtags(hashtagCount, keySkew), orElse(hashtagsPerTweet, 1.0));
+        }
+        if (learned != null && learned.mentions() != null) {
+            generator.withMentions(learned.mentions(), orElse(mentionsPerTweet, learned.mentionsPerTweet()));
+        } else if (mentionsPerTweet != null && mentionsPerTweet > 0) {
+            generator.withMentions(generator.madeUpMentions(keySkew), mentionsPerTweet);
+        }
+        if (learned != null && learned.urls() != null) {
+            generator.withUrls(learned.urls(), orElse(urlsPerTweet, learned.urlsPerTweet()));
+        } else if (urlCount > 0) {
+            generator.withUrls(TweetGenerator.madeUpUrls(urlCount, keySkew), orElse(urlsPerTweet, 0.5));
+        }
+    }
+
+    private void addMarkovText(final TweetGenerator generator) throws IOException {
+        if (markovFile == null) {
+            return;
+        }
+        if (markovOrder < 1 || markovOrder > MarkovText.MAX_ORDER) {
+            throw new ParameterException("--markov-order must be from 1 to " + MarkovText.MAX_ORDER);
+        }
+        if (maxLength < 1) {
+            throw new ParameterException("--max-length must be positive");
+        }
+        final long start = System.currentTimeMillis();
+        final MarkovText markov;
+        try (TweetReader reader = new TweetReader(TweetFormat.forFile(markovFile), Compression.open(markovFile))) {
+            markov = MarkovText.learn(reader, markovOrder);
+        } catch (IllegalStateException e) {
+            throw new ParameterException(e.getMessage());
+        }
+        if (markov.tokenCount() == 0) {
+            throw new ParameterException("Learned no words from " + markovFile + ", so there is no text to imitate");
+        }
+        System.err.printf(
+            "Learned %d words in %d contexts from %s in %.1fs%n",
+            markov.tokenCount(), markov.contextCount(), markovFile, (System.currentTimeMillis() - start) / 1000.0
+        );
+        generator.withMarkovText(markov, maxLength);
+    }
+
+    private static double orElse(final Double value, final double otherwise) {
+        return value != null ? value : otherwise;
+    }
+
+    private PoissonArrivals buildArrivals() {
+        final PoissonArrivals arrivals = new PoissonArrivals(ratePerSecond);
+        if (diurnal) {
+            try {
+                arrivals.withDiurnal(PoissonArrivals.TYPICAL_DAY, ZoneId.of(diurnalZone));
+            } catch (DateTimeException e) {
+                throw new ParameterException("Unknown --diurnal-zone: " + diurnalZone);
+            }
+        }
+        for (final String burst : bursts) {
+            final String[] parts = burst.split(":");
+            try {
+                if (parts.length != 3) throw new NumberFormatException();
+                arrivals.withBurst(
+                    startMillis + (long) (Double.parseDouble(parts[0]) * 1000),
+                    (long) (Double.parseDouble(parts[1]) * 1000),
+                    Double.parseDouble(parts[2])
+                );
+            } catch (IllegalArgumentException e) { // includes NumberFormatException
+                throw new ParameterException("Expected --burst OFFSET:DURATION:FACTOR, not " + burst);
+            }
+        }
+        return arrivals;
+    }
+
+    private List<String> loadTexts() throws IOException {
+        if (textsFile == null) {
+            return Collections.emptyList();
+        }
+        try (Stream<String> lines = Files.lines(Paths.get(textsFile), StandardCharsets.UTF_8)) {
+            return lines.filter(line -> ! line.trim().isEmpty()).collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.cli;
+
+import au.org.dcw.socialmedia.simulation.tools.io.Compression;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetFormat;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetReader;
+import com.beust.jcommander.Parameter;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Where and how a command reads its tweets, shared by commands via
+ * {@link com.beust.jcommander.ParametersDelegate}.
+ */
+public class InputOptions {
+
+    @Parameter(names = {"-i", "--input"}, description = "File to read from ('-' for stdin)", required = true)
+    String input;
+
+    @Parameter(names = {"--input-format"},
+        description = "Input format: JSON, SMILE or CBOR (default: guessed from the input file name)")
+    TweetFormat inputFormat;
+
+    public TweetFormat format() {
+        return inputFormat != null ? inputFormat : TweetFormat.forFile(input);
+    }
+
+    /**
+     * @return A raw (but decompressed) stream of the input.
+     * @throws IOException If the input can't be opened.
+     */
+    public InputStream openStream() throws IOException {
+        return input.equals("-") ? new BufferedInputStream(System.in, 1 << 16) : Compression.open(input);
+    }
+
+    /**
+     * @return A reader of the input's tweets.
+     * @throws IOException If the input can't be opened.
+     */
+    public TweetReader open() throws IOException {
+        return new TweetReader(format(), openStream());
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.cli;
+
+import au.org.dcw.socialmedia.simulation.tools.io.TweetSink;
+import au.org.dcw.socialmedia.simulation.tools.model.TweetLinter;
+import au.org.dcw.socialmedia.simulation.tools.transform.ParallelTransformer;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.ParametersDelegate;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+@Parameters(commandNames = "lint",
+    commandDescription = "Check every tweet in a file for overlong text, misplaced entities, mismatched IDs, " +
+        "bad timestamps and swapped coordinates")
+public class LintCommand implements Command {
+
+    @ParametersDelegate
+    private InputOptions in = new InputOptions();
+
+    @Parameter(names = {"--bad"}, description = "File to write the tweets with problems to")
+    private String bad;
+
+    @Parameter(names = {"--examples"}, description = "Number of problems to list, from the start of the file")
+    private int examples = 10;
+
+    @Parameter(names = {"--threads"}, description = "Threads linting at once (default: number of CPUs)")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Override
+    public void run() throws IOException {
+        if (threads < 1) {
+            throw new ParameterException("--threads must be at least 1");
+        }
+        if (examples < 0) {
+            throw new ParameterException("--examples can't be negative");
+        }
+        final LongAdder[] counts = new LongAdder[TweetLinter.Rule.values().length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+        final LongAdder failed = new LongAdder();
+        // the earliest problems, by position, whichever thread finds them
+        final ConcurrentSkipListMap<Long, String> found = new ConcurrentSkipListMap<>();
+        final ParallelTransformer transformer = new ParallelTransformer(threads);
+
+        final long start = System.currentTimeMillis();
+        try (InputStream input = in.openStream(); TweetSink sink = openBad()) {
+            transformer.run(in.format(), input, sink, (position, tweet) -> {
+                final List<TweetLinter.Problem> problems = TweetLinter.lint(tweet);
+                if (problems.isEmpty()) {
+                    return null;
+                }
+                failed.increment();
+                for (final TweetLinter.Problem problem : problems) {
+                    counts[problem.rule.ordinal()].increment();
+                }
+                if (examples > 0 && (found.size() < examples || position < found.lastKey())) {
+                    found.put(position, describe(position, tweet, problems));
+                    while (found.size() > examples) {
+                        found.pollLastEntry();
+                    }
+                }
+                return bad != null ? tweet : null;
+            });
+        }
+        System.out.printf("Linted %d tweets in %.1fs: %d with problems%n",
+            transformer.read(), (System.currentTimeMillis() - start) / 1000.0, failed.sum());
+        for (final TweetLinter.Rule rule : TweetLinter.Rule.values()) {
+            System.out.printf("  %-15s %d%n", rule, counts[rule.ordinal()].sum());
+        }
+        for (final Map.Entry<Long, String> example : found.entrySet()) {
+            System.out.print(example.getValue());
+        }
+    }
+
+    private TweetSink openBad() throws IOException {
+        if (bad == null) {
+            return new TweetSink() { // the transform never passes anything on
+                @Override
+                public void write(final JsonNode tweet) {}
+
+                @Override
+                public void close() {}
+            };
+        }
+        final OutputOptions out = new OutputOptions();
+        out.output = bad;
+        return out.open();
+    }
+
+    private static String describe(
+        final long position,
+        final JsonNode tweet,
+        final List<TweetLinter.Problem> problems
+    ) {
+        final StringBuilder description = new StringBuilder()
+            .append("Tweet ").append(position).append(" (").append(tweet.path("id_str").asText("no id")).append("):\n");
+        for (final TweetLinter.Problem problem : problems) {
+            description.append("  ").append(problem).append('\n');
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.cli;
+
+import au.org.dcw.socialmedia.simulation.tools.io.Compression;
+import au.org.dcw.socialmedia.simulation.tools.io.RollingTweetSink;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetFormat;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetSink;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetWriter;
+import com.beust.jcommander.Parameter;
+
+import java.io.IOException;
+
+/**
+ * Where and how a command writes its tweets, shared by commands via
+ * {@link com.beust.jcommander.ParametersDelegate}.
+ */
+public class OutputOptions {
+
+    @Parameter(names = {"-o", "--output"}, description = "File to write to ('-' for stdout)")
+    String output = "-";
+
+    @Parameter(names = {"-f", "--format"},
+        description = "Output format: JSON, SMILE or CBOR (default: guessed from the output file name)")
+    TweetFormat format;
+
+    @Parameter(names = {"--pretty"}, description = "Pretty-print each tweet (JSON only)")
+    boolean pretty = false;
+
+    @Parameter(names = {"--compress"},
+        description = "Compression: NONE or GZIP (default: guessed from the output file name)")
+    Compression compression;
+
+    @Parameter(names = {"--roll-mb"}, description = "Start a new output file after this many (uncompressed) MB")
+    long rollMegabytes = 0;
+
+    @Parameter(names = {"--roll-count"}, description = "Start a new output file after this many tweets")
+    long rollCount = 0;
+
+    public boolean isStdout() {
+        return output.equals("-");
+    }
+
+    public TweetFormat format() {
+        return format != null ? format : TweetFormat.forFile(output);
+    }
+
+    /**
+     * Files are written on a background thread by a {@link RollingTweetSink};
+     * stdout is written directly.
+     *
+     * @return A sink for the command's tweets.
+     * @throws IOException If the output can't be opened.
+     */
+    public TweetSink open() throws IOException {
+        final Compression c = compression != null ? compression : Compression.forFile(output);
+        if (isStdout()) {
+            return new TweetWriter(format(), c.compress(System.out), pretty).cacheSubtrees("user", "place", "retweeted_status", "quoted_status");
+        }
+        return new RollingTweetSink(
+            output, format(), pretty, c, rollMegabytes << 20, rollCount,
+            RollingTweetSink.DEFAULT_BUFFER_SIZE, RollingTweetSink.DEFAULT_BUFFER_COUNT
+        );
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.cli;
+
+import au.org.dcw.socialmedia.simulation.tools.io.TweetSink;
+import au.org.dcw.socialmedia.simulation.tools.transform.ParallelTransformer;
+import au.org.dcw.socialmedia.simulation.tools.transform.TweetPatch;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.ParametersDelegate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+@Parameters(commandNames = "patch",
+    commandDescription = "Apply a scripted edit (set, remove and copy by path) to every matching tweet in a file")
+public class PatchCommand implements Command {
+
+    @ParametersDelegate
+    private InputOptions in = new InputOptions();
+
+    @ParametersDelegate
+    private OutputOptions out = new OutputOptions();
+
+    @Parameter(names = {"-p", "--patch"}, description = "JSON file of the conditions and operations to apply",
+        required = true)
+    private String patchFile;
+
+    @Parameter(names = {"--in-place"}, description = "Replace the input file with the patched tweets")
+    private boolean inPlace = false;
+
+    @Parameter(names = {"--threads"}, description = "Threads patching at once (default: number of CPUs)")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Override
+    public void run() throws IOException {
+        if (threads < 1) {
+            throw new ParameterException("--threads must be at least 1");
+        }
+        final TweetPatch patch;
+        try {
+            patch = TweetPatch.load(Paths.get(patchFile));
+        } catch (IllegalArgumentException e) {
+            throw new ParameterException(e.getMessage());
+        }
+
+        Path replaced = null;
+        if (inPlace) {
+            if (in.input.equals("-") || ! out.isStdout() || out.rollMegabytes > 0 || out.rollCount > 0) {
+                throw new ParameterException("--in-place needs an input file, and no --output or rolling");
+            }
+            // written alongside, ending in the same name so the format and compression are guessed the same,
+            // then moved over the input only once it's complete
+            replaced = Paths.get(in.input);
+            out.output = replaced.resolveSibling(".patching." + replaced.getFileName()).toString();
+            if (out.format == null) {
+                out.format = in.format();
+            }
+        }
+
+        final ParallelTransformer transformer = new ParallelTransformer(threads);
+        final long start = System.currentTimeMillis();
+        try (InputStream input = in.openStream(); TweetSink sink = out.open()) {
+            transformer.run(in.format(), input, sink, patch);
+        }
+        if (replaced != null) {
+            Files.move(Paths.get(out.output), replaced, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        }
+        System.err.printf("Patched %d of %d tweets in %.1fs: %d operations applied, %d led nowhere%n",
+            patch.matched(), transformer.read(), (System.currentTimeMillis() - start) / 1000.0,
+            patch.applied(), patch.skipped());
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.cli;
+
+import au.org.dcw.socialmedia.simulation.tools.gen.Randomness;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetSink;
+import au.org.dcw.socialmedia.simulation.tools.transform.ParallelTransformer;
+import au.org.dcw.socialmedia.simulation.tools.transform.Pseudonymiser;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.ParametersDelegate;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+@Parameters(commandNames = "pseudonymise",
+    commandDescription = "Swap the screen names and IDs in a capture for made-up ones, consistently throughout")
+public class PseudonymiseCommand implements Command {
+
+    @ParametersDelegate
+    private InputOptions in = new InputOptions();
+
+    @ParametersDelegate
+    private OutputOptions out = new OutputOptions();
+
+    @Parameter(names = {"--seed"},
+        description = "Seed for the made-up names and IDs; keep it secret, and reuse it to pseudonymise " +
+            "other captures the same way (default: arbitrary)")
+    private Long seed;
+
+    @Parameter(names = {"--threads"}, description = "Threads pseudonymising at once (default: number of CPUs)")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Override
+    public void run() throws IOException {
+        if (threads < 1) {
+            throw new ParameterException("--threads must be at least 1");
+        }
+        if (seed == null) {
+            seed = Randomness.unseeded().seed();
+            System.err.println("Seed: " + seed);
+        }
+        final Pseudonymiser pseudonymiser = new Pseudonymiser(new Randomness(seed));
+        final ParallelTransformer transformer = new ParallelTransformer(threads);
+
+        final long start = System.currentTimeMillis();
+        try (InputStream input = in.openStream(); TweetSink sink = out.open()) {
+            transformer.run(in.format(), input, sink, pseudonymiser);
+        }
+        System.err.printf(
+            "Pseudonymised %d tweets by %d users in %.1fs%n",
+            transformer.written(), pseudonymiser.nameCount(), (System.currentTimeMillis() - start) / 1000.0
+        );
+    }
+}
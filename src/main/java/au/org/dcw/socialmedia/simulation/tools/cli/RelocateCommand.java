@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.cli;
+
+import au.org.dcw.socialmedia.simulation.tools.gen.Randomness;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetSink;
+import au.org.dcw.socialmedia.simulation.tools.transform.ParallelTransformer;
+import au.org.dcw.socialmedia.simulation.tools.transform.Relocator;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.ParametersDelegate;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+@Parameters(commandNames = "relocate",
+    commandDescription = "Move, spread out or jitter the locations of every tweet in a file")
+public class RelocateCommand implements Command {
+
+    @ParametersDelegate
+    private InputOptions in = new InputOptions();
+
+    @ParametersDelegate
+    private OutputOptions out = new OutputOptions();
+
+    @Parameter(names = {"--from"}, description = "Where to move tweets from, as LAT,LON (default: the initial location)")
+    private String from = System.getProperty("initial.latitude", "-34.918") + "," +
+        System.getProperty("initial.longitude", "138.604");
+
+    @Parameter(names = {"--to"}, description = "Where to move tweets to, as LAT,LON, keeping their distance and " +
+        "bearing from --from")
+    private String to;
+
+    @Parameter(names = {"--scale"}, description = "Multiply every tweet's distance from --from by this")
+    private double scale = 1.0;
+
+    @Parameter(names = {"--jitter-m"}, description = "Standard deviation of the Gaussian noise added to each " +
+        "tweet's point, in metres")
+    private double jitterMetres = 0.0;
+
+    @Parameter(names = {"--place-name"}, description = "New name for the places tweets are in, e.g. Melbourne")
+    private String placeName;
+
+    @Parameter(names = {"--place-full-name"},
+        description = "New full name for the places tweets are in, e.g. \"Melbourne, Victoria\"")
+    private String placeFullName;
+
+    @Parameter(names = {"--seed"}, description = "Seed for the jitter, to reproduce a previous run (default: arbitrary)")
+    private Long seed;
+
+    @Parameter(names = {"--threads"}, description = "Threads relocating at once (default: number of CPUs)")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Override
+    public void run() throws IOException {
+        if (threads < 1) {
+            throw new ParameterException("--threads must be at least 1");
+        }
+        if (to == null && scale == 1.0 && jitterMetres == 0.0 && placeName == null && placeFullName == null) {
+            throw new ParameterException("Nothing to do: give --to, --scale, --jitter-m or a --place-name");
+        }
+        if (! (scale > 0)) {
+            throw new ParameterException("--scale must be positive");
+        }
+        if (! (jitterMetres >= 0)) {
+            throw new ParameterException("--jitter-m can't be negative");
+        }
+        final double[] origin = parseLatLon("--from", from);
+        final double[] destination = to != null ? parseLatLon("--to", to) : origin;
+        if (jitterMetres > 0 && seed == null) {
+            seed = Randomness.unseeded().seed();
+            System.err.println("Seed: " + seed);
+        }
+
+        final Relocator relocator = new Relocator(new Randomness(seed != null ? seed : 0L))
+            .withShift(origin[0], origin[1], destination[0], destination[1])
+            .withScale(scale)
+            .withJitter(jitterMetres)
+            .withPlaceName(placeName, placeFullName);
+        final ParallelTransformer transformer = new ParallelTransformer(threads);
+
+        final long start = System.currentTimeMillis();
+        try (InputStream input = in.openStream(); TweetSink sink = out.open()) {
+            transformer.run(in.format(), input, sink, relocator);
+        }
+        System.err.printf(
+            "Relocated %d tweets in %.1fs%n", transformer.written(), (System.currentTimeMillis() - start) / 1000.0
+        );
+    }
+
+    private static double[] parseLatLon(final String option, final String value) {
+        final String[] parts = value.split(",");
+        try {
+            if (parts.length != 2) throw new NumberFormatException();
+            final double lat = Double.parseDouble(parts[0].trim());
+            final double lon = Double.parseDouble(parts[1].trim());
+            if (lat >= -90.0 && lat <= 90.0 && lon >= -180.0 && lon <= 180.0) {
+                return new double[]{lat, lon};
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new ParameterException("Expected " + option + " LAT,LON in degrees, not " + value);
+    }
+}
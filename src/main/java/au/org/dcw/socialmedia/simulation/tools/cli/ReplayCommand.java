@@ -0,0 +1,185 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.cli;
+
+import au.org.dcw.socialmedia.simulation.tools.io.Pacer;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetFormat;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetReader;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetWriter;
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.ParametersDelegate;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+
+@Parameters(commandNames = "replay",
+    commandDescription = "Send tweets on to a socket, pipe or file at a controlled rate")
+public class ReplayCommand implements Command {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    @ParametersDelegate
+    private InputOptions in = new InputOptions();
+
+    @Parameter(names = {"--to"},
+        description = "Where to send tweets: tcp:HOST:PORT to connect to a consumer, listen:PORT to wait for " +
+            "one to connect, or a file or named pipe ('-' for stdout)")
+    private String destination = "-";
+
+    @Parameter(names = {"-f", "--format"}, description = "Output format: JSON, SMILE or CBOR")
+    private TweetFormat format = TweetFormat.JSON;
+
+    @Parameter(names = {"--rate"}, description = "Tweets per second (default: follow created_at, see --speedup)")
+    private Double ratePerSecond;
+
+    @Parameter(names = {"--speedup"}, description = "Follow the spacing of created_at values, this many times faster")
+    private double speedup = 1.0;
+
+    @Parameter(names = {"--report-seconds"}, description = "Seconds between progress reports (0 for none)")
+    private double reportSeconds = 1.0;
+
+    // created_at values repeat a lot, so remember the last one parsed
+    private String lastCreatedAt;
+    private long lastCreatedAtMillis;
+
+    @Override
+    public void run() throws IOException {
+        if (ratePerSecond != null && ! (ratePerSecond > 0)) {
+            throw new ParameterException("--rate must be positive");
+        }
+        if (! (speedup > 0)) {
+            throw new ParameterException("--speedup must be positive");
+        }
+
+        try (TweetReader reader = in.open(); Socket socket = connect();
+             TweetWriter writer = new TweetWriter(format, openDestination(socket), false)) {
+
+            JsonNode tweet = reader.next();
+            final long firstMillis = tweet != null && ratePerSecond == null ? createdAtOf(tweet) : 0;
+            final long reportEvery = (long) (reportSeconds * 1e9);
+            long nextReport = reportEvery;
+            long lastReportCount = 0;
+            long lastReportElapsed = 0;
+
+            final Pacer pacer = new Pacer();
+            while (tweet != null) {
+                final long due = ratePerSecond != null
+                    ? (long) (pacer.count() * 1e9 / ratePerSecond)
+                    : (long) ((createdAtOf(tweet) - firstMillis) * 1e6 / speedup);
+                if (! pacer.isDue(due)) {
+                    writer.flush(); // deliver everything already due before waiting
+                }
+                pacer.await(due);
+                writer.write(tweet);
+
+                final long elapsed = pacer.elapsedNanos();
+                if (reportEvery > 0 && elapsed >= nextReport) {
+                    final long sent = pacer.count();
+                    // over the time since the last report, which a wait for a late tweet may have stretched
+                    System.err.printf("%8.1fs: sent %d (%.0f/s), lag %s (max %s)%n",
+                        elapsed / 1e9, sent, (sent - lastReportCount) / ((elapsed - lastReportElapsed) / 1e9),
+                        millis(pacer.lastLag()), millis(pacer.maxLag()));
+                    lastReportCount = sent;
+                    lastReportElapsed = elapsed;
+                    while (nextReport <= elapsed) {
+                        nextReport += reportEvery; // skipping any missed while waiting, rather than catching up
+                    }
+                }
+                tweet = reader.next();
+            }
+            writer.flush();
+
+            final long elapsed = Math.max(1, pacer.elapsedNanos());
+            System.err.printf("Replayed %d tweets in %.2fs (%.0f/s); lag p50 %s, p99 %s, p99.9 %s, max %s%n",
+                pacer.count(), elapsed / 1e9, pacer.count() * 1e9 / elapsed,
+                millis(pacer.lagPercentile(50)), millis(pacer.lagPercentile(99)),
+                millis(pacer.lagPercentile(99.9)), millis(pacer.maxLag()));
+        }
+    }
+
+    private long createdAtOf(final JsonNode tweet) {
+        final String createdAt = tweet.path("created_at").asText(null);
+        if (createdAt == null) {
+            throw new ParameterException("Tweet " + tweet.path("id_str").asText("?") +
+                " has no created_at to pace by; use --rate instead");
+        }
+        if (! createdAt.equals(lastCreatedAt)) {
+            try {
+                lastCreatedAtMillis = Instant.from(Tweets.TWITTER_TIMESTAMP_FORMAT.parse(createdAt)).toEpochMilli();
+            } catch (DateTimeParseException e) {
+                throw new ParameterException("Unreadable created_at: " + createdAt + "; use --rate instead");
+            }
+            lastCreatedAt = createdAt;
+        }
+        return lastCreatedAtMillis;
+    }
+
+    /**
+     * @return A socket to the consumer, or null if the destination isn't a socket.
+     */
+    private Socket connect() throws IOException {
+        final String[] parts = destination.split(":");
+        if (parts[0].equals("tcp") && parts.length == 3) {
+            final Socket socket = new Socket(parts[1], portOf(parts[2]));
+            socket.setTcpNoDelay(true); // we do our own batching
+            return socket;
+        }
+        if (parts[0].equals("listen") && parts.length == 2) {
+            try (ServerSocket server = new ServerSocket(portOf(parts[1]))) {
+                System.err.println("Waiting for a consumer to connect on port " + server.getLocalPort());
+                final Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                System.err.println("Consumer connected from " + socket.getRemoteSocketAddress());
+                return socket;
+            }
+        }
+        return null;
+    }
+
+    private OutputStream openDestination(final Socket socket) throws IOException {
+        if (socket != null) {
+            return new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+        }
+        if (destination.equals("-")) {
+            return System.out;
+        }
+        // a named pipe blocks here until a reader opens it
+        return new BufferedOutputStream(new FileOutputStream(destination), BUFFER_SIZE);
+    }
+
+    private int portOf(final String port) {
+        try {
+            return Integer.parseInt(port);
+        } catch (NumberFormatException e) {
+            throw new ParameterException("Bad port in --to " + destination);
+        }
+    }
+
+    private static String millis(final long nanos) {
+        return String.format("%.2fms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
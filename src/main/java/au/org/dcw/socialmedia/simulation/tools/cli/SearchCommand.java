@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.cli;
+
+import au.org.dcw.socialmedia.simulation.tools.corpus.InvertedIndex;
+import au.org.dcw.socialmedia.simulation.tools.corpus.TweetStore;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetReader;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.ParametersDelegate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+@Parameters(commandNames = "search",
+    commandDescription = "Load a corpus and find the tweets matching queries, e.g. '#auspol (@alice OR from:alice) -rt'")
+public class SearchCommand implements Command {
+
+    @ParametersDelegate
+    private InputOptions in = new InputOptions();
+
+    @ParametersDelegate
+    private StoreOptions storage = new StoreOptions();
+
+    @Parameter(names = {"-q", "--query"}, description = "A query to run (default: read queries from stdin, one a line)")
+    private List<String> queries = new ArrayList<>();
+
+    @Parameter(names = {"--show"}, description = "Number of matching tweets to list for each query")
+    private int show = 10;
+
+    @Override
+    public void run() throws IOException {
+        if (queries.isEmpty() && in.input.equals("-")) {
+            throw new ParameterException("Give queries with -q when the corpus comes from stdin");
+        }
+        final InvertedIndex index = new InvertedIndex();
+        final long start = System.nanoTime();
+        try (TweetReader reader = in.open(); TweetStore store = storage.load(reader, index)) {
+            System.err.printf("Indexed %d tweets in %.1fs: %d terms in %.1fMB%n", store.size(),
+                (System.nanoTime() - start) / 1e9, index.termCount(), index.sizeInBytes() / 1e6);
+
+            if (! queries.isEmpty()) {
+                for (final String query : queries) {
+                    search(store, index, query);
+                }
+            } else {
+                final BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+                String query;
+                while ((query = stdin.readLine()) != null) {
+                    if (! query.trim().isEmpty()) {
+                        search(store, index, query);
+                    }
+                }
+            }
+        }
+    }
+
+    private void search(final TweetStore store, final InvertedIndex index, final String query) {
+        final long start = System.nanoTime();
+        final int[] matches;
+        try {
+            matches = index.search(query);
+        } catch (IllegalArgumentException e) {
+            System.out.println(query + ": " + e.getMessage());
+            return;
+        }
+        System.out.printf("%s: %d tweets in %.2fms%n", query, matches.length, (System.nanoTime() - start) / 1e6);
+        for (int i = 0; i < Math.min(show, matches.length); i++) {
+            final int tweet = matches[i];
+            System.out.println("  " + store.id(tweet) + " @" + store.screenName(tweet) + ": " + store.text(tweet));
+        }
+    }
+}
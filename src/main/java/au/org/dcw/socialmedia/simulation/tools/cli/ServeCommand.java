@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.cli;
+
+import au.org.dcw.socialmedia.simulation.tools.server.RestServer;
+import au.org.dcw.socialmedia.simulation.tools.server.TweetService;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.ParametersDelegate;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@Parameters(commandNames = "serve",
+    commandDescription = "Serve a local REST API for generating and editing tweets")
+public class ServeCommand implements Command {
+
+    private static final long CLOSE_SECONDS = 5; // RestServer.close() waits a second for exchanges in progress
+
+    @Parameter(names = {"--port"}, description = "Port to listen on, on localhost")
+    private int port = 8088;
+
+    @Parameter(names = {"--workers"}, description = "Threads handling requests")
+    private int workers = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names = {"--queue"}, description = "Requests that may wait for a worker before new ones are held back")
+    private int queue = 1024;
+
+    @ParametersDelegate
+    private GeneratorOptions tweets = new GeneratorOptions();
+
+    @Override
+    public void run() throws IOException, InterruptedException {
+        if (workers < 1 || queue < 1) {
+            throw new ParameterException("--workers and --queue must be at least 1");
+        }
+        final TweetService service = new TweetService(tweets.build());
+        // the server writes headers and body separately, which otherwise meet
+        // Nagle's algorithm and a delayed ACK, costing ~40ms a request
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        // the server is closed here, once, and the shutdown hook only asks for that and waits until it's done
+        final CountDownLatch stopped = new CountDownLatch(1);
+        final CountDownLatch closed = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stopped.countDown();
+            try {
+                closed.await(CLOSE_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        try (RestServer server = new RestServer(port, service, workers, queue)) {
+            server.start();
+            System.err.println("Serving on http://localhost:" + server.getPort() +
+                "/tweets/random, /tweets, /tweets/edit, /tweets/geo, /entities and /geo/search.json");
+            stopped.await();
+        } finally {
+            closed.countDown();
+        }
+    }
+}
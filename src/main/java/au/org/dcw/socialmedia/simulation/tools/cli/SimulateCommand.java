@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.cli;
+
+import au.org.dcw.socialmedia.simulation.tools.gen.CascadeSource;
+import au.org.dcw.socialmedia.simulation.tools.gen.Randomness;
+import au.org.dcw.socialmedia.simulation.tools.gen.TweetSource;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetSink;
+import au.org.dcw.socialmedia.simulation.tools.sim.Scenario;
+import au.org.dcw.socialmedia.simulation.tools.sim.Simulation;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.ParametersDelegate;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Map;
+
+@Parameters(commandNames = "simulate",
+    commandDescription = "Run a scenario file describing a whole event, writing its tweets in time order")
+public class SimulateCommand implements Command {
+
+    @Parameter(names = {"-s", "--scenario"}, description = "Scenario file (JSON)", required = true)
+    private String scenarioFile;
+
+    @ParametersDelegate
+    private OutputOptions out = new OutputOptions();
+
+    @Parameter(names = {"--seed"},
+        description = "Seed for the random choices, overriding the scenario's (default: the scenario's, or arbitrary)")
+    private Long seed;
+
+    @Parameter(names = {"--threads"}, description = "Threads drafting tweets (the output is the same regardless)")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names = {"--dry-run"},
+        description = "Only schedule the events, and report how many tweets each population and campaign would post")
+    private boolean dryRun = false;
+
+    @Override
+    public void run() throws IOException, InterruptedException {
+        if (threads < 1) {
+            throw new ParameterException("--threads must be at least 1");
+        }
+        final Scenario scenario;
+        try {
+            scenario = Scenario.load(Paths.get(scenarioFile));
+        } catch (IllegalArgumentException e) {
+            throw new ParameterException("Bad scenario: " + e.getMessage());
+        }
+        if (seed == null) {
+            seed = scenario.seed();
+        }
+        if (seed == null) {
+            seed = Randomness.unseeded().seed();
+            System.err.println("Seed: " + seed);
+        }
+        final Randomness randomness = new Randomness(seed);
+
+        final long start = System.currentTimeMillis();
+        long tweets = 0;
+        try (Simulation simulation = new Simulation(scenario, randomness, threads)) {
+            if (dryRun) {
+                final Map<String, Long> counts = simulation.runWithoutTweets();
+                final double seconds = (System.currentTimeMillis() - start) / 1000.0;
+                counts.forEach((name, count) -> System.out.printf("%,14d  %s%n", count, name));
+                final long events = counts.values().stream().mapToLong(Long::longValue).sum();
+                System.err.printf("Scheduled %d events in %.1fs (%.0f per second)%n",
+                    events, seconds, events / Math.max(seconds, 0.001));
+                return;
+            }
+
+            final CascadeSource cascades = scenario.hasCascades() ? scenario.cascades(simulation, randomness) : null;
+            final TweetSource source = cascades != null ? cascades : simulation;
+            try (TweetSink sink = out.open()) {
+                ObjectNode tweet;
+                while ((tweet = source.next()) != null) {
+                    sink.write(tweet);
+                    tweets++;
+                }
+            }
+            final double seconds = (System.currentTimeMillis() - start) / 1000.0;
+            System.err.printf("Simulated %d tweets in %.1fs (%.0f per second)%n",
+                tweets, seconds, tweets / Math.max(seconds, 0.001));
+            simulation.eventCounts().forEach((name, count) -> System.err.printf("%,14d  %s%n", count, name));
+            if (cascades != null) {
+                System.err.printf("%,14d  replies%n%,14d  retweets%n%,14d  quotes%n",
+                    cascades.replies(), cascades.retweets(), cascades.quotes());
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.cli;
+
+import au.org.dcw.socialmedia.simulation.tools.io.Compression;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetFormat;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetSorter;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.ParametersDelegate;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+@Parameters(commandNames = "sort",
+    commandDescription = "Sort newline-delimited JSON tweets by created_at or id, e.g. before replaying them")
+public class SortCommand implements Command {
+
+    @ParametersDelegate
+    private InputOptions in = new InputOptions();
+
+    @Parameter(names = {"-o", "--output"}, description = "File to write to ('-' for stdout)")
+    private String output = "-";
+
+    @Parameter(names = {"--compress"},
+        description = "Compression: NONE or GZIP (default: guessed from the output file name)")
+    private Compression compression;
+
+    @Parameter(names = {"--by"}, description = "Sort by CREATED_AT or ID")
+    private TweetSorter.Key by = TweetSorter.Key.CREATED_AT;
+
+    @Parameter(names = {"--threads"}, description = "Threads sorting runs at once (default: number of CPUs)")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names = {"--memory-mb"}, description = "Memory to sort in, in MB (default: half the Java heap)")
+    private Long memoryMegabytes;
+
+    @Parameter(names = {"--temp-dir"},
+        description = "Directory for the sorted runs, ideally on a different disk to the input and output")
+    private String tempDirectory = System.getProperty("java.io.tmpdir");
+
+    @Override
+    public void run() throws IOException {
+        if (in.format() != TweetFormat.JSON) {
+            throw new ParameterException("sort reads newline-delimited JSON only, not " + in.format());
+        }
+        final boolean toStdout = output.equals("-");
+        if (! toStdout && ! in.input.equals("-") && Files.exists(Paths.get(output))
+            && Files.isSameFile(Paths.get(in.input), Paths.get(output))) {
+            throw new ParameterException("Can't sort " + output + " in place");
+        }
+        final long memory = memoryMegabytes != null ? memoryMegabytes << 20 : Runtime.getRuntime().maxMemory() / 2;
+        final TweetSorter sorter = new TweetSorter(by, threads, memory, Paths.get(tempDirectory));
+        final Compression c = compression != null ? compression : Compression.forFile(output);
+
+        final long start = System.currentTimeMillis();
+        final long count;
+        try (InputStream input = in.openStream();
+             OutputStream out = c.compress(new BufferedOutputStream(
+                 toStdout ? System.out : new FileOutputStream(output), 1 << 20
+             ))) {
+            count = sorter.sort(input, out);
+        }
+        System.err.printf(
+            "Sorted %d tweets by %s in %d run(s), in %.1fs%n",
+            count, by.name().toLowerCase(), sorter.runCount(), (System.currentTimeMillis() - start) / 1000.0
+        );
+    }
+}
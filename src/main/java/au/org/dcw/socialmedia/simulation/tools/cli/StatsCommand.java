@@ -0,0 +1,104 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.cli;
+
+import au.org.dcw.socialmedia.simulation.tools.corpus.TweetStore;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetReader;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.ParametersDelegate;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Parameters(commandNames = "stats", commandDescription = "Load a corpus of tweets and summarise it")
+public class StatsCommand implements Command {
+
+    @ParametersDelegate
+    private InputOptions in = new InputOptions();
+
+    @ParametersDelegate
+    private StoreOptions storage = new StoreOptions();
+
+    @Parameter(names = {"--top"}, description = "Number of the most frequent authors and hashtags to list")
+    private int top = 10;
+
+    @Override
+    public void run() throws IOException {
+        final long start = System.nanoTime();
+        try (TweetReader reader = in.open(); TweetStore store = storage.load(reader)) {
+            summarise(store, (System.nanoTime() - start) / 1e9);
+        }
+    }
+
+    private void summarise(final TweetStore store, final double seconds) {
+        final long bytes = store.sizeInBytes();
+        System.out.printf("Loaded %d tweets in %.1fs, held in %.1fMB (%.0f bytes each)%n",
+            store.size(), seconds, bytes / 1e6, (double) bytes / Math.max(1, store.size()));
+
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        long geotagged = 0;
+        long placed = 0;
+        final Set<JsonNode> places = Collections.newSetFromMap(new IdentityHashMap<>()); // they're interned
+        final Map<String, Integer> authors = new HashMap<>();
+        final Map<String, Integer> hashtags = new HashMap<>();
+        for (int i = 0; i < store.size(); i++) {
+            final long createdAt = store.createdAt(i);
+            if (createdAt != Long.MIN_VALUE) {
+                first = Math.min(first, createdAt);
+                last = Math.max(last, createdAt);
+            }
+            if (store.hasCoordinates(i)) geotagged++;
+            final JsonNode place = store.place(i);
+            if (place != null) {
+                placed++;
+                places.add(place);
+            }
+            final String author = store.screenName(i);
+            if (author != null) {
+                authors.merge(author, 1, Integer::sum);
+            }
+            for (final String hashtag : store.hashtags(i)) {
+                hashtags.merge(hashtag.toLowerCase(Locale.ROOT), 1, Integer::sum);
+            }
+        }
+
+        if (first <= last) {
+            System.out.println("From " + Instant.ofEpochMilli(first) + " to " + Instant.ofEpochMilli(last));
+        }
+        System.out.printf("Geotagged: %d (%.1f%%), with a place: %d (%d distinct places)%n",
+            geotagged, 100.0 * geotagged / Math.max(1, store.size()), placed, places.size());
+        System.out.println("Authors: " + authors.size() + ", most prolific: " + topOf(authors));
+        System.out.println("Hashtags: " + hashtags.size() + ", most used: " + topOf(hashtags));
+    }
+
+    private String topOf(final Map<String, Integer> counts) {
+        return counts.entrySet().stream()
+            .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+            .limit(top)
+            .map(e -> e.getKey() + " (" + e.getValue() + ")")
+            .collect(Collectors.joining(", "));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.cli;
+
+import au.org.dcw.socialmedia.simulation.tools.corpus.CompactTweetStore;
+import au.org.dcw.socialmedia.simulation.tools.corpus.IndexedTweetStore;
+import au.org.dcw.socialmedia.simulation.tools.corpus.OffHeapTweetStore;
+import au.org.dcw.socialmedia.simulation.tools.corpus.TweetIndex;
+import au.org.dcw.socialmedia.simulation.tools.corpus.TweetStore;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetReader;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * How a command holds a loaded corpus, shared by commands via
+ * {@link com.beust.jcommander.ParametersDelegate}.
+ */
+public class StoreOptions {
+
+    public enum Kind {
+        /** Compact columns on the Java heap. */
+        HEAP,
+        /** Binary records outside the Java heap. */
+        OFF_HEAP
+    }
+
+    @Parameter(names = {"--store"},
+        description = "Where to hold loaded tweets: HEAP, or OFF_HEAP for corpora too big for the Java heap")
+    Kind store = Kind.HEAP;
+
+    @Parameter(names = {"--spill-dir"},
+        description = "Keep an OFF_HEAP store in a memory-mapped file in this directory, for corpora bigger than memory")
+    String spillDirectory;
+
+    /**
+     * @return A new, empty store.
+     * @throws IOException If an off-heap store's file can't be created.
+     */
+    public TweetStore create() throws IOException {
+        if (store == Kind.HEAP) {
+            if (spillDirectory != null) {
+                throw new ParameterException("--spill-dir only applies to --store OFF_HEAP");
+            }
+            return new CompactTweetStore();
+        }
+        return new OffHeapTweetStore(spillDirectory != null ? Paths.get(spillDirectory) : null);
+    }
+
+    /**
+     * Reads every tweet into a new store, reporting progress on stderr.
+     *
+     * @param reader The tweets to load.
+     * @param indexes Indexes to build as the tweets are loaded, and to keep
+     *                up to date as they're edited.
+     * @return The store holding them.
+     * @throws IOException If the tweets can't be read.
+     */
+    public TweetStore load(final TweetReader reader, final TweetIndex... indexes) throws IOException {
+        final TweetStore tweets = indexes.length == 0 ? create() : new IndexedTweetStore(create(), indexes);
+        JsonNode tweet;
+        while ((tweet = reader.next()) != null) {
+            tweets.add(tweet);
+            if (tweets.size() % 1_000_000 == 0) {
+                System.err.println("Loaded " + tweets.size() + " tweets");
+            }
+        }
+        return tweets;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.cli;
+
+import au.org.dcw.socialmedia.simulation.tools.gen.ParallelTweetSource;
+import au.org.dcw.socialmedia.simulation.tools.gen.TweetGenerator;
+import au.org.dcw.socialmedia.simulation.tools.server.StreamServer;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.ParametersDelegate;
+
+import java.io.IOException;
+
+@Parameters(commandNames = "stream",
+    commandDescription = "Serve generated tweets to clients of a local stand-in for Twitter's streaming API")
+public class StreamCommand implements Command {
+
+    @Parameter(names = {"--port"}, description = "Port to listen on, on localhost")
+    private int port = 8089;
+
+    @ParametersDelegate
+    private GeneratorOptions tweets = new GeneratorOptions();
+
+    @Parameter(names = {"--slow-clients"},
+        description = "What to do when a client can't keep up: DROP tweets for it, or DISCONNECT it")
+    private StreamServer.SlowClientPolicy policy = StreamServer.SlowClientPolicy.DROP;
+
+    @Parameter(names = {"--client-buffer-kb"}, description = "Kilobytes that may be queued for each client")
+    private int clientBufferKilobytes = 1024;
+
+    @Parameter(names = {"--report-seconds"}, description = "Seconds between progress reports (0 for none)")
+    private double reportSeconds = 5.0;
+
+    @Override
+    public void run() throws IOException, InterruptedException {
+        if (clientBufferKilobytes < 1) {
+            throw new ParameterException("--client-buffer-kb must be at least 1");
+        }
+        final TweetGenerator generator = tweets.build();
+        try (ParallelTweetSource drafts = tweets.parallel(generator);
+             StreamServer server = new StreamServer(port, tweets.cascades(drafts != null ? drafts : generator), policy,
+                 clientBufferKilobytes << 10).withReportEvery(reportSeconds)) {
+
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+            System.err.println("Streaming on http://localhost:" + server.getPort() +
+                "/1.1/statuses/filter.json and /1.1/statuses/sample.json");
+            server.run();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.corpus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only storage for many small byte strings, packed into large chunks
+ * so that millions of them cost a handful of objects rather than one array
+ * each. Each string is addressed by a {@code long}: its chunk in the high
+ * 32 bits and its offset within the chunk in the low 32 bits. A string
+ * never spans chunks, so it can be decoded straight from its chunk.
+ */
+final class ByteHeap {
+
+    static final int CHUNK_SIZE = 1 << 24;
+
+    private final List<byte[]> chunks = new ArrayList<>();
+    private byte[] current;
+    private int used;
+    private long capacity;
+
+    /**
+     * @param bytes The bytes to store.
+     * @return The address of the stored copy.
+     */
+    long append(final byte[] bytes) {
+        if (current == null || used + bytes.length > current.length) {
+            current = new byte[Math.max(CHUNK_SIZE, bytes.length)];
+            chunks.add(current);
+            used = 0;
+            capacity += current.length;
+        }
+        final long address = ((long) (chunks.size() - 1) << 32) | used;
+        System.arraycopy(bytes, 0, current, used, bytes.length);
+        used += bytes.length;
+        return address;
+    }
+
+    /**
+     * @param address A string's address.
+     * @return The chunk holding the string.
+     */
+    byte[] chunk(final long address) {
+        return chunks.get((int) (address >>> 32));
+    }
+
+    /**
+     * @param address A string's address.
+     * @return Where the string starts within its {@link #chunk}.
+     */
+    static int offset(final long address) {
+        return (int) address;
+    }
+
+    /**
+     * @return The bytes allocated, used or not.
+     */
+    long capacity() {
+        return capacity;
+    }
+}
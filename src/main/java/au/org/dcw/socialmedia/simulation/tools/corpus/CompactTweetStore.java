@@ -0,0 +1,242 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.corpus;
+
+import au.org.dcw.socialmedia.simulation.tools.io.TweetFormat;
+import au.org.dcw.socialmedia.simulation.tools.model.TweetModel;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Holds a corpus in columns rather than as a tree per tweet, which would
+ * take kilobytes each. IDs, timestamps and coordinates sit in primitive
+ * arrays; screen names, hashtags and places are interned and referred to
+ * by code; text is kept as UTF-8 in a {@link ByteHeap}. Everything else
+ * about a tweet is kept, Smile-encoded, in the same heap and only decoded
+ * when the tweet is {@link #open opened}.
+ * <p>
+ * Updating a tweet appends its new content, so the space taken by its old
+ * text and the rest of its tree is not reclaimed.
+ */
+public class CompactTweetStore implements TweetStore {
+
+    private static final ObjectWriter REST_WRITER = TweetFormat.SMILE.mapper().writer();
+    private static final ObjectReader REST_READER = TweetFormat.SMILE.mapper().readerFor(ObjectNode.class);
+    private static final int NONE = -1;
+
+    private final Interner<String> screenNames = new Interner<>();
+    private final Interner<String> hashtagNames = new Interner<>();
+    private final Interner<JsonNode> places = new Interner<>();
+    private final ByteHeap heap = new ByteHeap();
+    private final TweetParts parts = new TweetParts();
+
+    private int size;
+    private long[] ids = new long[0];
+    private long[] createdAts = new long[0];
+    private int[] screenNameCodes = new int[0];
+    private int[] placeCodes = new int[0];
+    private double[] points = new double[0]; // pairs of longitude, latitude
+    private short[] flags = new short[0];
+    private long[] textAddresses = new long[0];
+    private int[] textLengths = new int[0]; // -1 for no text
+    private long[] restAddresses = new long[0];
+    private int[] restLengths = new int[0];
+    private int[] hashtagStarts = new int[0];
+    private int[] hashtagCounts = new int[0];
+    private int[] hashtagCodes = new int[1024];
+    private int hashtagCodeCount;
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int add(final JsonNode tweet) {
+        if (size == ids.length) {
+            grow(Math.max(1024, size + (size >> 1)));
+        }
+        put(size, tweet);
+        return size++;
+    }
+
+    @Override
+    public void update(final int index, final JsonNode tweet) {
+        checkIndex(index);
+        put(index, tweet);
+    }
+
+    @Override
+    public TweetModel open(final int index) {
+        checkIndex(index);
+        final ObjectNode rest;
+        try {
+            rest = REST_READER.readValue(
+                heap.chunk(restAddresses[index]), ByteHeap.offset(restAddresses[index]), restLengths[index]);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt record for tweet " + index, e); // we wrote it ourselves
+        }
+        return new TweetModel(TweetParts.join(rest, flags[index], ids[index], text(index), screenName(index),
+            longitude(index), latitude(index), place(index)));
+    }
+
+    @Override
+    public long id(final int index) {
+        checkIndex(index);
+        return ids[index];
+    }
+
+    @Override
+    public long createdAt(final int index) {
+        checkIndex(index);
+        return createdAts[index];
+    }
+
+    @Override
+    public String screenName(final int index) {
+        checkIndex(index);
+        return screenNameCodes[index] == NONE ? null : screenNames.get(screenNameCodes[index]);
+    }
+
+    @Override
+    public String text(final int index) {
+        checkIndex(index);
+        if (textLengths[index] < 0) {
+            return null;
+        }
+        final long address = textAddresses[index];
+        return new String(heap.chunk(address), ByteHeap.offset(address), textLengths[index], StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public List<String> hashtags(final int index) {
+        checkIndex(index);
+        final int count = hashtagCounts[index];
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        final List<String> hashtags = new ArrayList<>(count);
+        for (int i = hashtagStarts[index]; i < hashtagStarts[index] + count; i++) {
+            hashtags.add(hashtagNames.get(hashtagCodes[i]));
+        }
+        return hashtags;
+    }
+
+    @Override
+    public boolean hasCoordinates(final int index) {
+        checkIndex(index);
+        return ! Double.isNaN(points[2 * index]);
+    }
+
+    @Override
+    public double longitude(final int index) {
+        checkIndex(index);
+        return points[2 * index];
+    }
+
+    @Override
+    public double latitude(final int index) {
+        checkIndex(index);
+        return points[2 * index + 1];
+    }
+
+    @Override
+    public JsonNode place(final int index) {
+        checkIndex(index);
+        return placeCodes[index] == NONE ? null : places.get(placeCodes[index]);
+    }
+
+    @Override
+    public long sizeInBytes() {
+        // columns and the heap; the interned values are assumed to be comparatively few
+        final long perTweet = 8 + 8 + 4 + 4 + 16 + 2 + 8 + 4 + 8 + 4 + 4 + 4;
+        return perTweet * ids.length + 4L * hashtagCodes.length + heap.capacity();
+    }
+
+    @Override
+    public void close() {
+        // nothing to release beyond the heap
+    }
+
+    private void put(final int index, final JsonNode tweet) {
+        parts.split(tweet);
+        ids[index] = parts.id;
+        createdAts[index] = parts.createdAt;
+        screenNameCodes[index] = parts.screenName == null ? NONE : screenNames.intern(parts.screenName);
+        placeCodes[index] = parts.place == null ? NONE : places.intern(parts.place);
+        points[2 * index] = parts.longitude;
+        points[2 * index + 1] = parts.latitude;
+        flags[index] = (short) parts.flags;
+
+        if (parts.text == null) {
+            textLengths[index] = -1;
+        } else {
+            final byte[] utf8 = parts.text.getBytes(StandardCharsets.UTF_8);
+            textAddresses[index] = heap.append(utf8);
+            textLengths[index] = utf8.length;
+        }
+
+        final byte[] rest;
+        try {
+            rest = REST_WRITER.writeValueAsBytes(parts.rest);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // can't happen when writing a tree to memory
+        }
+        restAddresses[index] = heap.append(rest);
+        restLengths[index] = rest.length;
+
+        final int count = parts.hashtags.size();
+        if (hashtagCodeCount + count > hashtagCodes.length) {
+            hashtagCodes = Arrays.copyOf(hashtagCodes, Math.max(hashtagCodeCount + count, hashtagCodes.length * 2));
+        }
+        hashtagStarts[index] = hashtagCodeCount;
+        hashtagCounts[index] = count;
+        for (final String hashtag : parts.hashtags) {
+            hashtagCodes[hashtagCodeCount++] = hashtagNames.intern(hashtag);
+        }
+    }
+
+    private void grow(final int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        createdAts = Arrays.copyOf(createdAts, capacity);
+        screenNameCodes = Arrays.copyOf(screenNameCodes, capacity);
+        placeCodes = Arrays.copyOf(placeCodes, capacity);
+        points = Arrays.copyOf(points, 2 * capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        textAddresses = Arrays.copyOf(textAddresses, capacity);
+        textLengths = Arrays.copyOf(textLengths, capacity);
+        restAddresses = Arrays.copyOf(restAddresses, capacity);
+        restLengths = Arrays.copyOf(restLengths, capacity);
+        hashtagStarts = Arrays.copyOf(hashtagStarts, capacity);
+        hashtagCounts = Arrays.copyOf(hashtagCounts, capacity);
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("No tweet " + index + " in a store of " + size);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.corpus;
+
+import au.org.dcw.socialmedia.simulation.tools.model.TweetModel;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link TweetStore} that keeps a set of {@link TweetIndex}es up to date
+ * as tweets are added and updated.
+ */
+public class IndexedTweetStore implements TweetStore {
+
+    private final TweetStore store;
+    private final List<TweetIndex> indexes;
+
+    /**
+     * @param store The store to add to and read from.
+     * @param indexes The indexes to keep up to date. They should be empty,
+     *                as should the store.
+     */
+    public IndexedTweetStore(final TweetStore store, final TweetIndex... indexes) {
+        this.store = store;
+        this.indexes = Arrays.asList(indexes);
+    }
+
+    @Override
+    public int add(final JsonNode tweet) {
+        final int index = store.add(tweet);
+        for (final TweetIndex i : indexes) {
+            i.added(index, tweet);
+        }
+        return index;
+    }
+
+    @Override
+    public void update(final int index, final JsonNode tweet) {
+        final JsonNode before = indexes.isEmpty() ? null : store.open(index).root;
+        store.update(index, tweet);
+        for (final TweetIndex i : indexes) {
+            i.updated(index, before, tweet);
+        }
+    }
+
+    @Override
+    public int size() {
+        return store.size();
+    }
+
+    @Override
+    public TweetModel open(final int index) {
+        return store.open(index);
+    }
+
+    @Override
+    public long id(final int index) {
+        return store.id(index);
+    }
+
+    @Override
+    public long createdAt(final int index) {
+        return store.createdAt(index);
+    }
+
+    @Override
+    public String screenName(final int index) {
+        return store.screenName(index);
+    }
+
+    @Override
+    public String text(final int index) {
+        return store.text(index);
+    }
+
+    @Override
+    public List<String> hashtags(final int index) {
+        return store.hashtags(index);
+    }
+
+    @Override
+    public boolean hasCoordinates(final int index) {
+        return store.hasCoordinates(index);
+    }
+
+    @Override
+    public double longitude(final int index) {
+        return store.longitude(index);
+    }
+
+    @Override
+    public double latitude(final int index) {
+        return store.latitude(index);
+    }
+
+    @Override
+    public JsonNode place(final int index) {
+        return store.place(index);
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return store.sizeInBytes();
+    }
+
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.corpus;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns each distinct value a small integer code, so that a column of
+ * values repeated across many tweets (screen names, hashtags, places) can
+ * be held as an {@code int[]} with each value stored only once.
+ *
+ * @param <T> The type of value, which must have value-based equality.
+ */
+final class Interner<T> {
+
+    private final Map<T, Integer> codes = new HashMap<>();
+    private final List<T> values = new ArrayList<>();
+
+    /**
+     * @param value The value to intern.
+     * @return The value's code, allocating one if it hasn't been seen before.
+     */
+    int intern(final T value) {
+        final Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        values.add(value);
+        codes.put(value, values.size() - 1);
+        return values.size() - 1;
+    }
+
+    /**
+     * @param code A code from {@link #intern}.
+     * @return The value with that code.
+     */
+    T get(final int code) {
+        return values.get(code);
+    }
+
+    /**
+     * @param value A value.
+     * @return The value's code, or -1 if it has never been interned.
+     */
+    int codeOf(final T value) {
+        final Integer code = codes.get(value);
+        return code != null ? code : -1;
+    }
+
+    /**
+     * @return The number of distinct values.
+     */
+    int size() {
+        return values.size();
+    }
+}
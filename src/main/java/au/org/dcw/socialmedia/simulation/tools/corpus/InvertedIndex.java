@@ -0,0 +1,395 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.corpus;
+
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the tweets in a store that contain a term, or that match a boolean
+ * query over terms, without scanning the store. Terms are taken from each
+ * tweet's entities (extracted from its text if it has none) and text:
+ * <ul>
+ *     <li>{@code #tag} for a hashtag</li>
+ *     <li>{@code @name} for a mention</li>
+ *     <li>{@code from:name} for the author</li>
+ *     <li>{@code url:http://...} for a link, by its URL or expanded URL</li>
+ *     <li>any other word of the text</li>
+ * </ul>
+ * All are matched ignoring case. A query is terms separated by spaces,
+ * which must all match, with {@code OR} between alternatives, {@code -} or
+ * {@code NOT} before terms that mustn't match, and parentheses for grouping,
+ * e.g. {@code #auspol (@alice OR from:alice) -retweet}.
+ */
+public class InvertedIndex implements TweetIndex {
+
+    private static final int[] NOTHING = new int[0];
+
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private int tweetCount;
+
+    @Override
+    public void added(final int index, final JsonNode tweet) {
+        for (final String term : termsOf(tweet)) {
+            postings.computeIfAbsent(term, t -> new PostingList()).add(index);
+        }
+        tweetCount = Math.max(tweetCount, index + 1);
+    }
+
+    @Override
+    public void updated(final int index, final JsonNode before, final JsonNode after) {
+        final Set<String> oldTerms = termsOf(before);
+        final Set<String> newTerms = termsOf(after);
+        for (final String term : oldTerms) {
+            if (! newTerms.contains(term)) {
+                postings.get(term).remove(index);
+            }
+        }
+        for (final String term : newTerms) {
+            if (! oldTerms.contains(term)) {
+                postings.computeIfAbsent(term, t -> new PostingList()).add(index);
+            }
+        }
+    }
+
+    /**
+     * @param term A term, e.g. {@code "#auspol"}.
+     * @return The indexes of the tweets containing it, ascending.
+     */
+    public int[] find(final String term) {
+        final PostingList list = postings.get(term.toLowerCase(Locale.ROOT));
+        return list == null ? NOTHING : list.toArray();
+    }
+
+    /**
+     * @param query A query, as described above.
+     * @return The indexes of the tweets matching it, ascending.
+     * @throws IllegalArgumentException If the query can't be parsed.
+     */
+    public int[] search(final String query) {
+        return new QueryParser(query).parse().evaluate();
+    }
+
+    /**
+     * @return The number of distinct terms.
+     */
+    public int termCount() {
+        return postings.size();
+    }
+
+    /**
+     * @return Roughly how many bytes the index occupies.
+     */
+    public long sizeInBytes() {
+        long bytes = 0;
+        for (final Map.Entry<String, PostingList> entry : postings.entrySet()) {
+            bytes += 64 + 2L * entry.getKey().length() + entry.getValue().sizeInBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * @param tweet A tweet.
+     * @return The terms under which it is indexed.
+     */
+    public static Set<String> termsOf(final JsonNode tweet) {
+        final Set<String> terms = new LinkedHashSet<>();
+        final String text = tweet.path("full_text").asText(tweet.path("text").asText(""));
+        terms.addAll(Tweets.words(text));
+
+        final String author = tweet.path("user").path("screen_name").asText("");
+        if (! author.isEmpty()) {
+            terms.add("from:" + author.toLowerCase(Locale.ROOT));
+        }
+
+        JsonNode entities = tweet.path("entities");
+        if (! entities.isObject()) {
+            entities = Tweets.extractEntitiesAsJsonNodeTree(text, null);
+        }
+        for (final JsonNode hashtag : entities.path("hashtags")) {
+            terms.add("#" + hashtag.path("text").asText().toLowerCase(Locale.ROOT));
+        }
+        for (final JsonNode mention : entities.path("user_mentions")) {
+            terms.add("@" + mention.path("screen_name").asText().toLowerCase(Locale.ROOT));
+        }
+        for (final JsonNode url : entities.path("urls")) {
+            for (final String field : new String[]{"url", "expanded_url"}) {
+                if (url.path(field).isTextual()) {
+                    terms.add("url:" + url.get(field).asText().toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return terms;
+    }
+
+    // QUERIES
+
+    private interface Query {
+        int[] evaluate();
+    }
+
+    private final class Term implements Query {
+        private final String term;
+
+        Term(final String term) {
+            this.term = term;
+        }
+
+        @Override
+        public int[] evaluate() {
+            if (term.startsWith("#") || term.startsWith("@") || term.startsWith("from:") || term.startsWith("url:")) {
+                return find(term);
+            }
+            // plain words are split as the text was, e.g. "don't" needs "don" and "t"
+            int[] result = null;
+            for (final String word : Tweets.words(term)) {
+                result = result == null ? find(word) : intersect(result, find(word));
+            }
+            return result == null ? NOTHING : result;
+        }
+    }
+
+    private final class Not implements Query {
+        private final Query negated;
+
+        Not(final Query negated) {
+            this.negated = negated;
+        }
+
+        @Override
+        public int[] evaluate() {
+            return subtract(all(), negated.evaluate());
+        }
+    }
+
+    private final class And implements Query {
+        private final List<Query> operands;
+
+        And(final List<Query> operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        public int[] evaluate() {
+            // intersect the smallest first, then take away the negated operands
+            final List<int[]> included = new ArrayList<>();
+            final List<Query> excluded = new ArrayList<>();
+            for (final Query operand : operands) {
+                if (operand instanceof Not) {
+                    excluded.add(((Not) operand).negated);
+                } else {
+                    included.add(operand.evaluate());
+                }
+            }
+            included.sort((a, b) -> Integer.compare(a.length, b.length));
+            int[] result = included.isEmpty() ? all() : included.get(0);
+            for (int i = 1; i < included.size() && result.length > 0; i++) {
+                result = intersect(result, included.get(i));
+            }
+            for (int i = 0; i < excluded.size() && result.length > 0; i++) {
+                result = subtract(result, excluded.get(i).evaluate());
+            }
+            return result;
+        }
+    }
+
+    private static final class Or implements Query {
+        private final List<Query> operands;
+
+        Or(final List<Query> operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        public int[] evaluate() {
+            int[] result = NOTHING;
+            for (final Query operand : operands) {
+                result = union(result, operand.evaluate());
+            }
+            return result;
+        }
+    }
+
+    private final class QueryParser {
+        private final List<String> tokens = new ArrayList<>();
+        private int next;
+
+        QueryParser(final String query) {
+            for (final String word : query.trim().split("\\s+")) {
+                int start = 0;
+                int end = word.length();
+                while (start < end && word.charAt(start) == '(') {
+                    tokens.add("(");
+                    start++;
+                }
+                int closing = 0;
+                while (end > start && word.charAt(end - 1) == ')') {
+                    closing++;
+                    end--;
+                }
+                if (start < end) {
+                    tokens.add(word.substring(start, end));
+                }
+                for (int i = 0; i < closing; i++) {
+                    tokens.add(")");
+                }
+            }
+        }
+
+        Query parse() {
+            if (tokens.isEmpty()) {
+                throw new IllegalArgumentException("Empty query");
+            }
+            final Query query = or();
+            if (next < tokens.size()) {
+                throw new IllegalArgumentException("Unexpected '" + tokens.get(next) + "' in query");
+            }
+            return query;
+        }
+
+        private Query or() {
+            final List<Query> operands = new ArrayList<>();
+            operands.add(and());
+            while (accept("OR")) {
+                operands.add(and());
+            }
+            return operands.size() == 1 ? operands.get(0) : new Or(operands);
+        }
+
+        private Query and() {
+            final List<Query> operands = new ArrayList<>();
+            do {
+                accept("AND");
+                operands.add(not());
+            } while (next < tokens.size() && ! tokens.get(next).equals(")") && ! tokens.get(next).equals("OR"));
+            return operands.size() == 1 ? operands.get(0) : new And(operands);
+        }
+
+        private Query not() {
+            if (accept("NOT")) {
+                return new Not(not());
+            }
+            if (next == tokens.size()) {
+                throw new IllegalArgumentException("Query ends too soon");
+            }
+            final String token = tokens.get(next);
+            if (token.startsWith("-") && token.length() > 1) {
+                tokens.set(next, token.substring(1));
+                return new Not(not());
+            }
+            if (accept("(")) {
+                final Query group = or();
+                if (! accept(")")) {
+                    throw new IllegalArgumentException("Missing ')' in query");
+                }
+                return group;
+            }
+            if (token.equals(")")) {
+                throw new IllegalArgumentException("Unexpected ')' in query");
+            }
+            next++;
+            return new Term(token.toLowerCase(Locale.ROOT));
+        }
+
+        private boolean accept(final String token) {
+            if (next < tokens.size() && tokens.get(next).equals(token)) {
+                next++;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    // SORTED SET OPERATIONS
+
+    private int[] all() {
+        final int[] all = new int[tweetCount];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = i;
+        }
+        return all;
+    }
+
+    private static int[] intersect(final int[] a, final int[] b) {
+        final int[] small = a.length <= b.length ? a : b;
+        final int[] large = a.length <= b.length ? b : a;
+        final int[] result = new int[small.length];
+        int n = 0;
+        if (large.length > 16 * small.length) {
+            // look each of the few up among the many
+            int from = 0;
+            for (final int x : small) {
+                final int at = Arrays.binarySearch(large, from, large.length, x);
+                if (at >= 0) {
+                    result[n++] = x;
+                    from = at + 1;
+                } else {
+                    from = -at - 1;
+                }
+            }
+        } else {
+            for (int i = 0, j = 0; i < small.length && j < large.length; ) {
+                if (small[i] < large[j]) i++;
+                else if (small[i] > large[j]) j++;
+                else {
+                    result[n++] = small[i++];
+                    j++;
+                }
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static int[] union(final int[] a, final int[] b) {
+        if (a.length == 0) return b;
+        if (b.length == 0) return a;
+        final int[] result = new int[a.length + b.length];
+        int n = 0, i = 0, j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) result[n++] = a[i++];
+            else if (a[i] > b[j]) result[n++] = b[j++];
+            else {
+                result[n++] = a[i++];
+                j++;
+            }
+        }
+        while (i < a.length) result[n++] = a[i++];
+        while (j < b.length) result[n++] = b[j++];
+        return Arrays.copyOf(result, n);
+    }
+
+    private static int[] subtract(final int[] a, final int[] b) {
+        if (b.length == 0) return a;
+        final int[] result = new int[a.length];
+        int n = 0;
+        for (int i = 0, j = 0; i < a.length; i++) {
+            while (j < b.length && b[j] < a[i]) j++;
+            if (j == b.length || b[j] != a[i]) {
+                result[n++] = a[i];
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+}
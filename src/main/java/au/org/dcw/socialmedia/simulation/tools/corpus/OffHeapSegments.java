@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.corpus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only storage for records outside the Java heap, in large segments
+ * that are either direct buffers or regions of a memory-mapped temporary
+ * file. Mapped segments are paged in and out by the operating system, so
+ * they can hold more than fits in memory. Like {@link ByteHeap}, records
+ * are addressed by segment and offset and never span segments.
+ */
+final class OffHeapSegments implements Closeable {
+
+    static final int SEGMENT_SIZE = 1 << 26;
+
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private final Path file;
+    private final FileChannel channel;
+    private long capacity;
+    private ByteBuffer current;
+
+    /**
+     * @param spillDirectory Where to create the file to map segments from,
+     *                       or null to use direct buffers.
+     * @throws IOException If the file can't be created.
+     */
+    OffHeapSegments(final Path spillDirectory) throws IOException {
+        if (spillDirectory == null) {
+            file = null;
+            channel = null;
+        } else {
+            file = Files.createTempFile(spillDirectory, "tweets-", ".store");
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+        }
+    }
+
+    /**
+     * @param length The length of the record to be written.
+     * @return A buffer positioned where the record is to be written, with at
+     * least {@code length} bytes remaining. The record's address is
+     * {@link #addressOf} the buffer before it is written.
+     */
+    ByteBuffer reserve(final int length) {
+        if (current == null || current.remaining() < length) {
+            current = allocate(Math.max(SEGMENT_SIZE, length));
+            segments.add(current);
+        }
+        return current;
+    }
+
+    /**
+     * @param buffer A buffer from {@link #reserve}, not yet written to.
+     * @return The address of the record about to be written.
+     */
+    long addressOf(final ByteBuffer buffer) {
+        return ((long) (segments.size() - 1) << 32) | buffer.position();
+    }
+
+    /**
+     * @param address A record's address.
+     * @return The segment holding the record, which may only be read with
+     * absolute gets, as other threads may be reading it too.
+     */
+    ByteBuffer segment(final long address) {
+        return segments.get((int) (address >>> 32));
+    }
+
+    /**
+     * @param address A record's address.
+     * @return Where the record starts within its {@link #segment}.
+     */
+    static int offset(final long address) {
+        return (int) address;
+    }
+
+    /**
+     * @param address A record's address.
+     * @return A buffer of its own positioned at the record, for bulk reads.
+     */
+    ByteBuffer read(final long address) {
+        final ByteBuffer buffer = segment(address).duplicate();
+        buffer.position(offset(address));
+        return buffer;
+    }
+
+    /**
+     * @return The bytes allocated, used or not.
+     */
+    long capacity() {
+        return capacity;
+    }
+
+    /**
+     * Gives up the file, if any. Its mapped segments are only unmapped when
+     * they are garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        segments.clear();
+        current = null;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private ByteBuffer allocate(final int size) {
+        capacity += size;
+        if (channel == null) {
+            return ByteBuffer.allocateDirect(size);
+        }
+        try {
+            return channel.map(FileChannel.MapMode.READ_WRITE, capacity - size, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't extend " + file, e);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.corpus;
+
+import au.org.dcw.socialmedia.simulation.tools.io.TweetFormat;
+import au.org.dcw.socialmedia.simulation.tools.model.TweetModel;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Holds a corpus outside the Java heap, so that neither the heap nor GC
+ * pauses grow with it. Each tweet is one binary record in
+ * {@link OffHeapSegments}; the heap holds only the address of each record
+ * and the interned screen names, hashtags and places. A record is laid out
+ * as:
+ * <pre>
+ *  0  id             long
+ *  8  created_at     long, epoch milliseconds
+ * 16  longitude      double
+ * 24  latitude       double
+ * 32  flags          short, see {@link TweetParts}
+ * 34  screen name    int code, or -1
+ * 38  place          int code, or -1
+ * 42  hashtag count  unsigned short
+ * 44  text length    int, or -1 for none
+ * 48  rest length    int
+ * 52  hashtags       int code each
+ *     text           UTF-8
+ *     rest           Smile-encoded tree, as in {@link CompactTweetStore}
+ * </pre>
+ * Updating a tweet appends a new record, so the old one's space is not
+ * reclaimed.
+ */
+public class OffHeapTweetStore implements TweetStore {
+
+    private static final ObjectWriter REST_WRITER = TweetFormat.SMILE.mapper().writer();
+    private static final ObjectReader REST_READER = TweetFormat.SMILE.mapper().readerFor(ObjectNode.class);
+    private static final int NONE = -1;
+
+    private static final int ID = 0;
+    private static final int CREATED_AT = 8;
+    private static final int LONGITUDE = 16;
+    private static final int LATITUDE = 24;
+    private static final int FLAGS = 32;
+    private static final int SCREEN_NAME = 34;
+    private static final int PLACE = 38;
+    private static final int HASHTAG_COUNT = 42;
+    private static final int TEXT_LENGTH = 44;
+    private static final int REST_LENGTH = 48;
+    private static final int HASHTAGS = 52;
+
+    private final Interner<String> screenNames = new Interner<>();
+    private final Interner<String> hashtagNames = new Interner<>();
+    private final Interner<JsonNode> places = new Interner<>();
+    private final OffHeapSegments segments;
+    private final TweetParts parts = new TweetParts();
+
+    private int size;
+    private long[] addresses = new long[1024];
+
+    /**
+     * @param spillDirectory Where to keep records in a memory-mapped
+     *                       temporary file, or null to keep them in direct
+     *                       buffers.
+     * @throws IOException If the temporary file can't be created.
+     */
+    public OffHeapTweetStore(final Path spillDirectory) throws IOException {
+        this.segments = new OffHeapSegments(spillDirectory);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int add(final JsonNode tweet) {
+        if (size == addresses.length) {
+            addresses = Arrays.copyOf(addresses, size + (size >> 1));
+        }
+        addresses[size] = write(tweet);
+        return size++;
+    }
+
+    @Override
+    public void update(final int index, final JsonNode tweet) {
+        checkIndex(index);
+        addresses[index] = write(tweet);
+    }
+
+    @Override
+    public TweetModel open(final int index) {
+        final ByteBuffer record = record(index);
+        final int start = record.position();
+        final int textLength = record.getInt(start + TEXT_LENGTH);
+        final byte[] rest = new byte[record.getInt(start + REST_LENGTH)];
+        record.position(start + HASHTAGS + 4 * hashtagCount(record, start) + Math.max(0, textLength));
+        record.get(rest);
+        final ObjectNode tree;
+        try {
+            tree = REST_READER.readValue(rest);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt record for tweet " + index, e); // we wrote it ourselves
+        }
+        final int flags = record.getShort(start + FLAGS) & 0xFFFF;
+        return new TweetModel(TweetParts.join(tree, flags, record.getLong(start + ID), text(index),
+            screenName(index), longitude(index), latitude(index), place(index)));
+    }
+
+    @Override
+    public long id(final int index) {
+        return segment(index).getLong(offset(index) + ID);
+    }
+
+    @Override
+    public long createdAt(final int index) {
+        return segment(index).getLong(offset(index) + CREATED_AT);
+    }
+
+    @Override
+    public String screenName(final int index) {
+        final int code = segment(index).getInt(offset(index) + SCREEN_NAME);
+        return code == NONE ? null : screenNames.get(code);
+    }
+
+    @Override
+    public String text(final int index) {
+        final ByteBuffer record = record(index);
+        final int start = record.position();
+        final int length = record.getInt(start + TEXT_LENGTH);
+        if (length < 0) {
+            return null;
+        }
+        final byte[] utf8 = new byte[length];
+        record.position(start + HASHTAGS + 4 * hashtagCount(record, start));
+        record.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public List<String> hashtags(final int index) {
+        final ByteBuffer record = segment(index);
+        final int start = offset(index);
+        final int count = hashtagCount(record, start);
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        final List<String> hashtags = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            hashtags.add(hashtagNames.get(record.getInt(start + HASHTAGS + 4 * i)));
+        }
+        return hashtags;
+    }
+
+    @Override
+    public boolean hasCoordinates(final int index) {
+        return ! Double.isNaN(longitude(index));
+    }
+
+    @Override
+    public double longitude(final int index) {
+        return segment(index).getDouble(offset(index) + LONGITUDE);
+    }
+
+    @Override
+    public double latitude(final int index) {
+        return segment(index).getDouble(offset(index) + LATITUDE);
+    }
+
+    @Override
+    public JsonNode place(final int index) {
+        final int code = segment(index).getInt(offset(index) + PLACE);
+        return code == NONE ? null : places.get(code);
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return 8L * addresses.length + segments.capacity();
+    }
+
+    @Override
+    public void close() throws IOException {
+        segments.close();
+    }
+
+    private long write(final JsonNode tweet) {
+        parts.split(tweet);
+        final byte[] text = parts.text == null ? null : parts.text.getBytes(StandardCharsets.UTF_8);
+        final byte[] rest;
+        try {
+            rest = REST_WRITER.writeValueAsBytes(parts.rest);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // can't happen when writing a tree to memory
+        }
+        final int hashtagCount = Math.min(parts.hashtags.size(), 0xFFFF);
+        final int length = HASHTAGS + 4 * hashtagCount + (text == null ? 0 : text.length) + rest.length;
+
+        final ByteBuffer buffer = segments.reserve(length);
+        final long address = segments.addressOf(buffer);
+        buffer.putLong(parts.id);
+        buffer.putLong(parts.createdAt);
+        buffer.putDouble(parts.longitude);
+        buffer.putDouble(parts.latitude);
+        buffer.putShort((short) parts.flags);
+        buffer.putInt(parts.screenName == null ? NONE : screenNames.intern(parts.screenName));
+        buffer.putInt(parts.place == null ? NONE : places.intern(parts.place));
+        buffer.putShort((short) hashtagCount);
+        buffer.putInt(text == null ? -1 : text.length);
+        buffer.putInt(rest.length);
+        for (int i = 0; i < hashtagCount; i++) {
+            buffer.putInt(hashtagNames.intern(parts.hashtags.get(i)));
+        }
+        if (text != null) {
+            buffer.put(text);
+        }
+        buffer.put(rest);
+        return address;
+    }
+
+    private ByteBuffer record(final int index) {
+        checkIndex(index);
+        return segments.read(addresses[index]);
+    }
+
+    private ByteBuffer segment(final int index) {
+        checkIndex(index);
+        return segments.segment(addresses[index]);
+    }
+
+    private int offset(final int index) {
+        return OffHeapSegments.offset(addresses[index]);
+    }
+
+    private static int hashtagCount(final ByteBuffer record, final int start) {
+        return record.getShort(start + HASHTAG_COUNT) & 0xFFFF;
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("No tweet " + index + " in a store of " + size);
+        }
+    }
+}
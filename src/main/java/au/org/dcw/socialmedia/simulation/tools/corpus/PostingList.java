@@ -0,0 +1,181 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.corpus;
+
+import java.util.Arrays;
+
+/**
+ * The ascending indexes of the tweets containing a term. Tweets are mostly
+ * added in order, so the indexes are kept as the gaps between them, each
+ * written in as few bytes as it needs (7 bits a byte, the top bit marking
+ * a continuation); most gaps take a single byte.
+ * <p>
+ * Edits can add or remove an earlier tweet, which can't be appended, so
+ * they're kept aside in small sorted arrays until there are enough of them
+ * to be worth re-encoding the whole list.
+ */
+final class PostingList {
+
+    private static final int[] NONE = new int[0];
+
+    private byte[] gaps = new byte[4];
+    private int length;
+    private int count;
+    private int last = -1;
+
+    private int[] added = NONE;
+    private int addedCount;
+    private int[] removed = NONE;
+    private int removedCount;
+
+    /**
+     * @param tweet The index of a tweet that contains the term.
+     */
+    void add(final int tweet) {
+        final int r = Arrays.binarySearch(removed, 0, removedCount, tweet);
+        if (r >= 0) {
+            removedCount = delete(removed, removedCount, r);
+        } else if (tweet > last) {
+            append(tweet);
+        } else if (! containsEncoded(tweet)) {
+            final int a = Arrays.binarySearch(added, 0, addedCount, tweet);
+            if (a < 0) {
+                added = insert(added, addedCount++, -a - 1, tweet);
+                compactIfWorthwhile();
+            }
+        }
+    }
+
+    /**
+     * @param tweet The index of a tweet that no longer contains the term.
+     */
+    void remove(final int tweet) {
+        final int a = Arrays.binarySearch(added, 0, addedCount, tweet);
+        if (a >= 0) {
+            addedCount = delete(added, addedCount, a);
+        } else if (containsEncoded(tweet)) {
+            final int r = Arrays.binarySearch(removed, 0, removedCount, tweet);
+            if (r < 0) {
+                removed = insert(removed, removedCount++, -r - 1, tweet);
+                compactIfWorthwhile();
+            }
+        }
+    }
+
+    /**
+     * @return The number of tweets containing the term.
+     */
+    int size() {
+        return count + addedCount - removedCount;
+    }
+
+    /**
+     * @return The indexes of the tweets containing the term, ascending.
+     */
+    int[] toArray() {
+        final int[] encoded = decode();
+        if (addedCount == 0 && removedCount == 0) {
+            return encoded;
+        }
+        final int[] result = new int[size()];
+        int n = 0, e = 0, a = 0, r = 0;
+        while (e < encoded.length || a < addedCount) {
+            final int next;
+            if (a == addedCount || (e < encoded.length && encoded[e] < added[a])) {
+                next = encoded[e++];
+                while (r < removedCount && removed[r] < next) r++;
+                if (r < removedCount && removed[r] == next) continue;
+            } else {
+                next = added[a++];
+            }
+            result[n++] = next;
+        }
+        return result;
+    }
+
+    /**
+     * @return Roughly how many bytes the list occupies.
+     */
+    long sizeInBytes() {
+        return 48 + gaps.length + 4L * (added.length + removed.length);
+    }
+
+    private void append(final int tweet) {
+        int gap = tweet - last;
+        if (length + 5 > gaps.length) {
+            gaps = Arrays.copyOf(gaps, Math.max(length + 5, gaps.length + (gaps.length >> 1)));
+        }
+        while (gap >= 0x80) {
+            gaps[length++] = (byte) (gap | 0x80);
+            gap >>>= 7;
+        }
+        gaps[length++] = (byte) gap;
+        last = tweet;
+        count++;
+    }
+
+    private int[] decode() {
+        final int[] tweets = new int[count];
+        int tweet = -1;
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = gaps[pos++];
+                gap |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            tweet += gap;
+            tweets[i] = tweet;
+        }
+        return tweets;
+    }
+
+    private boolean containsEncoded(final int tweet) {
+        return tweet <= last && Arrays.binarySearch(decode(), tweet) >= 0;
+    }
+
+    private void compactIfWorthwhile() {
+        if (addedCount + removedCount > 64 + (count >> 3)) {
+            final int[] tweets = toArray();
+            gaps = new byte[Math.max(4, tweets.length)];
+            length = 0;
+            count = 0;
+            last = -1;
+            added = removed = NONE;
+            addedCount = removedCount = 0;
+            for (final int tweet : tweets) {
+                append(tweet);
+            }
+        }
+    }
+
+    private static int[] insert(int[] array, final int size, final int at, final int value) {
+        if (size == array.length) {
+            array = Arrays.copyOf(array, Math.max(4, size * 2));
+        }
+        System.arraycopy(array, at, array, at + 1, size - at);
+        array[at] = value;
+        return array;
+    }
+
+    private static int delete(final int[] array, final int size, final int at) {
+        System.arraycopy(array, at + 1, array, at, size - at - 1);
+        return size - 1;
+    }
+}
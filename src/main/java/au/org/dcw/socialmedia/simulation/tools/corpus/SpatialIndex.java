@@ -0,0 +1,409 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.corpus;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Finds the tweets in a store that lie within a box of longitude and
+ * latitude, without scanning the store. A tweet lies within the box if its
+ * {@code coordinates} do, or if its {@code place}'s bounding box overlaps it.
+ * <p>
+ * The boxes are held in a packed R-tree: sorted along a Hilbert curve so
+ * neighbours on the map are neighbours in the tree, then grouped sixteen at
+ * a time into nodes, and those into nodes, up to a single root. Packing is
+ * done in bulk, on the first query after loading (or on {@link #pack()}).
+ * Tweets added or edited after that are kept aside and checked one by one,
+ * with their out-of-date boxes in the tree ignored, until there are enough
+ * of them to be worth packing the tree again.
+ */
+public class SpatialIndex implements TweetIndex {
+
+    private static final int NODE_SIZE = 16;
+    private static final int[] NOTHING = new int[0];
+
+    // boxes not yet in the tree, as minLon, minLat, maxLon, maxLat
+    private double[] pendingBoxes = new double[4 * 64];
+    private int[] pendingTweets = new int[64];
+    private int pendingCount;
+
+    // the tree: leaves, then each level of nodes, up to the root
+    private double[] boxes = new double[0];
+    private int[] indices = NOTHING; // a leaf's tweet, or a node's first child
+    private int[] levelEnds = NOTHING;
+    private int leafCount;
+
+    // tweets whose leaves are out of date
+    private final BitSet stale = new BitSet();
+    private int staleCount;
+
+    @Override
+    public void added(final int index, final JsonNode tweet) {
+        final double[] entries = boxesOf(tweet);
+        for (int i = 0; i < entries.length; i += 4) {
+            addPending(index, entries, i);
+        }
+    }
+
+    @Override
+    public void updated(final int index, final JsonNode before, final JsonNode after) {
+        final double[] entries = boxesOf(after);
+        if (Arrays.equals(entries, boxesOf(before))) {
+            return; // most edits don't move the tweet
+        }
+        if (leafCount > 0 && ! stale.get(index)) {
+            stale.set(index);
+            staleCount++;
+        }
+        int kept = 0;
+        for (int i = 0; i < pendingCount; i++) {
+            if (pendingTweets[i] != index) {
+                pendingTweets[kept] = pendingTweets[i];
+                System.arraycopy(pendingBoxes, 4 * i, pendingBoxes, 4 * kept, 4);
+                kept++;
+            }
+        }
+        pendingCount = kept;
+        for (int i = 0; i < entries.length; i += 4) {
+            addPending(index, entries, i);
+        }
+    }
+
+    /**
+     * Finds the tweets within a box. If {@code minLongitude} is greater than
+     * {@code maxLongitude}, the box is taken to cross the antimeridian.
+     *
+     * @param minLongitude The western edge of the box.
+     * @param minLatitude The southern edge of the box.
+     * @param maxLongitude The eastern edge of the box.
+     * @param maxLatitude The northern edge of the box.
+     * @return The indexes of the tweets within it, ascending.
+     * @throws IllegalArgumentException If the southern edge is north of the northern.
+     */
+    public int[] query(
+        final double minLongitude,
+        final double minLatitude,
+        final double maxLongitude,
+        final double maxLatitude
+    ) {
+        if (minLatitude > maxLatitude) {
+            throw new IllegalArgumentException(
+                "Box's southern edge (" + minLatitude + ") is north of its northern edge (" + maxLatitude + ")"
+            );
+        }
+        if (leafCount == 0 || pendingCount + staleCount > 4096 + (leafCount >> 5)) {
+            pack();
+        }
+        final Hits hits = new Hits();
+        if (minLongitude > maxLongitude) {
+            search(minLongitude, minLatitude, 180.0, maxLatitude, hits);
+            search(-180.0, minLatitude, maxLongitude, maxLatitude, hits);
+        } else {
+            search(minLongitude, minLatitude, maxLongitude, maxLatitude, hits);
+        }
+        return hits.toSortedArray();
+    }
+
+    /**
+     * Packs every box added so far into the tree, which otherwise happens
+     * when it's first queried.
+     */
+    public void pack() {
+        final int live = leafCount - countStaleLeaves() + pendingCount;
+        final double[] entries = new double[4 * live];
+        final int[] tweets = new int[live];
+        int n = 0;
+        for (int leaf = 0; leaf < leafCount; leaf++) {
+            if (! stale.get(indices[leaf])) {
+                System.arraycopy(boxes, 4 * leaf, entries, 4 * n, 4);
+                tweets[n++] = indices[leaf];
+            }
+        }
+        System.arraycopy(pendingBoxes, 0, entries, 4 * n, 4 * pendingCount);
+        System.arraycopy(pendingTweets, 0, tweets, n, pendingCount);
+
+        build(entries, tweets);
+
+        pendingBoxes = new double[4 * 64];
+        pendingTweets = new int[64];
+        pendingCount = 0;
+        stale.clear();
+        staleCount = 0;
+    }
+
+    /**
+     * @return The number of boxes indexed, i.e., points plus places.
+     */
+    public int size() {
+        return leafCount - countStaleLeaves() + pendingCount;
+    }
+
+    /**
+     * @return Roughly how many bytes the index occupies.
+     */
+    public long sizeInBytes() {
+        return 8L * (boxes.length + pendingBoxes.length)
+            + 4L * (indices.length + pendingTweets.length)
+            + stale.size() / 8;
+    }
+
+    /**
+     * @param tweet A tweet.
+     * @return The boxes under which it is indexed, four values (minimum
+     *         longitude, minimum latitude, maximum longitude and maximum
+     *         latitude) apiece: one for its coordinates, which has no area,
+     *         and one for its place's bounding box, if it has them.
+     */
+    static double[] boxesOf(final JsonNode tweet) {
+        final double[] entries = new double[8];
+        int n = 0;
+
+        final JsonNode point = tweet.path("coordinates").path("coordinates");
+        if (point.size() >= 2 && point.get(0).isNumber() && point.get(1).isNumber()) {
+            entries[0] = entries[2] = point.get(0).asDouble();
+            entries[1] = entries[3] = point.get(1).asDouble();
+            n = 4;
+        }
+
+        final double[] box = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        if (extend(box, tweet.path("place").path("bounding_box").path("coordinates"))) {
+            System.arraycopy(box, 0, entries, n, 4);
+            n += 4;
+        }
+        return n == entries.length ? entries : Arrays.copyOf(entries, n);
+    }
+
+    // GeoJSON nests positions in arrays of rings (of polygons), so look for them at any depth
+    private static boolean extend(final double[] box, final JsonNode coordinates) {
+        if (! coordinates.isArray()) {
+            return false;
+        }
+        if (coordinates.size() >= 2 && coordinates.get(0).isNumber() && coordinates.get(1).isNumber()) {
+            final double lon = coordinates.get(0).asDouble();
+            final double lat = coordinates.get(1).asDouble();
+            box[0] = Math.min(box[0], lon);
+            box[1] = Math.min(box[1], lat);
+            box[2] = Math.max(box[2], lon);
+            box[3] = Math.max(box[3], lat);
+            return true;
+        }
+        boolean found = false;
+        for (final JsonNode child : coordinates) {
+            found |= extend(box, child);
+        }
+        return found;
+    }
+
+    private void addPending(final int tweet, final double[] entries, final int offset) {
+        if (pendingCount == pendingTweets.length) {
+            pendingTweets = Arrays.copyOf(pendingTweets, pendingCount * 2);
+            pendingBoxes = Arrays.copyOf(pendingBoxes, 4 * pendingCount * 2);
+        }
+        System.arraycopy(entries, offset, pendingBoxes, 4 * pendingCount, 4);
+        pendingTweets[pendingCount++] = tweet;
+    }
+
+    private int countStaleLeaves() {
+        if (staleCount == 0) {
+            return 0;
+        }
+        int count = 0;
+        for (int leaf = 0; leaf < leafCount; leaf++) {
+            if (stale.get(indices[leaf])) count++;
+        }
+        return count;
+    }
+
+    // BUILDING
+
+    private void build(final double[] entries, final int[] tweets) {
+        final int n = tweets.length;
+        leafCount = n;
+        if (n == 0) {
+            boxes = new double[0];
+            indices = NOTHING;
+            levelEnds = NOTHING;
+            return;
+        }
+
+        // how many nodes on each level
+        int[] ends = new int[8];
+        int levels = 0;
+        int nodes = n;
+        int total = n;
+        ends[levels++] = total;
+        while (nodes > 1) {
+            nodes = (nodes + NODE_SIZE - 1) / NODE_SIZE;
+            total += nodes;
+            if (levels == ends.length) ends = Arrays.copyOf(ends, levels * 2);
+            ends[levels++] = total;
+        }
+        levelEnds = Arrays.copyOf(ends, levels);
+        boxes = new double[4 * total];
+        indices = new int[total];
+
+        // sort the leaves along a Hilbert curve through the whole extent
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, entries[4 * i]);
+            minY = Math.min(minY, entries[4 * i + 1]);
+            maxX = Math.max(maxX, entries[4 * i + 2]);
+            maxY = Math.max(maxY, entries[4 * i + 3]);
+        }
+        final double scaleX = maxX > minX ? 0xFFFF / (maxX - minX) : 0;
+        final double scaleY = maxY > minY ? 0xFFFF / (maxY - minY) : 0;
+        final long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            final double x = (entries[4 * i] + entries[4 * i + 2]) / 2;
+            final double y = (entries[4 * i + 1] + entries[4 * i + 3]) / 2;
+            final long h = hilbert((int) ((x - minX) * scaleX), (int) ((y - minY) * scaleY));
+            keys[i] = h << 31 | i;
+        }
+        Arrays.sort(keys);
+        for (int leaf = 0; leaf < n; leaf++) {
+            final int i = (int) (keys[leaf] & Integer.MAX_VALUE);
+            System.arraycopy(entries, 4 * i, boxes, 4 * leaf, 4);
+            indices[leaf] = tweets[i];
+        }
+
+        // then each node covers the next sixteen on the level below
+        int child = 0;
+        int node = n;
+        for (int level = 1; level < levels; level++) {
+            final int childEnd = levelEnds[level - 1];
+            while (child < childEnd) {
+                final int last = Math.min(child + NODE_SIZE, childEnd);
+                indices[node] = child;
+                double nMinX = Double.MAX_VALUE, nMinY = Double.MAX_VALUE;
+                double nMaxX = -Double.MAX_VALUE, nMaxY = -Double.MAX_VALUE;
+                for (; child < last; child++) {
+                    nMinX = Math.min(nMinX, boxes[4 * child]);
+                    nMinY = Math.min(nMinY, boxes[4 * child + 1]);
+                    nMaxX = Math.max(nMaxX, boxes[4 * child + 2]);
+                    nMaxY = Math.max(nMaxY, boxes[4 * child + 3]);
+                }
+                boxes[4 * node] = nMinX;
+                boxes[4 * node + 1] = nMinY;
+                boxes[4 * node + 2] = nMaxX;
+                boxes[4 * node + 3] = nMaxY;
+                node++;
+            }
+        }
+    }
+
+    // the distance along a Hilbert curve through a 65536x65536 grid
+    private static long hilbert(int x, int y) {
+        long d = 0;
+        for (int s = 1 << 15; s > 0; s >>= 1) {
+            final int rx = (x & s) != 0 ? 1 : 0;
+            final int ry = (y & s) != 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = 0xFFFF - x;
+                    y = 0xFFFF - y;
+                }
+                final int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    // SEARCHING
+
+    private void search(
+        final double minX,
+        final double minY,
+        final double maxX,
+        final double maxY,
+        final Hits hits
+    ) {
+        // only children are tested before they're pushed, so the root (a leaf, if there's only one) is tested here
+        if (leafCount > 0 && overlaps(boxes, indices.length - 1, minX, minY, maxX, maxY)) {
+            // pairs of node and level, starting at the root
+            int[] stack = new int[2 * NODE_SIZE * levelEnds.length];
+            int top = 0;
+            stack[top++] = indices.length - 1;
+            stack[top++] = levelEnds.length - 1;
+            while (top > 0) {
+                final int level = stack[--top];
+                final int node = stack[--top];
+                if (level == 0) {
+                    if (staleCount == 0 || ! stale.get(indices[node])) {
+                        hits.add(indices[node]);
+                    }
+                    continue;
+                }
+                final int first = indices[node];
+                final int last = Math.min(first + NODE_SIZE, levelEnds[level - 1]);
+                for (int child = first; child < last; child++) {
+                    if (overlaps(boxes, child, minX, minY, maxX, maxY)) {
+                        if (top + 2 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+                        stack[top++] = child;
+                        stack[top++] = level - 1;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < pendingCount; i++) {
+            if (overlaps(pendingBoxes, i, minX, minY, maxX, maxY)) {
+                hits.add(pendingTweets[i]);
+            }
+        }
+    }
+
+    private static boolean overlaps(
+        final double[] boxes,
+        final int i,
+        final double minX,
+        final double minY,
+        final double maxX,
+        final double maxY
+    ) {
+        return boxes[4 * i] <= maxX && boxes[4 * i + 2] >= minX
+            && boxes[4 * i + 1] <= maxY && boxes[4 * i + 3] >= minY;
+    }
+
+    private static final class Hits {
+        private int[] tweets = new int[64];
+        private int count;
+
+        void add(final int tweet) {
+            if (count == tweets.length) {
+                tweets = Arrays.copyOf(tweets, count * 2);
+            }
+            tweets[count++] = tweet;
+        }
+
+        // a tweet with both coordinates and a place can be found twice
+        int[] toSortedArray() {
+            Arrays.sort(tweets, 0, count);
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                if (n == 0 || tweets[n - 1] != tweets[i]) {
+                    tweets[n++] = tweets[i];
+                }
+            }
+            return Arrays.copyOf(tweets, n);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.corpus;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * An index over a {@link TweetStore}, kept up to date by an
+ * {@link IndexedTweetStore} as tweets are added and edited.
+ */
+public interface TweetIndex {
+
+    /**
+     * @param index The new tweet's index in the store.
+     * @param tweet The new tweet.
+     */
+    void added(int index, JsonNode tweet);
+
+    /**
+     * @param index The edited tweet's index in the store.
+     * @param before The tweet as it was.
+     * @param after The tweet as it is now.
+     */
+    void updated(int index, JsonNode before, JsonNode after);
+}
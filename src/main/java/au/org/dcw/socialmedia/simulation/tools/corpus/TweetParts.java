@@ -0,0 +1,239 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.corpus;
+
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A tweet split into the fields a store keeps in columns and the rest of
+ * the tree. A field that can be rebuilt exactly from its column is left in
+ * the rest as a null "hole", which keeps its place in the field order, and
+ * a flag records that it should be filled back in. Fields that can't be
+ * rebuilt exactly (e.g. integer coordinates) stay in the rest as they are,
+ * though their columns are still filled in.
+ */
+final class TweetParts {
+
+    static final int ID_HOLE = 1;
+    static final int ID_STR_HOLE = 1 << 1;
+    static final int TEXT_HOLE = 1 << 2;
+    static final int FULL_TEXT_HOLE = 1 << 3;
+    static final int SCREEN_NAME_HOLE = 1 << 4;
+    static final int COORDINATES_HOLE = 1 << 5;
+    static final int GEO_HOLE = 1 << 6;
+    static final int PLACE_HOLE = 1 << 7;
+    static final int POINT_TYPE_FIRST = 1 << 8; // {"type":"Point","coordinates":[...]}, as Twitter writes them
+
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+    long id = -1;
+    long createdAt = Long.MIN_VALUE;
+    String screenName;
+    String text;
+    final List<String> hashtags = new ArrayList<>();
+    double longitude = Double.NaN;
+    double latitude = Double.NaN;
+    JsonNode place;
+    int flags;
+    ObjectNode rest;
+
+    // created_at values repeat a lot, so remember the last one parsed
+    private String lastCreatedAt;
+    private long lastCreatedAtMillis;
+
+    /**
+     * Splits a tweet, overwriting the result of the last split. The tweet
+     * itself is left untouched.
+     *
+     * @param tweet The tweet to split.
+     * @return This.
+     */
+    TweetParts split(final JsonNode tweet) {
+        id = -1;
+        createdAt = Long.MIN_VALUE;
+        screenName = null;
+        text = null;
+        hashtags.clear();
+        longitude = latitude = Double.NaN;
+        place = null;
+        flags = 0;
+        rest = shallowCopy(tweet); // holes are made below
+
+        final JsonNode idNode = tweet.path("id");
+        if (idNode.isIntegralNumber() && idNode.canConvertToLong()) {
+            id = idNode.asLong();
+            hole("id", ID_HOLE);
+            if (tweet.path("id_str").asText("").equals(Long.toString(id))) {
+                hole("id_str", ID_STR_HOLE);
+            }
+        }
+
+        createdAt = parseCreatedAt(tweet.path("created_at").asText(null));
+
+        final JsonNode textNode = tweet.path("text");
+        final JsonNode fullTextNode = tweet.path("full_text");
+        if (fullTextNode.isTextual()) {
+            text = fullTextNode.asText();
+            hole("full_text", FULL_TEXT_HOLE);
+            if (textNode.isTextual() && textNode.asText().equals(text)) {
+                hole("text", TEXT_HOLE);
+            }
+        } else if (textNode.isTextual()) {
+            text = textNode.asText();
+            hole("text", TEXT_HOLE);
+        }
+
+        final JsonNode user = tweet.path("user");
+        if (user.path("screen_name").isTextual()) {
+            screenName = user.get("screen_name").asText();
+            final ObjectNode restUser = shallowCopy(user);
+            restUser.putNull("screen_name");
+            rest.set("user", restUser);
+            flags |= SCREEN_NAME_HOLE;
+        }
+
+        final JsonNode hashtagEntities = tweet.path("entities").path("hashtags");
+        if (hashtagEntities.isArray()) {
+            for (final JsonNode hashtag : hashtagEntities) {
+                if (hashtag.path("text").isTextual()) {
+                    hashtags.add(hashtag.get("text").asText());
+                }
+            }
+        } else if (text != null) {
+            hashtags.addAll(Tweets.TWITTER_EXTRACTOR.extractHashtags(text));
+        }
+
+        final JsonNode coordinates = tweet.path("coordinates");
+        final JsonNode point = coordinates.path("coordinates");
+        if (point.isArray() && point.size() == 2 && point.get(0).isNumber() && point.get(1).isNumber()) {
+            longitude = point.get(0).asDouble();
+            latitude = point.get(1).asDouble();
+            final boolean typeFirst = coordinates.fieldNames().next().equals("type");
+            if (typeFirst) {
+                flags |= POINT_TYPE_FIRST;
+            }
+            if (samePoint(coordinates, makePoint(longitude, latitude, typeFirst))) {
+                hole("coordinates", COORDINATES_HOLE);
+            }
+            if (samePoint(tweet.path("geo"), makePoint(latitude, longitude, typeFirst))) {
+                hole("geo", GEO_HOLE);
+            }
+        }
+
+        if (tweet.path("place").isObject()) {
+            place = tweet.get("place");
+            hole("place", PLACE_HOLE);
+        }
+        return this;
+    }
+
+    /**
+     * Fills the holes left by {@link #split} back in.
+     *
+     * @param rest The rest of the tweet, which is filled in place.
+     * @param flags The holes to fill.
+     * @param id The tweet's ID.
+     * @param text The tweet's text.
+     * @param screenName The author's screen name.
+     * @param longitude The tweet's longitude.
+     * @param latitude The tweet's latitude.
+     * @param place The tweet's place, which is copied.
+     * @return The whole tweet.
+     */
+    static ObjectNode join(
+        final ObjectNode rest,
+        final int flags,
+        final long id,
+        final String text,
+        final String screenName,
+        final double longitude,
+        final double latitude,
+        final JsonNode place
+    ) {
+        if ((flags & ID_HOLE) != 0) rest.put("id", id);
+        if ((flags & ID_STR_HOLE) != 0) rest.put("id_str", Long.toString(id));
+        if ((flags & TEXT_HOLE) != 0) rest.put("text", text);
+        if ((flags & FULL_TEXT_HOLE) != 0) rest.put("full_text", text);
+        if ((flags & SCREEN_NAME_HOLE) != 0) ((ObjectNode) rest.get("user")).put("screen_name", screenName);
+        final boolean typeFirst = (flags & POINT_TYPE_FIRST) != 0;
+        if ((flags & COORDINATES_HOLE) != 0) rest.set("coordinates", makePoint(longitude, latitude, typeFirst));
+        if ((flags & GEO_HOLE) != 0) rest.set("geo", makePoint(latitude, longitude, typeFirst));
+        if ((flags & PLACE_HOLE) != 0) rest.set("place", place.deepCopy());
+        return rest;
+    }
+
+    private void hole(final String field, final int flag) {
+        rest.putNull(field);
+        flags |= flag;
+    }
+
+    private static ObjectNode shallowCopy(final JsonNode obj) {
+        final ObjectNode copy = NODES.objectNode();
+        final Iterator<Map.Entry<String, JsonNode>> fields = obj.fields();
+        while (fields.hasNext()) {
+            final Map.Entry<String, JsonNode> field = fields.next();
+            copy.set(field.getKey(), field.getValue());
+        }
+        return copy;
+    }
+
+    private long parseCreatedAt(final String createdAt) {
+        if (createdAt == null) {
+            return Long.MIN_VALUE;
+        }
+        if (! createdAt.equals(lastCreatedAt)) {
+            lastCreatedAtMillis = Tweets.parseCreatedAt(createdAt);
+            lastCreatedAt = createdAt;
+        }
+        return lastCreatedAtMillis;
+    }
+
+    private static ObjectNode makePoint(final double first, final double second, final boolean typeFirst) {
+        if (! typeFirst) {
+            return Tweets.makeLatLonJsonNode(first, second);
+        }
+        final ObjectNode point = NODES.objectNode();
+        point.put("type", "Point");
+        final ArrayNode coords = point.putArray("coordinates");
+        coords.add(first);
+        coords.add(second);
+        return point;
+    }
+
+    /** Equal, and with the fields in the same order, so it writes out the same. */
+    private static boolean samePoint(final JsonNode a, final ObjectNode b) {
+        if (! a.equals(b)) {
+            return false;
+        }
+        final Iterator<String> aNames = a.fieldNames();
+        final Iterator<String> bNames = b.fieldNames();
+        while (aNames.hasNext()) {
+            if (! aNames.next().equals(bNames.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.corpus;
+
+import au.org.dcw.socialmedia.simulation.tools.model.TweetModel;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A loaded corpus of tweets, numbered from 0 in the order they were added.
+ * The fields needed to browse and summarise a corpus can be read without
+ * rebuilding the whole tweet; {@link #open} rebuilds it for editing.
+ * <p>
+ * Stores are filled by one thread; once filled, they may be read by many.
+ */
+public interface TweetStore extends Closeable {
+
+    /**
+     * @return The number of tweets in the store.
+     */
+    int size();
+
+    /**
+     * @param tweet The tweet to add.
+     * @return The tweet's index in the store.
+     */
+    int add(JsonNode tweet);
+
+    /**
+     * Replaces a tweet, e.g. after it has been edited.
+     *
+     * @param index The index of the tweet to replace.
+     * @param tweet Its new content.
+     */
+    void update(int index, JsonNode tweet);
+
+    /**
+     * @param index The index of a tweet.
+     * @return A fresh copy of the whole tweet, for editing.
+     */
+    TweetModel open(int index);
+
+    /**
+     * @param index The index of a tweet.
+     * @return The tweet's {@code id}, or -1 if it has none.
+     */
+    long id(int index);
+
+    /**
+     * @param index The index of a tweet.
+     * @return The tweet's {@code created_at} in epoch milliseconds, or
+     * {@link Long#MIN_VALUE} if it has none or it can't be read.
+     */
+    long createdAt(int index);
+
+    /**
+     * @param index The index of a tweet.
+     * @return The author's screen name, or null if there is none.
+     */
+    String screenName(int index);
+
+    /**
+     * @param index The index of a tweet.
+     * @return The tweet's {@code full_text}, or {@code text} if it has no
+     * {@code full_text}, or null if it has neither.
+     */
+    String text(int index);
+
+    /**
+     * @param index The index of a tweet.
+     * @return The tweet's hashtags, without the '#'.
+     */
+    List<String> hashtags(int index);
+
+    /**
+     * @param index The index of a tweet.
+     * @return True if the tweet has point {@code coordinates}.
+     */
+    boolean hasCoordinates(int index);
+
+    /**
+     * @param index The index of a tweet.
+     * @return The tweet's longitude, or NaN if it has no coordinates.
+     */
+    double longitude(int index);
+
+    /**
+     * @param index The index of a tweet.
+     * @return The tweet's latitude, or NaN if it has no coordinates.
+     */
+    double latitude(int index);
+
+    /**
+     * @param index The index of a tweet.
+     * @return The tweet's {@code place}, which must not be modified, or null
+     * if it has none.
+     */
+    JsonNode place(int index);
+
+    /**
+     * @return Roughly how many bytes the store occupies.
+     */
+    long sizeInBytes();
+
+    /**
+     * Releases the store's storage; it can't be used afterwards.
+     */
+    @Override
+    void close() throws IOException;
+}
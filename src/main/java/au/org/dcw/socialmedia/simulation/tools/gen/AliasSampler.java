@@ -0,0 +1,148 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.gen;
+
+import java.util.SplittableRandom;
+
+/**
+ * Draws indices in {@code [0, n)} with fixed, arbitrary weights in constant
+ * time, using Walker's alias method (as set up by Vose): each of {@code n}
+ * equally likely columns holds its own index, up to some threshold, and
+ * one other index above it, so a draw is one uniform column and one coin
+ * toss, both taken from a single random {@code long}.
+ * <p>
+ * Setting up takes linear time, and the tables are two primitive arrays,
+ * so even millions of keys cost a few bytes each. A sampler is immutable
+ * and may be shared by any number of threads, each with its own stream of
+ * randomness.
+ */
+public final class AliasSampler {
+
+    private final int[] alias;
+    private final int[] thresholds; // unsigned, out of 2^32
+
+    /**
+     * @param weights The relative weight of each index, none negative, at least one positive.
+     */
+    public AliasSampler(final double[] weights) {
+        final int n = weights.length;
+        if (n == 0) {
+            throw new IllegalArgumentException("Need at least one weight");
+        }
+        double total = 0;
+        for (final double w : weights) {
+            if (! (w >= 0) || Double.isInfinite(w)) {
+                throw new IllegalArgumentException("Weights must be finite and non-negative, not " + w);
+            }
+            total += w;
+        }
+        if (! (total > 0)) {
+            throw new IllegalArgumentException("At least one weight must be positive");
+        }
+
+        alias = new int[n];
+        thresholds = new int[n];
+        final double[] scaled = new double[n];
+        // indices whose columns are under- and over-full, as stacks
+        final int[] small = new int[n];
+        final int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            final int s = small[--smallCount];
+            final int l = large[--largeCount];
+            thresholds[s] = toThreshold(scaled[s]);
+            alias[s] = l;
+            scaled[l] -= 1 - scaled[s];
+            if (scaled[l] < 1) {
+                small[smallCount++] = l;
+            } else {
+                large[largeCount++] = l;
+            }
+        }
+        // what's left is full, give or take rounding
+        while (largeCount > 0) {
+            final int l = large[--largeCount];
+            thresholds[l] = -1;
+            alias[l] = l;
+        }
+        while (smallCount > 0) {
+            final int s = small[--smallCount];
+            thresholds[s] = -1;
+            alias[s] = s;
+        }
+    }
+
+    /**
+     * @param n The number of indices.
+     * @param exponent How skewed the weights are: index {@code k} has weight
+     *                 {@code 1/(k+1)^exponent}, so 0 is uniform and 1 is
+     *                 classic Zipf, where the top key is drawn twice as
+     *                 often as the second.
+     * @return A sampler drawing the low indices most often.
+     */
+    public static AliasSampler zipf(final int n, final double exponent) {
+        if (! (exponent >= 0)) {
+            throw new IllegalArgumentException("exponent[" + exponent + "] can't be negative");
+        }
+        final double[] weights = new double[n];
+        for (int k = 0; k < n; k++) {
+            weights[k] = Math.pow(k + 1, -exponent);
+        }
+        return new AliasSampler(weights);
+    }
+
+    /**
+     * @param counts How often each index was seen.
+     * @return A sampler drawing each index as often as it was seen.
+     */
+    public static AliasSampler ofCounts(final long[] counts) {
+        final double[] weights = new double[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            weights[i] = counts[i];
+        }
+        return new AliasSampler(weights);
+    }
+
+    /**
+     * @return The number of indices drawn from.
+     */
+    public int size() {
+        return alias.length;
+    }
+
+    /**
+     * @param random The source of randomness.
+     * @return An index, drawn according to the weights.
+     */
+    public int sample(final SplittableRandom random) {
+        final long bits = random.nextLong();
+        final int column = (int) (((bits >>> 32) * alias.length) >>> 32);
+        return Integer.compareUnsigned((int) bits, thresholds[column]) < 0 ? column : alias[column];
+    }
+
+    private static int toThreshold(final double probability) {
+        return (int) Math.min(0xFFFF_FFFFL, (long) (probability * 0x1_0000_0000L));
+    }
+}
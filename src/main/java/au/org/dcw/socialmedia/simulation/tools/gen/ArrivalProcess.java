@@ -0,0 +1,45 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.gen;
+
+import java.util.SplittableRandom;
+
+/**
+ * Decides when each tweet in a sequence is posted.
+ * <p>
+ * Times are kept as fractional milliseconds, so that processes with many
+ * arrivals per millisecond keep their rate. Implementations must not keep
+ * state of their own between calls, so a generator's clock can be
+ * checkpointed as a single number.
+ */
+@FunctionalInterface
+public interface ArrivalProcess {
+
+    /**
+     * @param previousMillis The time of the previous arrival, in epoch milliseconds.
+     * @param random A stream of randomness for this arrival alone.
+     * @return The time of the next arrival, no earlier than {@code previousMillis}.
+     */
+    double next(double previousMillis, SplittableRandom random);
+
+    /**
+     * @param intervalMillis The time between consecutive arrivals.
+     * @return Arrivals at a fixed interval.
+     */
+    static ArrivalProcess fixed(final double intervalMillis) {
+        return (previous, random) -> previous + intervalMillis;
+    }
+}
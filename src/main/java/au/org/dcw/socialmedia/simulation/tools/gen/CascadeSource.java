@@ -0,0 +1,292 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.gen;
+
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Turns some of another source's tweets into replies, retweets and quotes of
+ * earlier ones, so the stream holds conversations rather than only
+ * standalone tweets.
+ * <p>
+ * Which earlier tweet is engaged with follows preferential attachment: every
+ * tweet is a candidate once when posted and once more for every reply,
+ * retweet and quote it gets, so the more attention a tweet has had, the more
+ * it draws, giving deep reply trees and bursts of retweets around a few
+ * tweets among many ignored ones. Only the most recent candidates (the
+ * attention window) are kept, so conversations die down as the stream moves
+ * on, and memory stays bounded however long it runs.
+ * <p>
+ * The wrapped source's tweets are stamped in order, and only ever engage with
+ * those before them, so a reply's, retweet's or quote's ID and timestamp are
+ * always later than its target's. A retweet's {@code retweeted_status} and a
+ * quote's {@code quoted_status} are the very node of the tweet they target,
+ * which must not be changed afterwards, so a {@code TweetWriter} caching those
+ * subtrees writes each target's bytes once and replays them for every retweet
+ * and quote. Retweets are never candidates themselves, so, as in the API,
+ * engaging with one engages with the tweet retweeted, and, as the API only
+ * nests one level of quote, a quote of a quote quotes the tweet quoted.
+ * <p>
+ * The choices are drawn from a stream of {@link Randomness} per tweet, so
+ * the result is the same for the same seed and wrapped tweets. It isn't
+ * thread-safe.
+ */
+public class CascadeSource implements TweetSource {
+
+    public static final int DEFAULT_ATTENTION_WINDOW = 100_000;
+
+    private final TweetSource source;
+    private final Randomness randomness;
+    private final double replyShare;
+    private final double retweetShare;
+    private final double quoteShare;
+
+    private final ObjectNode[] candidates; // a ring, oldest overwritten first
+    private int candidateCount = 0;
+    private int nextCandidate = 0;
+    private long index = 0;
+
+    private long replies;
+    private long retweets;
+    private long quotes;
+
+    /**
+     * @param source The tweets to turn into conversations, stamped in order.
+     * @param randomness Where the choices come from.
+     * @param replyShare The proportion of tweets to make replies.
+     * @param retweetShare The proportion of tweets to make retweets.
+     * @param quoteShare The proportion of tweets to make quotes.
+     * @param attentionWindow The number of most recent candidates to choose
+     *                        targets among (each tweet, and each engagement).
+     */
+    public CascadeSource(
+        final TweetSource source,
+        final Randomness randomness,
+        final double replyShare,
+        final double retweetShare,
+        final double quoteShare,
+        final int attentionWindow
+    ) {
+        if (! (replyShare >= 0 && retweetShare >= 0 && quoteShare >= 0 && replyShare + retweetShare + quoteShare <= 1)) {
+            throw new IllegalArgumentException(
+                "shares[" + replyShare + "," + retweetShare + "," + quoteShare + "] must be non-negative and total at most 1"
+            );
+        }
+        if (attentionWindow < 1) {
+            throw new IllegalArgumentException("attentionWindow[" + attentionWindow + "] must be positive");
+        }
+        this.source = source;
+        this.randomness = randomness;
+        this.replyShare = replyShare;
+        this.retweetShare = retweetShare;
+        this.quoteShare = quoteShare;
+        this.candidates = new ObjectNode[attentionWindow];
+    }
+
+    @Override
+    public ObjectNode next() throws InterruptedException {
+        final ObjectNode tweet = source.next();
+        if (tweet == null) {
+            return null;
+        }
+        final SplittableRandom random = randomness.stream("cascade", index++);
+        final double action = random.nextDouble();
+        if (candidateCount == 0 || action >= replyShare + retweetShare + quoteShare) {
+            remember(tweet);
+            return tweet;
+        }
+
+        ObjectNode target = candidates[random.nextInt(candidateCount)];
+        if (action < replyShare) {
+            replyTo(tweet, target);
+            remember(tweet);
+            replies++;
+        } else if (action < replyShare + retweetShare) {
+            retweet(tweet, target);
+            retweets++;
+        } else {
+            if (target.path("quoted_status").isObject()) {
+                target = (ObjectNode) target.get("quoted_status");
+            }
+            quote(tweet, target);
+            remember(tweet);
+            quotes++;
+        }
+        remember(target);
+        return tweet;
+    }
+
+    /**
+     * @return The number of tweets made replies so far.
+     */
+    public long replies() {
+        return replies;
+    }
+
+    /**
+     * @return The number of tweets made retweets so far.
+     */
+    public long retweets() {
+        return retweets;
+    }
+
+    /**
+     * @return The number of tweets made quotes so far.
+     */
+    public long quotes() {
+        return quotes;
+    }
+
+    private void remember(final ObjectNode tweet) {
+        candidates[nextCandidate] = tweet;
+        nextCandidate = (nextCandidate + 1) % candidates.length;
+        candidateCount = Math.max(candidateCount, nextCandidate == 0 ? candidates.length : nextCandidate);
+    }
+
+    private static void replyTo(final ObjectNode tweet, final ObjectNode target) {
+        final String screenName = target.path("user").path("screen_name").asText();
+        prefix(tweet, "@" + screenName + " ", 0, target, tweet.path("full_text").asText(), (ObjectNode) tweet.get("entities"));
+        tweet.put("in_reply_to_status_id", target.path("id").asLong());
+        tweet.put("in_reply_to_status_id_str", target.path("id_str").asText());
+        final JsonNode userId = target.path("user").path("id");
+        if (userId.isNumber()) {
+            tweet.put("in_reply_to_user_id", userId.asLong());
+            tweet.put("in_reply_to_user_id_str", userId.asText());
+        } else {
+            tweet.putNull("in_reply_to_user_id");
+            tweet.putNull("in_reply_to_user_id_str");
+        }
+        tweet.put("in_reply_to_screen_name", screenName);
+    }
+
+    private static void retweet(final ObjectNode tweet, final ObjectNode target) {
+        prefix(
+            tweet,
+            "RT @" + target.path("user").path("screen_name").asText() + ": ",
+            3,
+            target,
+            target.path("full_text").asText(target.path("text").asText()),
+            target.path("entities").isObject() ? ((ObjectNode) target.get("entities")).deepCopy() : null
+        );
+        tweet.putNull("geo");
+        tweet.putNull("coordinates");
+        tweet.remove("place");
+        tweet.set("retweeted_status", target);
+    }
+
+    private static void quote(final ObjectNode tweet, final ObjectNode target) {
+        final String text = tweet.path("full_text").asText();
+        final String link = "https://twitter.com/" + target.path("user").path("screen_name").asText() +
+            "/status/" + target.path("id_str").asText();
+        final ObjectNode entities = (ObjectNode) tweet.get("entities");
+        final ObjectNode linkEntities = extract(link);
+        shift(linkEntities, text.codePointCount(0, text.length()) + 1);
+        append(entities, linkEntities);
+        setText(tweet, text + " " + link, entities);
+        tweet.put("is_quote_status", true);
+        tweet.put("quoted_status_id", target.path("id").asLong());
+        tweet.put("quoted_status_id_str", target.path("id_str").asText());
+        tweet.set("quoted_status", target);
+    }
+
+    // re-extracting entities from the whole text would cost more than everything else, so only the prefix's are
+    // made, and the prefix's mention is made from the target's author rather than extracted, as extraction stops
+    // at characters a generated screen name may have but a real one can't, like '.'
+    private static void prefix(
+        final ObjectNode tweet,
+        final String prefix,
+        final int mentionAt,
+        final ObjectNode target,
+        final String text,
+        final ObjectNode textEntities
+    ) {
+        final ObjectNode entities = textEntities != null ? textEntities : extract(text);
+        final ObjectNode prefixEntities = extract("");
+        ((ArrayNode) prefixEntities.get("user_mentions")).add(mentionOf(target.path("user"), mentionAt));
+        shift(entities, prefix.codePointCount(0, prefix.length()));
+        append(prefixEntities, entities);
+        setText(tweet, prefix + text, prefixEntities);
+    }
+
+    // a user_mentions entity for the user, as Twitter would have filled it in, starting at the '@'
+    private static ObjectNode mentionOf(final JsonNode user, final int at) {
+        final String screenName = user.path("screen_name").asText();
+        final ObjectNode mention = Tweets.JSON.createObjectNode();
+        final JsonNode id = user.path("id");
+        if (id.isNumber()) {
+            mention.put("id", id.asLong());
+            mention.put("id_str", user.path("id_str").asText(id.asText()));
+        } else {
+            mention.putNull("id");
+            mention.putNull("id_str");
+        }
+        mention.putArray("indices").add(at).add(at + 1 + screenName.codePointCount(0, screenName.length()));
+        if (user.path("name").isTextual()) {
+            mention.put("name", user.get("name").asText());
+        } else {
+            mention.putNull("name");
+        }
+        mention.put("screen_name", screenName);
+        return mention;
+    }
+
+    private static void setText(final ObjectNode tweet, final String text, final ObjectNode entities) {
+        tweet.put("text", text);
+        tweet.put("full_text", text);
+        tweet.put("truncated", text.length() > Tweets.TWITTER_OLD_MAX_LENGTH);
+        tweet.set("entities", entities);
+    }
+
+    private static ObjectNode extract(final String text) {
+        return (ObjectNode) Tweets.extractEntitiesAsJsonNodeTree(text, null);
+    }
+
+    // moves every entity's indices along by the same amount
+    private static void shift(final ObjectNode entities, final int by) {
+        for (final JsonNode kind : entities) {
+            for (final JsonNode entity : kind) {
+                final JsonNode indices = entity.path("indices");
+                if (indices.isArray()) {
+                    for (int i = 0; i < indices.size(); i++) {
+                        ((ArrayNode) indices).set(i, IntNode.valueOf(indices.get(i).asInt() + by));
+                    }
+                }
+            }
+        }
+    }
+
+    // adds the later entities to the end of each kind of the earlier ones
+    private static void append(final ObjectNode earlier, final ObjectNode later) {
+        final Iterator<Map.Entry<String, JsonNode>> kinds = later.fields();
+        while (kinds.hasNext()) {
+            final Map.Entry<String, JsonNode> kind = kinds.next();
+            final JsonNode existing = earlier.get(kind.getKey());
+            if (existing != null && existing.isArray() && kind.getValue().isArray()) {
+                ((ArrayNode) existing).addAll((ArrayNode) kind.getValue());
+            } else if (existing == null) {
+                earlier.set(kind.getKey(), kind.getValue());
+            }
+        }
+    }
+}
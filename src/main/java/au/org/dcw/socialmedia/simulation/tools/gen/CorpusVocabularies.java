@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.gen;
+
+import au.org.dcw.socialmedia.simulation.tools.io.TweetReader;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The authors, hashtags, mentions and URLs of a corpus, and how often each
+ * was used, to generate tweets with the same hot keys.
+ */
+public final class CorpusVocabularies {
+
+    private final Vocabulary authors;
+    private final Vocabulary hashtags;
+    private final Vocabulary mentions;
+    private final Vocabulary urls;
+    private final long tweetCount;
+    private final long hashtagCount;
+    private final long mentionCount;
+    private final long urlCount;
+
+    private CorpusVocabularies(
+        final Map<String, Long> authors,
+        final Map<String, Long> hashtags,
+        final Map<String, Long> mentions,
+        final Map<String, Long> urls,
+        final long tweetCount
+    ) {
+        this.authors = authors.isEmpty() ? null : Vocabulary.ofCounts(authors);
+        this.hashtags = hashtags.isEmpty() ? null : Vocabulary.ofCounts(hashtags);
+        this.mentions = mentions.isEmpty() ? null : Vocabulary.ofCounts(mentions);
+        this.urls = urls.isEmpty() ? null : Vocabulary.ofCounts(urls);
+        this.tweetCount = tweetCount;
+        this.hashtagCount = total(hashtags);
+        this.mentionCount = total(mentions);
+        this.urlCount = total(urls);
+    }
+
+    /**
+     * Counts the keys used by every tweet in a corpus (but not by the
+     * tweets they retweet or quote).
+     *
+     * @param reader The corpus.
+     * @return What the corpus used.
+     * @throws IOException If the corpus can't be read.
+     */
+    public static CorpusVocabularies learn(final TweetReader reader) throws IOException {
+        final Map<String, Long> authors = new HashMap<>();
+        final Map<String, Long> hashtags = new HashMap<>();
+        final Map<String, Long> mentions = new HashMap<>();
+        final Map<String, Long> urls = new HashMap<>();
+        long tweets = 0;
+        JsonNode tweet;
+        while ((tweet = reader.next()) != null) {
+            tweets++;
+            count(authors, tweet.path("user").path("screen_name"));
+            final JsonNode entities = tweet.path("entities");
+            for (final JsonNode hashtag : entities.path("hashtags")) {
+                count(hashtags, hashtag.path("text"));
+            }
+            for (final JsonNode mention : entities.path("user_mentions")) {
+                count(mentions, mention.path("screen_name"));
+            }
+            for (final JsonNode url : entities.path("urls")) {
+                count(urls, url.path("expanded_url").isTextual() ? url.get("expanded_url") : url.path("url"));
+            }
+        }
+        return new CorpusVocabularies(authors, hashtags, mentions, urls, tweets);
+    }
+
+    private static void count(final Map<String, Long> counts, final JsonNode key) {
+        if (key.isTextual() && ! key.asText().isEmpty()) {
+            counts.merge(key.asText(), 1L, Long::sum);
+        }
+    }
+
+    private static long total(final Map<String, Long> counts) {
+        long total = 0;
+        for (final long count : counts.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @return The authors, or null if no tweet had one.
+     */
+    public Vocabulary authors() {
+        return authors;
+    }
+
+    /**
+     * @return The hashtags, or null if no tweet had any.
+     */
+    public Vocabulary hashtags() {
+        return hashtags;
+    }
+
+    /**
+     * @return The screen names mentioned, or null if no tweet mentioned anyone.
+     */
+    public Vocabulary mentions() {
+        return mentions;
+    }
+
+    /**
+     * @return The URLs linked to, or null if no tweet had any.
+     */
+    public Vocabulary urls() {
+        return urls;
+    }
+
+    /**
+     * @return The average number of hashtags in a tweet.
+     */
+    public double hashtagsPerTweet() {
+        return tweetCount > 0 ? (double) hashtagCount / tweetCount : 0;
+    }
+
+    /**
+     * @return The average number of mentions in a tweet.
+     */
+    public double mentionsPerTweet() {
+        return tweetCount > 0 ? (double) mentionCount / tweetCount : 0;
+    }
+
+    /**
+     * @return The average number of URLs in a tweet.
+     */
+    public double urlsPerTweet() {
+        return tweetCount > 0 ? (double) urlCount / tweetCount : 0;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.gen;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Hands out unique, time-ordered tweet IDs of {@code Tweets.ID_LENGTH} digits:
+ * the tweet's timestamp in milliseconds followed by a three digit sequence
+ * number, so that sorting by ID also sorts by {@code created_at}.
+ */
+public class IdGenerator {
+
+    private static final int SEQUENCE_LIMIT = 1000;
+
+    private long lastMillis = Long.MIN_VALUE;
+    private int sequence = 0;
+
+    /**
+     * @param millis The timestamp of the tweet needing an ID.
+     * @return A new ID, greater than any previously issued.
+     */
+    public synchronized long next(final long millis) {
+        if (millis > lastMillis) {
+            lastMillis = millis;
+            sequence = 0;
+        } else if (++sequence == SEQUENCE_LIMIT) {
+            lastMillis++; // borrow from the next millisecond rather than repeat
+            sequence = 0;
+        }
+        return lastMillis * SEQUENCE_LIMIT + sequence;
+    }
+
+    /**
+     * @return The generator's position, for checkpointing.
+     */
+    public synchronized ObjectNode saveState() {
+        final ObjectNode state = JsonNodeFactory.instance.objectNode();
+        state.put("last_millis", lastMillis);
+        state.put("sequence", sequence);
+        return state;
+    }
+
+    /**
+     * @param state A position previously returned by {@link #saveState()}.
+     */
+    public synchronized void restoreState(final JsonNode state) {
+        lastMillis = state.get("last_millis").asLong();
+        sequence = state.get("sequence").asInt();
+    }
+
+    /**
+     * @param id An ID issued by an {@link IdGenerator}.
+     * @return The timestamp embedded in the ID, in milliseconds.
+     */
+    public static long millisOf(final long id) {
+        return id / SEQUENCE_LIMIT;
+    }
+}
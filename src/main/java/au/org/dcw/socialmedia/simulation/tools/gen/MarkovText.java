@@ -0,0 +1,364 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.gen;
+
+import au.org.dcw.socialmedia.simulation.tools.io.TweetReader;
+import au.org.dcw.socialmedia.simulation.tools.model.TweetLinter;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Makes up tweet text that reads like a corpus, by learning which token
+ * follows each run of {@code order} tokens and then walking those
+ * transitions at random, in proportion to how often each was seen.
+ * Tokens are whatever whitespace separates, so hashtags, mentions and URLs
+ * come through whole, for the entity extractor to find again.
+ * <p>
+ * Tokens are interned as {@code int}s, and each context (the last
+ * {@code order} tokens) is packed into a {@code long} and looked up in an
+ * open-addressed table, giving the range of its transitions in two flat
+ * arrays: the next tokens, and their running counts, which are searched by
+ * bisection. There is no object per context or transition, so large
+ * corpora fit in a modest heap, and each token costs one probe and one
+ * search.
+ * <p>
+ * Built with a {@link Builder}, after which it is immutable and may be used
+ * by any number of threads, each with its own stream of randomness.
+ */
+public final class MarkovText {
+
+    public static final int MAX_ORDER = 3;
+
+    private static final int BOUNDARY = 0; // the start and end of every text
+    private static final int MAX_ATTEMPTS = 10;
+
+    private final int bitsPerToken;
+    private final long contextMask;
+    private final String[] tokens;
+    private final int[] weights;    // by token, its length as Twitter counts it
+    private final LongIntMap states;
+    private final int[] offsets;    // by state, into nextTokens and cumulative
+    private final int[] nextTokens;
+    private final int[] cumulative; // counts, running within each state
+
+    private MarkovText(final Builder builder) {
+        this.bitsPerToken = builder.bitsPerToken;
+        this.contextMask = builder.contextMask;
+        this.tokens = builder.tokens.toArray(new String[0]);
+        this.weights = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            weights[i] = TweetLinter.weightedLength(tokens[i]);
+        }
+        this.states = builder.states;
+
+        final int stateCount = states.size();
+        final int transitionCount = builder.transitions.size();
+        final long[] keys = builder.transitions.keys;
+        final int[] slots = builder.transitions.values;
+        offsets = new int[stateCount + 1];
+        for (int i = 0; i < keys.length; i++) {
+            if (slots[i] >= 0) {
+                offsets[(int) (keys[i] >>> 32) + 1]++;
+            }
+        }
+        for (int s = 0; s < stateCount; s++) {
+            offsets[s + 1] += offsets[s];
+        }
+        // each state's transitions, most frequent first, as (MAX - count, token) to sort
+        final long[] packed = new long[transitionCount];
+        final int[] fill = Arrays.copyOf(offsets, stateCount);
+        for (int i = 0; i < keys.length; i++) {
+            if (slots[i] >= 0) {
+                final int count = builder.counts[slots[i]];
+                packed[fill[(int) (keys[i] >>> 32)]++] = (long) (Integer.MAX_VALUE - count) << 32 | (int) keys[i];
+            }
+        }
+        nextTokens = new int[transitionCount];
+        cumulative = new int[transitionCount];
+        for (int s = 0; s < stateCount; s++) {
+            Arrays.sort(packed, offsets[s], offsets[s + 1]);
+            int running = 0;
+            for (int i = offsets[s]; i < offsets[s + 1]; i++) {
+                nextTokens[i] = (int) packed[i];
+                running += Integer.MAX_VALUE - (int) (packed[i] >>> 32);
+                cumulative[i] = running;
+            }
+        }
+    }
+
+    /**
+     * Learns from every tweet in a corpus, taking retweets' text from the
+     * tweet retweeted, which isn't cut short or prefixed with "RT".
+     *
+     * @param reader The corpus.
+     * @param order The number of tokens of context, from 1 to {@link #MAX_ORDER}.
+     * @return The text model.
+     * @throws IOException If the corpus can't be read.
+     */
+    public static MarkovText learn(final TweetReader reader, final int order) throws IOException {
+        final Builder builder = new Builder(order);
+        JsonNode tweet;
+        while ((tweet = reader.next()) != null) {
+            if (tweet.path("retweeted_status").isObject()) {
+                tweet = tweet.get("retweeted_status");
+            }
+            final JsonNode text = tweet.path("extended_tweet").path("full_text").isTextual()
+                ? tweet.get("extended_tweet").get("full_text")
+                : tweet.path("full_text").isTextual() ? tweet.get("full_text") : tweet.path("text");
+            if (text.isTextual()) {
+                builder.add(text.asText());
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param random The source of randomness.
+     * @param maxLength The longest text to make, by Twitter's weighted count
+     *                  (see {@link TweetLinter#weightedLength(String)}). Texts
+     *                  stop short, between tokens, rather than go over.
+     * @return A text, or an empty one if nothing was learned that fits.
+     */
+    public String generate(final SplittableRandom random, final int maxLength) {
+        final StringBuilder sb = new StringBuilder();
+        int length = 0;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS && sb.length() == 0; attempt++) {
+            long context = 0; // all boundaries
+            int state;
+            while ((state = states.get(context)) >= 0) {
+                final int token = nextTokens[pick(state, random)];
+                if (token == BOUNDARY) {
+                    break;
+                }
+                final int space = sb.length() > 0 ? 1 : 0;
+                if (length + space + weights[token] > maxLength) {
+                    break;
+                }
+                if (space > 0) {
+                    sb.append(' ');
+                }
+                sb.append(tokens[token]);
+                length += space + weights[token];
+                context = (context << bitsPerToken | token) & contextMask;
+            }
+        }
+        return sb.toString();
+    }
+
+    // the first transition whose running count exceeds a uniform draw
+    private int pick(final int state, final SplittableRandom random) {
+        int lo = offsets[state];
+        int hi = offsets[state + 1] - 1;
+        final int target = random.nextInt(cumulative[hi]);
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (cumulative[mid] > target) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return The number of distinct tokens learned.
+     */
+    public int tokenCount() {
+        return tokens.length - 1;
+    }
+
+    /**
+     * @return The number of distinct contexts learned.
+     */
+    public int contextCount() {
+        return states.size();
+    }
+
+    /**
+     * @return The number of distinct transitions learned.
+     */
+    public int transitionCount() {
+        return nextTokens.length;
+    }
+
+    /**
+     * Learns the transitions between tokens, a text at a time.
+     */
+    public static final class Builder {
+
+        private final int bitsPerToken;
+        private final long contextMask;
+        private final int maxTokens;
+
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> tokens = new ArrayList<>();
+        private final LongIntMap states = new LongIntMap();      // context -> state
+        private final LongIntMap transitions = new LongIntMap(); // state << 32 | token -> index into counts
+        private int[] counts = new int[1024];
+
+        /**
+         * @param order The number of tokens of context, from 1 to {@link #MAX_ORDER}:
+         *              more reads better, but copies the corpus more closely.
+         */
+        public Builder(final int order) {
+            if (order < 1 || order > MAX_ORDER) {
+                throw new IllegalArgumentException("order[" + order + "] must be in [1," + MAX_ORDER + "]");
+            }
+            this.bitsPerToken = 63 / order;
+            this.contextMask = order * bitsPerToken == 63 ? Long.MAX_VALUE : (1L << order * bitsPerToken) - 1;
+            this.maxTokens = (int) Math.min(Integer.MAX_VALUE, 1L << bitsPerToken);
+            tokens.add(""); // BOUNDARY
+        }
+
+        /**
+         * @param text A text to learn from.
+         * @return This builder.
+         * @throws IllegalStateException If there are too many distinct tokens for the order.
+         */
+        public Builder add(final String text) {
+            long context = 0;
+            for (final String word : text.trim().split("\\s+")) {
+                if (word.isEmpty()) {
+                    continue;
+                }
+                final int token = idOf(word);
+                count(context, token);
+                context = (context << bitsPerToken | token) & contextMask;
+            }
+            if (context != 0) {
+                count(context, BOUNDARY);
+            }
+            return this;
+        }
+
+        /**
+         * @return The model, after which the builder mustn't be used.
+         */
+        public MarkovText build() {
+            return new MarkovText(this);
+        }
+
+        private int idOf(final String word) {
+            final Integer id = ids.get(word);
+            if (id != null) {
+                return id;
+            }
+            if (tokens.size() == maxTokens) {
+                throw new IllegalStateException(
+                    "Too many distinct tokens (" + maxTokens + ") for the order; try a lower one"
+                );
+            }
+            ids.put(word, tokens.size());
+            tokens.add(word);
+            return tokens.size() - 1;
+        }
+
+        private void count(final long context, final int token) {
+            int state = states.get(context);
+            if (state < 0) {
+                state = states.size();
+                states.put(context, state);
+            }
+            final long key = (long) state << 32 | token;
+            final int slot = transitions.get(key);
+            if (slot >= 0) {
+                if (counts[slot] < Integer.MAX_VALUE) {
+                    counts[slot]++;
+                }
+            } else {
+                final int next = transitions.size();
+                if (next == counts.length) {
+                    counts = Arrays.copyOf(counts, counts.length * 2);
+                }
+                counts[next] = 1;
+                transitions.put(key, next);
+            }
+        }
+    }
+
+    /**
+     * A map from {@code long} to non-negative {@code int}, open-addressed
+     * with linear probing, without boxing.
+     */
+    static final class LongIntMap {
+        private long[] keys = new long[16];
+        private int[] values = newValues(16);
+        private int size;
+
+        int get(final long key) {
+            final int mask = keys.length - 1;
+            for (int i = hash(key) & mask; values[i] >= 0; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return -1;
+        }
+
+        // the key mustn't be present already
+        void put(final long key, final int value) {
+            if (2 * (size + 1) > keys.length) {
+                grow();
+            }
+            final int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (values[i] >= 0) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        private void grow() {
+            final long[] oldKeys = keys;
+            final int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = newValues(oldKeys.length * 2);
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] >= 0) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int[] newValues(final int length) {
+            final int[] values = new int[length];
+            Arrays.fill(values, -1);
+            return values;
+        }
+
+        // David Stafford's "variant 13" of the MurmurHash3 finaliser, as in SplittableRandom
+        private static int hash(long z) {
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            return (int) (z ^ (z >>> 31));
+        }
+    }
+}
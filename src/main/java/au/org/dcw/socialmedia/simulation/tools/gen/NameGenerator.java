@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.gen;
+
+import java.util.SplittableRandom;
+import java.util.function.Predicate;
+
+/**
+ * Makes up screen names by gluing together pairs of words, falling back to a
+ * numeric suffix once the pairs start colliding with names already in use.
+ */
+public final class NameGenerator {
+
+    public static final String[] NAME_PARTS = {
+        "salted", "tables", "benign", "sawfly", "sweaty", "noggin",
+        "willow", "powder", "untorn", "rewire", "placid", "joists"
+    };
+
+    // after this many collisions, stop relying on the small pool of pairs
+    private static final int MAX_PLAIN_ATTEMPTS = 16;
+
+    private NameGenerator() {
+    }
+
+    /**
+     * @param random The source of randomness.
+     * @param alreadyTaken Tells us whether a candidate name is already in use.
+     * @return A name for which {@code alreadyTaken} is false.
+     */
+    public static String generate(final SplittableRandom random, final Predicate<String> alreadyTaken) {
+        String newName;
+        int attempts = 0;
+        do {
+            final int index1 = random.nextInt(NAME_PARTS.length);
+            final int index2 = random.nextInt(NAME_PARTS.length);
+            newName = NAME_PARTS[index1] + "." + NAME_PARTS[index2];
+            if (attempts++ >= MAX_PLAIN_ATTEMPTS) {
+                newName += random.nextInt(attempts * 100);
+            }
+        } while (alreadyTaken.test(newName));
+        return newName;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.gen;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Drafts tweets on a pool of threads, in blocks of consecutive indices, while
+ * the caller stamps and takes them strictly in order. As every draft depends
+ * only on its index, the tweets are the same as those from
+ * {@link TweetGenerator#next()}, whatever the number of threads.
+ * <p>
+ * A few blocks are drafted ahead of the caller, and so are wasted if the
+ * caller stops early.
+ */
+public class ParallelTweetSource implements TweetSource, Closeable {
+
+    public static final int DEFAULT_BLOCK_SIZE = 256;
+
+    private final TweetGenerator generator;
+    private final ExecutorService pool;
+    private final int blockSize;
+    private final Deque<Future<ObjectNode[]>> pending = new ArrayDeque<>();
+
+    private long nextBlockStart;
+    private ObjectNode[] block = new ObjectNode[0];
+    private int blockPos = 0;
+
+    /**
+     * @param generator The generator to draft from, which must not otherwise
+     *                  be used until this source is closed.
+     * @param threads The number of drafting threads.
+     */
+    public ParallelTweetSource(final TweetGenerator generator, final int threads) {
+        this(generator, threads, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param generator The generator to draft from, which must not otherwise
+     *                  be used until this source is closed.
+     * @param threads The number of drafting threads.
+     * @param blockSize The number of consecutive tweets drafted by each task.
+     */
+    public ParallelTweetSource(final TweetGenerator generator, final int threads, final int blockSize) {
+        this.generator = generator;
+        this.blockSize = blockSize;
+        this.nextBlockStart = generator.position();
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            final Thread t = new Thread(r, "tweet-drafter");
+            t.setDaemon(true);
+            return t;
+        });
+        // keep every thread busy while the caller works through the oldest block
+        for (int i = 0; i < threads * 2; i++) {
+            submitBlock();
+        }
+    }
+
+    /**
+     * @return The next tweet, stamped.
+     * @throws InterruptedException If interrupted while waiting for a draft.
+     */
+    @Override
+    public ObjectNode next() throws InterruptedException {
+        if (blockPos == block.length) {
+            block = await(pending.removeFirst());
+            blockPos = 0;
+            submitBlock();
+        }
+        final ObjectNode draft = block[blockPos];
+        block[blockPos++] = null; // don't hold on to what's been handed out
+        return generator.stamp(draft);
+    }
+
+    private void submitBlock() {
+        final long start = nextBlockStart;
+        nextBlockStart += blockSize;
+        pending.addLast(pool.submit(() -> {
+            final ObjectNode[] drafts = new ObjectNode[blockSize];
+            for (int i = 0; i < blockSize; i++) {
+                drafts[i] = generator.draft(start + i);
+            }
+            return drafts;
+        }));
+    }
+
+    private static ObjectNode[] await(final Future<ObjectNode[]> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException("Failed to draft tweets", cause);
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.gen;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Arrivals as a Poisson process: exponentially distributed gaps at a given
+ * average rate. The rate can follow a daily cycle and be multiplied during
+ * bursts of activity, in which case arrivals are drawn by thinning: candidate
+ * arrivals at the peak rate are kept in proportion to the rate at the time.
+ */
+public class PoissonArrivals implements ArrivalProcess {
+
+    /**
+     * Relative activity for each hour of a typical local day: quiet before
+     * dawn, busy in the evening.
+     */
+    public static final double[] TYPICAL_DAY = {
+        1.00, 0.70, 0.45, 0.30, 0.25, 0.30, 0.50, 0.80, 1.00, 1.10, 1.15, 1.20,
+        1.25, 1.20, 1.15, 1.15, 1.20, 1.25, 1.30, 1.40, 1.50, 1.55, 1.45, 1.25
+    };
+
+    private static final double MILLIS_PER_HOUR = 3_600_000.0;
+
+    private final double ratePerMilli;
+
+    private double[] hourly; // normalised to a mean of 1, or null for a flat day
+    private ZoneRules zoneRules;
+    private final List<double[]> bursts = new ArrayList<>(); // {start, end, multiplier}
+
+    private double peakMultiplier = 1.0;
+
+    /**
+     * @param ratePerSecond The average number of arrivals per second.
+     */
+    public PoissonArrivals(final double ratePerSecond) {
+        if (! (ratePerSecond > 0)) {
+            throw new IllegalArgumentException("Arrival rate must be positive: " + ratePerSecond);
+        }
+        this.ratePerMilli = ratePerSecond / 1000.0;
+    }
+
+    /**
+     * Makes the rate follow a daily cycle, interpolating between the hours.
+     * The weights are scaled so the rate averaged over a day is unchanged.
+     *
+     * @param hourlyWeights Relative activity for each of the 24 hours of the
+     *                      day, e.g. {@link #TYPICAL_DAY}.
+     * @param zone The zone whose local time the cycle follows.
+     * @return This process.
+     */
+    public PoissonArrivals withDiurnal(final double[] hourlyWeights, final ZoneId zone) {
+        if (hourlyWeights.length != 24 || Arrays.stream(hourlyWeights).anyMatch(w -> w < 0)) {
+            throw new IllegalArgumentException("Need 24 non-negative hourly weights");
+        }
+        final double mean = Arrays.stream(hourlyWeights).average().orElse(0);
+        if (mean <= 0) {
+            throw new IllegalArgumentException("Hourly weights can't all be zero");
+        }
+        this.hourly = Arrays.stream(hourlyWeights).map(w -> w / mean).toArray();
+        this.zoneRules = zone.getRules();
+        updatePeak();
+        return this;
+    }
+
+    /**
+     * Multiplies the rate for a while, e.g. for a breaking news event, or
+     * divides it for a lull.
+     *
+     * @param startMillis When the burst starts.
+     * @param durationMillis How long it lasts.
+     * @param multiplier The factor applied to the rate during the burst.
+     * @return This process.
+     */
+    public PoissonArrivals withBurst(final long startMillis, final long durationMillis, final double multiplier) {
+        if (durationMillis <= 0 || multiplier < 0) {
+            throw new IllegalArgumentException("Bursts need a positive duration and a non-negative multiplier");
+        }
+        bursts.add(new double[]{startMillis, startMillis + durationMillis, multiplier});
+        updatePeak();
+        return this;
+    }
+
+    private void updatePeak() {
+        double peak = hourly != null ? Arrays.stream(hourly).max().orElse(1.0) : 1.0;
+        for (final double[] burst : bursts) {
+            peak *= Math.max(1.0, burst[2]); // assume the worst: every burst at once
+        }
+        peakMultiplier = peak;
+    }
+
+    /**
+     * @param millis A time, in epoch milliseconds.
+     * @return The rate at that time, relative to the average rate.
+     */
+    public double multiplierAt(final double millis) {
+        double multiplier = 1.0;
+        if (hourly != null) {
+            final long offsetMillis = zoneRules.getOffset(Instant.ofEpochMilli((long) millis)).getTotalSeconds() * 1000L;
+            // weights apply at the middle of each hour
+            double h = ((millis + offsetMillis) / MILLIS_PER_HOUR - 0.5) % 24;
+            if (h < 0) h += 24;
+            final int before = (int) h;
+            final double frac = h - before;
+            multiplier = hourly[before % 24] * (1 - frac) + hourly[(before + 1) % 24] * frac;
+        }
+        for (final double[] burst : bursts) {
+            if (millis >= burst[0] && millis < burst[1]) {
+                multiplier *= burst[2];
+            }
+        }
+        return multiplier;
+    }
+
+    @Override
+    public double next(final double previousMillis, final SplittableRandom random) {
+        if (hourly == null && bursts.isEmpty()) {
+            return previousMillis + exponential(random, ratePerMilli);
+        }
+        final double peakRate = ratePerMilli * peakMultiplier;
+        double t = previousMillis;
+        do {
+            t += exponential(random, peakRate);
+        } while (random.nextDouble() * peakMultiplier > multiplierAt(t));
+        return t;
+    }
+
+    private static double exponential(final SplittableRandom random, final double rate) {
+        return -Math.log(1.0 - random.nextDouble()) / rate;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.gen;
+
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The one source of randomness for everything that makes things up: IDs,
+ * names, texts, coordinates and timestamps.
+ * <p>
+ * Rather than sharing a single generator, callers ask for a {@link SplittableRandom}
+ * stream derived from the root seed and a key, such as {@code ("tweet", 42)}.
+ * The same seed and key always give the same stream, no matter which thread
+ * asks or in what order, so work that is keyed by its position (e.g. the
+ * index of a tweet) is reproducible however many threads share it out, and
+ * no two threads ever contend over one generator.
+ * <p>
+ * Streams are not thread-safe, so each should be used by one thread only.
+ */
+public final class Randomness {
+
+    // as used by SplittableRandom, to spread consecutive keys across the seed space
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final long seed;
+    private final AtomicLong threadCount = new AtomicLong();
+    private final ThreadLocal<SplittableRandom> perThread;
+
+    /**
+     * @param seed The root seed from which every stream is derived.
+     */
+    public Randomness(final long seed) {
+        this.seed = seed;
+        this.perThread = ThreadLocal.withInitial(() -> stream("thread", threadCount.getAndIncrement()));
+    }
+
+    /**
+     * @return A source of randomness with an arbitrary seed, which can be
+     * recovered with {@link #seed()} to reproduce its results.
+     */
+    public static Randomness unseeded() {
+        return new Randomness(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * @return The root seed.
+     */
+    public long seed() {
+        return seed;
+    }
+
+    /**
+     * @param name What the stream is for, e.g. "users".
+     * @return A fresh stream, identical to any other for the same name.
+     */
+    public SplittableRandom stream(final String name) {
+        return new SplittableRandom(keyOf(name));
+    }
+
+    /**
+     * @param name What the stream is for, e.g. "tweet".
+     * @param index The position of the item within its sequence.
+     * @return A fresh stream, identical to any other for the same name and index.
+     */
+    public SplittableRandom stream(final String name, final long index) {
+        return new SplittableRandom(mix64(keyOf(name) + GOLDEN_GAMMA * (index + 1)));
+    }
+
+    /**
+     * A stream for the calling thread, for interactive use where there is no
+     * natural key. Results are reproducible only if threads first ask for
+     * randomness in the same order.
+     *
+     * @return The calling thread's own stream.
+     */
+    public SplittableRandom forCurrentThread() {
+        return perThread.get();
+    }
+
+    private long keyOf(final String name) {
+        long h = seed;
+        for (final byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            h = mix64(h + GOLDEN_GAMMA + b);
+        }
+        return h;
+    }
+
+    // David Stafford's "variant 13" of the MurmurHash3 finaliser, as in SplittableRandom
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,517 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.gen;
+
+import au.org.dcw.socialmedia.simulation.tools.model.CreatedAtFormatter;
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.function.ToIntFunction;
+
+/**
+ * Builds tweets headlessly, with the same structure the editor produces:
+ * {@code created_at}, {@code id}/{@code id_str}, {@code text}/{@code full_text},
+ * {@code truncated}, {@code user}, {@code entities} and, optionally,
+ * {@code geo}/{@code coordinates}.
+ * <p>
+ * Authors are drawn from a fixed pool of users whose {@code user} nodes are
+ * shared between tweets, so writers can cache their serialised form. They
+ * are drawn evenly unless {@link #withAuthorSkew(double) skewed} or
+ * {@link #withAuthors(Vocabulary) learned} from a corpus, as are any
+ * hashtags, mentions and URLs added to the text from {@link Vocabulary vocabularies}.
+ * Timestamps advance from a given start time, by a fixed interval or as
+ * another {@link ArrivalProcess} dictates, and always agree with the
+ * time-ordered IDs.
+ * <p>
+ * Each tweet's content is {@link #draft(long) drafted} from its own stream of
+ * {@link Randomness}, keyed by its position in the run, so drafts can be made
+ * on any number of threads and in any order. Drafts are then
+ * {@link #stamp(ObjectNode) stamped} with a timestamp and ID strictly in
+ * order. The same seed therefore gives the same tweets however the work is
+ * shared out.
+ * <p>
+ * A generator's entire state can be saved and restored, so a long run can be
+ * stopped and resumed without changing a single tweet.
+ */
+public class TweetGenerator implements TweetSource {
+
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+    private static final double KM_PER_DEGREE = 111.32;
+
+    private final Randomness randomness;
+    private final IdGenerator ids = new IdGenerator();
+    private final List<ObjectNode> users = new ArrayList<>();
+    private List<String> texts;
+    private MarkovText markov;
+    private int maxLength;
+    private ToIntFunction<SplittableRandom> authorChooser = random -> random.nextInt(users.size());
+
+    private Vocabulary hashtags;
+    private double hashtagsPerTweet;
+    private Vocabulary mentions;
+    private double mentionsPerTweet;
+    private Vocabulary urls;
+    private double urlsPerTweet;
+    private double mediaFraction = 0.0;
+
+    private long nextIndex = 0;
+    private double nextMillis;
+    private ArrivalProcess arrivals;
+    private final CreatedAtFormatter createdAt = new CreatedAtFormatter();
+
+    private double geoFraction = 0.0;
+    private double centreLat;
+    private double centreLon;
+    private double radiusKm;
+
+    /**
+     * @param randomness The source of randomness.
+     * @param userCount The number of distinct authors to draw from.
+     * @param startMillis The timestamp of the first tweet.
+     * @param intervalMillis The time between consecutive tweets, unless
+     *                       {@link #withArrivals(ArrivalProcess) changed}.
+     */
+    public TweetGenerator(
+        final Randomness randomness,
+        final int userCount,
+        final long startMillis,
+        final long intervalMillis
+    ) {
+        this.randomness = randomness;
+        this.nextMillis = startMillis;
+        this.arrivals = ArrivalProcess.fixed(intervalMillis);
+
+        final SplittableRandom random = randomness.stream("users");
+        final Set<String> names = new HashSet<>();
+        for (int i = 0; i < userCount; i++) {
+            final String name = NameGenerator.generate(random, names::contains);
+            names.add(name);
+            users.add(NODES.objectNode().put("screen_name", name));
+        }
+    }
+
+    /**
+     * @param texts Tweet texts to choose from, rather than made-up ones.
+     * @return This generator.
+     */
+    public TweetGenerator withTexts(final List<String> texts) {
+        this.texts = texts.isEmpty() ? null : texts;
+        return this;
+    }
+
+    /**
+     * Makes up texts that read like a corpus, unless there are
+     * {@link #withTexts(List) texts to choose from}.
+     *
+     * @param markov The model of the corpus's text.
+     * @param maxLength The longest text to make up, by Twitter's weighted
+     *                  count, before any hashtags, mentions and URLs are added.
+     * @return This generator.
+     */
+    public TweetGenerator withMarkovText(final MarkovText markov, final int maxLength) {
+        if (maxLength < 1) {
+            throw new IllegalArgumentException("maxLength[" + maxLength + "] must be positive");
+        }
+        this.markov = markov;
+        this.maxLength = maxLength;
+        return this;
+    }
+
+    /**
+     * @param arrivals Decides when each tweet after the first is posted.
+     * @return This generator.
+     */
+    public TweetGenerator withArrivals(final ArrivalProcess arrivals) {
+        this.arrivals = arrivals;
+        return this;
+    }
+
+    /**
+     * Geotags a fraction of tweets with points spread evenly over a circle.
+     *
+     * @param fraction The proportion of tweets to geotag, in [0,1].
+     * @param latitude The latitude of the centre of the circle.
+     * @param longitude The longitude of the centre of the circle.
+     * @param radiusKm The radius of the circle.
+     * @return This generator.
+     */
+    public TweetGenerator withGeo(
+        final double fraction,
+        final double latitude,
+        final double longitude,
+        final double radiusKm
+    ) {
+        this.geoFraction = fraction;
+        this.centreLat = latitude;
+        this.centreLon = longitude;
+        this.radiusKm = radiusKm;
+        return this;
+    }
+
+    /**
+     * Draws some authors far more often than others.
+     *
+     * @param exponent The Zipf exponent: 0 draws authors evenly, 1 draws the
+     *                 busiest twice as often as the next, and so on.
+     * @return This generator.
+     */
+    public TweetGenerator withAuthorSkew(final double exponent) {
+        if (exponent != 0) {
+            final AliasSampler sampler = AliasSampler.zipf(users.size(), exponent);
+            authorChooser = sampler::sample;
+        }
+        return this;
+    }
+
+    /**
+     * Replaces the pool of made-up users with real screen names, drawn as
+     * often as in the vocabulary.
+     *
+     * @param authors The authors' screen names, e.g. as used in a corpus.
+     * @return This generator.
+     */
+    public TweetGenerator withAuthors(final Vocabulary authors) {
+        users.clear();
+        for (final String name : authors.keys()) {
+            users.add(NODES.objectNode().put("screen_name", name));
+        }
+        authorChooser = authors::sampleIndex;
+        return this;
+    }
+
+    /**
+     * @param vocabulary The hashtags to add to tweets, without their '#'.
+     * @param perTweet The average number of hashtags to add to a tweet.
+     * @return This generator.
+     */
+    public TweetGenerator withHashtags(final Vocabulary vocabulary, final double perTweet) {
+        this.hashtags = vocabulary;
+        this.hashtagsPerTweet = perTweet;
+        return this;
+    }
+
+    /**
+     * @param vocabulary The screen names to mention in tweets, without their '@'.
+     * @param perTweet The average number of mentions to add to a tweet.
+     * @return This generator.
+     */
+    public TweetGenerator withMentions(final Vocabulary vocabulary, final double perTweet) {
+        this.mentions = vocabulary;
+        this.mentionsPerTweet = perTweet;
+        return this;
+    }
+
+    /**
+     * @param vocabulary The URLs to add to tweets.
+     * @param perTweet The average number of URLs to add to a tweet.
+     * @return This generator.
+     */
+    public TweetGenerator withUrls(final Vocabulary vocabulary, final double perTweet) {
+        this.urls = vocabulary;
+        this.urlsPerTweet = perTweet;
+        return this;
+    }
+
+    /**
+     * Attaches a photo to a fraction of tweets: a {@code media} entity, and
+     * its link at the end of the text.
+     *
+     * @param fraction The proportion of tweets with a photo, in [0,1].
+     * @return This generator.
+     */
+    public TweetGenerator withMedia(final double fraction) {
+        this.mediaFraction = fraction;
+        return this;
+    }
+
+    /**
+     * @param count The number of distinct hashtags.
+     * @param exponent The Zipf exponent of their frequencies.
+     * @return Made-up hashtags, the same for the same seed.
+     */
+    public Vocabulary madeUpHashtags(final int count, final double exponent) {
+        final SplittableRandom random = randomness.stream("hashtags");
+        final Set<String> tags = new LinkedHashSet<>();
+        while (tags.size() < count) {
+            tags.add(NameGenerator.generate(random, name -> tags.contains(name.replace(".", ""))).replace(".", ""));
+        }
+        return Vocabulary.zipf(new ArrayList<>(tags), exponent);
+    }
+
+    /**
+     * @param exponent The Zipf exponent of their frequencies.
+     * @return The screen names of the pool of users, in a random order of
+     * popularity, with their '.' changed to a '_' so they are valid mentions.
+     */
+    public Vocabulary madeUpMentions(final double exponent) {
+        final List<String> names = new ArrayList<>();
+        users.forEach(user -> names.add(user.get("screen_name").asText().replace('.', '_')));
+        final SplittableRandom random = randomness.stream("mentions");
+        for (int i = names.size() - 1; i > 0; i--) {
+            Collections.swap(names, i, random.nextInt(i + 1));
+        }
+        return Vocabulary.zipf(names, exponent);
+    }
+
+    /**
+     * @param count The number of distinct URLs.
+     * @param exponent The Zipf exponent of their frequencies.
+     * @return Made-up URLs.
+     */
+    public static Vocabulary madeUpUrls(final int count, final double exponent) {
+        final List<String> links = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            links.add("https://example.com/" + Integer.toString(i, 36));
+        }
+        return Vocabulary.zipf(links, exponent);
+    }
+
+    /**
+     * @return The next tweet.
+     */
+    @Override
+    public ObjectNode next() {
+        return stamp(draft(nextIndex));
+    }
+
+    /**
+     * Makes up the content of a tweet: everything but its timestamp and ID,
+     * which are left null. This only reads the generator's configuration, so
+     * it may be called from many threads at once.
+     *
+     * @param index The position of the tweet in the run.
+     * @return The draft of the tweet at {@code index}, always the same for the same seed.
+     */
+    public ObjectNode draft(final long index) {
+        return draft(index, null);
+    }
+
+    /**
+     * Drafts a tweet as {@link #draft(long)} does, with more text added.
+     *
+     * @param index The position of the tweet in the run.
+     * @param suffix Text to add to the end, e.g. a campaign's hashtags, or null.
+     * @return The draft of the tweet at {@code index}, always the same for the same seed and suffix.
+     */
+    public ObjectNode draft(final long index, final String suffix) {
+        final SplittableRandom random = randomness.stream("tweet", index);
+        String text = addKeys(
+            texts != null ? texts.get(random.nextInt(texts.size()))
+                : markov != null ? markov.generate(randomness.stream("text", index), maxLength)
+                : makeUpText(random),
+            index
+        );
+        if (suffix != null) {
+            text = text.isEmpty() ? suffix : text + " " + suffix;
+        }
+        JsonNode media = null;
+        if (mediaFraction > 0) {
+            final SplittableRandom mediaRandom = randomness.stream("media", index);
+            if (mediaRandom.nextDouble() < mediaFraction) {
+                final String link = "https://t.co/" + randomKey(mediaRandom, 10);
+                media = makePhoto(mediaRandom, link, text.codePointCount(0, text.length()) + 1);
+                text = text + " " + link;
+            }
+        }
+
+        final ObjectNode tweet = NODES.objectNode();
+        // placeholders, so the stamped fields keep their place at the front
+        tweet.putNull("created_at");
+        tweet.putNull("id");
+        tweet.putNull("id_str");
+        tweet.put("text", text);
+        tweet.put("full_text", text);
+        tweet.put("truncated", text.length() > Tweets.TWITTER_OLD_MAX_LENGTH);
+        tweet.set("user", users.get(authorChooser.applyAsInt(random)));
+        tweet.set("entities", media == null
+            ? Tweets.extractEntitiesAsJsonNodeTree(text, null)
+            // the photo's link is only a media entity, not a URL too
+            : Tweets.extractEntitiesAsJsonNodeTree(text.substring(0, text.lastIndexOf(' ')), media));
+
+        if (geoFraction > 0 && random.nextDouble() < geoFraction) {
+            final double distance = radiusKm * Math.sqrt(random.nextDouble());
+            final double bearing = 2 * Math.PI * random.nextDouble();
+            final double lat = centreLat + distance * Math.cos(bearing) / KM_PER_DEGREE;
+            final double lon = centreLon + distance * Math.sin(bearing) /
+                (KM_PER_DEGREE * Math.cos(Math.toRadians(centreLat)));
+            tweet.set("geo", Tweets.makeLatLonJsonNode(lat, lon));
+            tweet.set("coordinates", Tweets.makeLatLonJsonNode(lon, lat));
+        } else {
+            tweet.putNull("geo");
+            tweet.putNull("coordinates");
+        }
+        return tweet;
+    }
+
+    /**
+     * Fills in a draft's timestamp and ID. Drafts must be stamped one at a
+     * time, in the order of their indices, starting from {@link #position()}.
+     *
+     * @param draft The draft of the next tweet.
+     * @return The finished tweet (the same node as {@code draft}).
+     */
+    public ObjectNode stamp(final ObjectNode draft) {
+        final long id = ids.next((long) Math.floor(nextMillis));
+        nextMillis = Math.max(nextMillis, arrivals.next(nextMillis, randomness.stream("arrival", nextIndex)));
+        nextIndex++;
+        return stampWith(draft, id, createdAt);
+    }
+
+    /**
+     * Fills in a draft's timestamp and ID, for callers keeping their own
+     * clock, such as a simulation drafting from several generators.
+     *
+     * @param draft A draft from any generator.
+     * @param id The tweet's ID, from an {@link IdGenerator}.
+     * @param createdAt Formats the timestamp taken from the ID.
+     * @return The finished tweet (the same node as {@code draft}).
+     */
+    public static ObjectNode stampWith(final ObjectNode draft, final long id, final CreatedAtFormatter createdAt) {
+        // a crowded millisecond can push the ID on, so take the time from the ID
+        draft.put("created_at", createdAt.format(IdGenerator.millisOf(id)));
+        draft.put("id", id);
+        draft.put("id_str", Long.toString(id));
+        // photos are named after the tweet they're in, and posted just before it
+        for (final JsonNode photo : draft.path("entities").path("media")) {
+            if (photo.path("id").isNull()) {
+                ((ObjectNode) photo).put("expanded_url", "https://twitter.com/" +
+                    draft.path("user").path("screen_name").asText() + "/status/" + id + "/photo/1");
+                ((ObjectNode) photo).put("id", id - 1);
+                ((ObjectNode) photo).put("id_str", Long.toString(id - 1));
+            }
+        }
+        return draft;
+    }
+
+    /**
+     * @return The index of the next tweet to be stamped.
+     */
+    public long position() {
+        return nextIndex;
+    }
+
+    /**
+     * @return Everything needed to carry on generating exactly where this
+     * generator is up to: its position, IDs, clock and users. The seed is
+     * not included.
+     */
+    public ObjectNode saveState() {
+        final ObjectNode state = NODES.objectNode();
+        state.put("next_index", nextIndex);
+        state.set("ids", ids.saveState());
+        state.put("clock", nextMillis);
+        final ArrayNode names = state.putArray("users");
+        users.forEach(user -> names.add(user.get("screen_name")));
+        return state;
+    }
+
+    /**
+     * @param state A state previously returned by {@link #saveState()}, from a
+     *              generator with the same seed.
+     */
+    public void restoreState(final JsonNode state) {
+        nextIndex = state.get("next_index").asLong();
+        ids.restoreState(state.get("ids"));
+        nextMillis = state.get("clock").asDouble();
+        users.clear();
+        state.get("users").forEach(name -> users.add(NODES.objectNode().put("screen_name", name.asText())));
+    }
+
+    // mentions at the front, as in a reply, and hashtags and URLs at the end,
+    // drawn from a stream of their own, so they don't disturb the rest of the draft
+    private String addKeys(final String text, final long index) {
+        if (hashtags == null && mentions == null && urls == null) {
+            return text;
+        }
+        final SplittableRandom random = randomness.stream("keys", index);
+        final StringBuilder sb = new StringBuilder();
+        for (int i = poisson(random, mentions, mentionsPerTweet); i > 0; i--) {
+            sb.append('@').append(mentions.sample(random)).append(' ');
+        }
+        sb.append(text);
+        for (int i = poisson(random, hashtags, hashtagsPerTweet); i > 0; i--) {
+            sb.append(" #").append(hashtags.sample(random));
+        }
+        for (int i = poisson(random, urls, urlsPerTweet); i > 0; i--) {
+            sb.append(' ').append(urls.sample(random));
+        }
+        return sb.toString();
+    }
+
+    // Knuth's method, fine for the small means here
+    private static int poisson(final SplittableRandom random, final Vocabulary vocabulary, final double mean) {
+        if (vocabulary == null || mean <= 0) {
+            return 0;
+        }
+        final double limit = Math.exp(-mean);
+        int count = 0;
+        double product = random.nextDouble();
+        while (product > limit) {
+            count++;
+            product *= random.nextDouble();
+        }
+        return count;
+    }
+
+    // a media entity in the order the extracted entities' fields are in, with the IDs filled in when stamped
+    private static JsonNode makePhoto(final SplittableRandom random, final String link, final int start) {
+        final String file = "pbs.twimg.com/media/" + randomKey(random, 15) + ".jpg";
+        final ObjectNode photo = NODES.objectNode();
+        photo.put("display_url", "pic.twitter.com/" + link.substring(link.lastIndexOf('/') + 1));
+        photo.putNull("expanded_url");
+        photo.putNull("id");
+        photo.putNull("id_str");
+        photo.putArray("indices").add(start).add(start + link.length());
+        photo.put("media_url", "http://" + file);
+        photo.put("media_url_https", "https://" + file);
+        photo.put("type", "photo");
+        photo.put("url", link);
+        return NODES.arrayNode().add(photo);
+    }
+
+    private static String randomKey(final SplittableRandom random, final int length) {
+        final String alphabet = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+        final char[] key = new char[length];
+        for (int i = 0; i < length; i++) {
+            key[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return new String(key);
+    }
+
+    private static String makeUpText(final SplittableRandom random) {
+        final String[] words = NameGenerator.NAME_PARTS;
+        final StringBuilder sb = new StringBuilder();
+        final int length = 3 + random.nextInt(12);
+        for (int i = 0; i < length; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(words[random.nextInt(words.length)]);
+        }
+        if (random.nextInt(3) == 0) {
+            sb.append(" #").append(words[random.nextInt(words.length)]);
+        }
+        return sb.toString();
+    }
+}
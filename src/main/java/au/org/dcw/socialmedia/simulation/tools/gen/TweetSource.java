@@ -0,0 +1,31 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.gen;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * A supply of tweets, in time order, which is endless unless it says
+ * otherwise.
+ */
+public interface TweetSource {
+
+    /**
+     * @return The next tweet, or null if the source has run out.
+     * @throws InterruptedException If interrupted while waiting for it.
+     */
+    ObjectNode next() throws InterruptedException;
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.gen;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * A set of keys, such as hashtags or screen names, drawn with skewed
+ * frequencies, so that a few are hot and most are rare, as in real
+ * traffic. Frequencies either follow a Zipf law or are learned from a
+ * corpus. Immutable, so may be shared between threads.
+ */
+public final class Vocabulary {
+
+    private final String[] keys;
+    private final AliasSampler sampler;
+
+    private Vocabulary(final String[] keys, final AliasSampler sampler) {
+        this.keys = keys;
+        this.sampler = sampler;
+    }
+
+    /**
+     * @param keys The keys, most frequent first.
+     * @param exponent The Zipf exponent, from 0 (uniform) up.
+     * @return A vocabulary drawing the {@code k}th key in proportion to {@code 1/k^exponent}.
+     */
+    public static Vocabulary zipf(final List<String> keys, final double exponent) {
+        return new Vocabulary(keys.toArray(new String[0]), AliasSampler.zipf(keys.size(), exponent));
+    }
+
+    /**
+     * @param counts How often each key was seen.
+     * @return A vocabulary drawing each key as often as it was seen.
+     */
+    public static Vocabulary ofCounts(final Map<String, Long> counts) {
+        // most frequent first, so the order is the same as for zipf(), and stable
+        final String[] keys = counts.keySet().toArray(new String[0]);
+        Arrays.sort(keys, Comparator.<String>comparingLong(counts::get).reversed().thenComparing(k -> k));
+        final long[] frequencies = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            frequencies[i] = counts.get(keys[i]);
+        }
+        return new Vocabulary(keys, AliasSampler.ofCounts(frequencies));
+    }
+
+    /**
+     * @param random The source of randomness.
+     * @return A key.
+     */
+    public String sample(final SplittableRandom random) {
+        return keys[sampler.sample(random)];
+    }
+
+    /**
+     * @param random The source of randomness.
+     * @return The index of a key, in {@link #keys()}.
+     */
+    public int sampleIndex(final SplittableRandom random) {
+        return sampler.sample(random);
+    }
+
+    /**
+     * @return The keys, most frequent first. Don't change them.
+     */
+    public String[] keys() {
+        return keys;
+    }
+
+    /**
+     * @return The number of keys.
+     */
+    public int size() {
+        return keys.length;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.io;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The compression, if any, applied to files of tweets.
+ */
+public enum Compression {
+
+    NONE(""),
+
+    /** gzip, at the fastest deflate level, as tweets compress well anyway. */
+    GZIP(".gz");
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final String suffix;
+
+    Compression(final String suffix) {
+        this.suffix = suffix;
+    }
+
+    public String suffix() {
+        return suffix;
+    }
+
+    /**
+     * @param out The stream to receive compressed bytes.
+     * @return A stream that compresses what is written to it into {@code out}.
+     * @throws IOException If the compression header cannot be written.
+     */
+    public OutputStream compress(final OutputStream out) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new GZIPOutputStream(out, BUFFER_SIZE) {
+                    {
+                        def.setLevel(Deflater.BEST_SPEED);
+                    }
+                };
+            default:
+                return out;
+        }
+    }
+
+    /**
+     * Ends the current compressed member without closing the underlying
+     * stream. Anything written afterwards must go through a new stream from
+     * {@link #compress(OutputStream)}, which starts a new member; readers
+     * see the concatenated members as one stream.
+     *
+     * @param compressed A stream returned by {@link #compress(OutputStream)}.
+     * @throws IOException If the trailer cannot be written.
+     */
+    public void finish(final OutputStream compressed) throws IOException {
+        if (compressed instanceof DeflaterOutputStream) {
+            ((DeflaterOutputStream) compressed).finish();
+        }
+    }
+
+    /**
+     * @param in The stream of compressed bytes.
+     * @return A stream of the decompressed bytes.
+     * @throws IOException If the compression header is missing or corrupt.
+     */
+    public InputStream decompress(final InputStream in) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new GZIPInputStream(in, BUFFER_SIZE);
+            default:
+                return in;
+        }
+    }
+
+    /**
+     * @param filename The name of a file.
+     * @return The compression implied by the file's suffix.
+     */
+    public static Compression forFile(final String filename) {
+        return filename.toLowerCase(Locale.ENGLISH).endsWith(GZIP.suffix) ? GZIP : NONE;
+    }
+
+    /**
+     * Opens a file of tweets, decompressing it if its name says it is compressed.
+     *
+     * @param filename The name of the file.
+     * @return A buffered stream of the file's decompressed contents.
+     * @throws IOException If the file cannot be opened.
+     */
+    public static InputStream open(final String filename) throws IOException {
+        final InputStream in = new FileInputStream(filename);
+        final Compression compression = forFile(filename);
+        return compression == NONE
+            ? new BufferedInputStream(in, BUFFER_SIZE)
+            : compression.decompress(in);
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.io;
+
+import au.org.dcw.socialmedia.simulation.tools.model.TweetDiff;
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares two versions of a corpus, e.g. before and after a bulk edit, in
+ * a single pass over each, however big they are. Both must be sorted by ID,
+ * as by a {@link TweetSorter} with {@link TweetSorter.Key#ID}: they are
+ * merged, and each tweet is matched with the one with the same ID in the
+ * other version, if there is one.
+ * <p>
+ * Newline-delimited JSON is read a line at a time, and the ID pulled from
+ * each line with a streaming parser. Lines that are byte for byte the same
+ * in both versions (most of them, after a typical edit) are never parsed
+ * any further; only those that differ are parsed into trees and compared
+ * with {@link TweetDiff}. The binary formats are parsed in full.
+ */
+public class CorpusDiff {
+
+    /** Told about each difference, in ID order. */
+    public interface Listener {
+
+        /**
+         * @param id The ID of a tweet only in the old version.
+         * @throws IOException If the difference can't be recorded.
+         */
+        void removed(long id) throws IOException;
+
+        /**
+         * @param id The ID of a tweet only in the new version.
+         * @throws IOException If the difference can't be recorded.
+         */
+        void added(long id) throws IOException;
+
+        /**
+         * @param id The ID of a tweet in both versions.
+         * @param changes How it differs between them.
+         * @throws IOException If the difference can't be recorded.
+         */
+        void changed(long id, List<TweetDiff.Change> changes) throws IOException;
+    }
+
+    // errors would otherwise quote the whole buffer as the parser's source
+    private static final JsonFactory JSON_FACTORY =
+        Tweets.JSON.getFactory().copy().disable(JsonParser.Feature.INCLUDE_SOURCE_IN_LOCATION);
+
+    private long before;
+    private long after;
+    private long removed;
+    private long added;
+    private long changed;
+
+    /**
+     * Compares the versions, reading both to the end, but closing neither.
+     *
+     * @param beforeFormat The old version's format.
+     * @param beforeIn The old version, sorted by ID.
+     * @param afterFormat The new version's format.
+     * @param afterIn The new version, sorted by ID.
+     * @param listener What to tell about the differences.
+     * @throws IOException If either can't be read, or isn't sorted by ID.
+     */
+    public void run(
+        final TweetFormat beforeFormat,
+        final InputStream beforeIn,
+        final TweetFormat afterFormat,
+        final InputStream afterIn,
+        final Listener listener
+    ) throws IOException {
+        final Side old = new Side("old", beforeFormat, beforeIn);
+        final Side neu = new Side("new", afterFormat, afterIn);
+        boolean hasOld = old.next();
+        boolean hasNew = neu.next();
+        while (hasOld || hasNew) {
+            if (hasOld && (! hasNew || old.key < neu.key)) {
+                removed++;
+                listener.removed(old.key);
+                hasOld = old.next();
+            } else if (hasNew && (! hasOld || neu.key < old.key)) {
+                added++;
+                listener.added(neu.key);
+                hasNew = neu.next();
+            } else {
+                if (! old.sameLine(neu)) {
+                    final List<TweetDiff.Change> changes = TweetDiff.diff(old.tree(), neu.tree());
+                    if (! changes.isEmpty()) {
+                        changed++;
+                        listener.changed(old.key, changes);
+                    }
+                }
+                hasOld = old.next();
+                hasNew = neu.next();
+            }
+        }
+        before = old.count;
+        after = neu.count;
+    }
+
+    /** @return The number of tweets in the old version. */
+    public long before() {
+        return before;
+    }
+
+    /** @return The number of tweets in the new version. */
+    public long after() {
+        return after;
+    }
+
+    /** @return The number of tweets only in the old version. */
+    public long removed() {
+        return removed;
+    }
+
+    /** @return The number of tweets only in the new version. */
+    public long added() {
+        return added;
+    }
+
+    /** @return The number of tweets in both versions, but different. */
+    public long changed() {
+        return changed;
+    }
+
+    /** @return The number of tweets the same in both versions. */
+    public long same() {
+        return before - removed - changed;
+    }
+
+    /**
+     * One version, read a tweet at a time: as a line of JSON, parsed only
+     * when asked for, or as a tree.
+     */
+    private static final class Side {
+        private final String name;
+        private final InputStream in;
+        private final TweetReader reader; // for the binary formats only
+
+        private final byte[] buffer = new byte[1 << 16];
+        private int position = 0;
+        private int limit = 0;
+        private byte[] line = new byte[4096];
+        private int length;
+
+        private JsonNode tree;
+        private long key = Long.MIN_VALUE;
+        private long count = 0;
+
+        Side(final String name, final TweetFormat format, final InputStream in) throws IOException {
+            this.name = name;
+            this.in = in;
+            this.reader = format.isBinary() ? new TweetReader(format, in) : null;
+        }
+
+        boolean next() throws IOException {
+            final long previous = key;
+            if (reader != null) {
+                tree = reader.next();
+                if (tree == null) {
+                    return false;
+                }
+                key = keyOf(tree);
+            } else {
+                do {
+                    if (! readLine()) {
+                        return false;
+                    }
+                } while (isBlank());
+                tree = null;
+                key = keyOfLine();
+            }
+            if (key == Long.MIN_VALUE) {
+                throw new IOException("Tweet " + count + " of the " + name + " version has no ID");
+            }
+            if (count > 0 && key < previous) {
+                throw new IOException("The " + name + " version isn't sorted by ID (" + key + " follows " +
+                    previous + "): sort it with 'sort --by ID' first");
+            }
+            count++;
+            return true;
+        }
+
+        boolean sameLine(final Side other) {
+            if (reader != null || other.reader != null || length != other.length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (line[i] != other.line[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        JsonNode tree() throws IOException {
+            if (tree == null) {
+                try (JsonParser parser = JSON_FACTORY.createParser(line, 0, length)) {
+                    tree = Tweets.JSON.readTree(parser);
+                }
+            }
+            return tree;
+        }
+
+        // reads up to the next newline into line, without it
+        private boolean readLine() throws IOException {
+            length = 0;
+            while (true) {
+                if (position == limit) {
+                    limit = in.read(buffer, 0, buffer.length);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        return length > 0;
+                    }
+                }
+                int end = position;
+                while (end < limit && buffer[end] != '\n') {
+                    end++;
+                }
+                if (length + end - position > line.length) {
+                    line = Arrays.copyOf(line, Math.max(length + end - position, line.length * 2));
+                }
+                System.arraycopy(buffer, position, line, length, end - position);
+                length += end - position;
+                if (end < limit) {
+                    position = end + 1;
+                    return true;
+                }
+                position = limit;
+            }
+        }
+
+        private boolean isBlank() {
+            for (int i = 0; i < length; i++) {
+                if (line[i] != ' ' && line[i] != '\t' && line[i] != '\r') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // as TweetSorter does: the numeric id, or else the id_str
+        private long keyOfLine() throws IOException {
+            try (JsonParser parser = JSON_FACTORY.createParser(line, 0, length)) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new IOException("Not a tweet: " + excerpt());
+                }
+                long idFromString = Long.MIN_VALUE;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String field = parser.getCurrentName();
+                    final JsonToken value = parser.nextToken();
+                    if (field.equals("id") && value == JsonToken.VALUE_NUMBER_INT) {
+                        return parser.getLongValue();
+                    } else if (field.equals("id_str") && value == JsonToken.VALUE_STRING) {
+                        idFromString = parseId(parser.getText());
+                    }
+                    parser.skipChildren();
+                }
+                return idFromString;
+            } catch (JsonProcessingException e) {
+                throw new IOException("Malformed tweet (" + e.getOriginalMessage() + "): " + excerpt());
+            }
+        }
+
+        private static long keyOf(final JsonNode tweet) {
+            return tweet.path("id").isIntegralNumber()
+                ? tweet.get("id").asLong()
+                : parseId(tweet.path("id_str").asText(""));
+        }
+
+        private static long parseId(final String idStr) {
+            try {
+                return Long.parseLong(idStr);
+            } catch (NumberFormatException e) {
+                return Long.MIN_VALUE;
+            }
+        }
+
+        private String excerpt() {
+            final String text = new String(line, 0, Math.min(length, 200), StandardCharsets.UTF_8);
+            return length > 200 ? text + "..." : text;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.io;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Releases events on a fixed schedule, measured from when the pacer was
+ * started, and keeps track of how late each was released.
+ * <p>
+ * Every event's due time is fixed in advance rather than measured from the
+ * previous event, so if the sender falls behind it catches up by releasing
+ * events back to back instead of quietly shifting the whole schedule later
+ * (which would hide the delay, a.k.a. coordinated omission). Lag is always
+ * measured against the original schedule.
+ */
+public class Pacer {
+
+    // parking is coarse, so spin for the last stretch of a wait
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    // lag histogram: 64 powers of two of nanoseconds, each split linearly in SUB_BUCKETS
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private long startNanos;
+    private final long[] lagCounts = new long[64 * SUB_BUCKETS];
+    private long count = 0;
+    private long maxLag = 0;
+    private long lastLag = 0;
+
+    public Pacer() {
+        start();
+    }
+
+    /**
+     * (Re)starts the schedule from now, forgetting any lag recorded so far.
+     */
+    public void start() {
+        startNanos = System.nanoTime();
+        Arrays.fill(lagCounts, 0);
+        count = 0;
+        maxLag = 0;
+        lastLag = 0;
+    }
+
+    /**
+     * @param offsetNanos When an event is due, relative to the start.
+     * @return True if it is already due, i.e. {@link #await} won't wait.
+     */
+    public boolean isDue(final long offsetNanos) {
+        return System.nanoTime() - startNanos >= offsetNanos;
+    }
+
+    /**
+     * Waits until an event is due, then records how late it is.
+     *
+     * @param offsetNanos When the event is due, relative to the start.
+     * @return How late the event is being released, in nanoseconds.
+     */
+    public long await(final long offsetNanos) {
+        final long due = startNanos + offsetNanos;
+        long wait;
+        while ((wait = due - System.nanoTime()) > 0) {
+            if (wait > SPIN_NANOS) {
+                LockSupport.parkNanos(wait - SPIN_NANOS);
+            }
+        }
+        final long lag = -wait;
+        record(lag);
+        return lag;
+    }
+
+    private void record(final long lag) {
+        lagCounts[bucketOf(lag)]++;
+        count++;
+        lastLag = lag;
+        maxLag = Math.max(maxLag, lag);
+    }
+
+    private static int bucketOf(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int magnitude = 63 - Long.numberOfLeadingZeros(value); // >= SUB_BITS
+        final int sub = (int) (value >>> (magnitude - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // the largest value that falls in the bucket
+    private static long upperBoundOf(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int magnitude = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        final long sub = bucket % SUB_BUCKETS;
+        final long lower = (1L << magnitude) | (sub << (magnitude - SUB_BITS));
+        return lower + (1L << (magnitude - SUB_BITS)) - 1;
+    }
+
+    /**
+     * @return The time since the start, in nanoseconds.
+     */
+    public long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * @return The number of events released.
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * @return The lag of the most recent event, in nanoseconds.
+     */
+    public long lastLag() {
+        return lastLag;
+    }
+
+    /**
+     * @return The greatest lag so far, in nanoseconds.
+     */
+    public long maxLag() {
+        return maxLag;
+    }
+
+    /**
+     * @param percentile The percentile wanted, in [0,100].
+     * @return The lag that {@code percentile}% of events were within, to
+     * within about 6%, in nanoseconds.
+     */
+    public long lagPercentile(final double percentile) {
+        final long wanted = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int b = 0; b < lagCounts.length; b++) {
+            seen += lagCounts[b];
+            if (seen >= wanted && seen > 0) {
+                return Math.min(upperBoundOf(b), maxLag);
+            }
+        }
+        return maxLag;
+    }
+}
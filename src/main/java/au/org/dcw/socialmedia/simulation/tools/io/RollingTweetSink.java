@@ -0,0 +1,439 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.io;
+
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link TweetSink} that writes files of tweets on a background thread,
+ * optionally compressing them and rolling over to a new file after a given
+ * number of bytes or tweets.
+ * <p>
+ * Tweets are serialised on the caller's thread into an in-memory buffer.
+ * When the buffer fills, it is handed to the background thread and the caller
+ * carries on filling another, so the caller only waits if every buffer is
+ * still queued for the disk, i.e. when the disk simply can't keep up. With the
+ * default of two buffers, this is classic double-buffering.
+ * <p>
+ * Files roll only between tweets, and each file gets its own
+ * {@link TweetWriter}, so every file is complete in itself, even in the
+ * binary formats. Size limits apply to uncompressed bytes. When rolling, files
+ * are named by inserting a sequence number before the format's extension,
+ * e.g. {@code tweets-00003.json.gz}.
+ * <p>
+ * A {@link #checkpoint(ObjectNode, Path) checkpoint} seals the output at a
+ * tweet boundary: a fresh writer (and compressed member) is started, so that
+ * the bytes that follow depend only on what is written next. Once everything
+ * before the checkpoint is safely on disk, the background thread saves the
+ * caller's state along with the output position, from which a new sink can
+ * {@link #resume(JsonNode) resume} and produce exactly the same bytes.
+ */
+public class RollingTweetSink implements TweetSink {
+
+    public static final int DEFAULT_BUFFER_SIZE = 4 << 20;
+    public static final int DEFAULT_BUFFER_COUNT = 2;
+
+    // how often a caller waiting for a buffer checks that the background thread hasn't given up
+    private static final long WAIT_MILLIS = 100;
+
+    private final String basePath;
+    private final TweetFormat format;
+    private final Compression compression;
+    private final long maxBytesPerFile;
+    private final long maxTweetsPerFile;
+    private final int bufferSize;
+    private final boolean pretty;
+
+    private final BlockingQueue<Chunk> free;
+    private final BlockingQueue<Chunk> filled;
+    private final Thread background;
+    private volatile IOException failure;
+
+    // producer-side state
+    private final ChunkStream chunkStream = new ChunkStream();
+    private TweetWriter writer;
+    private long bytesInFile = 0;
+    private long tweetsInFile = 0;
+    private long totalTweets = 0;
+    private boolean fileStarted = false; // whether the current file has been handed any chunks
+    private boolean closed = false;
+
+    // background-side state
+    private FileOutputStream fileRaw;  // the open file, if any
+    private OutputStream fileBuffered; // buffers fileRaw
+    private OutputStream fileOut;      // compresses into fileBuffered, or null between compressed members
+    private int fileIndex = 0;         // the open file, or the next to open
+    private long resumeOffset = -1;    // where to truncate the first file opened, if resuming
+    private volatile long bytesWritten = 0;
+
+    /**
+     * @param path The file to write, or the pattern for rolled file names.
+     * @param format The format of the tweets.
+     * @param compression The compression to apply to each file.
+     * @param maxBytesPerFile Roll after this many (uncompressed) bytes, or 0 for no limit.
+     * @param maxTweetsPerFile Roll after this many tweets, or 0 for no limit.
+     * @throws IOException If the first buffer can't be set up.
+     */
+    public RollingTweetSink(
+        final String path,
+        final TweetFormat format,
+        final Compression compression,
+        final long maxBytesPerFile,
+        final long maxTweetsPerFile
+    ) throws IOException {
+        this(path, format, false, compression, maxBytesPerFile, maxTweetsPerFile,
+            DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT);
+    }
+
+    /**
+     * @param path The file to write, or the pattern for rolled file names.
+     * @param format The format of the tweets.
+     * @param pretty If true, pretty-print JSON tweets.
+     * @param compression The compression to apply to each file.
+     * @param maxBytesPerFile Roll after this many (uncompressed) bytes, or 0 for no limit.
+     * @param maxTweetsPerFile Roll after this many tweets, or 0 for no limit.
+     * @param bufferSize The size at which a buffer is handed to the background thread.
+     * @param bufferCount The number of buffers, at least two.
+     * @throws IOException If the first buffer can't be set up.
+     */
+    public RollingTweetSink(
+        final String path,
+        final TweetFormat format,
+        final boolean pretty,
+        final Compression compression,
+        final long maxBytesPerFile,
+        final long maxTweetsPerFile,
+        final int bufferSize,
+        final int bufferCount
+    ) throws IOException {
+        if (bufferCount < 2) {
+            throw new IllegalArgumentException("bufferCount[" + bufferCount + "] must be at least 2");
+        }
+        this.basePath = path;
+        this.format = format;
+        this.compression = compression;
+        this.maxBytesPerFile = maxBytesPerFile;
+        this.maxTweetsPerFile = maxTweetsPerFile;
+        this.bufferSize = bufferSize;
+        this.pretty = pretty;
+
+        this.free = new ArrayBlockingQueue<>(bufferCount);
+        this.filled = new ArrayBlockingQueue<>(bufferCount);
+        for (int i = 1; i < bufferCount; i++) {
+            free.add(new Chunk(bufferSize));
+        }
+        chunkStream.chunk = new Chunk(bufferSize);
+
+        background = new Thread(this::drain, "tweet-sink-writer");
+        background.setDaemon(true);
+        background.start();
+
+        writer = newWriter();
+    }
+
+    private TweetWriter newWriter() throws IOException {
+        return new TweetWriter(format, chunkStream, pretty).cacheSubtrees("user", "place", "retweeted_status", "quoted_status");
+    }
+
+    @Override
+    public synchronized void write(final JsonNode tweet) throws IOException {
+        checkFailure();
+        writer.write(tweet);
+        tweetsInFile++;
+        totalTweets++;
+
+        final boolean roll = (maxTweetsPerFile > 0 && tweetsInFile >= maxTweetsPerFile) ||
+            (maxBytesPerFile > 0 && bytesInFile + chunkStream.chunk.length >= maxBytesPerFile);
+        if (roll) {
+            writer.close(); // completes the file's stream, e.g. Smile's end marker
+            handOff(true);
+            writer = newWriter();
+            bytesInFile = 0;
+            tweetsInFile = 0;
+        } else if (chunkStream.chunk.length >= bufferSize) {
+            writer.flush(); // so the chunk ends on a tweet boundary
+            handOff(false);
+        }
+    }
+
+    /**
+     * Seals the output written so far and, once it is durable, saves
+     * {@code state} to {@code file} with the output's position added under
+     * {@code "sink"}. The caller does not wait for the disk.
+     *
+     * @param state The caller's state at this point, which must not be modified afterwards.
+     * @param file Where to save the checkpoint; it is replaced atomically.
+     * @throws IOException If the background writer has failed.
+     */
+    public synchronized void checkpoint(final ObjectNode state, final Path file) throws IOException {
+        checkFailure();
+        writer.close();
+        final ObjectNode position = state.putObject("sink");
+        position.put("tweets_in_file", tweetsInFile);
+        position.put("bytes_in_file", bytesInFile + chunkStream.chunk.length);
+        position.put("total_tweets", totalTweets);
+        chunkStream.chunk.checkpoint = state;
+        chunkStream.chunk.checkpointFile = file;
+        handOff(false);
+        writer = newWriter();
+    }
+
+    /**
+     * Carries on from a checkpoint, truncating the output file it was up to
+     * back to the checkpointed position. Must be called before any writes.
+     *
+     * @param position The {@code "sink"} part of a saved checkpoint.
+     */
+    public synchronized void resume(final JsonNode position) {
+        if (totalTweets > 0) {
+            throw new IllegalStateException("Can't resume a sink that has been written to");
+        }
+        tweetsInFile = position.get("tweets_in_file").asLong();
+        bytesInFile = position.get("bytes_in_file").asLong();
+        totalTweets = position.get("total_tweets").asLong();
+        // safely published to the background thread by the first hand-off
+        fileIndex = position.get("file_index").asInt();
+        resumeOffset = position.get("file_offset").asLong();
+    }
+
+    private void handOff(final boolean rollAfter) throws IOException {
+        final Chunk full = chunkStream.chunk;
+        full.rollAfter = rollAfter;
+        fileStarted = ! rollAfter;
+        bytesInFile += full.length;
+        try {
+            while (! filled.offer(full, WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkBackground();
+            }
+            Chunk next;
+            while ((next = free.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                checkBackground();
+            }
+            chunkStream.chunk = next;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the disk");
+        }
+    }
+
+    // so a caller never waits on a background thread that has stopped
+    private void checkBackground() throws IOException {
+        checkFailure();
+        if (! background.isAlive()) {
+            throw new IOException("Background writer stopped");
+        }
+    }
+
+    /**
+     * @return The total number of bytes written to disk so far, after compression.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        checkFailure();
+        writer.close();
+        // don't start a file just for a binary format's header
+        if (tweetsInFile > 0 || fileStarted || totalTweets == 0) {
+            handOff(true);
+        }
+        try {
+            while (! filled.offer(Chunk.POISON, WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkBackground();
+            }
+            background.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the disk");
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Background writer failed: " + failure.getMessage(), failure);
+        }
+    }
+
+    // runs on the background thread
+    private void drain() {
+        try {
+            while (true) {
+                final Chunk chunk = filled.take();
+                if (chunk == Chunk.POISON) {
+                    break;
+                }
+                if (fileRaw == null) {
+                    openFile();
+                }
+                if (fileOut == null) {
+                    fileOut = compression.compress(fileBuffered);
+                }
+                fileOut.write(chunk.data, 0, chunk.length);
+
+                if (chunk.checkpoint != null || chunk.rollAfter) {
+                    compression.finish(fileOut);
+                    fileOut = null;
+                    fileBuffered.flush();
+                    if (chunk.checkpoint != null) {
+                        fileRaw.getChannel().force(false);
+                    }
+                    if (chunk.rollAfter) {
+                        fileBuffered.close();
+                        fileRaw = null;
+                        fileIndex++;
+                    }
+                }
+                if (chunk.checkpoint != null) {
+                    saveCheckpoint(chunk.checkpoint, chunk.checkpointFile);
+                    chunk.checkpoint = null;
+                    chunk.checkpointFile = null;
+                }
+                chunk.length = 0;
+                free.put(chunk);
+            }
+        } catch (IOException e) {
+            failure = e;
+            // unblock the producer so it sees the failure
+            filled.clear();
+            free.clear();
+            free.offer(new Chunk(bufferSize));
+        } catch (InterruptedException e) {
+            failure = new InterruptedIOException("Background writer interrupted");
+        } finally {
+            if (fileRaw != null) {
+                try {
+                    if (fileOut != null) {
+                        fileOut.close();
+                    } else {
+                        fileBuffered.close();
+                    }
+                } catch (IOException e) {
+                    if (failure == null) failure = e;
+                }
+            }
+        }
+    }
+
+    private void openFile() throws IOException {
+        final String name = fileName(fileIndex);
+        if (resumeOffset >= 0) {
+            try (FileChannel channel = FileChannel.open(Paths.get(name), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                channel.truncate(resumeOffset);
+            }
+        }
+        fileRaw = new FileOutputStream(name, resumeOffset >= 0) {
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                super.write(b, off, len);
+                bytesWritten += len;
+            }
+        };
+        resumeOffset = -1;
+        fileBuffered = new BufferedOutputStream(fileRaw, 1 << 16);
+    }
+
+    private void saveCheckpoint(final ObjectNode state, final Path file) throws IOException {
+        final ObjectNode position = (ObjectNode) state.get("sink");
+        position.put("file_index", fileIndex);
+        position.put("file_offset", fileRaw != null ? fileRaw.getChannel().position() : 0L);
+
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            Tweets.JSON.writerWithDefaultPrettyPrinter().writeValue(out, state);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private String fileName(final int index) {
+        final boolean rolling = maxBytesPerFile > 0 || maxTweetsPerFile > 0;
+        String name = basePath.endsWith(compression.suffix()) && ! compression.suffix().isEmpty()
+            ? basePath.substring(0, basePath.length() - compression.suffix().length())
+            : basePath;
+        if (rolling) {
+            final String ext = format.extension();
+            final String stem = name.endsWith(ext) ? name.substring(0, name.length() - ext.length()) : name;
+            name = String.format("%s-%05d%s", stem, index, ext);
+        }
+        return name + compression.suffix();
+    }
+
+    /** A buffer of whole, serialised tweets. */
+    private static final class Chunk {
+        static final Chunk POISON = new Chunk(0);
+
+        byte[] data;
+        int length = 0;
+        boolean rollAfter = false;
+        ObjectNode checkpoint;
+        Path checkpointFile;
+
+        Chunk(final int capacity) {
+            data = new byte[capacity];
+        }
+    }
+
+    /** Appends to whichever chunk is currently being filled, growing it if a tweet overflows it. */
+    private static final class ChunkStream extends OutputStream {
+        Chunk chunk;
+
+        @Override
+        public void write(final int b) {
+            ensureCapacity(1);
+            chunk.data[chunk.length++] = (byte) b;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            ensureCapacity(len);
+            System.arraycopy(b, off, chunk.data, chunk.length, len);
+            chunk.length += len;
+        }
+
+        private void ensureCapacity(final int extra) {
+            if (chunk.length + extra > chunk.data.length) {
+                chunk.data = Arrays.copyOf(chunk.data, Math.max(chunk.data.length * 2, chunk.length + extra));
+            }
+        }
+
+        @Override
+        public void close() {
+            // the chunks outlive any one writer
+        }
+    }
+}
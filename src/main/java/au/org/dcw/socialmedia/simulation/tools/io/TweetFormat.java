@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.io;
+
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.util.Locale;
+
+/**
+ * The encodings in which streams of tweets can be written and read. The
+ * binary formats carry exactly the same tree structure as the JSON, but are
+ * smaller and cheaper to encode and decode. Binary streams are simply
+ * consecutive root values, with no separators.
+ */
+public enum TweetFormat {
+
+    /** Newline-delimited JSON, one tweet per line. */
+    JSON(".json", Tweets.JSON),
+
+    /** Jackson's binary JSON, with shared property names across the stream. */
+    SMILE(".smile", new ObjectMapper(new SmileFactory())),
+
+    /** Concise Binary Object Representation (RFC 7049). */
+    CBOR(".cbor", new ObjectMapper(new CBORFactory()));
+
+    private final String extension;
+    private final ObjectMapper mapper;
+
+    TweetFormat(final String extension, final ObjectMapper mapper) {
+        this.extension = extension;
+        this.mapper = mapper;
+    }
+
+    public ObjectMapper mapper() {
+        return mapper;
+    }
+
+    public String extension() {
+        return extension;
+    }
+
+    public boolean isBinary() {
+        return this != JSON;
+    }
+
+    /**
+     * Guesses a file's format from its name, ignoring any compression suffix.
+     *
+     * @param filename The name of the file.
+     * @return The matching format, or {@link #JSON} if none matches.
+     */
+    public static TweetFormat forFile(final String filename) {
+        final String name = filename.toLowerCase(Locale.ENGLISH).replaceAll("\\.(gz|lz4)$", "");
+        for (TweetFormat format : values()) {
+            if (name.endsWith(format.extension)) {
+                return format;
+            }
+        }
+        return JSON;
+    }
+}
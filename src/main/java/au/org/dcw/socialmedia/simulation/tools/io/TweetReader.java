@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.io;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads back a stream of tweets written by a {@link TweetWriter}, in any
+ * {@link TweetFormat}, one tree at a time.
+ */
+public class TweetReader implements Closeable {
+
+    private final MappingIterator<JsonNode> tweets;
+
+    /**
+     * @param format The encoding of the stream.
+     * @param in The stream to read from.
+     * @throws IOException If the stream cannot be opened, e.g. a missing Smile header.
+     */
+    public TweetReader(final TweetFormat format, final InputStream in) throws IOException {
+        this.tweets = format.mapper().readerFor(JsonNode.class).readValues(in);
+    }
+
+    /**
+     * @return The next tweet, or null if there are no more.
+     * @throws IOException If the next tweet cannot be parsed.
+     */
+    public JsonNode next() throws IOException {
+        return tweets.hasNextValue() ? tweets.nextValue() : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        tweets.close();
+    }
+}
@@ -0,0 +1,495 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.io;
+
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Sorts newline-delimited JSON tweets by {@code created_at} or {@code id},
+ * however many there are, in bounded memory.
+ * <p>
+ * The input is read in large buffers, cut at line boundaries. Each buffer is
+ * sorted on a worker thread while the next is read: the key is pulled from
+ * each line with a streaming parser, which stops as soon as it has it, and
+ * the lines are written out in key order, with their keys, to a temporary
+ * "run" file. The runs are then merged, a heap picking the next line from
+ * whichever run has the least key, so every byte is read and written twice
+ * whatever the size of the input. Only if there are more runs than can
+ * sensibly be open at once are some merged into bigger runs first. Input
+ * that fits in a single buffer is sorted in memory, without temporary files.
+ * <p>
+ * Lines are copied byte for byte. The sort is stable: tweets with equal keys
+ * keep their input order, and tweets without the key come first. Blank
+ * lines are dropped.
+ */
+public class TweetSorter {
+
+    public enum Key {
+        /** The time the tweet was created, to the second. */
+        CREATED_AT,
+        /** The tweet's ID, or its {@code id_str} if it has no numeric one. */
+        ID
+    }
+
+    private static final int MAX_FAN_IN = 256;
+    private static final int MIN_RUN_BYTES = 1 << 20;
+    private static final int MAX_RUN_BYTES = 1 << 30;
+    private static final int RUN_IO_BUFFER = 1 << 20;
+    private static final int MIN_MERGE_BUFFER = 1 << 16;
+    private static final int MAX_MERGE_BUFFER = 4 << 20;
+
+    // errors would otherwise quote the whole buffer as the parser's source
+    private static final JsonFactory JSON_FACTORY =
+        Tweets.JSON.getFactory().copy().disable(JsonParser.Feature.INCLUDE_SOURCE_IN_LOCATION);
+
+    private final Key key;
+    private final int threads;
+    private final long memoryBytes;
+    private final Path tempDirectory;
+
+    private int runCount;
+
+    /**
+     * @param key What to sort by.
+     * @param threads How many runs to sort at once.
+     * @param memoryBytes Roughly how much memory to use for buffers.
+     * @param tempDirectory Where to write the sorted runs.
+     */
+    public TweetSorter(final Key key, final int threads, final long memoryBytes, final Path tempDirectory) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads[" + threads + "] must be at least 1");
+        }
+        this.key = key;
+        this.threads = threads;
+        this.memoryBytes = memoryBytes;
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * @return How many sorted runs the last sort was split into.
+     */
+    public int runCount() {
+        return runCount;
+    }
+
+    /**
+     * Sorts the tweets read from {@code in} into {@code out}. The input is
+     * read to the end before anything is written, and neither is closed.
+     *
+     * @param in Newline-delimited JSON tweets.
+     * @param out Where to write them, sorted.
+     * @return The number of tweets sorted.
+     * @throws IOException If the input can't be read or parsed, or a run
+     *                     or the output can't be written.
+     */
+    public long sort(final InputStream in, final OutputStream out) throws IOException {
+        final int bufferCount = threads + 1;
+        final int runBytes = (int) Math.max(MIN_RUN_BYTES, Math.min(MAX_RUN_BYTES, memoryBytes / (bufferCount + 1)));
+        final BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(bufferCount);
+        int allocated = 0;
+
+        final ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            final Thread t = new Thread(r, "tweet-sorter");
+            t.setDaemon(true);
+            return t;
+        });
+        final List<Future<Run>> sorting = new ArrayList<>();
+        final List<Path> files = new ArrayList<>();
+        try {
+            byte[] carry = new byte[0];
+            boolean eof = false;
+            while (! eof) {
+                byte[] buffer = free.poll();
+                if (buffer == null && allocated < bufferCount) {
+                    buffer = new byte[runBytes];
+                    allocated++;
+                } else if (buffer == null) {
+                    buffer = free.take();
+                }
+
+                if (carry.length >= buffer.length) { // the end of a line longer than a buffer
+                    buffer = new byte[2 * carry.length];
+                }
+
+                // fill the buffer, carrying on from where the last one was cut
+                System.arraycopy(carry, 0, buffer, 0, carry.length);
+                int filled = carry.length;
+                int cut = -1;
+                while (cut < 0) {
+                    final int n = in.read(buffer, filled, buffer.length - filled);
+                    if (n < 0) {
+                        eof = true;
+                        cut = filled;
+                    } else {
+                        filled += n;
+                        if (filled == buffer.length) {
+                            cut = lastNewline(buffer, filled) + 1;
+                            if (cut == 0) { // a line longer than the buffer
+                                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                                cut = -1;
+                            }
+                        }
+                    }
+                }
+                carry = Arrays.copyOfRange(buffer, cut, filled);
+
+                if (eof && sorting.isEmpty()) {
+                    runCount = 1;
+                    return new Run(buffer, cut).writeLinesTo(out);
+                }
+                final byte[] full = buffer;
+                final int length = cut;
+                sorting.add(workers.submit(() -> {
+                    try {
+                        final Run run = new Run(full, length);
+                        final Path file = Files.createTempFile(tempDirectory, "tweets-run-", ".bin");
+                        synchronized (files) {
+                            files.add(file);
+                        }
+                        run.spillTo(file);
+                        return run.withFile(file);
+                    } finally {
+                        free.add(full.length == runBytes ? full : new byte[runBytes]);
+                    }
+                }));
+                for (final Future<Run> run : sorting) {
+                    if (run.isDone()) {
+                        run.get(); // fail now, rather than after reading the rest
+                    }
+                }
+            }
+
+            final List<Run> runs = new ArrayList<>();
+            for (final Future<Run> run : sorting) {
+                runs.add(run.get());
+            }
+            runCount = runs.size();
+            return merge(runs, files, out);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while sorting");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to sort a run: " + e.getCause(), e.getCause());
+        } finally {
+            workers.shutdownNow();
+            synchronized (files) {
+                for (final Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private long merge(List<Run> runs, final List<Path> files, final OutputStream out) throws IOException {
+        // too many to merge at once, so merge groups of neighbours, which keeps the sort stable
+        while (runs.size() > MAX_FAN_IN) {
+            final List<Run> merged = new ArrayList<>();
+            for (int i = 0; i < runs.size(); i += MAX_FAN_IN) {
+                final List<Run> group = runs.subList(i, Math.min(i + MAX_FAN_IN, runs.size()));
+                if (group.size() == 1) {
+                    merged.add(group.get(0));
+                    continue;
+                }
+                final Path file = Files.createTempFile(tempDirectory, "tweets-run-", ".bin");
+                files.add(file);
+                try (DataOutputStream run = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(file), RUN_IO_BUFFER)
+                )) {
+                    mergeInto(group, run, true);
+                }
+                for (final Run done : group) {
+                    Files.delete(done.file);
+                    files.remove(done.file);
+                }
+                merged.add(new Run(file));
+            }
+            runs = merged;
+        }
+        return mergeInto(runs, out, false);
+    }
+
+    private long mergeInto(final List<Run> runs, final OutputStream out, final boolean asRun) throws IOException {
+        final int bufferSize = (int) Math.max(
+            MIN_MERGE_BUFFER, Math.min(MAX_MERGE_BUFFER, memoryBytes / (2 * runs.size()))
+        );
+        final PriorityQueue<RunReader> heap = new PriorityQueue<>(runs.size());
+        final List<RunReader> readers = new ArrayList<>();
+        long count = 0;
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                final RunReader reader = new RunReader(runs.get(i).file, i, bufferSize);
+                readers.add(reader);
+                if (reader.next()) {
+                    heap.add(reader);
+                }
+            }
+            final DataOutputStream data = asRun ? (DataOutputStream) out : null;
+            while (! heap.isEmpty()) {
+                final RunReader least = heap.poll();
+                if (asRun) {
+                    data.writeLong(least.key);
+                    data.writeInt(least.length);
+                    data.write(least.line, 0, least.length);
+                } else {
+                    out.write(least.line, 0, least.length);
+                    out.write('\n');
+                }
+                count++;
+                if (least.next()) {
+                    heap.add(least);
+                }
+            }
+        } finally {
+            for (final RunReader reader : readers) {
+                reader.close();
+            }
+        }
+        return count;
+    }
+
+    private static int lastNewline(final byte[] buffer, final int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer[i] == '\n') return i;
+        }
+        return -1;
+    }
+
+    // RUNS
+
+    /**
+     * A buffer's lines in key order, and then the file they were spilled to.
+     */
+    private final class Run {
+        private byte[] buffer;
+        private int[] starts;
+        private int[] ends;
+        private long[] keys;
+        private int[] order;
+        private Path file;
+
+        Run(final byte[] buffer, final int length) throws IOException {
+            this.buffer = buffer;
+            int count = 0;
+            starts = new int[1024];
+            ends = new int[1024];
+            for (int start = 0; start < length; ) {
+                int end = start;
+                while (end < length && buffer[end] != '\n') end++;
+                if (! isBlank(buffer, start, end)) {
+                    if (count == starts.length) {
+                        starts = Arrays.copyOf(starts, count * 2);
+                        ends = Arrays.copyOf(ends, count * 2);
+                    }
+                    starts[count] = start;
+                    ends[count] = end;
+                    count++;
+                }
+                start = end + 1;
+            }
+
+            final KeyParser parser = new KeyParser();
+            keys = new long[count];
+            order = new int[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = parser.parse(buffer, starts[i], ends[i]);
+                order[i] = i;
+            }
+            sortByKey(order, keys);
+        }
+
+        Run(final Path file) {
+            this.file = file;
+        }
+
+        Run withFile(final Path file) {
+            this.file = file;
+            buffer = null; // it's back in the pool
+            starts = ends = order = null;
+            keys = null;
+            return this;
+        }
+
+        long writeLinesTo(final OutputStream out) throws IOException {
+            for (final int i : order) {
+                out.write(buffer, starts[i], ends[i] - starts[i]);
+                out.write('\n');
+            }
+            return order.length;
+        }
+
+        void spillTo(final Path file) throws IOException {
+            try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file), RUN_IO_BUFFER)
+            )) {
+                for (final int i : order) {
+                    out.writeLong(keys[i]);
+                    out.writeInt(ends[i] - starts[i]);
+                    out.write(buffer, starts[i], ends[i] - starts[i]);
+                }
+            }
+        }
+    }
+
+    private static boolean isBlank(final byte[] buffer, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] != ' ' && buffer[i] != '\t' && buffer[i] != '\r') return false;
+        }
+        return true;
+    }
+
+    // a stable merge sort of the lines by their keys
+    private static void sortByKey(final int[] order, final long[] keys) {
+        final int[] aux = new int[order.length];
+        for (int width = 1; width < order.length; width *= 2) {
+            for (int from = 0; from < order.length - width; from += 2 * width) {
+                final int mid = from + width;
+                final int to = Math.min(from + 2 * width, order.length);
+                if (keys[order[mid - 1]] <= keys[order[mid]]) {
+                    continue; // already in order, as a mostly sorted capture will be
+                }
+                System.arraycopy(order, from, aux, from, to - from);
+                int i = from, j = mid, k = from;
+                while (i < mid && j < to) {
+                    order[k++] = keys[aux[j]] < keys[aux[i]] ? aux[j++] : aux[i++];
+                }
+                while (i < mid) order[k++] = aux[i++];
+                while (j < to) order[k++] = aux[j++];
+            }
+        }
+    }
+
+    /**
+     * Reads the records of a spilled run back, one at a time.
+     */
+    private static final class RunReader implements Comparable<RunReader> {
+        private final DataInputStream in;
+        private final int ordinal;
+        private long key;
+        private byte[] line = new byte[4096];
+        private int length;
+
+        RunReader(final Path file, final int ordinal, final int bufferSize) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), bufferSize));
+            this.ordinal = ordinal;
+        }
+
+        boolean next() throws IOException {
+            try {
+                key = in.readLong();
+            } catch (EOFException e) {
+                return false;
+            }
+            length = in.readInt();
+            if (length > line.length) {
+                line = new byte[Math.max(length, line.length * 2)];
+            }
+            in.readFully(line, 0, length);
+            return true;
+        }
+
+        // equal keys come from the earlier run first, keeping the sort stable
+        @Override
+        public int compareTo(final RunReader other) {
+            final int byKey = Long.compare(key, other.key);
+            return byKey != 0 ? byKey : Integer.compare(ordinal, other.ordinal);
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Pulls the key from a line, reading no further into it than it must.
+     */
+    private final class KeyParser {
+
+        // created_at values repeat a lot, so remember the last one parsed
+        private String lastCreatedAt;
+        private long lastCreatedAtMillis;
+
+        long parse(final byte[] buffer, final int start, final int end) throws IOException {
+            try (JsonParser parser = JSON_FACTORY.createParser(buffer, start, end - start)) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new IOException("Not a tweet: " + excerpt(buffer, start, end));
+                }
+                long idFromString = Long.MIN_VALUE;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String field = parser.getCurrentName();
+                    final JsonToken value = parser.nextToken();
+                    if (key == Key.CREATED_AT && field.equals("created_at") && value == JsonToken.VALUE_STRING) {
+                        return parseCreatedAt(parser.getText());
+                    } else if (key == Key.ID && field.equals("id") && value == JsonToken.VALUE_NUMBER_INT) {
+                        return parser.getLongValue();
+                    } else if (key == Key.ID && field.equals("id_str") && value == JsonToken.VALUE_STRING) {
+                        try {
+                            idFromString = Long.parseLong(parser.getText());
+                        } catch (NumberFormatException e) {
+                            // no use as a key
+                        }
+                    }
+                    parser.skipChildren();
+                }
+                return idFromString;
+            } catch (JsonProcessingException e) {
+                throw new IOException("Malformed tweet (" + e.getOriginalMessage() + "): " + excerpt(buffer, start, end));
+            }
+        }
+
+        private long parseCreatedAt(final String createdAt) {
+            if (! createdAt.equals(lastCreatedAt)) {
+                lastCreatedAtMillis = Tweets.parseCreatedAt(createdAt);
+                lastCreatedAt = createdAt;
+            }
+            return lastCreatedAtMillis;
+        }
+    }
+
+    private static String excerpt(final byte[] buffer, final int start, final int end) {
+        return new String(buffer, start, Math.min(end - start, 80), StandardCharsets.UTF_8);
+    }
+}
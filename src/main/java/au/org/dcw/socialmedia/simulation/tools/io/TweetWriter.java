@@ -0,0 +1,185 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.io;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streams tweets to an {@link OutputStream} in a given {@link TweetFormat}
+ * (newline-delimited JSON by default) through
+ * a single, reused {@link JsonGenerator}, so no intermediate {@code String}
+ * is built per tweet. The generator's buffers come from Jackson's per-thread
+ * buffer recycler, so a writer should be used from one thread at a time.
+ * <p>
+ * In compact JSON mode, the serialised bytes of nominated subtrees (e.g.
+ * {@code user}, {@code place} and {@code retweeted_status}) can be cached and
+ * replayed verbatim when the very same node instance turns up again. Cached subtrees are matched by
+ * identity, so they must not be modified once they have been written.
+ */
+public class TweetWriter implements TweetSink, Flushable {
+
+    public static final int DEFAULT_CACHE_SIZE = 4096;
+
+    private final JsonGenerator gen;
+    private final ObjectMapper mapper;
+    private final SerializerProvider provider;
+    private final boolean textual;
+
+    private final Set<String> cachedFields = new HashSet<>();
+    private final Map<IdentityKey, SerializableString> subtreeCache;
+    private final IdentityKey probe = new IdentityKey(null);
+
+    /**
+     * @param out The stream to write to.
+     * @param pretty If true, each tweet is pretty-printed (and subtree caching is disabled).
+     * @throws IOException If the generator cannot be created.
+     */
+    public TweetWriter(final OutputStream out, final boolean pretty) throws IOException {
+        this(TweetFormat.JSON, out, pretty);
+    }
+
+    /**
+     * @param format The encoding to write.
+     * @param out The stream to write to.
+     * @param pretty If true, each JSON tweet is pretty-printed (and subtree
+     *               caching is disabled). Ignored for binary formats.
+     * @throws IOException If the generator cannot be created.
+     */
+    public TweetWriter(final TweetFormat format, final OutputStream out, final boolean pretty) throws IOException {
+        this.mapper = format.mapper();
+        this.textual = ! format.isBinary();
+        this.gen = mapper.getFactory().createGenerator(out);
+        this.provider = mapper.getSerializerProviderInstance();
+
+        if (textual) {
+            // we write our own line endings, so no separator between root values
+            gen.setRootValueSeparator(null);
+            if (pretty) {
+                gen.setPrettyPrinter(new DefaultPrettyPrinter((SerializableString) null));
+            }
+        }
+
+        this.subtreeCache = new LinkedHashMap<IdentityKey, SerializableString>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<IdentityKey, SerializableString> eldest) {
+                return size() > DEFAULT_CACHE_SIZE;
+            }
+        };
+    }
+
+    /**
+     * Nominates top-level fields whose values are cached as serialised bytes.
+     * Ignored in pretty mode, as cached bytes are always compact, and for
+     * binary formats, which can't embed raw values.
+     *
+     * @param fieldNames The names of the top-level fields to cache, e.g. "user".
+     * @return This writer.
+     */
+    public TweetWriter cacheSubtrees(final String... fieldNames) {
+        if (textual && gen.getPrettyPrinter() == null) {
+            cachedFields.addAll(Arrays.asList(fieldNames));
+        }
+        return this;
+    }
+
+    /**
+     * Writes one tweet, followed by a newline if the format is textual.
+     *
+     * @param tweet The tweet to write.
+     * @throws IOException If writing fails.
+     */
+    @Override
+    public void write(final JsonNode tweet) throws IOException {
+        if (cachedFields.isEmpty() || ! tweet.isObject()) {
+            ((JsonSerializable) tweet).serialize(gen, provider);
+        } else {
+            gen.writeStartObject();
+            final Iterator<Map.Entry<String, JsonNode>> fields = tweet.fields();
+            while (fields.hasNext()) {
+                final Map.Entry<String, JsonNode> field = fields.next();
+                gen.writeFieldName(field.getKey());
+                final JsonNode value = field.getValue();
+                if (value.isContainerNode() && cachedFields.contains(field.getKey())) {
+                    gen.writeRawValue(cachedBytesOf(value));
+                } else {
+                    ((JsonSerializable) value).serialize(gen, provider);
+                }
+            }
+            gen.writeEndObject();
+        }
+        if (textual) {
+            gen.writeRaw('\n');
+        }
+    }
+
+    private SerializableString cachedBytesOf(final JsonNode subtree) throws IOException {
+        probe.node = subtree;
+        SerializableString bytes = subtreeCache.get(probe);
+        if (bytes == null) {
+            bytes = new SerializedString(mapper.writeValueAsString(subtree));
+            bytes.asUnquotedUTF8(); // encode once, up front
+            subtreeCache.put(new IdentityKey(subtree), bytes);
+        }
+        probe.node = null;
+        return bytes;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        gen.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        gen.close();
+    }
+
+    /** Wraps a node so that maps compare it by identity rather than by deep equality. */
+    private static final class IdentityKey {
+        private JsonNode node;
+
+        IdentityKey(final JsonNode node) {
+            this.node = node;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(node);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof IdentityKey && ((IdentityKey) o).node == node;
+        }
+    }
+}
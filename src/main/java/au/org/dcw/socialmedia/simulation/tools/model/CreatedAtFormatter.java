@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.model;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * Formats {@code created_at} values like {@link Tweets#TWITTER_TIMESTAMP_FORMAT},
+ * but only runs the full formatter once per minute of time covered. Within a
+ * minute, only the seconds digits change, so they are patched into a cached
+ * copy; repeats of the same second get back the very same string.
+ * <p>
+ * This assumes the zone's offset only changes on a minute boundary, which is
+ * true of every modern time zone. Instances cache mutable state, so each
+ * should be used by one thread at a time.
+ */
+public final class CreatedAtFormatter {
+
+    // where "ss" sits in "EEE MMM dd HH:mm:ss Z yyyy"
+    private static final int SECONDS_AT = 17;
+
+    private final ZoneId zone;
+
+    private long templateMinute = Long.MIN_VALUE;
+    private char[] template;
+
+    private long lastSecond = Long.MIN_VALUE;
+    private String last;
+
+    /**
+     * Formats times in UTC, as Twitter does.
+     */
+    public CreatedAtFormatter() {
+        this(ZoneOffset.UTC);
+    }
+
+    /**
+     * @param zone The zone in which to express times.
+     */
+    public CreatedAtFormatter(final ZoneId zone) {
+        this.zone = zone;
+    }
+
+    /**
+     * @param epochMillis The time to format; milliseconds are dropped.
+     * @return The time as a {@code created_at} value.
+     */
+    public String format(final long epochMillis) {
+        final long second = Math.floorDiv(epochMillis, 1000);
+        if (second == lastSecond) {
+            return last;
+        }
+        final long minute = Math.floorDiv(second, 60);
+        if (minute != templateMinute) {
+            template = Tweets.TWITTER_TIMESTAMP_FORMAT.format(
+                Instant.ofEpochSecond(minute * 60).atZone(zone)).toCharArray();
+            templateMinute = minute;
+        }
+        final int s = (int) (second - minute * 60);
+        template[SECONDS_AT] = (char) ('0' + s / 10);
+        template[SECONDS_AT + 1] = (char) ('0' + s % 10);
+
+        last = new String(template);
+        lastSecond = second;
+        return last;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The differences between two versions of a tweet, as the fields added,
+ * removed and changed, each at a path in the form {@link TweetPath} takes,
+ * e.g. {@code "place.name"} or {@code "entities.hashtags.[0].text"}.
+ * <p>
+ * The trees are walked together, and only where they differ is anything
+ * made: each {@link Change} refers to the differing subtrees themselves,
+ * not copies, so comparing identical tweets allocates next to nothing.
+ * Objects are compared field by field, whatever their order, and arrays
+ * element by element, so an element inserted into an array shows up as a
+ * change to every element after it. Numbers are compared by value, so
+ * {@code 1} and {@code 1.0} are the same.
+ */
+public final class TweetDiff {
+
+    public enum Kind {
+        ADDED,
+        REMOVED,
+        CHANGED
+    }
+
+    /** One difference between the versions. */
+    public static final class Change {
+        public final Kind kind;
+        public final String path;
+        /** The old value, or null if it was added. */
+        public final JsonNode before;
+        /** The new value, or null if it was removed. */
+        public final JsonNode after;
+
+        Change(final Kind kind, final String path, final JsonNode before, final JsonNode after) {
+            this.kind = kind;
+            this.path = path;
+            this.before = before;
+            this.after = after;
+        }
+
+        @Override
+        public String toString() {
+            switch (kind) {
+                case ADDED: return "+ " + path + ": " + after;
+                case REMOVED: return "- " + path + ": " + before;
+                default: return "~ " + path + ": " + before + " -> " + after;
+            }
+        }
+    }
+
+    private TweetDiff() {}
+
+    /**
+     * @param before The old version of a tweet.
+     * @param after The new version.
+     * @return How they differ, in the order of the fields of {@code before},
+     * then those only in {@code after}, or an empty list if they don't.
+     */
+    public static List<Change> diff(final JsonNode before, final JsonNode after) {
+        final List<Change> changes = new ArrayList<>(0);
+        diff(before, after, new StringBuilder(), changes);
+        return changes.isEmpty() ? Collections.emptyList() : changes;
+    }
+
+    /**
+     * @param a A JSON value.
+     * @param b Another.
+     * @return True if they're the same: equal, but with numbers compared by value.
+     */
+    public static boolean same(final JsonNode a, final JsonNode b) {
+        if (a == b) {
+            return true;
+        }
+        if (a.isNumber() && b.isNumber()) {
+            return a.isIntegralNumber() && b.isIntegralNumber()
+                ? a.canConvertToLong() && b.canConvertToLong()
+                    ? a.longValue() == b.longValue()
+                    : a.bigIntegerValue().equals(b.bigIntegerValue())
+                : a.decimalValue().compareTo(b.decimalValue()) == 0;
+        }
+        return a.equals(b);
+    }
+
+    // the path is built up in place, and only copied for a change
+    private static void diff(
+        final JsonNode before,
+        final JsonNode after,
+        final StringBuilder path,
+        final List<Change> changes
+    ) {
+        if (before == after) {
+            return;
+        }
+        if (before.isObject() && after.isObject()) {
+            final int length = path.length();
+            for (final Iterator<Map.Entry<String, JsonNode>> fields = before.fields(); fields.hasNext(); ) {
+                final Map.Entry<String, JsonNode> field = fields.next();
+                appendField(path, field.getKey());
+                final JsonNode other = after.get(field.getKey());
+                if (other == null) {
+                    changes.add(new Change(Kind.REMOVED, path.toString(), field.getValue(), null));
+                } else {
+                    diff(field.getValue(), other, path, changes);
+                }
+                path.setLength(length);
+            }
+            for (final Iterator<Map.Entry<String, JsonNode>> fields = after.fields(); fields.hasNext(); ) {
+                final Map.Entry<String, JsonNode> field = fields.next();
+                if (! before.has(field.getKey())) {
+                    appendField(path, field.getKey());
+                    changes.add(new Change(Kind.ADDED, path.toString(), null, field.getValue()));
+                    path.setLength(length);
+                }
+            }
+        } else if (before.isArray() && after.isArray()) {
+            final int length = path.length();
+            for (int i = 0; i < Math.max(before.size(), after.size()); i++) {
+                if (length > 0) {
+                    path.append('.');
+                }
+                path.append('[').append(i).append(']');
+                if (i >= after.size()) {
+                    changes.add(new Change(Kind.REMOVED, path.toString(), before.get(i), null));
+                } else if (i >= before.size()) {
+                    changes.add(new Change(Kind.ADDED, path.toString(), null, after.get(i)));
+                } else {
+                    diff(before.get(i), after.get(i), path, changes);
+                }
+                path.setLength(length);
+            }
+        } else if (! same(before, after)) {
+            changes.add(new Change(Kind.CHANGED, path.toString(), before, after));
+        }
+    }
+
+    private static void appendField(final StringBuilder path, final String field) {
+        if (path.length() > 0) {
+            path.append('.');
+        }
+        path.append(field);
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.twitter.Extractor;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks tweets for the mistakes that otherwise only show up downstream,
+ * each against a {@link Rule}:
+ * <ul>
+ *     <li>text longer than Twitter allows, by its weighted count (for a
+ *     retweet, the retweeted text's);</li>
+ *     <li>entities whose {@code indices} don't pick out the entity in the text;</li>
+ *     <li>IDs that don't match their {@code _str} twins;</li>
+ *     <li>a {@code created_at} that doesn't parse; and</li>
+ *     <li>coordinates out of range, or in the wrong order ({@code geo} is
+ *     latitude first, and GeoJSON {@code coordinates} longitude first).</li>
+ * </ul>
+ * Retweeted and quoted tweets are checked too. Checking a clean tweet
+ * allocates next to nothing, so it's cheap enough to do on every keystroke,
+ * and it's stateless, so it may be done on any number of threads at once.
+ */
+public final class TweetLinter {
+
+    /** What a tweet can get wrong. */
+    public enum Rule {
+        TEXT_LENGTH,
+        ENTITY_INDICES,
+        ID_STR,
+        CREATED_AT,
+        COORDINATES
+    }
+
+    /** One thing wrong with a tweet. */
+    public static final class Problem {
+        public final Rule rule;
+        public final String message;
+
+        Problem(final Rule rule, final String message) {
+            this.rule = rule;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return rule + ": " + message;
+        }
+    }
+
+    // twitter-text's version 2 configuration, for 280 characters
+    public static final int MAX_WEIGHTED_LENGTH = Tweets.TWITTER_MAX_LENGTH;
+    private static final int SCALE = 100;
+    private static final int DEFAULT_WEIGHT = 200;
+    private static final int TRANSFORMED_URL_LENGTH = 23;
+    private static final int[][] WEIGHTED_RANGES = { // {first, last, weight}
+        {0, 4351, 100}, {8192, 8205, 100}, {8208, 8223, 100}, {8242, 8247, 100}
+    };
+
+    private static final String[] ID_FIELDS = {
+        "id", "in_reply_to_status_id", "in_reply_to_user_id", "quoted_status_id"
+    };
+    private static final String[] ENTITY_KINDS = {"hashtags", "symbols", "user_mentions", "urls", "media"};
+
+    private TweetLinter() {}
+
+    /**
+     * @param tweet A tweet.
+     * @return Everything wrong with it, or an empty list if nothing is.
+     */
+    public static List<Problem> lint(final JsonNode tweet) {
+        final List<Problem> problems = new ArrayList<>(0);
+        lint(tweet, "", problems);
+        return problems.isEmpty() ? Collections.emptyList() : problems;
+    }
+
+    private static void lint(final JsonNode tweet, final String path, final List<Problem> problems) {
+        if (! tweet.isObject()) {
+            return;
+        }
+        final JsonNode fullText = tweet.path("full_text").isTextual() ? tweet.get("full_text") : tweet.path("text");
+        if (fullText.isTextual()) {
+            final String text = fullText.asText();
+            // a retweet's "RT @name: " prefix may take it over the limit, which only its retweeted text must be within
+            if (! tweet.path("retweeted_status").isObject()) {
+                final int length = weightedLength(text);
+                if (length > MAX_WEIGHTED_LENGTH) {
+                    problems.add(new Problem(Rule.TEXT_LENGTH, path + (tweet.has("full_text") ? "full_text" : "text") +
+                        " is " + length + " weighted characters, over " + MAX_WEIGHTED_LENGTH));
+                }
+            }
+            checkEntities(text, tweet.path("entities"), path + "entities", problems);
+            checkEntities(text, tweet.path("extended_entities"), path + "extended_entities", problems);
+        }
+        final JsonNode extended = tweet.path("extended_tweet");
+        if (extended.path("full_text").isTextual()) {
+            checkEntities(extended.get("full_text").asText(), extended.path("entities"),
+                path + "extended_tweet.entities", problems);
+        }
+
+        for (final String field : ID_FIELDS) {
+            checkId(tweet, field, path, problems);
+        }
+        checkId(tweet.path("user"), "id", path + "user.", problems);
+
+        final JsonNode createdAt = tweet.path("created_at");
+        if (! createdAt.isMissingNode() && ! createdAt.isNull()
+            && Tweets.parseCreatedAt(createdAt.asText(null)) == Long.MIN_VALUE) {
+            problems.add(new Problem(Rule.CREATED_AT, path + "created_at '" + createdAt.asText() + "' doesn't parse"));
+        }
+
+        checkCoordinates(tweet, path, problems);
+
+        for (final String field : new String[]{"retweeted_status", "quoted_status"}) {
+            if (tweet.path(field).isObject()) {
+                lint(tweet.get(field), path + field + ".", problems);
+            }
+        }
+    }
+
+    /**
+     * Counts a text's length as Twitter does: most characters count two, but
+     * those in the Latin, Greek, Cyrillic and similar blocks, and some
+     * punctuation, count one; any URL counts as a shortened link, 23; and the
+     * text is first composed (NFC), so accents don't count twice.
+     *
+     * @param text A tweet's text.
+     * @return Its weighted length.
+     */
+    public static int weightedLength(final String text) {
+        final String normal = Normalizer.isNormalized(text, Normalizer.Form.NFC)
+            ? text
+            : Normalizer.normalize(text, Normalizer.Form.NFC);
+        // every URL has a dot somewhere, so most texts needn't be searched for them
+        final List<Extractor.Entity> urls = normal.indexOf('.') >= 0
+            ? Tweets.TWITTER_EXTRACTOR.extractURLsWithIndices(normal)
+            : Collections.emptyList();
+        long weighted = 0;
+        int nextUrl = 0;
+        for (int i = 0; i < normal.length(); ) {
+            if (nextUrl < urls.size() && urls.get(nextUrl).getStart() == i) {
+                weighted += TRANSFORMED_URL_LENGTH * SCALE;
+                i = urls.get(nextUrl++).getEnd();
+                continue;
+            }
+            final int codePoint = normal.codePointAt(i);
+            weighted += weightOf(codePoint);
+            i += Character.charCount(codePoint);
+        }
+        return (int) (weighted / SCALE);
+    }
+
+    private static int weightOf(final int codePoint) {
+        for (final int[] range : WEIGHTED_RANGES) {
+            if (codePoint >= range[0] && codePoint <= range[1]) {
+                return range[2];
+            }
+        }
+        return DEFAULT_WEIGHT;
+    }
+
+    // indices count code points, as in the API, not Java's UTF-16 chars
+    private static void checkEntities(
+        final String text,
+        final JsonNode entities,
+        final String path,
+        final List<Problem> problems
+    ) {
+        if (! entities.isObject()) {
+            return;
+        }
+        final boolean simple = text.length() == text.codePointCount(0, text.length());
+        final int length = simple ? text.length() : text.codePointCount(0, text.length());
+        for (final String kind : ENTITY_KINDS) {
+            int n = 0;
+            for (final JsonNode entity : entities.path(kind)) {
+                final String where = path + "." + kind + "[" + n++ + "]";
+                final JsonNode indices = entity.path("indices");
+                if (! (indices.size() == 2 && indices.get(0).canConvertToInt() && indices.get(1).canConvertToInt())) {
+                    problems.add(new Problem(Rule.ENTITY_INDICES, where + " has no indices"));
+                    continue;
+                }
+                final int start = indices.get(0).asInt();
+                final int end = indices.get(1).asInt();
+                if (start < 0 || start >= end || end > length) {
+                    problems.add(new Problem(Rule.ENTITY_INDICES, where + " indices [" + start + "," + end +
+                        "] are outside the text's " + length + " characters"));
+                    continue;
+                }
+                final String found = simple
+                    ? text.substring(start, end)
+                    : text.substring(text.offsetByCodePoints(0, start), text.offsetByCodePoints(0, end));
+                final String expected = expectedText(kind, entity);
+                if (expected != null && ! matches(kind, found, expected)) {
+                    problems.add(new Problem(Rule.ENTITY_INDICES, where + " indices [" + start + "," + end +
+                        "] pick out '" + found + "', not '" + expected + "'"));
+                }
+            }
+        }
+    }
+
+    private static String expectedText(final String kind, final JsonNode entity) {
+        switch (kind) {
+            case "hashtags": return entity.path("text").isTextual() ? "#" + entity.get("text").asText() : null;
+            case "symbols": return entity.path("text").isTextual() ? "$" + entity.get("text").asText() : null;
+            case "user_mentions":
+                return entity.path("screen_name").isTextual() ? "@" + entity.get("screen_name").asText() : null;
+            default: return entity.path("url").isTextual() ? entity.get("url").asText() : null;
+        }
+    }
+
+    // hashtags and mentions may start with a full-width # or @, and screen names are case-insensitive
+    private static boolean matches(final String kind, final String found, final String expected) {
+        if (kind.equals("urls") || kind.equals("media")) {
+            return found.equals(expected);
+        }
+        final char sigil = found.charAt(0);
+        final boolean sigilOk = sigil == expected.charAt(0)
+            || sigil == '\uFF03' && expected.charAt(0) == '#'
+            || sigil == '\uFF20' && expected.charAt(0) == '@';
+        return sigilOk && found.regionMatches(kind.equals("user_mentions"), 1, expected, 1, expected.length() - 1)
+            && found.length() == expected.length();
+    }
+
+    private static void checkId(
+        final JsonNode node,
+        final String field,
+        final String path,
+        final List<Problem> problems
+    ) {
+        final JsonNode id = node.path(field);
+        final JsonNode idStr = node.path(field + "_str");
+        if (id.isMissingNode() || id.isNull() || idStr.isMissingNode() || idStr.isNull()) {
+            return;
+        }
+        if (! id.isIntegralNumber() || ! idStr.isTextual() || ! idStr.asText().equals(id.asText())) {
+            problems.add(new Problem(Rule.ID_STR,
+                path + field + " " + id + " doesn't match " + path + field + "_str " + idStr));
+        }
+    }
+
+    private static void checkCoordinates(final JsonNode tweet, final String path, final List<Problem> problems) {
+        final JsonNode geo = tweet.path("geo").path("coordinates");
+        final JsonNode coordinates = tweet.path("coordinates").path("coordinates");
+        final boolean hasGeo = isPosition(geo);
+        final boolean hasCoordinates = isPosition(coordinates);
+        if (hasGeo && ! inRange(geo.get(0).asDouble(), geo.get(1).asDouble())) {
+            final boolean swapped = inRange(geo.get(1).asDouble(), geo.get(0).asDouble());
+            problems.add(new Problem(Rule.COORDINATES, path + "geo " + geo + " isn't [latitude, longitude]" +
+                (swapped ? " (it looks swapped)" : "")));
+        }
+        if (hasCoordinates && ! inRange(coordinates.get(1).asDouble(), coordinates.get(0).asDouble())) {
+            final boolean swapped = inRange(coordinates.get(0).asDouble(), coordinates.get(1).asDouble());
+            problems.add(new Problem(Rule.COORDINATES, path + "coordinates " + coordinates +
+                " isn't [longitude, latitude]" + (swapped ? " (it looks swapped)" : "")));
+        }
+        if (hasGeo && hasCoordinates && (geo.get(0).asDouble() != coordinates.get(1).asDouble()
+            || geo.get(1).asDouble() != coordinates.get(0).asDouble())) {
+            problems.add(new Problem(Rule.COORDINATES,
+                path + "geo " + geo + " isn't coordinates " + coordinates + " reversed"));
+        }
+        if (! checkPositions(tweet.path("place").path("bounding_box").path("coordinates"))) {
+            problems.add(new Problem(Rule.COORDINATES,
+                path + "place.bounding_box has a corner that isn't [longitude, latitude]"));
+        }
+    }
+
+    // GeoJSON positions, nested to any depth
+    private static boolean checkPositions(final JsonNode node) {
+        if (isPosition(node)) {
+            return inRange(node.get(1).asDouble(), node.get(0).asDouble());
+        }
+        for (final JsonNode child : node) {
+            if (! checkPositions(child)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPosition(final JsonNode node) {
+        return node.isArray() && node.size() == 2 && node.get(0).isNumber() && node.get(1).isNumber();
+    }
+
+    private static boolean inRange(final double latitude, final double longitude) {
+        return latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180;
+    }
+}
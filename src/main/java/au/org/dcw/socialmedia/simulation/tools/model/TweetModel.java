@@ -0,0 +1,183 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.math.BigDecimal;
+
+/**
+ * A mutable tweet held as a Jackson tree, addressed by dotted paths such as
+ * {@code "user.screen_name"} or {@code "entities.media.[0].url"}.
+ */
+public class TweetModel {
+
+    private static boolean verbose = false;
+
+    public JsonNode root;
+
+    public TweetModel() {
+    }
+
+    public TweetModel(final JsonNode root) {
+        this.root = root;
+    }
+
+    /**
+     * @param verbose If true, stack traces are dumped when paths can't be resolved.
+     */
+    public static void setVerbose(final boolean verbose) {
+        TweetModel.verbose = verbose;
+    }
+
+    public JsonNode get(final String path) {
+        return getNested(root, path);
+    }
+
+    public JsonNode getNested(final JsonNode obj, final String path) {
+        if (path.contains(".")) {
+            final String head = path.substring(0, path.indexOf('.'));
+            final String tail = path.substring(path.indexOf('.') + 1);
+            if (head.startsWith("[")) {
+                final int index = Integer.parseInt(head.substring(1, head.length() - 1));
+                if (obj.has(index)) {
+                    return getNested(obj.get(index), tail);
+                } else {
+                    System.err.println("Could not find index: " + index);
+                    return JsonNodeFactory.instance.nullNode(); // error!
+                }
+            }
+            if (obj.has(head)) {
+                return getNested(obj.get(head), tail);
+            } else {
+                System.err.println("Could not find sub-path: " + tail);
+                return JsonNodeFactory.instance.nullNode(); // error!
+            }
+        } else if (path.startsWith("[")) {
+            final int index = Integer.parseInt(path.substring(1, path.length() - 1));
+            return obj.has(index) ? obj.get(index) : JsonNodeFactory.instance.nullNode();
+        } else {
+            return obj.has(path) ? obj.get(path) : JsonNodeFactory.instance.nullNode();
+        }
+    }
+
+    public void set(String path, Object value) {
+        setNested(root, path, value);
+    }
+
+    public void setNested(final JsonNode node, final String path, final Object value) {
+        if (path.contains(".")) {
+            final String head = path.substring(0, path.indexOf('.'));
+            final String tail = path.substring(path.indexOf('.') + 1);
+            if (head.startsWith("[")) { // deal with arrays of structures
+                final int index = Integer.parseInt(head.substring(1, head.length() - 1));
+                if (node.has(index)) {
+                    setNested(node.get(index), tail, value);
+                } else {
+                    System.err.println("Could not find index: " + index);
+                    if (verbose) Thread.dumpStack();
+                }
+            } else if (node.has(head)) {
+                if (tail.startsWith("[")) {
+                    setNested(node.get(head), tail, value);
+                } else {
+                    setNested(node.get(head), tail, value);
+                }
+            } else {
+                System.err.println("Could not find sub-path: " + tail);
+            }
+        } else {
+            final JsonNodeFactory jsonNodeFactory = JsonNodeFactory.instance;
+            ObjectNode obj = null;
+            if (path.startsWith("[")) { // deal with arrays of values
+                final int index = Integer.parseInt(path.substring(1, path.length() - 1));
+                if (node.has(index)) {
+                    obj = (ObjectNode) node.get(index); // set node to the indexed element
+                } else {
+                    System.err.println("Could not find index: " + index);
+                    if (verbose) Thread.dumpStack();
+                }
+            } else {
+                obj = (ObjectNode) node;
+            }
+
+            if (value == null) {
+                obj.set(path, jsonNodeFactory.nullNode());
+            } else if (value instanceof JsonNode) {
+                obj.set(path, (JsonNode) value);
+            } else if (value instanceof Boolean) {
+                obj.set(path, jsonNodeFactory.booleanNode((Boolean) value));
+            } else if (value instanceof BigDecimal) {
+                obj.set(path, jsonNodeFactory.numberNode((BigDecimal) value));
+            } else if (value instanceof String) {
+                obj.set(path, jsonNodeFactory.textNode(value.toString()));
+            } else if (value instanceof double[]) { //value.getClass().isArray()) {
+                final ArrayNode arrayNode = jsonNodeFactory.arrayNode();
+                double[] array = (double[]) value;
+                for (double d : array) {
+                    arrayNode.add(d);
+                }
+                obj.set(path, arrayNode);
+            } else if (value instanceof int[]) {
+                final ArrayNode arrayNode = jsonNodeFactory.arrayNode();
+                int[] array = (int[]) value;
+                for (int i : array) {
+                    arrayNode.add(i);
+                }
+                obj.set(path, arrayNode);
+            }
+        }
+    }
+
+    public boolean has(final String path) {
+        return hasNested(root, path);
+    }
+
+    public boolean hasNested(final JsonNode obj, final String path) {
+        if (path.contains(".")) {
+            final String head = path.substring(0, path.indexOf('.'));
+            final String tail = path.substring(path.indexOf('.') + 1);
+            if (head.startsWith("[")) {
+                final int index = Integer.parseInt(head.substring(1, head.length() - 1));
+                if (! (obj instanceof ArrayNode)) {
+                    return false;
+                }
+                final ArrayNode array = (ArrayNode) obj;
+                if (array.has(index)) {
+                    return hasNested(array.get(index), tail);
+                } else {
+                    System.err.println("Could not find index: " + index);
+                    if (verbose) Thread.dumpStack();
+                    return false;
+                }
+            } else {
+                return obj.has(head) && hasNested(obj.get(head), tail);
+            }
+        }
+        if (path.startsWith("[")) {
+            final int index = Integer.parseInt(path.substring(1, path.length() - 1));
+            if (! (obj instanceof ArrayNode)) {
+                return false;
+            }
+            return obj.has(index);
+        } else {
+            return obj.has(path);
+        }
+    }
+}
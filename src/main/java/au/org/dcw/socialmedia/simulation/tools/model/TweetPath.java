@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * A dotted path into a tweet, as used by {@link TweetModel}, e.g.
+ * {@code "user.screen_name"} or {@code "entities.media.[0].url"}, split up
+ * once so that it can be followed through millions of tweets without
+ * parsing it each time. Following a path allocates nothing, and paths are
+ * immutable, so they may be shared between threads.
+ */
+public final class TweetPath {
+
+    private final String path;
+    private final String[] fields; // null where the step is an array index
+    private final int[] indices;
+
+    private TweetPath(final String path, final String[] fields, final int[] indices) {
+        this.path = path;
+        this.fields = fields;
+        this.indices = indices;
+    }
+
+    /**
+     * @param path A dotted path, with array indices in square brackets.
+     * @return The compiled path.
+     * @throws IllegalArgumentException If the path is empty or has a malformed step.
+     */
+    public static TweetPath compile(final String path) {
+        if (path == null || path.isEmpty()) {
+            throw new IllegalArgumentException("An empty path leads nowhere");
+        }
+        final String[] steps = path.split("\\.", -1);
+        final String[] fields = new String[steps.length];
+        final int[] indices = new int[steps.length];
+        for (int i = 0; i < steps.length; i++) {
+            final String step = steps[i];
+            if (step.isEmpty()) {
+                throw new IllegalArgumentException("Empty step in path: " + path);
+            }
+            if (step.startsWith("[")) {
+                try {
+                    if (! step.endsWith("]")) throw new NumberFormatException();
+                    indices[i] = Integer.parseInt(step.substring(1, step.length() - 1));
+                    if (indices[i] < 0) throw new NumberFormatException();
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Bad array index '" + step + "' in path: " + path);
+                }
+            } else {
+                fields[i] = step;
+            }
+        }
+        return new TweetPath(path, fields, indices);
+    }
+
+    /**
+     * @param root A tweet.
+     * @return The node at the end of the path, or null if there isn't one.
+     */
+    public JsonNode get(final JsonNode root) {
+        return follow(root, fields.length);
+    }
+
+    /**
+     * Sets the node at the end of the path, replacing any already there. The
+     * path must lead somewhere: the object or array it ends in must exist,
+     * and an array index must be within the array, or one past its end to
+     * append.
+     *
+     * @param root A tweet.
+     * @param value The new node.
+     * @return True if it was set.
+     */
+    public boolean set(final JsonNode root, final JsonNode value) {
+        final JsonNode parent = follow(root, fields.length - 1);
+        final int last = fields.length - 1;
+        if (fields[last] != null) {
+            if (! (parent instanceof ObjectNode)) {
+                return false;
+            }
+            ((ObjectNode) parent).set(fields[last], value);
+            return true;
+        }
+        if (! (parent instanceof ArrayNode) || indices[last] > parent.size()) {
+            return false;
+        }
+        if (indices[last] == parent.size()) {
+            ((ArrayNode) parent).add(value);
+        } else {
+            ((ArrayNode) parent).set(indices[last], value);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the node at the end of the path, shifting any later elements
+     * of an array down.
+     *
+     * @param root A tweet.
+     * @return True if there was a node to remove.
+     */
+    public boolean remove(final JsonNode root) {
+        final JsonNode parent = follow(root, fields.length - 1);
+        final int last = fields.length - 1;
+        if (fields[last] != null) {
+            return parent instanceof ObjectNode && ((ObjectNode) parent).remove(fields[last]) != null;
+        }
+        return parent instanceof ArrayNode && ((ArrayNode) parent).remove(indices[last]) != null;
+    }
+
+    // the node after the first steps of the path, or null
+    private JsonNode follow(final JsonNode root, final int steps) {
+        JsonNode node = root;
+        for (int i = 0; i < steps && node != null; i++) {
+            node = fields[i] != null ? node.get(fields[i]) : node.isArray() ? node.get(indices[i]) : null;
+        }
+        return node;
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.twitter.Extractor;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Constants and helpers for building tweet structures, shared by the editor
+ * UI and the headless tools.
+ */
+public final class Tweets {
+
+    public static final DateTimeFormatter TWITTER_TIMESTAMP_FORMAT =
+        DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss Z yyyy", Locale.ENGLISH);
+    public static final int TWITTER_OLD_MAX_LENGTH = 140;
+    public static final int TWITTER_MAX_LENGTH = 280;
+    public static final int ID_LENGTH = 16;
+
+    public static final ObjectMapper JSON = new ObjectMapper();
+    public static final Extractor TWITTER_EXTRACTOR = new Extractor();
+
+    private Tweets() {
+    }
+
+    /**
+     * @return The current time, formatted as a tweet's {@code created_at} value.
+     */
+    public static String now() {
+        return TWITTER_TIMESTAMP_FORMAT.format(ZonedDateTime.now());
+    }
+
+    /**
+     * Parses a tweet's {@code created_at} value, e.g.
+     * {@code "Mon Oct 19 12:11:43 +0000 2026"}. Values laid out exactly like
+     * that are read directly, many times faster than by
+     * {@link #TWITTER_TIMESTAMP_FORMAT}, which reads any others. The day of
+     * the week isn't checked.
+     *
+     * @param createdAt A timestamp, or null.
+     * @return The timestamp in milliseconds since the epoch, or
+     *         {@link Long#MIN_VALUE} if it is null or isn't a timestamp.
+     */
+    public static long parseCreatedAt(final String createdAt) {
+        if (createdAt == null) {
+            return Long.MIN_VALUE;
+        }
+        if (createdAt.length() == 30 && createdAt.charAt(3) == ' ' && createdAt.charAt(7) == ' '
+            && createdAt.charAt(10) == ' ' && createdAt.charAt(13) == ':' && createdAt.charAt(16) == ':'
+            && createdAt.charAt(19) == ' ' && createdAt.charAt(25) == ' ') {
+            final int month = MONTHS.indexOf(createdAt.substring(4, 7));
+            final int day = digits(createdAt, 8, 10);
+            final int hour = digits(createdAt, 11, 13);
+            final int minute = digits(createdAt, 14, 16);
+            final int second = digits(createdAt, 17, 19);
+            final int offsetHours = digits(createdAt, 21, 23);
+            final int offsetMinutes = digits(createdAt, 23, 25);
+            final int year = digits(createdAt, 26, 30);
+            final char sign = createdAt.charAt(20);
+            if (month >= 0 && month % 3 == 0 && year >= 0 && day >= 1
+                && day <= Month.of(month / 3 + 1).length(Year.isLeap(year)) && hour >= 0 && hour < 24
+                && minute >= 0 && minute < 60 && second >= 0 && second < 60
+                && offsetHours >= 0 && offsetMinutes >= 0 && (sign == '+' || sign == '-')) {
+                final long days = LocalDate.of(year, month / 3 + 1, day).toEpochDay();
+                final long offset = (sign == '+' ? 1 : -1) * (offsetHours * 3600 + offsetMinutes * 60);
+                return 1000 * (days * 86400 + hour * 3600 + minute * 60 + second - offset);
+            }
+        }
+        try {
+            return Instant.from(TWITTER_TIMESTAMP_FORMAT.parse(createdAt)).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static final String MONTHS = "JanFebMarAprMayJunJulAugSepOctNovDec";
+
+    // the number in s[from, to), or -1 if it isn't all digits
+    private static int digits(final String s, final int from, final int to) {
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            final char c = s.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            n = n * 10 + (c - '0');
+        }
+        return n;
+    }
+
+    /**
+     * Creates a plausible tweet ID: the current time in milliseconds, padded
+     * out to {@link #ID_LENGTH} with random digits.
+     *
+     * @param random The source of the padding digits.
+     * @return A plausible tweet ID.
+     */
+    public static String generateID(final SplittableRandom random) {
+        final StringBuilder idStr = new StringBuilder(Long.toString(System.currentTimeMillis()));
+        while (idStr.length() < ID_LENGTH) {
+            idStr.append(random.nextInt(10)); // 0-9
+        }
+        return idStr.toString();
+    }
+
+    /**
+     * The JSON for a new tweet with the fields the editor expects to find.
+     *
+     * @param id The tweet's ID.
+     * @param createdAt The tweet's timestamp, already formatted.
+     * @return A minimal tweet as JSON.
+     */
+    public static String freshTweetJson(final String id, final String createdAt) {
+        return "{\"coordinates\":{\"coordinates\":[138.604,-34.918],\"type\":\"Point\"}," +
+            "\"created_at\":\""+ createdAt + "\",\"full_text\":\"\",\"id\":" + id +
+            ",\"id_str\":\"" + id + "\",\"text\":\"\",\"user\":{\"screen_name\":\"\"}," +
+            "\"entities\":{\"media\":[{\"media_url_https\":\"\"}]}}";
+    }
+
+    /**
+     * Builds a GeoJSON point. Note that {@code geo} fields take (lat, lon) but
+     * {@code coordinates} fields take (lon, lat).
+     *
+     * @param first The first coordinate.
+     * @param second The second coordinate.
+     * @return A {@code {"coordinates":[first,second],"type":"Point"}} node.
+     */
+    public static ObjectNode makeLatLonJsonNode(final double first, final double second) {
+        final ObjectNode point = JsonNodeFactory.instance.objectNode();
+        final ArrayNode coords = point.putArray("coordinates");
+        coords.add(first);
+        coords.add(second);
+        point.put("type", "Point");
+        return point;
+    }
+
+    /**
+     * Splits text into lower-case words, ignoring punctuation, for matching
+     * and indexing. Hashtags and mentions come out without their '#' or '@'.
+     *
+     * @param text The text to split.
+     * @return The words, in order.
+     */
+    public static List<String> words(final String text) {
+        final List<String> words = new ArrayList<>();
+        for (final String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}_]+")) {
+            if (! word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Extracts the URL, mention, hashtag and cashtag entities from a tweet's
+     * text, in the structure Twitter uses for a tweet's {@code entities} field.
+     *
+     * @param newText The text of the tweet.
+     * @param mediaEntities Any media entities to carry across, or a null node.
+     * @return The {@code entities} structure.
+     */
+    public static JsonNode extractEntitiesAsJsonNodeTree(final String newText, final JsonNode mediaEntities) {
+        Map<String, List<Object>> entityMap = Maps.newTreeMap();
+        entityMap.put("hashtags", Lists.newArrayList());
+        entityMap.put("symbols", Lists.newArrayList());
+        entityMap.put("user_mentions", Lists.newArrayList());
+        entityMap.put("urls", Lists.newArrayList());
+
+        for (Extractor.Entity e : inCodePoints(newText, TWITTER_EXTRACTOR.extractURLsWithIndices(newText))) {
+            Map<String, Object> urlMap = Maps.newTreeMap();
+            urlMap.put("url", e.getValue());
+            urlMap.put("extended_url", e.getExpandedURL() != null ? e.getExpandedURL() : e.getValue());
+            urlMap.put("display_url", e.getDisplayURL() != null ? e.getDisplayURL() : e.getValue());
+            urlMap.put("indices", Arrays.asList(e.getStart(), e.getEnd()));
+            entityMap.get("urls").add(urlMap);
+        }
+
+        final List<Extractor.Entity> mentions = TWITTER_EXTRACTOR.extractMentionedScreennamesWithIndices(newText);
+        for (Extractor.Entity e : inCodePoints(newText, mentions)) {
+            Map<String, Object> mentionMap = Maps.newTreeMap();
+            mentionMap.put("screen_name", e.getValue());
+            mentionMap.put("name", null); // need reverse-lookup to get most of these values
+            mentionMap.put("id", null);
+            mentionMap.put("id_str", null);
+            mentionMap.put("indices", Arrays.asList(e.getStart(), e.getEnd()));
+            entityMap.get("user_mentions").add(mentionMap);
+        }
+
+        for (Extractor.Entity e : inCodePoints(newText, TWITTER_EXTRACTOR.extractHashtagsWithIndices(newText))) {
+            Map<String, Object> hashtagMap = Maps.newTreeMap();
+            hashtagMap.put("text", e.getValue());
+            hashtagMap.put("indices", Arrays.asList(e.getStart(), e.getEnd()));
+            entityMap.get("hashtags").add(hashtagMap);
+        }
+
+        for (Extractor.Entity e : inCodePoints(newText, TWITTER_EXTRACTOR.extractCashtagsWithIndices(newText))) {
+            Map<String, Object> cashtagMap = Maps.newTreeMap();
+            cashtagMap.put("text", e.getValue());
+            cashtagMap.put("indices", Arrays.asList(e.getStart(), e.getEnd()));
+            entityMap.get("symbols").add(cashtagMap);
+        }
+
+        final JsonNode entitiesRoot = JSON.valueToTree(entityMap);
+        if (mediaEntities != null && ! mediaEntities.isNull() && ! mediaEntities.isMissingNode()) {
+            ((ObjectNode) entitiesRoot).set("media", mediaEntities);
+        }
+        return entitiesRoot;
+    }
+
+    // the extractor counts Java's UTF-16 chars, but Twitter counts code points,
+    // which differ only after an emoji or another character outside the BMP
+    private static List<Extractor.Entity> inCodePoints(final String text, final List<Extractor.Entity> entities) {
+        if (! entities.isEmpty() && text.length() != text.codePointCount(0, text.length())) {
+            TWITTER_EXTRACTOR.modifyIndicesFromUTF16ToToUnicode(text, entities);
+        }
+        return entities;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.place;
+
+import java.util.Arrays;
+
+/**
+ * Geohashes: the cells of a grid over the globe, named by strings of base-32
+ * characters, where each character splits the cell named by those before it
+ * into 32. Nearby points usually share a prefix, and every point in a cell
+ * gets the same hash, so they make good keys for caching anything that
+ * varies slowly with location.
+ * <p>
+ * A hash of 5 characters is a cell about 5km across, 6 about 1km and 7
+ * about 150m.
+ */
+public final class Geohash {
+
+    public static final int MAX_PRECISION = 12;
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+    private static final int[] DECODE = new int[128];
+
+    static {
+        Arrays.fill(DECODE, -1);
+        for (int i = 0; i < BASE32.length; i++) {
+            DECODE[BASE32[i]] = i;
+        }
+    }
+
+    private Geohash() {}
+
+    /**
+     * @param latitude The point's latitude, in [-90, 90].
+     * @param longitude The point's longitude, in [-180, 180].
+     * @param precision The number of characters, from 1 to {@link #MAX_PRECISION}.
+     * @return The hash of the cell containing the point.
+     */
+    public static String encode(final double latitude, final double longitude, final int precision) {
+        if (precision < 1 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("precision[" + precision + "] must be in [1," + MAX_PRECISION + "]");
+        }
+        if (! (latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180)) {
+            throw new IllegalArgumentException("(" + latitude + "," + longitude + ") is not on the globe");
+        }
+        double minLat = -90, maxLat = 90, minLon = -180, maxLon = 180;
+        final char[] hash = new char[precision];
+        boolean even = true; // bits alternate, starting with longitude
+        for (int c = 0; c < precision; c++) {
+            int value = 0;
+            for (int bit = 0; bit < 5; bit++) {
+                if (even) {
+                    final double mid = (minLon + maxLon) / 2;
+                    if (longitude >= mid) {
+                        value = value << 1 | 1;
+                        minLon = mid;
+                    } else {
+                        value <<= 1;
+                        maxLon = mid;
+                    }
+                } else {
+                    final double mid = (minLat + maxLat) / 2;
+                    if (latitude >= mid) {
+                        value = value << 1 | 1;
+                        minLat = mid;
+                    } else {
+                        value <<= 1;
+                        maxLat = mid;
+                    }
+                }
+                even = ! even;
+            }
+            hash[c] = BASE32[value];
+        }
+        return new String(hash);
+    }
+
+    /**
+     * @param hash A geohash.
+     * @return The cell's bounds, as {min latitude, min longitude, max latitude, max longitude}.
+     * @throws IllegalArgumentException If the hash isn't a geohash.
+     */
+    public static double[] bounds(final String hash) {
+        if (hash.isEmpty() || hash.length() > MAX_PRECISION) {
+            throw new IllegalArgumentException("Not a geohash: '" + hash + "'");
+        }
+        double minLat = -90, maxLat = 90, minLon = -180, maxLon = 180;
+        boolean even = true;
+        for (int c = 0; c < hash.length(); c++) {
+            final char ch = hash.charAt(c);
+            final int value = ch < DECODE.length ? DECODE[ch] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("Not a geohash: '" + hash + "'");
+            }
+            for (int bit = 4; bit >= 0; bit--) {
+                final boolean set = (value >> bit & 1) != 0;
+                if (even) {
+                    final double mid = (minLon + maxLon) / 2;
+                    if (set) minLon = mid; else maxLon = mid;
+                } else {
+                    final double mid = (minLat + maxLat) / 2;
+                    if (set) minLat = mid; else maxLat = mid;
+                }
+                even = ! even;
+            }
+        }
+        return new double[]{minLat, minLon, maxLat, maxLon};
+    }
+
+    /**
+     * @param hash A geohash.
+     * @return The centre of the cell, as {latitude, longitude}.
+     */
+    public static double[] centre(final String hash) {
+        final double[] b = bounds(hash);
+        return new double[]{(b[0] + b[2]) / 2, (b[1] + b[3]) / 2};
+    }
+}
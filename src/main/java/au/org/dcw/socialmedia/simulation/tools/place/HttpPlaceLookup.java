@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.place;
+
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Looks places up with anything that answers like Twitter's
+ * {@code geo/search} API, i.e. {@code GET url?lat=..&long=..} returning
+ * {@code {"result":{"places":[...]}}}, without authenticating. This is meant
+ * for local stand-ins, such as the {@code serve} command's
+ * {@code /geo/search.json}, so that enrichment can be tried out without
+ * Twitter credentials or rate limits.
+ */
+public class HttpPlaceLookup implements PlaceLookup {
+
+    private static final int TIMEOUT_MILLIS = 30_000;
+
+    private final String url;
+
+    /**
+     * @param url The search endpoint, e.g. {@code http://localhost:8080/geo/search.json}.
+     */
+    public HttpPlaceLookup(final String url) {
+        this.url = url;
+    }
+
+    @Override
+    public JsonNode placeAt(final double latitude, final double longitude) throws IOException {
+        final String query = (url.contains("?") ? "&" : "?") + "lat=" + latitude + "&long=" + longitude;
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url + query).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        final int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            final String message = connection.getResponseMessage();
+            connection.disconnect();
+            throw new IOException(
+                "Failed asking " + url + " for a 'place' at (" + latitude + "," + longitude + "): " +
+                status + " " + message
+            );
+        }
+        // closing the stream, rather than disconnecting, lets the connection be reused
+        try (InputStream in = connection.getInputStream()) {
+            final JsonNode places = Tweets.JSON.readTree(in).path("result").path("places");
+            return places.size() > 0 ? places.get(0) : null;
+        }
+    }
+}
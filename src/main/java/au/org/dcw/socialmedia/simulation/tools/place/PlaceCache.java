@@ -0,0 +1,155 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.place;
+
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the place in each geohash cell, in two tiers: the most recently
+ * used places, already parsed, and every place ever looked up, as JSON text,
+ * optionally kept in a file so the next run needn't look them up again.
+ * Cells known to have no place are remembered too.
+ * <p>
+ * The file has a line per cell, of the geohash, a tab and the place's JSON
+ * (or {@code null}). Lines are only ever appended, and later lines win, so
+ * an interrupted run loses nothing it had already looked up.
+ * <p>
+ * All methods are thread-safe.
+ */
+public class PlaceCache implements Closeable {
+
+    private final Map<String, JsonNode> recent;
+    private final Map<String, String> stored = new HashMap<>();
+    private final Writer file;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * @param capacity The number of parsed places to keep.
+     * @param path The file to load places from and save new ones to, or null
+     *             to remember them only until the cache is closed.
+     * @throws IOException If the file can't be read or written.
+     */
+    public PlaceCache(final int capacity, final Path path) throws IOException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity[" + capacity + "] must be at least 1");
+        }
+        this.recent = new LinkedHashMap<String, JsonNode>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, JsonNode> eldest) {
+                return size() > capacity;
+            }
+        };
+        if (path == null) {
+            this.file = null;
+            return;
+        }
+        if (Files.exists(path)) {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final int tab = line.indexOf('\t');
+                    if (tab > 0) {
+                        stored.put(line.substring(0, tab), line.substring(tab + 1));
+                    }
+                }
+            }
+        }
+        this.file = Files.newBufferedWriter(
+            path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND
+        );
+    }
+
+    /**
+     * @param cell A geohash.
+     * @return The place in the cell, a {@link NullNode} if it's known to have
+     * none, or null if it hasn't been looked up. Callers must not change it.
+     * @throws IOException If a stored place isn't valid JSON.
+     */
+    public synchronized JsonNode get(final String cell) throws IOException {
+        JsonNode place = recent.get(cell);
+        if (place == null) {
+            final String json = stored.get(cell);
+            if (json == null) {
+                misses++;
+                return null;
+            }
+            place = Tweets.JSON.readTree(json);
+            recent.put(cell, place);
+        }
+        hits++;
+        return place;
+    }
+
+    /**
+     * @param cell A geohash.
+     * @param place The place in the cell, or null if it has none.
+     * @throws IOException If the place can't be saved.
+     */
+    public synchronized void put(final String cell, final JsonNode place) throws IOException {
+        final JsonNode value = place != null ? place : NullNode.getInstance();
+        final String json = Tweets.JSON.writeValueAsString(value);
+        recent.put(cell, value);
+        stored.put(cell, json);
+        if (file != null) {
+            file.write(cell + "\t" + json + "\n");
+            file.flush();
+        }
+    }
+
+    /**
+     * @return The number of cells known, with or without places.
+     */
+    public synchronized int size() {
+        return stored.size();
+    }
+
+    /**
+     * @return The number of times a cell was found.
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of times a cell wasn't found.
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (file != null) {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.place;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+
+/**
+ * Somewhere to ask which place (in Twitter's sense: a neighbourhood, city,
+ * etc.) a point is in, such as Twitter's {@code geo/search} API.
+ */
+public interface PlaceLookup {
+
+    /**
+     * @param latitude The point's latitude.
+     * @param longitude The point's longitude.
+     * @return The place containing the point, as Twitter's JSON, or null if there's none.
+     * @throws IOException If the lookup fails, and may succeed if tried again later.
+     */
+    JsonNode placeAt(double latitude, double longitude) throws IOException;
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.place;
+
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.fasterxml.jackson.databind.JsonNode;
+import twitter4j.GeoLocation;
+import twitter4j.GeoQuery;
+import twitter4j.Place;
+import twitter4j.RateLimitStatus;
+import twitter4j.ResponseList;
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
+import twitter4j.TwitterFactory;
+import twitter4j.TwitterObjectFactory;
+import twitter4j.conf.Configuration;
+import twitter4j.conf.ConfigurationBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Looks places up with Twitter's {@code geo/search} API, one call at a time,
+ * waiting out the rate limit whenever it is about to be reached.
+ */
+public class TwitterPlaceLookup implements PlaceLookup {
+
+    private final Twitter twitter;
+    private long resumeAtMillis = 0;
+
+    /**
+     * @param config The credentials (and any proxy) to call Twitter with.
+     */
+    public TwitterPlaceLookup(final Configuration config) {
+        this.twitter = new TwitterFactory(config).getInstance();
+    }
+
+    @Override
+    public synchronized JsonNode placeAt(final double latitude, final double longitude) throws IOException {
+        doze();
+        try {
+            final ResponseList<Place> places = twitter.placesGeo().searchPlaces(
+                new GeoQuery(new GeoLocation(latitude, longitude))
+            );
+            noteLimit(places.getRateLimitStatus());
+            if (places.isEmpty()) {
+                return null;
+            }
+            final Place p = places.get(0); // no apparent order to places
+            return Tweets.JSON.readTree(TwitterObjectFactory.getRawJSON(p));
+        } catch (TwitterException e) {
+            noteLimit(e.getRateLimitStatus());
+            throw new IOException(
+                "Failed asking Twitter for a 'place' at (" + latitude + "," + longitude + "): " +
+                e.getErrorMessage() + " [" + e.getErrorCode() + "]", e
+            );
+        }
+    }
+
+    // if we're about to run out of calls, wait until the window resets before the next
+    private void noteLimit(final RateLimitStatus status) {
+        if (status != null && status.getRemaining() < 1) {
+            resumeAtMillis = System.currentTimeMillis() + (status.getSecondsUntilReset() + 5) * 1000L;
+        }
+    }
+
+    private void doze() throws IOException {
+        final long wait = resumeAtMillis - System.currentTimeMillis();
+        if (wait > 0) {
+            System.err.printf("Rate limit reached. Waiting %d seconds...%n", wait / 1000);
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting out Twitter's rate limit");
+            }
+        }
+    }
+
+    /**
+     * Builds the configuration for calling Twitter, from a file of OAuth
+     * credentials and, if there is one, {@code ./proxy.properties}.
+     *
+     * @param credentialsFile The properties file with the Twitter credentials in it.
+     * @param debug Whether Twitter4J should log what it's doing.
+     * @return The configuration.
+     * @throws IOException If the credentials can't be read.
+     */
+    public static Configuration makeConfig(final String credentialsFile, final boolean debug) throws IOException {
+        // TODO find a better name than credentials, given it might contain proxy info
+        final Properties credentials = loadCredentials(credentialsFile);
+
+        final ConfigurationBuilder conf = new ConfigurationBuilder();
+        conf.setTweetModeExtended(true);
+        conf.setJSONStoreEnabled(true)
+            .setDebugEnabled(debug)
+            .setOAuthConsumerKey(credentials.getProperty("oauth.consumerKey"))
+            .setOAuthConsumerSecret(credentials.getProperty("oauth.consumerSecret"))
+            .setOAuthAccessToken(credentials.getProperty("oauth.accessToken"))
+            .setOAuthAccessTokenSecret(credentials.getProperty("oauth.accessTokenSecret"));
+
+        final Properties proxies = loadProxyProperties();
+        if (proxies.containsKey("http.proxyHost")) {
+            conf.setHttpProxyHost(proxies.getProperty("http.proxyHost"))
+                .setHttpProxyPort(Integer.parseInt(proxies.getProperty("http.proxyPort")))
+                .setHttpProxyUser(proxies.getProperty("http.proxyUser"))
+                .setHttpProxyPassword(proxies.getProperty("http.proxyPassword"));
+        }
+
+        return conf.build();
+    }
+
+    /**
+     * Loads the given {@code credentialsFile} from disk.
+     *
+     * @param credentialsFile the properties file with the Twitter credentials in it
+     * @return A {@link Properties} map with the contents of credentialsFile
+     * @throws IOException if there's a problem reading the credentialsFile.
+     */
+    private static Properties loadCredentials(final String credentialsFile)
+        throws IOException {
+        final Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(Paths.get(credentialsFile))) {
+            properties.load(reader);
+        }
+        return properties;
+    }
+
+    /**
+     * Loads proxy information from <code>"./proxy.properties"</code> if it is
+     * present. If a proxy host and username are specified by no password, the
+     * user is asked to type it in via stdin.
+     *
+     * @return A {@link Properties} map with proxy credentials.
+     */
+    public static Properties loadProxyProperties() {
+        final Properties properties = new Properties();
+        final String proxyFile = "./proxy.properties";
+        if (new File(proxyFile).exists()) {
+            boolean success = true;
+            try (Reader fileReader = Files.newBufferedReader(Paths.get(proxyFile))) {
+                properties.load(fileReader);
+            } catch (IOException e) {
+                System.err.println("Attempted and failed to load " + proxyFile + ": " + e.getMessage());
+                success = false;
+            }
+            if (success && !properties.containsKey("http.proxyPassword")) {
+                char[] password = System.console().readPassword("Please type in your proxy password: ");
+                properties.setProperty("http.proxyPassword", new String(password));
+                properties.setProperty("https.proxyPassword", new String(password));
+            }
+            properties.forEach((k, v) -> System.setProperty(k.toString(), v.toString()));
+        }
+        return properties;
+    }
+}
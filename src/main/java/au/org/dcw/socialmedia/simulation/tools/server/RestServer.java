@@ -0,0 +1,243 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.server;
+
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A headless HTTP front end to a {@link TweetService} on localhost, taking
+ * and returning JSON:
+ * <ul>
+ *     <li>{@code GET /tweets/random[?count=N][&index=I]}: random tweets, as an array</li>
+ *     <li>{@code POST /tweets}: a new tweet from {@code screen_name}, {@code text},
+ *     {@code lat}/{@code lon} and {@code media_url}</li>
+ *     <li>{@code POST /tweets/edit}: {@code {"tweet": ..., "set": {"user.screen_name": ...}}}</li>
+ *     <li>{@code POST /tweets/geo}: {@code {"tweet": ..., "lat": ..., "lon": ...}}</li>
+ *     <li>{@code POST /entities}: {@code {"text": ..., "media": ...}}</li>
+ *     <li>{@code GET /geo/search.json?lat=..&long=..}: a made-up place, standing
+ *     in for Twitter's place search</li>
+ * </ul>
+ * Requests are handled by a fixed pool of workers with a bounded queue.
+ * When the queue is full, the thread accepting connections handles the
+ * request itself, which stops it accepting more until it's done.
+ */
+public class RestServer implements Closeable {
+
+    public static final int MAX_RANDOM_COUNT = 1000;
+
+    private static final ObjectReader READER = Tweets.JSON.readerFor(JsonNode.class);
+    private static final ObjectWriter WRITER = Tweets.JSON.writer();
+
+    private final TweetService service;
+    private final HttpServer server;
+    private final ThreadPoolExecutor workers;
+
+    /**
+     * @param port The port to listen on, or 0 for any free port.
+     * @param service The operations to serve.
+     * @param workerCount The number of worker threads.
+     * @param queueSize The number of requests that may wait for a worker.
+     * @throws IOException If the port can't be bound.
+     */
+    public RestServer(
+        final int port,
+        final TweetService service,
+        final int workerCount,
+        final int queueSize
+    ) throws IOException {
+        this.service = service;
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(
+            workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueSize),
+            r -> {
+                final Thread t = new Thread(r, "rest-worker-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        server.setExecutor(workers);
+        server.createContext("/", this::handle);
+    }
+
+    /**
+     * Starts serving, in the background.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * @return The port the server is listening on.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        workers.shutdownNow();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            final String method = exchange.getRequestMethod();
+            final String path = exchange.getRequestURI().getPath();
+            final JsonNode response;
+            switch (path) {
+                case "/tweets/random":
+                    requireMethod(method, "GET");
+                    response = random(parseQuery(exchange.getRequestURI().getRawQuery()));
+                    break;
+                case "/tweets":
+                    requireMethod(method, "POST");
+                    response = service.create(readBody(exchange));
+                    break;
+                case "/tweets/edit": {
+                    requireMethod(method, "POST");
+                    final JsonNode request = readBody(exchange);
+                    response = service.edit(request.path("tweet"), request.path("set"));
+                    break;
+                }
+                case "/tweets/geo": {
+                    requireMethod(method, "POST");
+                    final JsonNode request = readBody(exchange);
+                    response = service.geotag(request.path("tweet"), request);
+                    break;
+                }
+                case "/entities": {
+                    requireMethod(method, "POST");
+                    final JsonNode request = readBody(exchange);
+                    if (! request.path("text").isTextual()) {
+                        throw new IllegalArgumentException("Need the text to extract entities from");
+                    }
+                    response = service.entities(request.get("text").asText(), request.path("media"));
+                    break;
+                }
+                case "/geo/search.json": {
+                    requireMethod(method, "GET");
+                    final Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+                    if (! query.containsKey("lat") || ! query.containsKey("long")) {
+                        throw new IllegalArgumentException("Need lat and long");
+                    }
+                    response = service.places(
+                        Double.parseDouble(query.get("lat")), Double.parseDouble(query.get("long"))
+                    );
+                    break;
+                }
+                default:
+                    send(exchange, 404, TweetService.error("Unknown endpoint: " + path));
+                    return;
+            }
+            send(exchange, 200, response);
+        } catch (MethodNotAllowedException e) {
+            send(exchange, 405, TweetService.error(e.getMessage()));
+        } catch (JsonProcessingException e) {
+            send(exchange, 400, TweetService.error("Malformed JSON: " + e.getOriginalMessage()));
+        } catch (IllegalArgumentException e) { // includes NumberFormatException
+            send(exchange, 400, TweetService.error(e.getMessage()));
+        } catch (RuntimeException e) {
+            send(exchange, 500, TweetService.error(e.toString()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private JsonNode random(final Map<String, String> query) {
+        final int count = Integer.parseInt(query.getOrDefault("count", "1"));
+        if (count < 1 || count > MAX_RANDOM_COUNT) {
+            throw new IllegalArgumentException("count must be between 1 and " + MAX_RANDOM_COUNT);
+        }
+        final Long index = query.containsKey("index") ? Long.parseLong(query.get("index")) : null;
+        final ArrayNode tweets = JsonNodeFactory.instance.arrayNode();
+        for (int i = 0; i < count; i++) {
+            tweets.add(service.random(index != null ? index + i : null));
+        }
+        return tweets;
+    }
+
+    private static JsonNode readBody(final HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            final JsonNode body = READER.readTree(in);
+            return body != null ? body : MissingNode.getInstance();
+        }
+    }
+
+    private static void send(final HttpExchange exchange, final int status, final JsonNode body) throws IOException {
+        final byte[] bytes = WRITER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // a malformed escape is an IllegalArgumentException, so a bad request
+    private static Map<String, String> parseQuery(final String query) throws UnsupportedEncodingException {
+        final Map<String, String> params = new HashMap<>();
+        if (query != null) {
+            for (final String pair : query.split("&")) {
+                final int eq = pair.indexOf('=');
+                if (eq > 0) {
+                    final String name = URLDecoder.decode(pair.substring(0, eq), "UTF-8");
+                    params.put(name, URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+                }
+            }
+        }
+        return params;
+    }
+
+    private static void requireMethod(final String method, final String expected) {
+        if (! method.equals(expected)) {
+            throw new MethodNotAllowedException("Use " + expected + ", not " + method);
+        }
+    }
+
+    private static class MethodNotAllowedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        MethodNotAllowedException(final String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.server;
+
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The {@code track} and {@code locations} predicates of a
+ * {@code statuses/filter} stream. As with Twitter, a tweet matches if it
+ * matches any predicate:
+ * <ul>
+ *     <li>{@code track} is a comma-separated list of phrases, each matching
+ *     when all of its space-separated words appear in the tweet's text (or
+ *     as a hashtag, mention or author), ignoring case and punctuation.</li>
+ *     <li>{@code locations} is a comma-separated list of
+ *     {@code sw_lon,sw_lat,ne_lon,ne_lat} bounding boxes, matching when the
+ *     tweet's coordinates fall inside one.</li>
+ * </ul>
+ * Filters with the same predicates are {@link #equals equal}, so clients
+ * that ask for the same thing can share a single test per tweet.
+ */
+public final class StreamFilter {
+
+    /** Lets every tweet through, for {@code statuses/sample}. */
+    public static final StreamFilter EVERYTHING = new StreamFilter(new ArrayList<>(), new double[0]);
+
+    private final List<String[]> phrases;
+    private final double[] boxes; // groups of sw_lon, sw_lat, ne_lon, ne_lat
+
+    private StreamFilter(final List<String[]> phrases, final double[] boxes) {
+        this.phrases = phrases;
+        this.boxes = boxes;
+    }
+
+    /**
+     * @param params The request's (decoded) parameters.
+     * @return The filter they describe.
+     * @throws IllegalArgumentException If the parameters are malformed or ask for nothing.
+     */
+    public static StreamFilter parse(final Map<String, String> params) {
+        final List<String[]> phrases = new ArrayList<>();
+        final String track = params.get("track");
+        if (track != null) {
+            for (final String phrase : track.split(",")) {
+                final String[] words = Tweets.words(phrase).toArray(new String[0]);
+                if (words.length > 0) {
+                    Arrays.sort(words);
+                    phrases.add(words);
+                }
+            }
+        }
+        phrases.sort((a, b) -> Arrays.toString(a).compareTo(Arrays.toString(b)));
+
+        double[] boxes = new double[0];
+        final String locations = params.get("locations");
+        if (locations != null && ! locations.trim().isEmpty()) {
+            final String[] parts = locations.split(",");
+            if (parts.length % 4 != 0) {
+                throw new IllegalArgumentException("locations needs groups of sw_lon,sw_lat,ne_lon,ne_lat");
+            }
+            boxes = new double[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                try {
+                    boxes[i] = Double.parseDouble(parts[i].trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Bad coordinate in locations: " + parts[i]);
+                }
+            }
+        }
+
+        if (phrases.isEmpty() && boxes.length == 0) {
+            throw new IllegalArgumentException("Need track or locations to filter by");
+        }
+        return new StreamFilter(phrases, boxes);
+    }
+
+    /**
+     * @param tweet The tweet to test.
+     * @return True if the tweet should be sent.
+     */
+    public boolean matches(final Tokens tweet) {
+        if (this == EVERYTHING) {
+            return true;
+        }
+        for (final String[] phrase : phrases) {
+            boolean all = true;
+            for (final String word : phrase) {
+                if (! tweet.words.contains(word)) {
+                    all = false;
+                    break;
+                }
+            }
+            if (all) return true;
+        }
+        if (tweet.hasPoint) {
+            for (int i = 0; i < boxes.length; i += 4) {
+                if (tweet.lon >= boxes[i] && tweet.lat >= boxes[i + 1] &&
+                    tweet.lon <= boxes[i + 2] && tweet.lat <= boxes[i + 3]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (! (o instanceof StreamFilter)) return false;
+        final StreamFilter other = (StreamFilter) o;
+        if (phrases.size() != other.phrases.size() || ! Arrays.equals(boxes, other.boxes)) return false;
+        for (int i = 0; i < phrases.size(); i++) {
+            if (! Arrays.equals(phrases.get(i), other.phrases.get(i))) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = Arrays.hashCode(boxes);
+        for (final String[] phrase : phrases) {
+            h = 31 * h + Arrays.hashCode(phrase);
+        }
+        return h;
+    }
+
+    /**
+     * The parts of a tweet that filters look at, worked out once per tweet
+     * however many filters test it.
+     */
+    public static final class Tokens {
+        private final Set<String> words;
+        private final boolean hasPoint;
+        private final double lon;
+        private final double lat;
+
+        public Tokens(final JsonNode tweet) {
+            words = new HashSet<>(Tweets.words(tweet.path("text").asText("")));
+            words.addAll(Tweets.words(tweet.path("user").path("screen_name").asText("")));
+            final JsonNode point = tweet.path("coordinates").path("coordinates");
+            hasPoint = point.isArray() && point.size() == 2;
+            lon = hasPoint ? point.get(0).asDouble() : Double.NaN;
+            lat = hasPoint ? point.get(1).asDouble() : Double.NaN;
+        }
+    }
+}
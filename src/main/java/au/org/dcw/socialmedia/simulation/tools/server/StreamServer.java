@@ -0,0 +1,545 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.server;
+
+import au.org.dcw.socialmedia.simulation.tools.gen.IdGenerator;
+import au.org.dcw.socialmedia.simulation.tools.gen.TweetSource;
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A stand-in for Twitter's streaming API on localhost, serving generated
+ * tweets over chunked HTTP to any number of clients from a single thread
+ * with non-blocking I/O.
+ * <p>
+ * Clients {@code GET} or {@code POST} {@code /1.1/statuses/filter.json}
+ * with {@code track} and/or {@code locations} parameters, or
+ * {@code /1.1/statuses/sample.json} for every tweet. Each tweet is released
+ * when the wall clock reaches its timestamp, serialised once, and queued for
+ * every client whose filter it matches, one {@code \r\n}-delimited tweet per
+ * chunk. Blank keep-alive lines are sent to idle clients, as Twitter does.
+ * <p>
+ * Each client's queue is limited, so one slow client can't hold up the rest:
+ * once its queue is full, new tweets are either dropped for that client or
+ * the client is disconnected, according to the {@link SlowClientPolicy}.
+ */
+public class StreamServer implements Closeable {
+
+    /** What to do with a client that can't keep up. */
+    public enum SlowClientPolicy {
+        /** Skip tweets for the client until its queue has room. */
+        DROP,
+        /** Disconnect the client, as Twitter does. */
+        DISCONNECT
+    }
+
+    private static final int MAX_REQUEST_BYTES = 8192;
+    private static final int MAX_TWEETS_PER_ROUND = 1024; // so I/O isn't starved when catching up
+    private static final int MAX_BUFFERS_PER_WRITE = 64;
+    private static final long KEEP_ALIVE_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private static final byte[] KEEP_ALIVE_CHUNK = "2\r\n\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STREAM_HEADERS = ("HTTP/1.1 200 OK\r\n" +
+        "Content-Type: application/json\r\n" +
+        "Transfer-Encoding: chunked\r\n" +
+        "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+
+    private final ObjectWriter tweetWriter = Tweets.JSON.writer();
+    private final TweetSource source;
+    private final SlowClientPolicy policy;
+    private final int clientBufferBytes;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final List<Client> clients = new ArrayList<>();
+    private final List<Client> dirty = new ArrayList<>();
+    private final ByteBuffer scratch = ByteBuffer.allocate(MAX_REQUEST_BYTES);
+    private final Map<StreamFilter, Boolean> matchesThisTweet = new HashMap<>();
+
+    private volatile boolean running = true;
+    private ObjectNode upcoming;
+    private long upcomingMillis;
+
+    private long reportEveryNanos = 0;
+    private long tweetsReleased = 0;
+    private long bytesSent = 0;
+    private long tweetsDropped = 0;
+    private long slowDisconnects = 0;
+    private long lagMillis = 0;
+
+    /**
+     * Binds to the loopback address.
+     *
+     * @param port The port to listen on, or 0 for any free port.
+     * @param source Where to get tweets from.
+     * @param policy What to do with clients that can't keep up.
+     * @param clientBufferBytes How many bytes may be queued for each client.
+     * @throws IOException If the port can't be bound.
+     */
+    public StreamServer(
+        final int port,
+        final TweetSource source,
+        final SlowClientPolicy policy,
+        final int clientBufferBytes
+    ) throws IOException {
+        this.source = source;
+        this.policy = policy;
+        this.clientBufferBytes = clientBufferBytes;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * @param seconds Seconds between progress reports to stderr, or 0 for none.
+     * @return This server.
+     */
+    public StreamServer withReportEvery(final double seconds) {
+        this.reportEveryNanos = (long) (seconds * 1e9);
+        return this;
+    }
+
+    /**
+     * @return The port the server is listening on.
+     * @throws IOException If the port can't be determined.
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Serves clients until {@link #close() closed}.
+     *
+     * @throws IOException If the server itself fails (client failures just
+     * disconnect the client).
+     * @throws InterruptedException If interrupted while waiting for tweets.
+     */
+    public void run() throws IOException, InterruptedException {
+        final long started = System.nanoTime();
+        long nextReport = started + reportEveryNanos;
+        long nextKeepAliveCheck = started + TimeUnit.SECONDS.toNanos(1);
+        long lastReportTweets = 0;
+        try {
+            while (running) {
+                final long waitMillis = releaseDueTweets();
+                flushDirty(); // before we might block
+                if (waitMillis == 0) {
+                    selector.selectNow();
+                } else {
+                    selector.select(Math.min(waitMillis, 1000));
+                }
+                handleSelected();
+
+                final long now = System.nanoTime();
+                if (now >= nextKeepAliveCheck) {
+                    sendKeepAlives(now);
+                    nextKeepAliveCheck = now + TimeUnit.SECONDS.toNanos(1);
+                }
+                flushDirty();
+                if (reportEveryNanos > 0 && now >= nextReport) {
+                    System.err.printf("%8.1fs: %d clients, %d tweets (%.0f/s), %d MB sent, %d dropped, " +
+                            "%d slow clients disconnected, lag %dms%n",
+                        (now - started) / 1e9, clients.size(), tweetsReleased,
+                        (tweetsReleased - lastReportTweets) * 1e9 / reportEveryNanos, bytesSent >> 20,
+                        tweetsDropped, slowDisconnects, lagMillis);
+                    lastReportTweets = tweetsReleased;
+                    nextReport += reportEveryNanos;
+                }
+            }
+        } finally {
+            for (final Client client : new ArrayList<>(clients)) {
+                client.close();
+            }
+            serverChannel.close();
+            selector.close();
+        }
+    }
+
+    /**
+     * Stops the server, from any thread.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    // Tweets
+
+    /**
+     * @return Milliseconds until the next tweet is due, or 0 if some are
+     * already due but were left for the next round.
+     */
+    private long releaseDueTweets() throws IOException, InterruptedException {
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < MAX_TWEETS_PER_ROUND; i++) {
+            if (upcoming == null) {
+                upcoming = source.next();
+                upcomingMillis = IdGenerator.millisOf(upcoming.get("id").asLong());
+            }
+            if (upcomingMillis > now) {
+                return upcomingMillis - now;
+            }
+            release(upcoming);
+            lagMillis = now - upcomingMillis;
+            upcoming = null;
+        }
+        return 0;
+    }
+
+    private void release(final ObjectNode tweet) throws IOException {
+        tweetsReleased++;
+        if (clients.isEmpty()) {
+            return;
+        }
+        final byte[] chunk = chunkOf(tweetWriter.writeValueAsBytes(tweet));
+        StreamFilter.Tokens tokens = null;
+        matchesThisTweet.clear();
+        for (int i = clients.size() - 1; i >= 0; i--) { // may disconnect as we go
+            final Client client = clients.get(i);
+            if (client.filter == null) {
+                continue; // not streaming yet
+            }
+            Boolean matches = matchesThisTweet.get(client.filter);
+            if (matches == null) {
+                if (tokens == null && client.filter != StreamFilter.EVERYTHING) {
+                    tokens = new StreamFilter.Tokens(tweet);
+                }
+                matches = client.filter.matches(tokens);
+                matchesThisTweet.put(client.filter, matches);
+            }
+            if (matches) {
+                client.offer(chunk);
+            }
+        }
+    }
+
+    private static byte[] chunkOf(final byte[] json) {
+        final byte[] size = Integer.toHexString(json.length + 2).getBytes(StandardCharsets.US_ASCII);
+        final byte[] chunk = new byte[size.length + 2 + json.length + 4];
+        System.arraycopy(size, 0, chunk, 0, size.length);
+        int pos = size.length;
+        chunk[pos++] = '\r';
+        chunk[pos++] = '\n';
+        System.arraycopy(json, 0, chunk, pos, json.length);
+        pos += json.length;
+        chunk[pos++] = '\r';
+        chunk[pos++] = '\n';
+        chunk[pos++] = '\r';
+        chunk[pos] = '\n';
+        return chunk;
+    }
+
+    private void sendKeepAlives(final long now) {
+        for (final Client client : clients) {
+            if (client.filter != null && client.queue.isEmpty() && now - client.lastQueuedNanos > KEEP_ALIVE_NANOS) {
+                client.offer(KEEP_ALIVE_CHUNK);
+            }
+        }
+    }
+
+    // I/O
+
+    private void handleSelected() {
+        final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            final SelectionKey key = keys.next();
+            keys.remove();
+            if (! key.isValid()) {
+                continue;
+            }
+            if (key.isAcceptable()) {
+                accept();
+                continue;
+            }
+            final Client client = (Client) key.attachment();
+            try {
+                if (key.isReadable()) {
+                    client.read();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    client.flush();
+                }
+            } catch (IOException e) {
+                client.close(); // most likely the client went away
+            }
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                final Client client = new Client(channel);
+                client.key = channel.register(selector, SelectionKey.OP_READ, client);
+                clients.add(client);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to accept a client: " + e.getMessage());
+        }
+    }
+
+    private void flushDirty() {
+        for (final Client client : dirty) {
+            try {
+                client.flush();
+            } catch (IOException e) {
+                client.close();
+            }
+        }
+        dirty.clear();
+    }
+
+    private static Map<String, String> parseParams(final String encoded) throws UnsupportedEncodingException {
+        final Map<String, String> params = new HashMap<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return params;
+        }
+        for (final String pair : encoded.split("&")) {
+            final int eq = pair.indexOf('=');
+            final String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+            final String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+            params.merge(name, value, (a, b) -> a + "," + b);
+        }
+        return params;
+    }
+
+    private static byte[] errorResponse(final int status, final String reason, final String message) {
+        final byte[] body = (message + "\r\n").getBytes(StandardCharsets.UTF_8);
+        final String head = "HTTP/1.1 " + status + " " + reason + "\r\n" +
+            "Content-Type: text/plain; charset=utf-8\r\n" +
+            "Content-Length: " + body.length + "\r\n" +
+            "Connection: close\r\n\r\n";
+        final byte[] headBytes = head.getBytes(StandardCharsets.US_ASCII);
+        final byte[] response = new byte[headBytes.length + body.length];
+        System.arraycopy(headBytes, 0, response, 0, headBytes.length);
+        System.arraycopy(body, 0, response, headBytes.length, body.length);
+        return response;
+    }
+
+    /** One connection, from its request through to the stream of tweets. */
+    private final class Client {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST_BYTES);
+
+        private StreamFilter filter; // null until the request has been accepted
+        private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+        private final ByteBuffer[] gather = new ByteBuffer[MAX_BUFFERS_PER_WRITE];
+        private long queuedBytes = 0;
+        private long lastQueuedNanos = System.nanoTime();
+        private boolean closeWhenDrained = false;
+        private boolean closed = false;
+
+        Client(final SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void offer(final byte[] bytes) {
+            if (closed || closeWhenDrained) {
+                return;
+            }
+            if (queuedBytes + bytes.length > clientBufferBytes && ! queue.isEmpty()) {
+                // it's only slow if the socket won't take what's queued
+                try {
+                    flush();
+                } catch (IOException e) {
+                    close();
+                    return;
+                }
+            }
+            if (closed) {
+                return;
+            }
+            if (queuedBytes + bytes.length > clientBufferBytes && ! queue.isEmpty()) {
+                if (policy == SlowClientPolicy.DISCONNECT) {
+                    slowDisconnects++;
+                    close();
+                } else {
+                    tweetsDropped++;
+                }
+                return;
+            }
+            if (queue.isEmpty()) {
+                dirty.add(this);
+            }
+            queue.addLast(ByteBuffer.wrap(bytes));
+            queuedBytes += bytes.length;
+            lastQueuedNanos = System.nanoTime();
+        }
+
+        void flush() throws IOException {
+            if (closed) return;
+            while (! queue.isEmpty()) {
+                int n = 0;
+                for (final ByteBuffer buffer : queue) {
+                    gather[n++] = buffer;
+                    if (n == gather.length) break;
+                }
+                final long written = channel.write(gather, 0, n);
+                bytesSent += written;
+                queuedBytes -= written;
+                while (! queue.isEmpty() && ! queue.peekFirst().hasRemaining()) {
+                    queue.removeFirst();
+                }
+                if (written == 0) {
+                    break; // the socket's buffer is full
+                }
+            }
+            Arrays.fill(gather, null);
+            if (queue.isEmpty()) {
+                if (closeWhenDrained) {
+                    close();
+                } else if (key.isValid()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } else if (key.isValid()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        }
+
+        void read() throws IOException {
+            if (request == null) {
+                // streaming, so anything more from the client is ignored, but we must notice it leaving
+                scratch.clear();
+                if (channel.read(scratch) < 0) {
+                    close();
+                }
+                return;
+            }
+            if (channel.read(request) < 0) {
+                close();
+                return;
+            }
+            final String text = new String(request.array(), 0, request.position(), StandardCharsets.ISO_8859_1);
+            final int headerEnd = text.indexOf("\r\n\r\n");
+            if (headerEnd < 0) {
+                if (! request.hasRemaining()) {
+                    reject(431, "Request Header Fields Too Large", "Request too large");
+                }
+                return;
+            }
+            final String[] lines = text.substring(0, headerEnd).split("\r\n");
+            int contentLength = 0;
+            for (int i = 1; i < lines.length; i++) {
+                final int colon = lines[i].indexOf(':');
+                if (colon > 0 && lines[i].substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                    try {
+                        contentLength = Integer.parseInt(lines[i].substring(colon + 1).trim());
+                    } catch (NumberFormatException e) {
+                        reject(400, "Bad Request", "Bad Content-Length");
+                        return;
+                    }
+                }
+            }
+            final int bodyStart = headerEnd + 4;
+            if (bodyStart + contentLength > request.capacity()) {
+                reject(413, "Payload Too Large", "Request too large");
+                return;
+            }
+            if (text.length() < bodyStart + contentLength) {
+                return; // wait for the rest of the body
+            }
+            respond(lines[0], text.substring(bodyStart, bodyStart + contentLength));
+        }
+
+        private void respond(final String requestLine, final String body) throws IOException {
+            request = null;
+            final String[] parts = requestLine.split(" ");
+            if (parts.length != 3 || ! (parts[0].equals("GET") || parts[0].equals("POST"))) {
+                reject(405, "Method Not Allowed", "Only GET and POST are supported");
+                return;
+            }
+            final int q = parts[1].indexOf('?');
+            final String path = q < 0 ? parts[1] : parts[1].substring(0, q);
+            final Map<String, String> params;
+            try {
+                params = parseParams(q < 0 ? null : parts[1].substring(q + 1));
+                if (parts[0].equals("POST")) {
+                    parseParams(body).forEach((k, v) -> params.merge(k, v, (a, b) -> a + "," + b));
+                }
+            } catch (IllegalArgumentException e) { // a malformed %-escape
+                reject(400, "Bad Request", "Malformed parameters: " + e.getMessage());
+                return;
+            }
+
+            final String endpoint = path.toLowerCase(Locale.ROOT);
+            if (endpoint.endsWith("statuses/sample.json")) {
+                filter = StreamFilter.EVERYTHING;
+            } else if (endpoint.endsWith("statuses/filter.json")) {
+                try {
+                    filter = StreamFilter.parse(params);
+                } catch (IllegalArgumentException e) {
+                    reject(406, "Not Acceptable", e.getMessage());
+                    return;
+                }
+            } else {
+                reject(404, "Not Found", "Unknown endpoint: " + path);
+                return;
+            }
+            offer(STREAM_HEADERS);
+        }
+
+        private void reject(final int status, final String reason, final String message) {
+            request = null;
+            offer(errorResponse(status, reason, message));
+            closeWhenDrained = true;
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            clients.remove(this);
+            queue.clear();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (ClosedChannelException ignored) {
+                // already gone
+            } catch (IOException e) {
+                System.err.println("Failed to close a client: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.server;
+
+import au.org.dcw.socialmedia.simulation.tools.gen.IdGenerator;
+import au.org.dcw.socialmedia.simulation.tools.gen.TweetGenerator;
+import au.org.dcw.socialmedia.simulation.tools.model.CreatedAtFormatter;
+import au.org.dcw.socialmedia.simulation.tools.model.TweetModel;
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import au.org.dcw.socialmedia.simulation.tools.place.Geohash;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The operations behind the REST service, the same ones the editor performs
+ * on its tweet: making one up, editing fields by {@link TweetModel} path,
+ * extracting entities and geotagging, plus a stand-in for Twitter's place
+ * search. Each call works only on what it is given, so one instance serves
+ * any number of threads.
+ */
+public class TweetService {
+
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+    private static final int STAND_IN_PLACE_PRECISION = 5;
+
+    private final TweetGenerator generator;
+    private final AtomicLong nextIndex = new AtomicLong();
+    private final IdGenerator ids = new IdGenerator();
+    private final ThreadLocal<CreatedAtFormatter> createdAt = ThreadLocal.withInitial(CreatedAtFormatter::new);
+
+    /**
+     * @param generator Drafts random tweets. Only its thread-safe
+     *                  {@link TweetGenerator#draft(long)} is used.
+     */
+    public TweetService(final TweetGenerator generator) {
+        this.generator = generator;
+    }
+
+    /**
+     * @param index The position of the tweet to draft, for a reproducible
+     *              tweet, or null for the next one.
+     * @return A random tweet, timestamped now.
+     */
+    public ObjectNode random(final Long index) {
+        final ObjectNode tweet = generator.draft(index != null ? index : nextIndex.getAndIncrement());
+        stampNow(tweet);
+        return tweet;
+    }
+
+    /**
+     * Makes a tweet as the editor does, from the fields a person would fill in.
+     *
+     * @param request Any of {@code screen_name}, {@code text},
+     *                {@code lat}/{@code lon} and {@code media_url}.
+     * @return The new tweet.
+     * @throws IOException If the tweet can't be built.
+     * @throws IllegalArgumentException If the request is invalid.
+     */
+    public ObjectNode create(final JsonNode request) throws IOException {
+        final ObjectNode tweet = (ObjectNode) Tweets.JSON.readTree(Tweets.freshTweetJson("0", ""));
+        stampNow(tweet);
+        final TweetModel model = new TweetModel(tweet);
+        model.set("user.screen_name", request.path("screen_name").asText(""));
+        model.set("entities.media.[0].media_url_https", request.path("media_url").asText(""));
+        setText(model, request.path("text").asText(""));
+        if (request.has("lat") || request.has("lon")) {
+            geotag(tweet, request);
+        } else {
+            tweet.putNull("coordinates");
+        }
+        return tweet;
+    }
+
+    /**
+     * Sets fields of a tweet by path, e.g. {@code "user.screen_name"}. Setting
+     * {@code text} or {@code full_text} updates the other, {@code truncated}
+     * and the {@code entities} too, as the editor does.
+     *
+     * @param tweet The tweet to edit, which is changed in place.
+     * @param edits The paths to set, and their new values.
+     * @return The edited tweet.
+     * @throws IllegalArgumentException If a path doesn't lead anywhere.
+     */
+    public JsonNode edit(final JsonNode tweet, final JsonNode edits) {
+        if (! tweet.isObject() || ! edits.isObject()) {
+            throw new IllegalArgumentException("Need a tweet object and an object of edits");
+        }
+        final TweetModel model = new TweetModel(tweet);
+        final Iterator<Map.Entry<String, JsonNode>> fields = edits.fields();
+        while (fields.hasNext()) {
+            final Map.Entry<String, JsonNode> edit = fields.next();
+            final String path = edit.getKey();
+            if (path.equals("text") || path.equals("full_text")) {
+                setText(model, edit.getValue().asText(""));
+                continue;
+            }
+            final int lastDot = path.lastIndexOf('.');
+            if (path.isEmpty() || path.startsWith("[") ||
+                (lastDot > 0 && ! model.get(path.substring(0, lastDot)).isObject())) {
+                throw new IllegalArgumentException("Can't set " + path + ": no such object in the tweet");
+            }
+            model.set(path, edit.getValue());
+        }
+        return tweet;
+    }
+
+    /**
+     * @param text The text of a tweet.
+     * @param media Media entities to carry across, or a missing node.
+     * @return The text's {@code entities}.
+     */
+    public JsonNode entities(final String text, final JsonNode media) {
+        return Tweets.extractEntitiesAsJsonNodeTree(text, media);
+    }
+
+    /**
+     * Sets a tweet's {@code geo} and {@code coordinates}.
+     *
+     * @param tweet The tweet to geotag, which is changed in place.
+     * @param location The {@code lat} and {@code lon} to tag it with.
+     * @return The geotagged tweet.
+     * @throws IllegalArgumentException If the location is missing or out of range.
+     */
+    public ObjectNode geotag(final JsonNode tweet, final JsonNode location) {
+        if (! tweet.isObject()) {
+            throw new IllegalArgumentException("Need a tweet object");
+        }
+        final JsonNode lat = location.path("lat");
+        final JsonNode lon = location.path("lon");
+        if (! lat.isNumber() || ! lon.isNumber()) {
+            throw new IllegalArgumentException("Need numeric lat and lon");
+        }
+        if (Math.abs(lat.asDouble()) > 90 || Math.abs(lon.asDouble()) > 180) {
+            throw new IllegalArgumentException("lat must be in [-90,90] and lon in [-180,180]");
+        }
+        final ObjectNode obj = (ObjectNode) tweet;
+        obj.set("geo", Tweets.makeLatLonJsonNode(lat.asDouble(), lon.asDouble()));
+        obj.set("coordinates", Tweets.makeLatLonJsonNode(lon.asDouble(), lat.asDouble()));
+        return obj;
+    }
+
+    /**
+     * Stands in for Twitter's {@code geo/search}, for trying out place
+     * enrichment without credentials: the only place anywhere is a made-up
+     * neighbourhood covering the point's geohash cell (about 5km across),
+     * named after it.
+     *
+     * @param lat The point's latitude.
+     * @param lon The point's longitude.
+     * @return {@code {"result":{"places":[...]}}}, as Twitter would answer.
+     * @throws IllegalArgumentException If the point is out of range.
+     */
+    public ObjectNode places(final double lat, final double lon) {
+        if (! (Math.abs(lat) <= 90 && Math.abs(lon) <= 180)) {
+            throw new IllegalArgumentException("lat must be in [-90,90] and long in [-180,180]");
+        }
+        final String cell = Geohash.encode(lat, lon, STAND_IN_PLACE_PRECISION);
+        final double[] b = Geohash.bounds(cell);
+        final StringBuilder hex = new StringBuilder("000000"); // Twitter's are 16 hex digits
+        for (final char c : cell.toCharArray()) {
+            hex.append(String.format("%02x", (int) c));
+        }
+        final String id = hex.toString();
+
+        final ObjectNode place = NODES.objectNode();
+        place.put("id", id);
+        place.put("url", "https://api.twitter.com/1.1/geo/id/" + id + ".json");
+        place.put("place_type", "neighborhood");
+        place.put("name", "Cell " + cell);
+        place.put("full_name", "Cell " + cell + ", Simulated");
+        place.put("country_code", "XX");
+        place.put("country", "Simulated");
+        place.putArray("contained_within");
+        final ObjectNode box = place.putObject("bounding_box");
+        box.put("type", "Polygon");
+        final ArrayNode ring = box.putArray("coordinates").addArray();
+        ring.addArray().add(b[1]).add(b[0]);
+        ring.addArray().add(b[3]).add(b[0]);
+        ring.addArray().add(b[3]).add(b[2]);
+        ring.addArray().add(b[1]).add(b[2]);
+        place.putObject("attributes");
+
+        final ObjectNode response = NODES.objectNode();
+        response.putObject("result").putArray("places").add(place);
+        return response;
+    }
+
+    private void setText(final TweetModel model, final String text) {
+        final JsonNode media = model.root.path("entities").path("media");
+        model.set("text", text);
+        model.set("full_text", text);
+        model.set("truncated", text.length() > Tweets.TWITTER_OLD_MAX_LENGTH);
+        model.set("entities", Tweets.extractEntitiesAsJsonNodeTree(text, media));
+        final String mediaUrl = media.path(0).path("media_url_https").asText("");
+        if (! mediaUrl.isEmpty() && text.contains(mediaUrl)) {
+            final int start = text.indexOf(mediaUrl);
+            final ArrayNode indices = ((ObjectNode) media.get(0)).putArray("indices");
+            indices.add(start);
+            indices.add(start + mediaUrl.length());
+        }
+    }
+
+    private void stampNow(final ObjectNode tweet) {
+        final long id = ids.next(System.currentTimeMillis());
+        tweet.put("created_at", createdAt.get().format(IdGenerator.millisOf(id)));
+        tweet.put("id", id);
+        tweet.put("id_str", Long.toString(id));
+    }
+
+    static ObjectNode error(final String message) {
+        return NODES.objectNode().put("error", message);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.sim;
+
+import java.util.Arrays;
+
+/**
+ * The scheduler's priority queue: a binary min-heap of the next event time
+ * of each source of events, in primitive arrays, so scheduling allocates
+ * nothing. Each source has at most one event pending, so the heap never
+ * holds more entries than there are sources. Ties go to the lower-numbered
+ * source, so the order of events is fully determined by their times.
+ */
+final class EventQueue {
+
+    private double[] times = new double[16];
+    private int[] sources = new int[16];
+    private int size;
+
+    /**
+     * @param source The source of the event.
+     * @param time When it happens, in epoch milliseconds.
+     */
+    void add(final int source, final double time) {
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            sources = Arrays.copyOf(sources, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            final int parent = (i - 1) >>> 1;
+            if (! before(time, source, times[parent], sources[parent])) {
+                break;
+            }
+            times[i] = times[parent];
+            sources[i] = sources[parent];
+            i = parent;
+        }
+        times[i] = time;
+        sources[i] = source;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return The time of the earliest event.
+     */
+    double peekTime() {
+        return times[0];
+    }
+
+    /**
+     * @return The source of the earliest event.
+     */
+    int peekSource() {
+        return sources[0];
+    }
+
+    /**
+     * Removes the earliest event.
+     */
+    void remove() {
+        final double time = times[--size];
+        final int source = sources[size];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && before(times[child + 1], sources[child + 1], times[child], sources[child])) {
+                child++;
+            }
+            if (! before(times[child], sources[child], time, source)) {
+                break;
+            }
+            times[i] = times[child];
+            sources[i] = sources[child];
+            i = child;
+        }
+        times[i] = time;
+        sources[i] = source;
+    }
+
+    private static boolean before(final double time, final int source, final double otherTime, final int otherSource) {
+        return time < otherTime || time == otherTime && source < otherSource;
+    }
+}
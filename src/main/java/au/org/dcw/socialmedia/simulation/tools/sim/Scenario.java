@@ -0,0 +1,249 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.sim;
+
+import au.org.dcw.socialmedia.simulation.tools.gen.CascadeSource;
+import au.org.dcw.socialmedia.simulation.tools.gen.Randomness;
+import au.org.dcw.socialmedia.simulation.tools.gen.TweetSource;
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A whole synthetic event, described in one JSON file with snake_case keys,
+ * for a {@link Simulation} to run:
+ * <ul>
+ *     <li>{@code regions}, by name: circles in which to geotag tweets, given
+ *     by the {@code latitude} and {@code longitude} of their centre, as on
+ *     the editor's map, and a {@code radius_km}.</li>
+ *     <li>{@code populations}: groups of users posting at their own
+ *     {@code rate_per_second}, optionally following a {@code diurnal} cycle
+ *     and with {@code bursts}, geotagged in a {@code region}, with photos,
+ *     and with hashtags, mentions and URLs of their own.</li>
+ *     <li>{@code campaigns}: hashtags pushed by some populations (all of
+ *     them by default) at a {@code rate_per_second} of their own, on top of
+ *     their usual tweets, for a while.</li>
+ *     <li>{@code cascades}: the shares of tweets that reply to, retweet and
+ *     quote others.</li>
+ * </ul>
+ * Times within the scenario are in minutes from its {@code start}, an
+ * ISO-8601 date and time with an offset, e.g. "2017-10-01T09:00:00+10:30".
+ * Unknown keys are rejected, so that a misspelt one doesn't go unnoticed.
+ */
+public class Scenario {
+
+    private static final ObjectMapper SCENARIO_MAPPER = Tweets.JSON.copy()
+        .setPropertyNamingStrategy(PropertyNamingStrategy.SNAKE_CASE)
+        .setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE)
+        .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+
+    String start;
+    double durationMinutes = 60.0;
+    Long seed;
+    Map<String, Region> regions = new LinkedHashMap<>();
+    List<Population> populations = new ArrayList<>();
+    List<Campaign> campaigns = new ArrayList<>();
+    Cascades cascades = new Cascades();
+
+    private long startMillis;
+
+    static class Region {
+        double latitude;
+        double longitude;
+        double radiusKm = 10.0;
+    }
+
+    static class Population {
+        String name;
+        int users = 1000;
+        double authorSkew = 0.0;
+        double ratePerSecond = 1.0;
+        boolean diurnal = false;
+        String diurnalZone = "UTC";
+        List<Burst> bursts = new ArrayList<>();
+        String region;
+        Double geoFraction; // all of them if there's a region
+        double mediaFraction = 0.0;
+        int hashtags = 0;
+        double hashtagsPerTweet = 1.0;
+        double mentionsPerTweet = 0.0;
+        int urls = 0;
+        double urlsPerTweet = 0.5;
+        double keySkew = 1.0;
+    }
+
+    static class Burst {
+        double startMinute;
+        double durationMinutes;
+        double factor = 1.0;
+    }
+
+    static class Campaign {
+        String name;
+        List<String> hashtags = new ArrayList<>();
+        List<String> populations = new ArrayList<>(); // all of them if empty
+        double startMinute = 0.0;
+        Double durationMinutes; // until the end if null
+        double ratePerSecond = 1.0;
+    }
+
+    static class Cascades {
+        double replyShare = 0.0;
+        double retweetShare = 0.0;
+        double quoteShare = 0.0;
+        int attentionWindow = CascadeSource.DEFAULT_ATTENTION_WINDOW;
+    }
+
+    /**
+     * @param file A scenario file.
+     * @return The scenario.
+     * @throws IOException If the file can't be read or parsed.
+     * @throws IllegalArgumentException If the scenario doesn't make sense.
+     */
+    public static Scenario load(final Path file) throws IOException {
+        final Scenario scenario;
+        try {
+            scenario = SCENARIO_MAPPER.readValue(file.toFile(), Scenario.class);
+        } catch (JsonMappingException e) {
+            throw new IllegalArgumentException(file + ": " + e.getOriginalMessage(), e);
+        }
+        scenario.validate();
+        return scenario;
+    }
+
+    private void validate() {
+        try {
+            startMillis = start != null
+                ? OffsetDateTime.parse(start).toInstant().toEpochMilli()
+                : System.currentTimeMillis();
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("start must be like 2017-10-01T09:00:00+10:30, not " + start);
+        }
+        require(durationMinutes > 0, "duration_minutes must be positive");
+        require(! populations.isEmpty(), "There must be at least one population");
+        regions.forEach((name, region) -> require(
+            Math.abs(region.latitude) <= 90 && Math.abs(region.longitude) <= 180 && region.radiusKm >= 0,
+            "Region " + name + " must have a latitude and longitude in degrees, and a non-negative radius_km"
+        ));
+
+        final Set<String> names = new HashSet<>();
+        for (final Population p : populations) {
+            require(p.name != null && names.add(p.name), "Every population needs a name of its own");
+            require(p.users >= 1, p.name + ": users must be at least 1");
+            require(p.ratePerSecond >= 0, p.name + ": rate_per_second can't be negative");
+            require(p.authorSkew >= 0 && p.keySkew >= 0, p.name + ": author_skew and key_skew can't be negative");
+            require(p.region == null || regions.containsKey(p.region), p.name + ": no such region " + p.region);
+            final double geo = geoFraction(p);
+            require(geo >= 0 && geo <= 1 && p.mediaFraction >= 0 && p.mediaFraction <= 1,
+                p.name + ": geo_fraction and media_fraction must be in [0,1]");
+            require(geo == 0 || p.region != null, p.name + ": geo_fraction needs a region");
+            try {
+                ZoneId.of(p.diurnalZone);
+            } catch (DateTimeException e) {
+                throw new IllegalArgumentException(p.name + ": unknown diurnal_zone " + p.diurnalZone);
+            }
+            for (final Burst b : p.bursts) {
+                require(b.durationMinutes > 0 && b.factor >= 0,
+                    p.name + ": bursts need a positive duration_minutes and a non-negative factor");
+            }
+        }
+
+        final Set<String> campaignNames = new HashSet<>();
+        for (final Campaign c : campaigns) {
+            require(c.name != null && campaignNames.add(c.name), "Every campaign needs a name of its own");
+            require(! c.hashtags.isEmpty(), c.name + ": there must be at least one hashtag");
+            require(c.ratePerSecond > 0, c.name + ": rate_per_second must be positive");
+            require(c.startMinute >= 0 && (c.durationMinutes == null || c.durationMinutes > 0),
+                c.name + ": start_minute can't be negative, and duration_minutes must be positive");
+            for (final String p : c.populations) {
+                require(names.contains(p), c.name + ": no such population " + p);
+            }
+        }
+
+        final double shares = cascades.replyShare + cascades.retweetShare + cascades.quoteShare;
+        require(cascades.replyShare >= 0 && cascades.retweetShare >= 0 && cascades.quoteShare >= 0 && shares <= 1,
+            "cascades: the shares must be non-negative, and total at most 1");
+        require(cascades.attentionWindow >= 1, "cascades: attention_window must be at least 1");
+    }
+
+    private static void require(final boolean condition, final String message) {
+        if (! condition) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    static double geoFraction(final Population population) {
+        return population.geoFraction != null ? population.geoFraction : population.region != null ? 1.0 : 0.0;
+    }
+
+    /**
+     * @return The seed given in the file, or null for an arbitrary one.
+     */
+    public Long seed() {
+        return seed;
+    }
+
+    /**
+     * @return When the scenario starts, in epoch milliseconds.
+     */
+    public long startMillis() {
+        return startMillis;
+    }
+
+    /**
+     * @return When the scenario ends, in epoch milliseconds.
+     */
+    public long endMillis() {
+        return startMillis + minutes(durationMinutes);
+    }
+
+    /**
+     * @return True if some tweets are to reply to, retweet or quote others.
+     */
+    public boolean hasCascades() {
+        return cascades.replyShare > 0 || cascades.retweetShare > 0 || cascades.quoteShare > 0;
+    }
+
+    /**
+     * @param tweets The scenario's tweets, from a {@link Simulation}.
+     * @param randomness Where the choices come from.
+     * @return The tweets, some made replies, retweets and quotes of others.
+     */
+    public CascadeSource cascades(final TweetSource tweets, final Randomness randomness) {
+        return new CascadeSource(
+            tweets, randomness, cascades.replyShare, cascades.retweetShare, cascades.quoteShare, cascades.attentionWindow
+        );
+    }
+
+    static long minutes(final double minutes) {
+        return Math.round(minutes * 60_000.0);
+    }
+}
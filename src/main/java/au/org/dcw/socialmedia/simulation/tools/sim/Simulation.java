@@ -0,0 +1,348 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.sim;
+
+import au.org.dcw.socialmedia.simulation.tools.gen.ArrivalProcess;
+import au.org.dcw.socialmedia.simulation.tools.gen.IdGenerator;
+import au.org.dcw.socialmedia.simulation.tools.gen.PoissonArrivals;
+import au.org.dcw.socialmedia.simulation.tools.gen.Randomness;
+import au.org.dcw.socialmedia.simulation.tools.gen.TweetGenerator;
+import au.org.dcw.socialmedia.simulation.tools.gen.TweetSource;
+import au.org.dcw.socialmedia.simulation.tools.model.CreatedAtFormatter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.Closeable;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Runs a {@link Scenario} as a discrete-event simulation, handing out its
+ * tweets in time order until it ends.
+ * <p>
+ * Every population and campaign is a source of events, each posting a
+ * tweet, at times drawn from its own Poisson process. A priority queue of
+ * the sources, keyed by the time of each one's next event, decides which
+ * happens next; handling it schedules the same source's following event.
+ * There is only ever one event pending per source, so memory doesn't grow
+ * with the length of the scenario or the number of tweets.
+ * <p>
+ * Each population drafts its tweets with a {@link TweetGenerator} of its
+ * own (its users, region, photos and hashtags), and campaign tweets are
+ * drafted by one of the campaign's populations, chosen in proportion to
+ * their numbers of users, with the campaign's hashtags added. Events are
+ * scheduled a block at a time on the caller's thread, which is cheap, and
+ * their tweets drafted on a pool of threads, which isn't; they're then
+ * stamped with IDs and timestamps strictly in order. Every choice comes from
+ * a stream of {@link Randomness} keyed by its source and the event's number
+ * within it, so the tweets are the same for the same seed however many
+ * threads there are.
+ */
+public class Simulation implements TweetSource, Closeable {
+
+    public static final int BLOCK_SIZE = 256;
+
+    private final Randomness randomness;
+    private final TweetGenerator[] generators; // by population
+    private final long[] drafted;              // by population, the next index to draft
+
+    // by source: the populations, then the campaigns
+    private final String[] names;
+    private final String[] keys;
+    private final String[] posterKeys;
+    private final ArrivalProcess[] arrivals;
+    private final double[] ends;
+    private final int[] population;      // who posts, or -1 to choose from the campaign's
+    private final int[][] choices;       // the populations a campaign's tweets come from
+    private final long[][] cumulativeUsers;
+    private final String[] suffixes;     // a campaign's hashtags
+    private final long[] eventCounts;
+    private final EventQueue queue = new EventQueue();
+
+    private final IdGenerator ids = new IdGenerator();
+    private final CreatedAtFormatter createdAt = new CreatedAtFormatter();
+    private final ExecutorService pool;
+    private final int lookahead;
+    private final Deque<Future<Block>> pending = new ArrayDeque<>();
+    private Block block;
+    private int blockPos;
+
+    /**
+     * @param scenario The scenario to run.
+     * @param randomness Where every choice comes from.
+     * @param threads The number of threads drafting tweets.
+     */
+    public Simulation(final Scenario scenario, final Randomness randomness, final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads[" + threads + "] must be at least 1");
+        }
+        this.randomness = randomness;
+        final long startMillis = scenario.startMillis();
+        final long endMillis = scenario.endMillis();
+        final List<Scenario.Population> populations = scenario.populations;
+        final List<Scenario.Campaign> campaigns = scenario.campaigns;
+
+        generators = new TweetGenerator[populations.size()];
+        drafted = new long[populations.size()];
+        final int sourceCount = populations.size() + campaigns.size();
+        names = new String[sourceCount];
+        keys = new String[sourceCount];
+        posterKeys = new String[sourceCount];
+        arrivals = new ArrivalProcess[sourceCount];
+        ends = new double[sourceCount];
+        population = new int[sourceCount];
+        choices = new int[sourceCount][];
+        cumulativeUsers = new long[sourceCount][];
+        suffixes = new String[sourceCount];
+        eventCounts = new long[sourceCount];
+
+        final Map<String, Integer> populationIndex = new LinkedHashMap<>();
+        for (int p = 0; p < populations.size(); p++) {
+            final Scenario.Population pop = populations.get(p);
+            populationIndex.put(pop.name, p);
+            generators[p] = generatorFor(pop, scenario, startMillis);
+            names[p] = "population " + pop.name;
+            keys[p] = "population:" + pop.name;
+            population[p] = p;
+            ends[p] = endMillis;
+            if (pop.ratePerSecond > 0) {
+                final PoissonArrivals poisson = new PoissonArrivals(pop.ratePerSecond);
+                if (pop.diurnal) {
+                    poisson.withDiurnal(PoissonArrivals.TYPICAL_DAY, ZoneId.of(pop.diurnalZone));
+                }
+                for (final Scenario.Burst burst : pop.bursts) {
+                    poisson.withBurst(
+                        startMillis + Scenario.minutes(burst.startMinute),
+                        Scenario.minutes(burst.durationMinutes),
+                        burst.factor
+                    );
+                }
+                arrivals[p] = poisson;
+                schedule(p, startMillis);
+            }
+        }
+
+        for (int c = 0; c < campaigns.size(); c++) {
+            final Scenario.Campaign campaign = campaigns.get(c);
+            final int s = populations.size() + c;
+            names[s] = "campaign " + campaign.name;
+            keys[s] = "campaign:" + campaign.name;
+            posterKeys[s] = "poster:" + campaign.name;
+            population[s] = -1;
+            final List<String> from = campaign.populations.isEmpty()
+                ? populations.stream().map(pop -> pop.name).collect(Collectors.toList())
+                : campaign.populations;
+            choices[s] = new int[from.size()];
+            cumulativeUsers[s] = new long[from.size()];
+            long users = 0;
+            for (int i = 0; i < from.size(); i++) {
+                choices[s][i] = populationIndex.get(from.get(i));
+                users += populations.get(choices[s][i]).users;
+                cumulativeUsers[s][i] = users;
+            }
+            final StringBuilder hashtags = new StringBuilder();
+            for (final String tag : campaign.hashtags) {
+                hashtags.append(hashtags.length() > 0 ? " #" : "#").append(tag.startsWith("#") ? tag.substring(1) : tag);
+            }
+            suffixes[s] = hashtags.toString();
+            final long begin = startMillis + Scenario.minutes(campaign.startMinute);
+            ends[s] = campaign.durationMinutes != null
+                ? Math.min(endMillis, begin + Scenario.minutes(campaign.durationMinutes))
+                : endMillis;
+            arrivals[s] = new PoissonArrivals(campaign.ratePerSecond);
+            schedule(s, begin);
+        }
+
+        this.pool = threads > 1 ? Executors.newFixedThreadPool(threads, r -> {
+            final Thread t = new Thread(r, "scenario-drafter");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+        this.lookahead = threads * 2;
+    }
+
+    private TweetGenerator generatorFor(final Scenario.Population pop, final Scenario scenario, final long startMillis) {
+        final Randomness own = new Randomness(randomness.stream("generator:" + pop.name).nextLong());
+        final TweetGenerator generator = new TweetGenerator(own, pop.users, startMillis, 1)
+            .withAuthorSkew(pop.authorSkew)
+            .withMedia(pop.mediaFraction);
+        if (pop.region != null) {
+            final Scenario.Region region = scenario.regions.get(pop.region);
+            generator.withGeo(Scenario.geoFraction(pop), region.latitude, region.longitude, region.radiusKm);
+        }
+        if (pop.hashtags > 0) {
+            generator.withHashtags(generator.madeUpHashtags(pop.hashtags, pop.keySkew), pop.hashtagsPerTweet);
+        }
+        if (pop.mentionsPerTweet > 0) {
+            generator.withMentions(generator.madeUpMentions(pop.keySkew), pop.mentionsPerTweet);
+        }
+        if (pop.urls > 0) {
+            generator.withUrls(TweetGenerator.madeUpUrls(pop.urls, pop.keySkew), pop.urlsPerTweet);
+        }
+        return generator;
+    }
+
+    // the source's next event after the given time, if it's before the source ends
+    private void schedule(final int source, final double afterMillis) {
+        final double next = arrivals[source].next(afterMillis, randomness.stream(keys[source], eventCounts[source]));
+        if (next < ends[source]) {
+            queue.add(source, next);
+        }
+    }
+
+    // takes the next event off the queue, scheduling the one after, and adds it to the block
+    private boolean handleNext(final Block into) {
+        if (queue.isEmpty()) {
+            return false;
+        }
+        final double time = queue.peekTime();
+        final int source = queue.peekSource();
+        queue.remove();
+
+        int poster = population[source];
+        if (poster < 0) {
+            final SplittableRandom random = randomness.stream(posterKeys[source], eventCounts[source]);
+            final long[] cumulative = cumulativeUsers[source];
+            final long draw = random.nextLong(cumulative[cumulative.length - 1]);
+            int i = 0;
+            while (cumulative[i] <= draw) {
+                i++;
+            }
+            poster = choices[source][i];
+        }
+        if (into != null) {
+            final int k = into.size++;
+            into.generators[k] = poster;
+            into.indices[k] = drafted[poster];
+            into.suffixes[k] = suffixes[source];
+            into.times[k] = time;
+        }
+        drafted[poster]++;
+        eventCounts[source]++;
+        schedule(source, time);
+        return true;
+    }
+
+    /**
+     * @return The next tweet, or null once the scenario has ended.
+     * @throws InterruptedException If interrupted while waiting for a draft.
+     */
+    @Override
+    public ObjectNode next() throws InterruptedException {
+        if (block == null || blockPos == block.size) {
+            block = nextBlock();
+            blockPos = 0;
+            if (block.size == 0) {
+                return null;
+            }
+        }
+        final int i = blockPos++;
+        final ObjectNode draft = block.drafts[i];
+        block.drafts[i] = null; // don't hold on to what's been handed out
+        return TweetGenerator.stampWith(draft, ids.next((long) Math.floor(block.times[i])), createdAt);
+    }
+
+    private Block nextBlock() throws InterruptedException {
+        if (pool == null) {
+            return plan().draft(generators);
+        }
+        while (pending.size() < lookahead) {
+            final Block planned = plan();
+            if (planned.size == 0) {
+                break;
+            }
+            pending.addLast(pool.submit(() -> planned.draft(generators)));
+        }
+        return pending.isEmpty() ? new Block() : await(pending.removeFirst());
+    }
+
+    private Block plan() {
+        final Block planned = new Block();
+        while (planned.size < BLOCK_SIZE && handleNext(planned)) {
+            // keep going
+        }
+        return planned;
+    }
+
+    /**
+     * Runs the rest of the scenario without making any tweets, e.g. to check
+     * how many there would be. Don't call {@link #next()} afterwards.
+     *
+     * @return The number of events from each population and campaign.
+     */
+    public Map<String, Long> runWithoutTweets() {
+        while (handleNext(null)) {
+            // keep going
+        }
+        return eventCounts();
+    }
+
+    /**
+     * @return The number of events so far from each population and campaign,
+     * by name.
+     */
+    public Map<String, Long> eventCounts() {
+        final Map<String, Long> counts = new LinkedHashMap<>();
+        for (int s = 0; s < names.length; s++) {
+            counts.put(names[s], eventCounts[s]);
+        }
+        return counts;
+    }
+
+    private static Block await(final Future<Block> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException("Failed to draft tweets", cause);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    /** A run of consecutive events, and then their drafts. */
+    private static final class Block {
+        final int[] generators = new int[BLOCK_SIZE];
+        final long[] indices = new long[BLOCK_SIZE];
+        final String[] suffixes = new String[BLOCK_SIZE];
+        final double[] times = new double[BLOCK_SIZE];
+        final ObjectNode[] drafts = new ObjectNode[BLOCK_SIZE];
+        int size;
+
+        Block draft(final TweetGenerator[] from) {
+            for (int i = 0; i < size; i++) {
+                drafts[i] = from[generators[i]].draft(indices[i], suffixes[i]);
+            }
+            return this;
+        }
+    }
+}
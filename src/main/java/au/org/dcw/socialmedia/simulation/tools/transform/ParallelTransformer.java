@@ -0,0 +1,311 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.transform;
+
+import au.org.dcw.socialmedia.simulation.tools.io.TweetFormat;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetReader;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetSink;
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Applies a {@link TweetTransform} to a stream of tweets on a pool of
+ * threads, in blocks of consecutive tweets, writing the results in their
+ * original order. Only a few blocks are in memory at once, however long the
+ * stream.
+ * <p>
+ * Newline-delimited JSON is only split into lines by the caller, and parsed
+ * on the pool along with the transform, as parsing is most of the work. The
+ * binary formats can't be split without parsing them, so are parsed by the
+ * caller. Either way, the caller writes the results to the sink.
+ */
+public class ParallelTransformer {
+
+    public static final int DEFAULT_BLOCK_SIZE = 256;
+
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    private final int threads;
+    private final int blockSize;
+
+    private long read;
+    private long written;
+
+    /**
+     * @param threads The number of transforming threads.
+     */
+    public ParallelTransformer(final int threads) {
+        this(threads, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param threads The number of transforming threads.
+     * @param blockSize The number of consecutive tweets transformed by each task.
+     */
+    public ParallelTransformer(final int threads, final int blockSize) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads[" + threads + "] must be at least 1");
+        }
+        this.threads = threads;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * @return The number of tweets read by the last run.
+     */
+    public long read() {
+        return read;
+    }
+
+    /**
+     * @return The number of tweets written by the last run, i.e., those not dropped.
+     */
+    public long written() {
+        return written;
+    }
+
+    /**
+     * Transforms every tweet from {@code in} into {@code out}. Neither is closed.
+     *
+     * @param format The encoding of the input; JSON must be one tweet a line.
+     * @param in The tweets to transform.
+     * @param out Where to write the transformed tweets.
+     * @param transform What to do to each tweet.
+     * @return The number of tweets written.
+     * @throws IOException If a tweet can't be read, parsed or written.
+     */
+    public long run(
+        final TweetFormat format,
+        final InputStream in,
+        final TweetSink out,
+        final TweetTransform transform
+    ) throws IOException {
+        read = written = 0;
+        final ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            final Thread t = new Thread(r, "tweet-transformer");
+            t.setDaemon(true);
+            return t;
+        });
+        final Deque<Future<JsonNode[]>> pending = new ArrayDeque<>();
+        try {
+            final BlockSource source = format == TweetFormat.JSON
+                ? new LineBlocks(in)
+                : new ParsedBlocks(new TweetReader(format, in));
+            Block block;
+            while ((block = source.next()) != null) {
+                final Block b = block;
+                final long first = read;
+                read += b.size();
+                pending.addLast(pool.submit(() -> {
+                    final JsonNode[] results = new JsonNode[b.size()];
+                    for (int i = 0; i < results.length; i++) {
+                        results[i] = transform.apply(first + i, b.tweet(i));
+                    }
+                    return results;
+                }));
+                // keep every thread busy while the oldest block is written
+                while (pending.size() > threads * 2) {
+                    write(await(pending.removeFirst()), out);
+                }
+            }
+            while (! pending.isEmpty()) {
+                write(await(pending.removeFirst()), out);
+            }
+            return written;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void write(final JsonNode[] tweets, final TweetSink out) throws IOException {
+        for (final JsonNode tweet : tweets) {
+            if (tweet != null) {
+                out.write(tweet);
+                written++;
+            }
+        }
+    }
+
+    private static JsonNode[] await(final Future<JsonNode[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while transforming tweets");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException("Failed to transform tweets", cause);
+        }
+    }
+
+    // BLOCKS
+
+    private interface Block {
+        int size();
+
+        JsonNode tweet(int i) throws IOException;
+    }
+
+    private interface BlockSource {
+        Block next() throws IOException;
+    }
+
+    /**
+     * Lines of JSON, parsed when asked for.
+     */
+    private static final class LineBlock implements Block {
+        private byte[] bytes = new byte[READ_BUFFER_SIZE];
+        private int length;
+        private int[] ends;
+        private int count;
+
+        LineBlock(final int capacity) {
+            ends = new int[capacity];
+        }
+
+        void add(final byte[] buffer, final int start, final int end) {
+            if (length + end - start > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length + end - start, bytes.length * 2));
+            }
+            System.arraycopy(buffer, start, bytes, length, end - start);
+            length += end - start;
+            ends[count++] = length;
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public JsonNode tweet(final int i) throws IOException {
+            final int start = i == 0 ? 0 : ends[i - 1];
+            try (JsonParser parser = Tweets.JSON.getFactory().createParser(bytes, start, ends[i] - start)) {
+                return Tweets.JSON.readTree(parser);
+            }
+        }
+    }
+
+    private final class LineBlocks implements BlockSource {
+        private final InputStream in;
+        private byte[] buffer = new byte[READ_BUFFER_SIZE];
+        private int pos;
+        private int limit;
+        private boolean eof;
+
+        LineBlocks(final InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public Block next() throws IOException {
+            final LineBlock block = new LineBlock(blockSize);
+            while (block.size() < blockSize) {
+                int end = pos;
+                while (true) {
+                    while (end < limit && buffer[end] != '\n') end++;
+                    if (end < limit || eof) break;
+                    end -= pos;
+                    fill();
+                    end += pos;
+                }
+                if (end == limit && pos == limit) {
+                    break; // eof
+                }
+                if (! isBlank(buffer, pos, end)) {
+                    block.add(buffer, pos, end);
+                }
+                pos = Math.min(end + 1, limit);
+            }
+            return block.size() > 0 ? block : null;
+        }
+
+        // move what's left to the front, growing if it's all one line, and read more
+        private void fill() throws IOException {
+            if (pos > 0) {
+                System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+                limit -= pos;
+                pos = 0;
+            } else if (limit == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            final int n = in.read(buffer, limit, buffer.length - limit);
+            if (n < 0) {
+                eof = true;
+            } else {
+                limit += n;
+            }
+        }
+    }
+
+    private static boolean isBlank(final byte[] buffer, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] != ' ' && buffer[i] != '\t' && buffer[i] != '\r') return false;
+        }
+        return true;
+    }
+
+    /**
+     * Tweets already parsed by the caller.
+     */
+    private final class ParsedBlocks implements BlockSource {
+        private final TweetReader reader;
+
+        ParsedBlocks(final TweetReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Block next() throws IOException {
+            final JsonNode[] tweets = new JsonNode[blockSize];
+            int count = 0;
+            JsonNode tweet;
+            while (count < blockSize && (tweet = reader.next()) != null) {
+                tweets[count++] = tweet;
+            }
+            if (count == 0) {
+                return null;
+            }
+            final int size = count;
+            return new Block() {
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public JsonNode tweet(final int i) {
+                    return tweets[i];
+                }
+            };
+        }
+    }
+}
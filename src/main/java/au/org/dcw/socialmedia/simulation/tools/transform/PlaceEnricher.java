@@ -0,0 +1,238 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.transform;
+
+import au.org.dcw.socialmedia.simulation.tools.place.Geohash;
+import au.org.dcw.socialmedia.simulation.tools.place.PlaceCache;
+import au.org.dcw.socialmedia.simulation.tools.place.PlaceLookup;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Adds a {@code place} to each geotagged tweet, as the editor does for one
+ * tweet at a time, but without asking about every tweet.
+ * <p>
+ * Each tweet's point is rounded to a geohash cell, and tweets in the same
+ * cell get the same place, which is looked up (at the centre of the cell)
+ * only the first time the cell is seen and remembered in a {@link PlaceCache}.
+ * Cells not in the cache are looked up one at a time, no faster than a
+ * given rate, on a thread of their own; tweets wanting a cell that is
+ * already being looked up wait for that lookup rather than making another.
+ * <p>
+ * A lookup that fails is reported, and the cell's tweets are left without a
+ * place for the rest of the run. Failures aren't saved in the cache, so the
+ * cell is tried again next run. If lookups keep failing, the service is
+ * assumed to be down, and the run fails rather than carry on without places.
+ */
+public class PlaceEnricher implements TweetTransform, Closeable {
+
+    private static final int MAX_CONSECUTIVE_FAILURES = 10;
+
+    private final PlaceLookup lookup;
+    private final PlaceCache cache;
+    private final int precision;
+    private final long intervalNanos;
+    private boolean overwrite = false;
+
+    private final ConcurrentHashMap<String, CompletableFuture<JsonNode>> inFlight = new ConcurrentHashMap<>();
+    private final ExecutorService lookups = Executors.newSingleThreadExecutor(r -> {
+        final Thread t = new Thread(r, "place-lookup");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Set<String> failedCells = ConcurrentHashMap.newKeySet();
+    // only touched by the lookup thread
+    private long nextLookupNanos = System.nanoTime();
+    private int consecutiveFailures = 0;
+
+    private final AtomicLong placed = new AtomicLong();
+    private final AtomicLong lookedUp = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * @param lookup Where to look up cells that aren't cached.
+     * @param cache Where to remember places.
+     * @param precision The length of the geohashes, e.g. 6 for cells about 1km across.
+     * @param lookupsPerMinute The most lookups to make in a minute.
+     */
+    public PlaceEnricher(
+        final PlaceLookup lookup,
+        final PlaceCache cache,
+        final int precision,
+        final double lookupsPerMinute
+    ) {
+        if (precision < 1 || precision > Geohash.MAX_PRECISION) {
+            throw new IllegalArgumentException(
+                "precision[" + precision + "] must be in [1," + Geohash.MAX_PRECISION + "]"
+            );
+        }
+        if (! (lookupsPerMinute > 0)) {
+            throw new IllegalArgumentException("lookupsPerMinute[" + lookupsPerMinute + "] must be positive");
+        }
+        this.lookup = lookup;
+        this.cache = cache;
+        this.precision = precision;
+        this.intervalNanos = (long) (TimeUnit.MINUTES.toNanos(1) / lookupsPerMinute);
+    }
+
+    /**
+     * @param overwrite Whether to replace places tweets already have.
+     * @return This enricher.
+     */
+    public PlaceEnricher withOverwrite(final boolean overwrite) {
+        this.overwrite = overwrite;
+        return this;
+    }
+
+    @Override
+    public JsonNode apply(final long position, final JsonNode tweet) {
+        if (! tweet.isObject() || (! overwrite && tweet.path("place").isObject())) {
+            return tweet;
+        }
+        final JsonNode coordinates = tweet.path("coordinates").path("coordinates");
+        final JsonNode geo = tweet.path("geo").path("coordinates");
+        final double lat;
+        final double lon;
+        if (isPoint(coordinates)) {
+            lat = coordinates.get(1).asDouble();
+            lon = coordinates.get(0).asDouble();
+        } else if (isPoint(geo)) {
+            lat = geo.get(0).asDouble();
+            lon = geo.get(1).asDouble();
+        } else {
+            return tweet;
+        }
+        if (! (lat >= -90 && lat <= 90 && lon >= -180 && lon <= 180)) {
+            return tweet;
+        }
+        try {
+            final String cell = Geohash.encode(lat, lon, precision);
+            JsonNode place = cache.get(cell);
+            if (place == null && ! failedCells.contains(cell)) {
+                place = await(inFlight.computeIfAbsent(cell, this::lookUp));
+            }
+            if (place != null && place.isObject()) {
+                ((ObjectNode) tweet).set("place", place.deepCopy());
+                placed.incrementAndGet();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e.getMessage(), e);
+        }
+        return tweet;
+    }
+
+    private CompletableFuture<JsonNode> lookUp(final String cell) {
+        try {
+            // it may have been looked up since the caller checked the cache
+            final JsonNode place = cache.get(cell);
+            if (place != null) {
+                return CompletableFuture.completedFuture(place);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                pace();
+                final double[] centre = Geohash.centre(cell);
+                lookedUp.incrementAndGet();
+                final JsonNode place = lookup.placeAt(centre[0], centre[1]);
+                cache.put(cell, place);
+                consecutiveFailures = 0;
+                return place;
+            } catch (IOException e) {
+                failed.incrementAndGet();
+                failedCells.add(cell);
+                if (++consecutiveFailures >= MAX_CONSECUTIVE_FAILURES) {
+                    throw new UncheckedIOException(new IOException(
+                        "Gave up after " + consecutiveFailures + " failed lookups in a row: " + e.getMessage(), e
+                    ));
+                }
+                System.err.println("Failed to look up the place in cell " + cell + ": " + e.getMessage());
+                return null;
+            } finally {
+                inFlight.remove(cell); // after it's cached, so no one looks it up again
+            }
+        }, lookups);
+    }
+
+    private void pace() {
+        long wait;
+        while ((wait = nextLookupNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+        nextLookupNanos = System.nanoTime() + intervalNanos;
+    }
+
+    private static JsonNode await(final CompletableFuture<JsonNode> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while looking up a place");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException("Failed to look up a place", cause);
+        }
+    }
+
+    private static boolean isPoint(final JsonNode node) {
+        return node.isArray() && node.size() >= 2 && node.get(0).isNumber() && node.get(1).isNumber();
+    }
+
+    /**
+     * @return The number of tweets given a place.
+     */
+    public long placed() {
+        return placed.get();
+    }
+
+    /**
+     * @return The number of cells looked up, rather than found in the cache.
+     */
+    public long lookedUp() {
+        return lookedUp.get();
+    }
+
+    /**
+     * @return The number of lookups that failed.
+     */
+    public long failed() {
+        return failed.get();
+    }
+
+    @Override
+    public void close() {
+        lookups.shutdownNow();
+    }
+}
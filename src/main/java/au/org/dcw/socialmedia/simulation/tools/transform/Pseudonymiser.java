@@ -0,0 +1,461 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.transform;
+
+import au.org.dcw.socialmedia.simulation.tools.gen.NameGenerator;
+import au.org.dcw.socialmedia.simulation.tools.gen.Randomness;
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.twitter.Extractor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongUnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Swaps the real screen names and IDs in tweets for made-up ones, as the
+ * editor does by hand, consistently across a whole capture (and across
+ * captures, given the same seed):
+ * <ul>
+ *     <li>the tweet's own {@code id}, and those it replies to or quotes;</li>
+ *     <li>the author's {@code id}, {@code screen_name} and {@code name}, and
+ *     the profile fields that could identify them, which are removed;</li>
+ *     <li>the reply's {@code in_reply_to_user_id} and {@code in_reply_to_screen_name};</li>
+ *     <li>each {@code @mention} in the text and its {@code user_mentions}
+ *     entity, shifting the indices of the entities that follow;</li>
+ *     <li>the IDs of attached media;</li>
+ *     <li>the screen name and tweet ID in each link to a profile or a tweet
+ *     on twitter.com (or x.com), such as a quote's permalink, in the text,
+ *     the URL entities and {@code quoted_status_permalink};</li>
+ *     <li>the same again in any retweeted or quoted tweet.</li>
+ * </ul>
+ * The streaming API's {@code delete} and {@code scrub_geo} notices have
+ * their tweet and user IDs scrambled the same way, so they still refer to
+ * the right tweets; {@code limit} notices are passed through untouched.
+ * IDs are scrambled by a keyed permutation rather than looked up, so need no
+ * memory and can never collide. Tweet IDs keep their timestamp bits, so
+ * still sort roughly in time order. Names are looked up in a concurrent map,
+ * which is filled with made-up names derived from the seed and the real name,
+ * so each name gets the same pseudonym whichever thread sees it first, unless
+ * two would collide.
+ */
+public class Pseudonymiser implements TweetTransform {
+
+    private static final String[] IDENTIFYING_USER_FIELDS = {
+        "description", "url", "location", "entities", "profile_image_url", "profile_image_url_https",
+        "profile_banner_url", "profile_background_image_url", "profile_background_image_url_https"
+    };
+
+    // as used by SplittableRandom, to spread consecutive keys across the seed space
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final int ROUNDS = 4;
+    private static final int TWEET_ID_BITS = 22; // below the timestamp, in Twitter's IDs
+    private static final int USER_ID_BITS = 62;
+    private static final int NAME_NUMBERS = 10_000_000;
+
+    private static final Extractor EXTRACTOR = Tweets.TWITTER_EXTRACTOR;
+
+    // a profile, or a tweet, with or without the scheme, as in a URL entity's display_url
+    private static final Pattern TWITTER_LINK = Pattern.compile(
+        "(?<![\\w.-])((?:https?://)?(?:www\\.|mobile\\.)?(?:twitter|x)\\.com/)(\\w+)" +
+            "(?:(/status(?:es)?/)(\\d{1,19}))?",
+        Pattern.CASE_INSENSITIVE
+    );
+    // twitter.com paths that aren't anyone's profile
+    private static final Set<String> NOT_PROFILES = new HashSet<>(Arrays.asList(
+        "i", "intent", "search", "hashtag", "home", "explore", "share", "settings", "login", "signup", "messages",
+        "notifications", "privacy", "tos", "about"
+    ));
+    // the API has expanded_url in entities, and expanded in quoted_status_permalink, but the editor writes extended_url
+    private static final String[] LINK_FIELDS = {
+        "url", "expanded_url", "extended_url", "display_url", "expanded", "display"
+    };
+
+    private final Randomness randomness;
+    private final long[] tweetIdKeys = new long[ROUNDS];
+    private final long[] userIdKeys = new long[ROUNDS];
+
+    private final Map<String, String> pseudonyms = new ConcurrentHashMap<>(); // by lower-cased real name
+    private final Map<String, String> owners = new ConcurrentHashMap<>();     // real names by pseudonym
+
+    private final LongUnaryOperator tweetIds = id -> permute(id, TWEET_ID_BITS, tweetIdKeys);
+    private final LongUnaryOperator userIds = id -> permute(id, USER_ID_BITS, userIdKeys);
+
+    /**
+     * @param randomness Where the made-up names and IDs come from.
+     */
+    public Pseudonymiser(final Randomness randomness) {
+        this.randomness = randomness;
+        final SplittableRandom tweetKeys = randomness.stream("tweet ids");
+        final SplittableRandom userKeys = randomness.stream("user ids");
+        for (int round = 0; round < ROUNDS; round++) {
+            tweetIdKeys[round] = tweetKeys.nextLong();
+            userIdKeys[round] = userKeys.nextLong();
+        }
+    }
+
+    @Override
+    public JsonNode apply(final long position, final JsonNode tweet) {
+        if (tweet.path("delete").isObject() || tweet.path("scrub_geo").isObject()) {
+            pseudonymiseNotice(tweet);
+        } else if (tweet.isObject() && ! tweet.has("limit")) {
+            pseudonymise((ObjectNode) tweet);
+        }
+        return tweet;
+    }
+
+    /**
+     * @return The number of distinct screen names seen so far.
+     */
+    public int nameCount() {
+        return pseudonyms.size();
+    }
+
+    /**
+     * @param realName A screen name.
+     * @return Its pseudonym.
+     */
+    public String pseudonymOf(final String realName) {
+        final String key = realName.toLowerCase(Locale.ROOT);
+        final String pseudonym = pseudonyms.get(key);
+        return pseudonym != null ? pseudonym : pseudonyms.computeIfAbsent(key, this::claimPseudonym);
+    }
+
+    /**
+     * @param id A tweet's ID.
+     * @return Its pseudonymous ID.
+     */
+    public long tweetIdOf(final long id) {
+        return tweetIds.applyAsLong(id);
+    }
+
+    /**
+     * @param id A user's ID.
+     * @return Their pseudonymous ID.
+     */
+    public long userIdOf(final long id) {
+        return userIds.applyAsLong(id);
+    }
+
+    private void pseudonymise(final ObjectNode tweet) {
+        replaceId(tweet, "id", tweetIds);
+        replaceId(tweet, "in_reply_to_status_id", tweetIds);
+        replaceId(tweet, "quoted_status_id", tweetIds);
+        replaceId(tweet, "in_reply_to_user_id", userIds);
+        replaceName(tweet, "in_reply_to_screen_name");
+
+        final JsonNode user = tweet.path("user");
+        if (user.isObject()) {
+            final ObjectNode u = (ObjectNode) user;
+            replaceId(u, "id", userIds);
+            replaceName(u, "screen_name");
+            if (u.path("screen_name").isTextual()) {
+                u.put("name", u.get("screen_name").asText());
+            } else if (u.has("name")) {
+                u.putNull("name");
+            }
+            u.remove(Arrays.asList(IDENTIFYING_USER_FIELDS));
+        }
+
+        // the entities' indices refer to the full text, if there is one
+        final String indexed = tweet.has("full_text") ? "full_text" : "text";
+        final String other = indexed.equals("text") ? "full_text" : "text";
+        final boolean same = tweet.path(indexed).isTextual() && tweet.path(other).equals(tweet.path(indexed));
+        replaceNamesInText(tweet, indexed, tweet.path("entities"), tweet.path("extended_entities"),
+            tweet.path("display_text_range"));
+        if (same) {
+            tweet.set(other, tweet.get(indexed));
+        } else {
+            replaceNamesInText(tweet, other);
+        }
+        final JsonNode extended = tweet.path("extended_tweet");
+        if (extended.isObject()) {
+            replaceNamesInText((ObjectNode) extended, "full_text", extended.path("entities"),
+                extended.path("extended_entities"), extended.path("display_text_range"));
+        }
+        final JsonNode permalink = tweet.path("quoted_status_permalink");
+        if (permalink.isObject()) {
+            replaceLinks((ObjectNode) permalink);
+        }
+
+        for (final String nested : new String[]{"retweeted_status", "quoted_status"}) {
+            if (tweet.path(nested).isObject()) {
+                pseudonymise((ObjectNode) tweet.get(nested));
+            }
+        }
+    }
+
+    // the streaming API's deletion and location scrubbing notices, which name the tweet and its author by ID
+    private void pseudonymiseNotice(final JsonNode notice) {
+        final JsonNode status = notice.path("delete").path("status");
+        if (status.isObject()) {
+            replaceId((ObjectNode) status, "id", tweetIds);
+            replaceId((ObjectNode) status, "user_id", userIds);
+        }
+        final JsonNode scrub = notice.path("scrub_geo");
+        if (scrub.isObject()) {
+            replaceId((ObjectNode) scrub, "user_id", userIds);
+            replaceId((ObjectNode) scrub, "up_to_status_id", tweetIds);
+        }
+    }
+
+    // an ID and its string twin, from whichever is present
+    private static void replaceId(final ObjectNode holder, final String field, final LongUnaryOperator ids) {
+        final String stringField = field + "_str";
+        final JsonNode id = holder.path(field);
+        final JsonNode idStr = holder.path(stringField);
+        long real;
+        if (id.isIntegralNumber() && id.canConvertToLong()) {
+            real = id.asLong();
+        } else if (idStr.isTextual()) {
+            try {
+                real = Long.parseLong(idStr.asText());
+            } catch (NumberFormatException e) {
+                return;
+            }
+        } else {
+            return;
+        }
+        final long fake = ids.applyAsLong(real);
+        if (id.isNumber()) {
+            holder.put(field, fake);
+        }
+        if (idStr.isTextual()) {
+            holder.put(stringField, Long.toString(fake));
+        }
+    }
+
+    private void replaceName(final ObjectNode holder, final String field) {
+        if (holder.path(field).isTextual()) {
+            holder.put(field, pseudonymOf(holder.get(field).asText()));
+        }
+    }
+
+    /**
+     * Replaces the mentions and twitter.com links in a text field, and in the
+     * entities indexed by it, shifting the indices of whatever follows a
+     * replacement of a different length.
+     */
+    private void replaceNamesInText(final ObjectNode holder, final String field, final JsonNode... indexed) {
+        if (! holder.path(field).isTextual()) {
+            return;
+        }
+        final String text = holder.get(field).asText();
+        final List<Edit> edits = new ArrayList<>(0);
+        if (text.indexOf('@') >= 0 || text.indexOf('\uFF20') >= 0) { // there's no other way to mention anyone
+            for (final Extractor.Entity mention : EXTRACTOR.extractMentionedScreennamesWithIndices(text)) {
+                edits.add(new Edit(mention.getStart(), mention.getEnd(), "@" + pseudonymOf(mention.getValue())));
+            }
+        }
+        if (mayLink(text)) {
+            final Matcher link = TWITTER_LINK.matcher(text);
+            while (link.find()) {
+                final String replacement = replacementFor(link);
+                if (replacement != null) {
+                    edits.add(new Edit(link.start(), link.end(), replacement));
+                }
+            }
+            edits.sort((a, b) -> Integer.compare(a.start, b.start));
+            for (int i = edits.size() - 1; i > 0; i--) {
+                if (edits.get(i).start < edits.get(i - 1).end) {
+                    edits.remove(i); // a mention within a link, say
+                }
+            }
+        }
+        if (edits.isEmpty()) {
+            replaceNamesInEntities(new int[0], new int[0], indexed);
+            return;
+        }
+
+        // Twitter's indices count code points, not chars
+        final int[] editedAt = new int[edits.size()];
+        final int[] shifts = new int[edits.size()];
+        final StringBuilder replaced = new StringBuilder(text.length());
+        int last = 0;
+        for (int i = 0; i < edits.size(); i++) {
+            final Edit edit = edits.get(i);
+            replaced.append(text, last, edit.start).append(edit.replacement);
+            last = edit.end;
+            editedAt[i] = text.codePointCount(0, edit.start);
+            shifts[i] = edit.replacement.codePointCount(0, edit.replacement.length())
+                - text.codePointCount(edit.start, edit.end);
+        }
+        replaced.append(text, last, text.length());
+        holder.put(field, replaced.toString());
+        replaceNamesInEntities(editedAt, shifts, indexed);
+    }
+
+    private void replaceNamesInEntities(final int[] editedAt, final int[] shifts, final JsonNode... indexed) {
+        for (final JsonNode node : indexed) {
+            if (node.isArray()) { // display_text_range
+                shiftIndices((ArrayNode) node, editedAt, shifts);
+                continue;
+            }
+            final Iterator<Map.Entry<String, JsonNode>> kinds = node.fields();
+            while (kinds.hasNext()) {
+                final Map.Entry<String, JsonNode> kind = kinds.next();
+                for (final JsonNode entity : kind.getValue()) {
+                    if (entity.path("indices").isArray()) {
+                        shiftIndices((ArrayNode) entity.get("indices"), editedAt, shifts);
+                    }
+                    if (! entity.isObject()) {
+                        continue;
+                    }
+                    if (kind.getKey().equals("user_mentions")) {
+                        final ObjectNode mention = (ObjectNode) entity;
+                        replaceId(mention, "id", userIds);
+                        replaceName(mention, "screen_name");
+                        if (mention.path("name").isTextual()) {
+                            mention.put("name", mention.path("screen_name").asText(""));
+                        }
+                    } else {
+                        replaceLinks((ObjectNode) entity); // e.g. a quote's permalink, or a photo's page
+                        if (kind.getKey().equals("media")) {
+                            replaceId((ObjectNode) entity, "id", tweetIds); // Twitter's are close to the tweet's
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // in a URL entity, or the like
+    private void replaceLinks(final ObjectNode holder) {
+        for (final String field : LINK_FIELDS) {
+            final JsonNode value = holder.path(field);
+            if (value.isTextual() && mayLink(value.asText())) {
+                final Matcher link = TWITTER_LINK.matcher(value.asText());
+                final StringBuffer replaced = new StringBuffer();
+                while (link.find()) {
+                    final String replacement = replacementFor(link);
+                    link.appendReplacement(replaced, Matcher.quoteReplacement(
+                        replacement != null ? replacement : link.group()
+                    ));
+                }
+                link.appendTail(replaced);
+                holder.put(field, replaced.toString());
+            }
+        }
+    }
+
+    // there's no point running the regex otherwise
+    private static boolean mayLink(final String text) {
+        return text.indexOf(".com/") >= 0 || text.indexOf(".COM/") >= 0;
+    }
+
+    // the link, with the pseudonyms of its screen name and tweet ID, or null if it isn't a profile
+    private String replacementFor(final Matcher link) {
+        final String name = link.group(2);
+        if (NOT_PROFILES.contains(name.toLowerCase(Locale.ROOT))) {
+            return null;
+        }
+        final StringBuilder replacement = new StringBuilder(link.group(1)).append(pseudonymOf(name));
+        if (link.group(3) != null) {
+            try {
+                replacement.append(link.group(3)).append(tweetIdOf(Long.parseLong(link.group(4))));
+            } catch (NumberFormatException e) {
+                replacement.append(link.group(3)); // too long to be an ID, so drop it
+            }
+        }
+        return replacement.toString();
+    }
+
+    /** A replacement of part of a text, by UTF-16 index. */
+    private static final class Edit {
+        final int start;
+        final int end;
+        final String replacement;
+
+        Edit(final int start, final int end, final String replacement) {
+            this.start = start;
+            this.end = end;
+            this.replacement = replacement;
+        }
+    }
+
+    private static void shiftIndices(final ArrayNode indices, final int[] editedAt, final int[] shifts) {
+        for (int i = 0; i < indices.size(); i++) {
+            if (indices.get(i).canConvertToInt()) {
+                final int index = indices.get(i).asInt();
+                int shifted = index;
+                for (int e = 0; e < editedAt.length && editedAt[e] < index; e++) {
+                    shifted += shifts[e];
+                }
+                if (shifted != index) {
+                    indices.set(i, IntNode.valueOf(shifted));
+                }
+            }
+        }
+    }
+
+    // NAMES AND IDS
+
+    // try a sequence of names particular to the real name until one is free; unlike the
+    // editor's names, they're joined with '_' so they're still found as mentions in the text
+    private String claimPseudonym(final String realName) {
+        final SplittableRandom random = randomness.stream("name:" + realName);
+        while (true) {
+            final String candidate = NameGenerator.NAME_PARTS[random.nextInt(NameGenerator.NAME_PARTS.length)]
+                + "_" + NameGenerator.NAME_PARTS[random.nextInt(NameGenerator.NAME_PARTS.length)]
+                + random.nextInt(NAME_NUMBERS);
+            if (owners.putIfAbsent(candidate, realName) == null) {
+                return candidate;
+            }
+        }
+    }
+
+    /**
+     * A Feistel network over the low bits of the ID, keyed by the high bits
+     * as well, so it's a one-to-one mapping that leaves the high bits be.
+     */
+    private static long permute(final long id, final int bits, final long[] keys) {
+        if (id < 0) {
+            return id;
+        }
+        final int half = bits / 2;
+        final long mask = (1L << half) - 1;
+        final long high = id & -(1L << bits);
+        long left = (id >>> half) & mask;
+        long right = id & mask;
+        for (final long key : keys) {
+            final long f = mix64(key ^ high ^ (right * GOLDEN_GAMMA)) & mask;
+            final long next = left ^ f;
+            left = right;
+            right = next;
+        }
+        return high | left << half | right;
+    }
+
+    // David Stafford's "variant 13" of the MurmurHash3 finaliser, as in SplittableRandom
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
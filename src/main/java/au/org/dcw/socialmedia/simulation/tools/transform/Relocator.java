@@ -0,0 +1,263 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.transform;
+
+import au.org.dcw.socialmedia.simulation.tools.gen.Randomness;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.DoubleNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.SplittableRandom;
+
+/**
+ * Moves tweets somewhere else, as the editor's map does for one tweet at a
+ * time: the point in {@code geo} and {@code coordinates}, and the corners of
+ * the {@code place}'s bounding box, in the tweet and any tweet it retweets or
+ * quotes.
+ * <ul>
+ *     <li>A shift moves everything by the same distance and bearing, so an
+ *     event keeps its shape and size, e.g. from Adelaide to Melbourne.</li>
+ *     <li>A scale spreads everything out from (or draws it in towards) the
+ *     place it was moved from.</li>
+ *     <li>Jitter adds Gaussian noise to each point (but not to places), drawn
+ *     from a stream of {@link Randomness} keyed by the tweet's ID (or, if it
+ *     has none, its position), so the result doesn't depend on the number of
+ *     threads, and every copy of a tweet, retweeted or quoted, lands in the
+ *     same place as the tweet itself.</li>
+ * </ul>
+ * Distances are measured on a flat map of the area around the origin, which
+ * is accurate enough for a city or a region, but not a continent.
+ */
+public class Relocator implements TweetTransform {
+
+    private static final double METRES_PER_DEGREE = 111_320.0;
+    private static final double ROUNDING = 1e8; // decimal places of a degree, about a millimetre
+
+    private final Randomness randomness;
+
+    private double fromLat;
+    private double fromLon;
+    private double toLat;
+    private double toLon;
+    private double scale = 1.0;
+    private double jitterMetres = 0.0;
+    private String placeName;
+    private String placeFullName;
+
+    /**
+     * @param randomness Where the jitter comes from.
+     */
+    public Relocator(final Randomness randomness) {
+        this.randomness = randomness;
+    }
+
+    /**
+     * Moves everything near one point to the same place near another.
+     *
+     * @param fromLatitude The latitude of the origin.
+     * @param fromLongitude The longitude of the origin.
+     * @param toLatitude The latitude the origin moves to.
+     * @param toLongitude The longitude the origin moves to.
+     * @return This relocator.
+     */
+    public Relocator withShift(
+        final double fromLatitude,
+        final double fromLongitude,
+        final double toLatitude,
+        final double toLongitude
+    ) {
+        this.fromLat = fromLatitude;
+        this.fromLon = fromLongitude;
+        this.toLat = toLatitude;
+        this.toLon = toLongitude;
+        return this;
+    }
+
+    /**
+     * @param factor How much further from the origin everything ends up, e.g.
+     *               0.5 to halve the area an event covers.
+     * @return This relocator.
+     */
+    public Relocator withScale(final double factor) {
+        if (! (factor > 0)) {
+            throw new IllegalArgumentException("scale[" + factor + "] must be positive");
+        }
+        this.scale = factor;
+        return this;
+    }
+
+    /**
+     * @param metres The standard deviation of the noise added to each point,
+     *               north-south and east-west.
+     * @return This relocator.
+     */
+    public Relocator withJitter(final double metres) {
+        if (! (metres >= 0)) {
+            throw new IllegalArgumentException("jitter[" + metres + "] can't be negative");
+        }
+        this.jitterMetres = metres;
+        return this;
+    }
+
+    /**
+     * Renames the places tweets are in, to match where they've moved to.
+     *
+     * @param name The place's short name, e.g. "Melbourne", or null to leave it.
+     * @param fullName The place's full name, e.g. "Melbourne, Victoria", or null to leave it.
+     * @return This relocator.
+     */
+    public Relocator withPlaceName(final String name, final String fullName) {
+        this.placeName = name;
+        this.placeFullName = fullName;
+        return this;
+    }
+
+    @Override
+    public JsonNode apply(final long position, final JsonNode tweet) {
+        if (tweet.isObject()) {
+            relocate((ObjectNode) tweet, position);
+        }
+        return tweet;
+    }
+
+    private void relocate(final ObjectNode tweet, final long position) {
+        final JsonNode coordinates = tweet.path("coordinates").path("coordinates");
+        final JsonNode geo = tweet.path("geo").path("coordinates");
+        final double[] point;
+        if (isPoint(coordinates)) {
+            point = new double[]{coordinates.get(1).asDouble(), coordinates.get(0).asDouble()};
+        } else if (isPoint(geo)) {
+            point = new double[]{geo.get(0).asDouble(), geo.get(1).asDouble()};
+        } else {
+            point = null;
+        }
+        if (point != null) {
+            move(point);
+            if (jitterMetres > 0) {
+                jitter(point, jitterFor(tweet, position));
+            }
+            if (isPoint(coordinates)) {
+                set((ArrayNode) coordinates, point[1], point[0]);
+            }
+            if (isPoint(geo)) {
+                set((ArrayNode) geo, point[0], point[1]);
+            }
+        }
+
+        final JsonNode place = tweet.path("place");
+        if (place.isObject()) {
+            movePositions(place.path("bounding_box").path("coordinates"));
+            if (placeName != null) {
+                ((ObjectNode) place).put("name", placeName);
+            }
+            if (placeFullName != null) {
+                ((ObjectNode) place).put("full_name", placeFullName);
+            }
+        }
+
+        for (final String field : new String[]{"retweeted_status", "quoted_status"}) {
+            final JsonNode inner = tweet.path(field);
+            if (inner.isObject()) {
+                relocate((ObjectNode) inner, position);
+            }
+        }
+    }
+
+    // the same tweet gets the same jitter wherever it turns up, whether on its own or inside another
+    private SplittableRandom jitterFor(final JsonNode tweet, final long position) {
+        final JsonNode idStr = tweet.path("id_str");
+        if (idStr.isTextual()) {
+            try {
+                return randomness.stream("jitter-id", Long.parseLong(idStr.asText()));
+            } catch (NumberFormatException e) {
+                // fall back to the number, if any
+            }
+        }
+        final JsonNode id = tweet.path("id");
+        if (id.isIntegralNumber() && id.canConvertToLong()) {
+            return randomness.stream("jitter-id", id.asLong());
+        }
+        return randomness.stream("jitter", position);
+    }
+
+    // GeoJSON positions, (lon, lat), nested to any depth
+    private void movePositions(final JsonNode node) {
+        if (isPoint(node)) {
+            final double[] point = {node.get(1).asDouble(), node.get(0).asDouble()};
+            move(point);
+            set((ArrayNode) node, point[1], point[0]);
+        } else if (node.isArray()) {
+            for (final JsonNode child : node) {
+                movePositions(child);
+            }
+        }
+    }
+
+    // (lat, lon), in place
+    private void move(final double[] point) {
+        if (fromLat == toLat && fromLon == toLon && scale == 1.0) {
+            return;
+        }
+        final double north = (point[0] - fromLat) * scale;
+        final double east = wrap(point[1] - fromLon) * Math.cos(Math.toRadians(fromLat)) * scale;
+        point[0] = toLat + north;
+        point[1] = toLon + east / cosine(toLat);
+        clamp(point);
+    }
+
+    private void jitter(final double[] point, final SplittableRandom random) {
+        // Marsaglia's polar method, giving a pair of independent Gaussians
+        double u;
+        double v;
+        double s;
+        do {
+            u = 2 * random.nextDouble() - 1;
+            v = 2 * random.nextDouble() - 1;
+            s = u * u + v * v;
+        } while (s >= 1 || s == 0);
+        final double m = jitterMetres * Math.sqrt(-2 * Math.log(s) / s) / METRES_PER_DEGREE;
+        point[0] += u * m;
+        point[1] += v * m / cosine(point[0]);
+        clamp(point);
+    }
+
+    private static void clamp(final double[] point) {
+        point[0] = Math.max(-90.0, Math.min(90.0, point[0]));
+        point[1] = wrap(point[1]);
+    }
+
+    // into [-180, 180)
+    private static double wrap(final double longitude) {
+        return longitude >= -180.0 && longitude < 180.0
+            ? longitude
+            : longitude - 360.0 * Math.floor((longitude + 180.0) / 360.0);
+    }
+
+    // never quite zero, so nothing divides by it at the poles
+    private static double cosine(final double latitude) {
+        return Math.max(1e-9, Math.cos(Math.toRadians(latitude)));
+    }
+
+    private static boolean isPoint(final JsonNode node) {
+        return node.isArray() && node.size() >= 2 && node.get(0).isNumber() && node.get(1).isNumber();
+    }
+
+    private static void set(final ArrayNode position, final double first, final double second) {
+        position.set(0, DoubleNode.valueOf(Math.round(first * ROUNDING) / ROUNDING));
+        position.set(1, DoubleNode.valueOf(Math.round(second * ROUNDING) / ROUNDING));
+    }
+}
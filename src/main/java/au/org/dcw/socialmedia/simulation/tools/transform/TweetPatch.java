@@ -0,0 +1,291 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.transform;
+
+import au.org.dcw.socialmedia.simulation.tools.model.TweetDiff;
+import au.org.dcw.socialmedia.simulation.tools.model.TweetPath;
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A scripted edit, made to every tweet in a stream that matches a filter,
+ * as a series of operations on {@link TweetPath}s, much as the editor makes
+ * them one at a time. It's written as JSON, in the spirit of JSON Patch:
+ * <pre>
+ * {
+ *   "where": [
+ *     {"path": "user.screen_name", "in": ["alice", "bob"]},
+ *     {"path": "full_text", "matches": "(?i)flood"},
+ *     {"path": "coordinates", "exists": true}
+ *   ],
+ *   "ops": [
+ *     {"op": "set", "path": "place.name", "value": "Melbourne"},
+ *     {"op": "remove", "path": "geo"},
+ *     {"op": "copy", "from": "full_text", "path": "text"}
+ *   ]
+ * }
+ * </pre>
+ * A tweet matches if it meets every condition in {@code where} (and every
+ * tweet matches if there are none, in which case the operations may be
+ * given alone, as an array). A condition's value {@code equals} a value,
+ * is one of those listed {@code in} it, {@code exists} (or doesn't), or has
+ * text that {@code matches} a regular expression somewhere in it. The
+ * operations are applied in order; one whose path doesn't lead anywhere in
+ * a tweet (e.g. it sets a field of a missing {@code place}) is skipped, and
+ * counted.
+ */
+public class TweetPatch implements TweetTransform {
+
+    private static final Set<String> PATCH_KEYS = new HashSet<>(Arrays.asList("where", "ops"));
+    private static final Set<String> CONDITION_KEYS =
+        new HashSet<>(Arrays.asList("path", "equals", "in", "exists", "matches"));
+
+    private final List<Condition> conditions;
+    private final List<Operation> operations;
+
+    private final LongAdder matched = new LongAdder();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    private TweetPatch(final List<Condition> conditions, final List<Operation> operations) {
+        this.conditions = conditions;
+        this.operations = operations;
+    }
+
+    /**
+     * @param file A patch, in JSON.
+     * @return The patch, ready to apply.
+     * @throws IOException If the file can't be read.
+     * @throws IllegalArgumentException If the file isn't a patch.
+     */
+    public static TweetPatch load(final Path file) throws IOException {
+        final JsonNode json;
+        try {
+            json = Tweets.JSON.readTree(file.toFile());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(file + ": " + e.getOriginalMessage(), e);
+        }
+        try {
+            return parse(json);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param json A patch: an object with {@code where} and {@code ops}, or just an array of operations.
+     * @return The patch, ready to apply.
+     * @throws IllegalArgumentException If it isn't a patch.
+     */
+    public static TweetPatch parse(final JsonNode json) {
+        final JsonNode where;
+        final JsonNode ops;
+        if (json != null && json.isArray()) {
+            where = null;
+            ops = json;
+        } else if (json != null && json.isObject()) {
+            requireKnownKeys(json, PATCH_KEYS, "patch");
+            where = json.get("where");
+            ops = json.get("ops");
+        } else {
+            throw new IllegalArgumentException("A patch must be an object or an array of operations");
+        }
+
+        final List<Condition> conditions = new ArrayList<>();
+        if (where != null) {
+            require(where.isArray(), "where must be an array of conditions");
+            for (final JsonNode condition : where) {
+                conditions.add(Condition.parse(condition));
+            }
+        }
+        require(ops != null && ops.isArray() && ops.size() > 0, "ops must be an array of at least one operation");
+        final List<Operation> operations = new ArrayList<>();
+        for (final JsonNode op : ops) {
+            operations.add(Operation.parse(op));
+        }
+        return new TweetPatch(conditions, operations);
+    }
+
+    @Override
+    public JsonNode apply(final long position, final JsonNode tweet) {
+        for (final Condition condition : conditions) {
+            if (! condition.test(tweet)) {
+                return tweet;
+            }
+        }
+        matched.increment();
+        for (final Operation operation : operations) {
+            if (operation.apply(tweet)) {
+                applied.increment();
+            } else {
+                skipped.increment();
+            }
+        }
+        return tweet;
+    }
+
+    /** @return The number of tweets that matched the filter, so far. */
+    public long matched() {
+        return matched.sum();
+    }
+
+    /** @return The number of operations applied, so far. */
+    public long applied() {
+        return applied.sum();
+    }
+
+    /** @return The number of operations that led nowhere in the tweet they were applied to, so far. */
+    public long skipped() {
+        return skipped.sum();
+    }
+
+    private static final class Condition {
+        private final TweetPath path;
+        private final JsonNode[] values; // equals or in, or null
+        private final Boolean exists;
+        private final Pattern matches;
+
+        private Condition(final TweetPath path, final JsonNode[] values, final Boolean exists, final Pattern matches) {
+            this.path = path;
+            this.values = values;
+            this.exists = exists;
+            this.matches = matches;
+        }
+
+        static Condition parse(final JsonNode json) {
+            require(json.isObject(), "A condition must be an object, not " + json);
+            requireKnownKeys(json, CONDITION_KEYS, "condition");
+            final TweetPath path = TweetPath.compile(json.path("path").asText(""));
+            JsonNode[] values = null;
+            if (json.has("equals")) {
+                values = new JsonNode[]{json.get("equals")};
+            }
+            if (json.has("in")) {
+                require(values == null && json.get("in").isArray(), "in must be an array, instead of equals");
+                values = new JsonNode[json.get("in").size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = json.get("in").get(i);
+                }
+            }
+            final Boolean exists = json.has("exists") ? json.get("exists").asBoolean() : null;
+            Pattern matches = null;
+            if (json.has("matches")) {
+                try {
+                    matches = Pattern.compile(json.get("matches").asText());
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException("Bad regular expression for " + path + ": " + e.getMessage());
+                }
+            }
+            require(values != null || exists != null || matches != null,
+                "The condition on " + path + " needs equals, in, exists or matches");
+            return new Condition(path, values, exists, matches);
+        }
+
+        boolean test(final JsonNode tweet) {
+            final JsonNode node = path.get(tweet);
+            final boolean present = node != null && ! node.isNull();
+            if (exists != null && exists != present) {
+                return false;
+            }
+            if (values != null && ! isAnyOf(node)) {
+                return false;
+            }
+            return matches == null || present && node.isValueNode() && matches.matcher(node.asText()).find();
+        }
+
+        private boolean isAnyOf(final JsonNode node) {
+            for (final JsonNode value : values) {
+                if (value.isNull() ? node == null || node.isNull() : node != null && TweetDiff.same(value, node)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Operation {
+        private final String op;
+        private final TweetPath path;
+        private final TweetPath from;
+        private final JsonNode value;
+
+        private Operation(final String op, final TweetPath path, final TweetPath from, final JsonNode value) {
+            this.op = op;
+            this.path = path;
+            this.from = from;
+            this.value = value;
+        }
+
+        static Operation parse(final JsonNode json) {
+            require(json.isObject(), "An operation must be an object, not " + json);
+            final String op = json.path("op").asText("");
+            final TweetPath path = TweetPath.compile(json.path("path").asText(""));
+            switch (op) {
+                case "set":
+                    requireKnownKeys(json, new HashSet<>(Arrays.asList("op", "path", "value")), "set");
+                    require(json.has("value"), "set " + path + " needs a value");
+                    return new Operation(op, path, null, json.get("value"));
+                case "remove":
+                    requireKnownKeys(json, new HashSet<>(Arrays.asList("op", "path")), "remove");
+                    return new Operation(op, path, null, null);
+                case "copy":
+                    requireKnownKeys(json, new HashSet<>(Arrays.asList("op", "path", "from")), "copy");
+                    return new Operation(op, path, TweetPath.compile(json.path("from").asText("")), null);
+                default:
+                    throw new IllegalArgumentException("op must be set, remove or copy, not '" + op + "'");
+            }
+        }
+
+        boolean apply(final JsonNode tweet) {
+            switch (op) {
+                case "set":
+                    // every tweet gets its own copy, so that later operations can't change them all
+                    return path.set(tweet, value.isContainerNode() ? value.deepCopy() : value);
+                case "remove":
+                    return path.remove(tweet);
+                default:
+                    final JsonNode source = from.get(tweet);
+                    return source != null && path.set(tweet, source.deepCopy());
+            }
+        }
+    }
+
+    private static void requireKnownKeys(final JsonNode json, final Set<String> known, final String what) {
+        for (final Iterator<String> keys = json.fieldNames(); keys.hasNext(); ) {
+            final String key = keys.next();
+            require(known.contains(key), "Unknown key in " + what + ": " + key);
+        }
+    }
+
+    private static void require(final boolean condition, final String message) {
+        if (! condition) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.transform;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Something done to every tweet in a stream, by a {@link ParallelTransformer}.
+ * It is applied on many threads at once, so must be thread-safe.
+ */
+public interface TweetTransform {
+
+    /**
+     * @param position The tweet's position in the stream, from 0, to key any
+     *                 randomness by, so the result doesn't depend on which
+     *                 thread gets the tweet.
+     * @param tweet The tweet, which may be changed in place.
+     * @return The transformed tweet, or null to drop it.
+     */
+    JsonNode apply(long position, JsonNode tweet);
+}
@@ -64,6 +64,7 @@ public class GeoPanel extends JPanel {
     private final JRadioButton geoFromMap;
     private final JFormattedTextField latLonTF, latTF, lonTF;
     private final JXMapViewer mapUI;
+    private SelectionAdapter selectionAdapter;
 
     private final PropertyChangeSupport observable = new PropertyChangeSupport(this);
 
@@ -332,10 +333,10 @@ public class GeoPanel extends JPanel {
         mapViewer.addKeyListener(new PanKeyListener(mapViewer));
 
         // Add a selection painter
-        final SelectionAdapter sa = new SelectionAdapter(mapViewer);
-        final SelectionPainter sp = new SelectionPainter(sa);
-        mapViewer.addMouseListener(sa);
-        mapViewer.addMouseMotionListener(sa);
+        selectionAdapter = new SelectionAdapter(mapViewer);
+        final SelectionPainter sp = new SelectionPainter(selectionAdapter);
+        mapViewer.addMouseListener(selectionAdapter);
+        mapViewer.addMouseMotionListener(selectionAdapter);
         mapViewer.setOverlayPainter(sp);
 
         mapViewer.setZoom(7);
@@ -402,4 +403,11 @@ public class GeoPanel extends JPanel {
     public void addObserver(PropertyChangeListener l) {
         observable.addPropertyChangeListener(l);
     }
+
+    /**
+     * @param l To be told of each area selected on the map with the right mouse button.
+     */
+    public void addSelectionListener(SelectionAdapter.SelectionListener l) {
+        selectionAdapter.addSelectionListener(l);
+    }
 }
@@ -19,13 +19,16 @@ import java.awt.Rectangle;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.jxmapviewer.JXMapViewer;
 import org.jxmapviewer.viewer.GeoPosition;
 
 /**
  * Creates a selection rectangle based on mouse input.
- * Causes zoom to selection (an approximation).
+ * Causes zoom to selection (an approximation), and tells any
+ * {@link SelectionListener}s the area selected.
  * Also triggers repaint events in the viewer.
  *
  * @author Martin Steiger
@@ -40,6 +43,20 @@ public class SelectionAdapter extends MouseAdapter
 	private Point2D startPos = new Point2D.Double();
 	private Point2D endPos = new Point2D.Double();
 
+	private final List<SelectionListener> listeners = new ArrayList<>();
+
+	/**
+	 * Told the area of the map selected, when the mouse is released.
+	 */
+	public interface SelectionListener
+	{
+		/**
+		 * @param northWest the top left corner of the selection
+		 * @param southEast the bottom right corner of the selection
+		 */
+		void selected(GeoPosition northWest, GeoPosition southEast);
+	}
+
 	/**
 	 * @param viewer the jxmapviewer
 	 */
@@ -48,6 +65,14 @@ public class SelectionAdapter extends MouseAdapter
 		this.viewer = viewer;
 	}
 
+	/**
+	 * @param listener to be told of each selection made
+	 */
+	public void addSelectionListener(SelectionListener listener)
+	{
+		listeners.add(listener);
+	}
+
 	@Override
 	public void mousePressed(MouseEvent e)
 	{
@@ -82,6 +107,18 @@ public class SelectionAdapter extends MouseAdapter
 
 		final Rectangle rectangle = getRectangle();
 
+		if (rectangle.width > 0 && rectangle.height > 0)
+		{
+			final GeoPosition northWest = viewer.convertPointToGeoPosition(
+				new Point2D.Double(rectangle.getMinX(), rectangle.getMinY())
+			);
+			final GeoPosition southEast = viewer.convertPointToGeoPosition(
+				new Point2D.Double(rectangle.getMaxX(), rectangle.getMaxY())
+			);
+			for (SelectionListener listener : listeners)
+				listener.selected(northWest, southEast);
+		}
+
         final double newCentreX = rectangle.x + rectangle.width / 2.0;
         final double newCentreY = rectangle.y + rectangle.height / 2.0;
 
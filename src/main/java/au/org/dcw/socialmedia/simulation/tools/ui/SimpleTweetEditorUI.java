@@ -15,6 +15,36 @@
  */
 package au.org.dcw.socialmedia.simulation.tools.ui;
 
+import au.org.dcw.socialmedia.simulation.tools.cli.Command;
+import au.org.dcw.socialmedia.simulation.tools.cli.ConvertCommand;
+import au.org.dcw.socialmedia.simulation.tools.cli.DiffCommand;
+import au.org.dcw.socialmedia.simulation.tools.cli.EnrichCommand;
+import au.org.dcw.socialmedia.simulation.tools.cli.GenerateCommand;
+import au.org.dcw.socialmedia.simulation.tools.cli.LintCommand;
+import au.org.dcw.socialmedia.simulation.tools.cli.PatchCommand;
+import au.org.dcw.socialmedia.simulation.tools.cli.PseudonymiseCommand;
+import au.org.dcw.socialmedia.simulation.tools.cli.RelocateCommand;
+import au.org.dcw.socialmedia.simulation.tools.cli.ReplayCommand;
+import au.org.dcw.socialmedia.simulation.tools.cli.SearchCommand;
+import au.org.dcw.socialmedia.simulation.tools.cli.ServeCommand;
+import au.org.dcw.socialmedia.simulation.tools.cli.SimulateCommand;
+import au.org.dcw.socialmedia.simulation.tools.cli.SortCommand;
+import au.org.dcw.socialmedia.simulation.tools.cli.StatsCommand;
+import au.org.dcw.socialmedia.simulation.tools.cli.StreamCommand;
+import au.org.dcw.socialmedia.simulation.tools.corpus.CompactTweetStore;
+import au.org.dcw.socialmedia.simulation.tools.corpus.IndexedTweetStore;
+import au.org.dcw.socialmedia.simulation.tools.corpus.SpatialIndex;
+import au.org.dcw.socialmedia.simulation.tools.corpus.TweetStore;
+import au.org.dcw.socialmedia.simulation.tools.gen.NameGenerator;
+import au.org.dcw.socialmedia.simulation.tools.gen.Randomness;
+import au.org.dcw.socialmedia.simulation.tools.io.Compression;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetFormat;
+import au.org.dcw.socialmedia.simulation.tools.io.TweetReader;
+import au.org.dcw.socialmedia.simulation.tools.model.TweetDiff;
+import au.org.dcw.socialmedia.simulation.tools.model.TweetLinter;
+import au.org.dcw.socialmedia.simulation.tools.model.TweetModel;
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import au.org.dcw.socialmedia.simulation.tools.place.TwitterPlaceLookup;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
@@ -23,10 +53,6 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
-import com.twitter.Extractor;
 import org.jxmapviewer.viewer.GeoPosition;
 import twitter4j.GeoLocation;
 import twitter4j.GeoQuery;
@@ -40,11 +66,10 @@ import twitter4j.TwitterException;
 import twitter4j.TwitterFactory;
 import twitter4j.TwitterObjectFactory;
 import twitter4j.conf.Configuration;
-import twitter4j.conf.ConfigurationBuilder;
 
 import javax.imageio.ImageIO;
+import javax.swing.AbstractListModel;
 import javax.swing.BorderFactory;
-import javax.swing.DefaultComboBoxModel;
 import javax.swing.Icon;
 import javax.swing.ImageIcon;
 import javax.swing.InputVerifier;
@@ -55,6 +80,7 @@ import javax.swing.JComponent;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JList;
+import javax.swing.ListSelectionModel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
@@ -68,6 +94,10 @@ import javax.swing.SwingUtilities;
 import javax.swing.WindowConstants;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.event.PopupMenuEvent;
+import javax.swing.event.PopupMenuListener;
+import javax.swing.plaf.basic.ComboPopup;
+import javax.swing.text.JTextComponent;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Component;
@@ -86,9 +116,7 @@ import java.awt.event.FocusEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.IOException;
-import java.io.Reader;
 import java.math.BigDecimal;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -101,20 +129,15 @@ import java.time.format.DateTimeParseException;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
-import java.util.Locale;
-import java.util.Map;
-import java.util.Objects;
 import java.util.Properties;
-import java.util.Random;
-import java.util.stream.Collectors;
+import java.util.function.Predicate;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 public class SimpleTweetEditorUI extends JPanel {
 
-    private static final DateTimeFormatter TWITTER_TIMESTAMP_FORMAT =
-        DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss Z yyyy", Locale.ENGLISH);
-    private static final int TWITTER_OLD_MAX_LENGTH = 140;
+    private static final DateTimeFormatter TWITTER_TIMESTAMP_FORMAT = Tweets.TWITTER_TIMESTAMP_FORMAT;
+    private static final int TWITTER_OLD_MAX_LENGTH = Tweets.TWITTER_OLD_MAX_LENGTH;
 
     // standard default values for attached media
     private static final int DEFAULT_THUMB_HEIGHT = 100;
@@ -122,11 +145,6 @@ public class SimpleTweetEditorUI extends JPanel {
     private static final int DEFAULT_MEDIA_WIDTH = 226;
     private static final int DEFAULT_MEDIA_HEIGHT = 238;
 
-    private final String[] NAME_PARTS = {
-        "salted", "tables", "benign", "sawfly", "sweaty", "noggin",
-        "willow", "powder", "untorn", "rewire", "placid", "joists"
-    };
-
     @Parameter(names = {"--skip-date"}, description = "Don't bother creating a 'created_at' field.")
     private boolean skipDate = false;
 
@@ -140,13 +158,19 @@ public class SimpleTweetEditorUI extends JPanel {
     @Parameter(names = {"-v", "--verbose"}, description = "Verbose logging mode")
     private static boolean verbose = false;
 
-    private static final ObjectMapper JSON = new ObjectMapper();
-    private static final Extractor TWITTER_EXTRACTOR = new Extractor();
-    private static final int ID_LENGTH = 16;
-    private static final Random R = new Random();
+    @Parameter(names = {"--seed"}, description = "Seed for generated IDs and names (default: arbitrary)")
+    private Long seed;
+
+    @Parameter(names = {"--corpus"},
+        description = "File of tweets to load, to list those in an area selected on the map with the right mouse button")
+    private String corpusFile;
+
+    private static final ObjectMapper JSON = Tweets.JSON;
+    private static Randomness randomness = Randomness.unseeded();
 
     private JComboBox<String> namePicker;
     private JTextArea textArea;
+    private JLabel textLabel;
     private JCheckBox useGeoCheckbox;
     private JCheckBox addPlaceCheckbox;
     private GeoPanel geoPanel;
@@ -155,6 +179,10 @@ public class SimpleTweetEditorUI extends JPanel {
     private JSpinner tsPicker;
     private JTextField mediaUrlTF;
     private JCheckBox useCurrentTS;
+    private JList<String> selectionList;
+    private JLabel selectionLabel;
+
+    private static final String NAME_PROTOTYPE = "a_fairly_long_screen_name";
 
     private final SortedComboBoxModel nameCBModel = new SortedComboBoxModel(new String[]{""});
 
@@ -165,16 +193,44 @@ public class SimpleTweetEditorUI extends JPanel {
     private volatile boolean placeLookupIsAvailable = true;
     private final Object placesLookupIsAvailableLock = new Object();
 
+    // the loaded corpus, if any, and where the tweet being edited came from in it
+    private TweetStore corpus;
+    private final SpatialIndex spatialIndex = new SpatialIndex();
+    private double[] lastSelection;
+    private int corpusIndex = -1;
+    private JsonNode originalTweet; // as pasted or picked, to show what's been changed since
+
     // MAIN
 
     public static void main(String[] args) throws IOException {
         SimpleTweetEditorUI theApp = new SimpleTweetEditorUI();
 
+        // headless modes, selected by name on the commandline
+        final Command[] commands = {
+            new GenerateCommand(),
+            new ConvertCommand(),
+            new ReplayCommand(),
+            new StreamCommand(),
+            new ServeCommand(),
+            new StatsCommand(),
+            new SearchCommand(),
+            new SortCommand(),
+            new PseudonymiseCommand(),
+            new RelocateCommand(),
+            new EnrichCommand(),
+            new SimulateCommand(),
+            new LintCommand(),
+            new PatchCommand(),
+            new DiffCommand()
+        };
+
         // JCommander instance parses args, populates fields of theApp
-        JCommander argsParser = JCommander.newBuilder()
+        final JCommander.Builder builder = JCommander.newBuilder()
             .addObject(theApp)
-            .programName("bin/simple-fake-tweet-generator-ui[.bat]")
-            .build();
+            .expandAtSign(false) // "@name" is a mention to search for, not a file of arguments
+            .programName("bin/simple-fake-tweet-generator-ui[.bat]");
+        Stream.of(commands).forEach(builder::addCommand);
+        JCommander argsParser = builder.build();
         try {
             argsParser.parse(args);
         } catch (ParameterException e) {
@@ -182,6 +238,11 @@ public class SimpleTweetEditorUI extends JPanel {
             help = true;
         }
 
+        TweetModel.setVerbose(verbose);
+        if (theApp.seed != null) {
+            randomness = new Randomness(theApp.seed);
+        }
+
         if (help) {
             StringBuilder sb = new StringBuilder();
             argsParser.usage(sb);
@@ -191,22 +252,31 @@ public class SimpleTweetEditorUI extends JPanel {
 
         loadProxyProperties();
 
+        final String commandName = argsParser.getParsedCommand();
+        if (commandName != null) {
+            final Command command = (Command) argsParser.getCommands().get(commandName).getObjects().get(0);
+            try {
+                command.run();
+            } catch (Exception e) {
+                System.err.println("Failed to " + commandName + ": " + e.getMessage());
+                if (verbose) e.printStackTrace();
+                System.exit(-1);
+            }
+            return;
+        }
+
+        // only now the seed's known, so the first tweet's ID is reproducible too
+        theApp.model.root = JSON.readValue(theApp.freshTweetJson(), JsonNode.class); // initialise the model
+
         SwingUtilities.invokeLater(theApp::run);
     }
 
     SimpleTweetEditorUI() throws IOException {
-        model.root = JSON.readValue(freshTweetJson(), JsonNode.class); // initialise the model
-
         twitter = initTwitter();
     }
 
     private String freshTweetJson() {
-        final String id = generateID();
-        final String createdAt = now();
-        return "{\"coordinates\":{\"coordinates\":[138.604,-34.918],\"type\":\"Point\"}," +
-            "\"created_at\":\""+ createdAt + "\",\"full_text\":\"\",\"id\":" + id +
-            ",\"id_str\":\"" + id + "\",\"text\":\"\",\"user\":{\"screen_name\":\"\"}," +
-            "\"entities\":{\"media\":[{\"media_url_https\":\"\"}]}}";
+        return Tweets.freshTweetJson(generateID(), now());
     }
 
     private void run() {
@@ -263,6 +333,14 @@ public class SimpleTweetEditorUI extends JPanel {
         namePicker.setEditable(true);
         final Icon removeIcon = new ImageIcon(this.getClass().getResource("/icons/Remove-16.png"));
         namePicker.setRenderer(new ButtonComboRenderer(removeIcon, namePicker));
+        // fixed-size cells mean neither the combo nor its popup measure every name
+        namePicker.setPrototypeDisplayValue(NAME_PROTOTYPE);
+        final Object popup = namePicker.getAccessibleContext().getAccessibleChild(0);
+        if (popup instanceof ComboPopup) {
+            @SuppressWarnings("unchecked") // it's the list of the combo's own model, so of names
+            final JList<String> popupList = ((ComboPopup) popup).getList();
+            popupList.setPrototypeCellValue(NAME_PROTOTYPE);
+        }
         final Object screenNameObj = model.get("user.screen_name");
         final String sn = screenNameObj != null ? screenNameObj.toString() : "";
         if (sn.equals("\"\"")) { // rescue us from the terrible "" bug!
@@ -282,7 +360,7 @@ public class SimpleTweetEditorUI extends JPanel {
 
         // Row 2: text field
         row++;
-        final JLabel textLabel = new JLabel("Tweet Text");
+        textLabel = new JLabel(textLabelFor(""));
 
         gbc = new GridBagConstraints();
         gbc.gridy = row;
@@ -496,14 +574,40 @@ public class SimpleTweetEditorUI extends JPanel {
         );
         jsonScrollPane.setBorder(BorderFactory.createEmptyBorder(0, 0, 5, 0));
 
-        right.add(jsonScrollPane, BorderLayout.CENTER);
+        if (corpusFile == null) {
+            right.add(jsonScrollPane, BorderLayout.CENTER);
+        } else {
+            // the tweets in the area selected on the map, below the JSON
+            final JPanel selectionPanel = new JPanel(new BorderLayout());
+            selectionLabel = new JLabel("Loading " + corpusFile + "...");
+            selectionPanel.add(selectionLabel, BorderLayout.NORTH);
+
+            selectionList = new JList<>(new SelectionListModel(new int[0]));
+            selectionList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+            selectionList.setPrototypeCellValue(NAME_PROTOTYPE + NAME_PROTOTYPE); // don't measure every tweet
+            selectionList.setToolTipText("<html>Tweets in the area selected on the map with the right mouse button.<br>" +
+                "Pick one to edit it, and push it to the clipboard to save the changes.</html>");
+            selectionPanel.add(new JScrollPane(selectionList), BorderLayout.CENTER);
+
+            final JSplitPane jsonAndSelection = new JSplitPane(JSplitPane.VERTICAL_SPLIT, jsonScrollPane, selectionPanel);
+            jsonAndSelection.setResizeWeight(0.6);
+            right.add(jsonAndSelection, BorderLayout.CENTER);
+        }
 
         final JButton pasteFromClipboardButton = new JButton("Paste Tweet from clipboard");
         pasteFromClipboardButton.setToolTipText(
             "<html>To edit the fields of an existing Tweet,<br>paste its JSON with this button.</html>"
         );
 
-        right.add(pasteFromClipboardButton, BorderLayout.SOUTH);
+        final JButton showChangesButton = new JButton("Show Changes");
+        showChangesButton.setToolTipText(
+            "<html>List what has been changed since the Tweet<br>was pasted or picked from the corpus.</html>"
+        );
+
+        final JPanel rightButtons = new JPanel(new BorderLayout());
+        rightButtons.add(pasteFromClipboardButton, BorderLayout.CENTER);
+        rightButtons.add(showChangesButton, BorderLayout.EAST);
+        right.add(rightButtons, BorderLayout.SOUTH);
 
 
         // BEHAVIOUR
@@ -527,8 +631,38 @@ public class SimpleTweetEditorUI extends JPanel {
             model.set("user.screen_name", newName);
             updateJsonTextArea();
         });
+        final JTextComponent nameEditor = (JTextComponent) namePicker.getEditor().getEditorComponent();
+        nameEditor.getDocument().addDocumentListener(newUpdateOnChangeListener(() -> {
+            if (nameEditor.isFocusOwner()) { // only filter on what's being typed
+                SwingUtilities.invokeLater(() -> {
+                    // any change to the model makes the combo put the selected item back in the editor
+                    final String typed = nameEditor.getText();
+                    final int caret = nameEditor.getCaretPosition();
+                    nameCBModel.setFilter(typed);
+                    if (! nameEditor.getText().equals(typed)) {
+                        nameEditor.setText(typed); // the filter's unchanged, so this won't come round again
+                        nameEditor.setCaretPosition(Math.min(caret, typed.length()));
+                    }
+                    if (namePicker.isShowing()) {
+                        namePicker.showPopup();
+                    }
+                });
+            }
+        }));
+        namePicker.addPopupMenuListener(new PopupMenuListener() {
+            @Override
+            public void popupMenuWillBecomeVisible(PopupMenuEvent e) { }
+
+            @Override
+            public void popupMenuWillBecomeInvisible(PopupMenuEvent e) {
+                SwingUtilities.invokeLater(() -> nameCBModel.setFilter(""));
+            }
+
+            @Override
+            public void popupMenuCanceled(PopupMenuEvent e) { }
+        });
         nameButton.addActionListener(e -> {
-            final String newName = generateName(nameCBModel.getElements());
+            final String newName = generateName(nameCBModel::contains);
             namePicker.addItem(newName);
             namePicker.setSelectedItem(newName); // will trigger the ActionListener above
         });
@@ -580,7 +714,7 @@ public class SimpleTweetEditorUI extends JPanel {
                 if (! msg.contains(mediaUrl)) {
                     textArea.setText(msg + (trailingSpace ? "" : " ") + mediaUrl);
                 }
-                final int indexOfUrl = textArea.getText().indexOf(mediaUrl);
+                final int indexOfUrl = codePointIndexOf(textArea.getText(), mediaUrl);
                 final int[] indices = new int[]{indexOfUrl, indexOfUrl + mediaUrl.length()};
                 model.set("entities.media.[0].indices", indices);
                 model.set("entities.media.[0].source_status_id", null);
@@ -648,6 +782,34 @@ public class SimpleTweetEditorUI extends JPanel {
                 SwingUtilities.invokeLater(this::updateJsonTextArea); // makes the UI a little more responsive
             }
         });
+        if (corpusFile != null) {
+            geoPanel.addSelectionListener((northWest, southEast) -> {
+                lastSelection = new double[]{
+                    normaliseLongitude(northWest.getLongitude()), southEast.getLatitude(),
+                    normaliseLongitude(southEast.getLongitude()), northWest.getLatitude()
+                };
+                showSelection();
+            });
+            selectionList.addListSelectionListener(e -> {
+                final int selected = selectionList.getSelectedIndex();
+                if (e.getValueIsAdjusting() || selected < 0) {
+                    return;
+                }
+                final int index = ((SelectionListModel) selectionList.getModel()).tweets[selected];
+                if (index == corpusIndex) {
+                    return;
+                }
+                try {
+                    final JsonNode picked = corpus.open(index).root;
+                    updateUIFromModel(JSON.writeValueAsString(picked));
+                    corpusIndex = index;
+                    originalTweet = picked;
+                } catch (IOException e1) {
+                    e1.printStackTrace();
+                }
+            });
+            loadCorpus();
+        }
         // paste from clipboard to the full json text area
         pasteFromClipboardButton.addActionListener(e -> {
             final String originalContent = jsonTextArea.getText();
@@ -655,7 +817,14 @@ public class SimpleTweetEditorUI extends JPanel {
             try {
                 // grab the text from the clipboard, safely
                 final String hopefullyJSON = (String) clipboard.getData(DataFlavor.stringFlavor);
+                corpusIndex = -1;
+                final JsonNode pasted = JSON.readTree(hopefullyJSON);
+                if (pasted == null || ! pasted.isObject()) { // readTree gives null for nothing but whitespace
+                    throw new IOException("The clipboard doesn't hold a tweet's JSON object");
+                }
+                warnOfProblems(pasted);
                 updateUIFromModel(hopefullyJSON);
+                originalTweet = pasted;
             } catch (UnsupportedFlavorException | IOException e1) {
                 jsonTextArea.setText(originalContent);
                 e1.printStackTrace();
@@ -673,10 +842,37 @@ public class SimpleTweetEditorUI extends JPanel {
                 pushToClipboard(json);
                 System.out.println(json);
 
+                if (corpusIndex >= 0) { // save the edit, which may move it out of the selection
+                    corpus.update(corpusIndex, model.root.deepCopy());
+                    showSelection();
+                }
             }
         });
+        showChangesButton.addActionListener(e -> {
+            if (originalTweet == null) {
+                JOptionPane.showMessageDialog(
+                    jsonTextArea,
+                    "Paste a Tweet, or pick one from the corpus, to see what's changed since.",
+                    "Show Changes",
+                    JOptionPane.INFORMATION_MESSAGE
+                );
+                return;
+            }
+            final StringBuilder changes = new StringBuilder();
+            for (final TweetDiff.Change change : TweetDiff.diff(originalTweet, model.root)) {
+                changes.append(change).append('\n');
+            }
+            final JTextArea changesArea = new JTextArea(changes.length() > 0 ? changes.toString() : "No changes.");
+            changesArea.setEditable(false);
+            changesArea.setFont(new Font("Courier New", Font.PLAIN, 12));
+            final JScrollPane changesPane = new JScrollPane(changesArea);
+            changesPane.setPreferredSize(new Dimension(600, 300));
+            JOptionPane.showMessageDialog(jsonTextArea, changesPane, "Show Changes", JOptionPane.PLAIN_MESSAGE);
+        });
         newButton.addActionListener(e -> {
             try {
+                corpusIndex = -1;
+                originalTweet = null;
                 updateUIFromModel(freshTweetJson());
             } catch (IOException e1) {
                 e1.printStackTrace();
@@ -690,6 +886,50 @@ public class SimpleTweetEditorUI extends JPanel {
         });
     }
 
+    private void loadCorpus() {
+        new Thread(() -> {
+            final TweetStore tweets = new IndexedTweetStore(new CompactTweetStore(), spatialIndex);
+            try (TweetReader reader = new TweetReader(TweetFormat.forFile(corpusFile), Compression.open(corpusFile))) {
+                JsonNode tweet;
+                while ((tweet = reader.next()) != null) {
+                    tweets.add(tweet);
+                }
+                spatialIndex.pack();
+                SwingUtilities.invokeLater(() -> {
+                    corpus = tweets;
+                    selectionLabel.setText(
+                        "Loaded " + tweets.size() + " tweets. Select an area on the map with the right mouse button."
+                    );
+                    showSelection(); // in case an area was selected while loading
+                });
+            } catch (IOException e) {
+                e.printStackTrace();
+                SwingUtilities.invokeLater(() -> selectionLabel.setText("Failed to load " + corpusFile));
+            }
+        }).start();
+    }
+
+    private void showSelection() {
+        if (corpus == null || lastSelection == null) {
+            return;
+        }
+        final long start = System.nanoTime();
+        final int[] found = spatialIndex.query(lastSelection[0], lastSelection[1], lastSelection[2], lastSelection[3]);
+        final double millis = (System.nanoTime() - start) / 1e6;
+
+        selectionList.setModel(new SelectionListModel(found));
+        final int stillSelected = Arrays.binarySearch(found, corpusIndex);
+        if (stillSelected >= 0) {
+            selectionList.setSelectedIndex(stillSelected);
+            selectionList.ensureIndexIsVisible(stillSelected);
+        }
+        selectionLabel.setText(String.format("%d tweets in selection (%.1f ms)", found.length, millis));
+    }
+
+    private static double normaliseLongitude(final double longitude) {
+        return ((longitude + 180) % 360 + 360) % 360 - 180; // the map repeats east and west
+    }
+
     private void ensureMediaEntityExists() {
         if (! model.has("entities.media")) { // add media entity list if it's not there
             final ArrayNode mediaList = JsonNodeFactory.instance.arrayNode();
@@ -779,21 +1019,41 @@ public class SimpleTweetEditorUI extends JPanel {
         model.set("entities", extractEntitiesAsJsonNodeTree(newText, model.get("entities.media")));
         if (! mediaUrlTF.getText().isEmpty()) {
             final String mediaUrl = mediaUrlTF.getText();
-            final int indexOfUrl = textArea.getText().indexOf(mediaUrl);
+            final int indexOfUrl = codePointIndexOf(textArea.getText(), mediaUrl);
             final int[] indices = new int[]{indexOfUrl, indexOfUrl + mediaUrl.length()};
             model.set("entities.media.[0].indices", indices);
         }
+        textLabel.setText(textLabelFor(newText));
         updateJsonTextArea();
     }
 
-    private String generateName(final List<String> elements) {
-        String newName;
-        do {
-            final int index1 = (int) Math.floor(Math.random() * NAME_PARTS.length);
-            final int index2 = (int) Math.floor(Math.random() * NAME_PARTS.length);
-            newName = NAME_PARTS[index1] + "." + NAME_PARTS[index2];
-        } while (elements.contains(newName));
-        return newName;
+    // e.g. "Tweet Text 12/280", in red once it's too long to post
+    private static String textLabelFor(final String text) {
+        final int length = TweetLinter.weightedLength(text);
+        return "<html>Tweet Text<br>" + (length > TweetLinter.MAX_WEIGHTED_LENGTH ? "<font color=red>" : "") +
+            length + "/" + TweetLinter.MAX_WEIGHTED_LENGTH + "</html>";
+    }
+
+    // entity indices count code points, not Java's chars
+    private static int codePointIndexOf(final String text, final String target) {
+        final int index = text.indexOf(target);
+        return index < 0 ? index : text.codePointCount(0, index);
+    }
+
+    // tweets from elsewhere may not be what they seem, so say so before the editor tidies them up
+    private void warnOfProblems(final JsonNode tweet) {
+        final List<TweetLinter.Problem> problems = TweetLinter.lint(tweet);
+        if (! problems.isEmpty()) {
+            final StringBuilder message = new StringBuilder("The pasted tweet has problems:");
+            for (final TweetLinter.Problem problem : problems) {
+                message.append("\n").append(problem);
+            }
+            JOptionPane.showMessageDialog(jsonTextArea, message.toString(), "Paste Warning", JOptionPane.WARNING_MESSAGE);
+        }
+    }
+
+    private String generateName(final Predicate<String> alreadyTaken) {
+        return NameGenerator.generate(randomness.forCurrentThread(), alreadyTaken);
     }
 
     private void updateUIFromModel(final String hopefullyJSON) throws IOException {
@@ -844,13 +1104,7 @@ public class SimpleTweetEditorUI extends JPanel {
     }
 
     private JsonNode makeLatLonJsonNode(final double first, final double second) {
-        try {
-            final String jsonContent = "{\"coordinates\":[" + first + "," + second + "],\"type\":\"Point\"}";
-            return JSON.readValue(jsonContent, JsonNode.class);
-        } catch (IOException e) {
-            e.printStackTrace();
-            return JsonNodeFactory.instance.nullNode();
-        }
+        return Tweets.makeLatLonJsonNode(first, second);
     }
 
     private void updateJsonTextArea() {
@@ -931,7 +1185,7 @@ public class SimpleTweetEditorUI extends JPanel {
     }
 
     private String now() {
-        return TWITTER_TIMESTAMP_FORMAT.format(ZonedDateTime.now());
+        return Tweets.now();
     }
 
     /**
@@ -940,11 +1194,7 @@ public class SimpleTweetEditorUI extends JPanel {
      * @return A plausible tweet ID.
      */
     private static String generateID() {
-        final StringBuilder idStr = new StringBuilder(Long.toString(System.currentTimeMillis()));
-        while (idStr.length() < ID_LENGTH) {
-            idStr.append(R.nextInt(10)); // 0-9
-        }
-        return idStr.toString();
+        return Tweets.generateID(randomness.forCurrentThread());
     }
 
 
@@ -1028,297 +1278,40 @@ public class SimpleTweetEditorUI extends JPanel {
         final String credentialsFile,
         final boolean debug
     ) throws IOException {
-        // TODO find a better name than credentials, given it might contain proxy info
-        final Properties credentials = loadCredentials(credentialsFile);
-
-        final ConfigurationBuilder conf = new ConfigurationBuilder();
-        conf.setTweetModeExtended(true);
-        conf.setJSONStoreEnabled(true)
-            .setDebugEnabled(debug)
-            .setOAuthConsumerKey(credentials.getProperty("oauth.consumerKey"))
-            .setOAuthConsumerSecret(credentials.getProperty("oauth.consumerSecret"))
-            .setOAuthAccessToken(credentials.getProperty("oauth.accessToken"))
-            .setOAuthAccessTokenSecret(credentials.getProperty("oauth.accessTokenSecret"));
-
-        final Properties proxies = loadProxyProperties();
-        if (proxies.containsKey("http.proxyHost")) {
-            conf.setHttpProxyHost(proxies.getProperty("http.proxyHost"))
-                .setHttpProxyPort(Integer.parseInt(proxies.getProperty("http.proxyPort")))
-                .setHttpProxyUser(proxies.getProperty("http.proxyUser"))
-                .setHttpProxyPassword(proxies.getProperty("http.proxyPassword"));
-        }
-
-        return conf.build();
-    }
-
-    /**
-     * Loads the given {@code credentialsFile} from disk.
-     *
-     * @param credentialsFile the properties file with the Twitter credentials in it
-     * @return A {@link Properties} map with the contents of credentialsFile
-     * @throws IOException if there's a problem reading the credentialsFile.
-     */
-    private static Properties loadCredentials(final String credentialsFile)
-        throws IOException {
-        final Properties properties = new Properties();
-        properties.load(Files.newBufferedReader(Paths.get(credentialsFile)));
-        return properties;
+        return TwitterPlaceLookup.makeConfig(credentialsFile, debug);
     }
 
-    /**
-     * Loads proxy information from <code>"./proxy.properties"</code> if it is
-     * present. If a proxy host and username are specified by no password, the
-     * user is asked to type it in via stdin.
-     *
-     * @return A {@link Properties} map with proxy credentials.
-     */
     private static Properties loadProxyProperties() {
-        final Properties properties = new Properties();
-        final String proxyFile = "./proxy.properties";
-        if (new File(proxyFile).exists()) {
-            boolean success = true;
-            try (Reader fileReader = Files.newBufferedReader(Paths.get(proxyFile))) {
-                properties.load(fileReader);
-            } catch (IOException e) {
-                System.err.println("Attempted and failed to load " + proxyFile + ": " + e.getMessage());
-                success = false;
-            }
-            if (success && !properties.containsKey("http.proxyPassword")) {
-                char[] password = System.console().readPassword("Please type in your proxy password: ");
-                properties.setProperty("http.proxyPassword", new String(password));
-                properties.setProperty("https.proxyPassword", new String(password));
-            }
-            properties.forEach((k, v) -> System.setProperty(k.toString(), v.toString()));
-        }
-        return properties;
+        return TwitterPlaceLookup.loadProxyProperties();
     }
 
 
     private JsonNode extractEntitiesAsJsonNodeTree(final String newText, final JsonNode mediaEntities) {
-        Map<String, List<Object>> entityMap = Maps.newTreeMap();
-        entityMap.put("hashtags", Lists.newArrayList());
-        entityMap.put("symbols", Lists.newArrayList());
-        entityMap.put("user_mentions", Lists.newArrayList());
-        entityMap.put("urls", Lists.newArrayList());
-
-        for (Extractor.Entity e : TWITTER_EXTRACTOR.extractURLsWithIndices(newText)) {
-            Map<String, Object> urlMap = Maps.newTreeMap();
-            urlMap.put("url", e.getValue());
-            urlMap.put("extended_url", e.getExpandedURL() != null ? e.getExpandedURL() : e.getValue());
-            urlMap.put("display_url", e.getDisplayURL() != null ? e.getDisplayURL() : e.getValue());
-            urlMap.put("indices", Arrays.asList(e.getStart(), e.getEnd()));
-            entityMap.get("urls").add(urlMap);
-        }
-
-        for (Extractor.Entity e : TWITTER_EXTRACTOR.extractMentionedScreennamesWithIndices(newText)) {
-            Map<String, Object> mentionMap = Maps.newTreeMap();
-            mentionMap.put("screen_name", e.getValue());
-            mentionMap.put("name", null); // need reverse-lookup to get most of these values
-            mentionMap.put("id", null);
-            mentionMap.put("id_str", null);
-            mentionMap.put("indices", Arrays.asList(e.getStart(), e.getEnd()));
-            entityMap.get("user_mentions").add(mentionMap);
-        }
-
-        for (Extractor.Entity e : TWITTER_EXTRACTOR.extractHashtagsWithIndices(newText)) {
-            Map<String, Object> hashtagMap = Maps.newTreeMap();
-            hashtagMap.put("text", e.getValue());
-            hashtagMap.put("indices", Arrays.asList(e.getStart(), e.getEnd()));
-            entityMap.get("hashtags").add(hashtagMap);
-        }
-
-        for (Extractor.Entity e : TWITTER_EXTRACTOR.extractCashtagsWithIndices(newText)) {
-            Map<String, Object> cashtagMap = Maps.newTreeMap();
-            cashtagMap.put("text", e.getValue());
-            cashtagMap.put("indices", Arrays.asList(e.getStart(), e.getEnd()));
-            entityMap.get("symbols").add(cashtagMap);
-        }
-
-        final JsonNode entitiesRoot = JSON.valueToTree(entityMap);
-        if (mediaEntities != JsonNodeFactory.instance.nullNode()) {
-            ((ObjectNode) entitiesRoot).set("media", mediaEntities);
-        }
-        return entitiesRoot;
+        return Tweets.extractEntitiesAsJsonNodeTree(newText, mediaEntities);
     }
 
 
-    class TweetModel {
-        JsonNode root;
-
-        JsonNode get(final String path) {
-            return getNested(root, path);
-        }
-
-        JsonNode getNested(final JsonNode obj, final String path) {
-            if (path.contains(".")) {
-                final String head = path.substring(0, path.indexOf('.'));
-                final String tail = path.substring(path.indexOf('.') + 1);
-                if (head.startsWith("[")) {
-                    final int index = Integer.parseInt(head.substring(1, head.length() - 1));
-                    if (obj.has(index)) {
-                        return getNested(obj.get(index), tail);
-                    } else {
-                        System.err.println("Could not find index: " + index);
-                        return JsonNodeFactory.instance.nullNode(); // error!
-                    }
-                }
-                if (obj.has(head)) {
-                    return getNested(obj.get(head), tail);
-                } else {
-                    System.err.println("Could not find sub-path: " + tail);
-                    return JsonNodeFactory.instance.nullNode(); // error!
-                }
-            } else {
-                return obj.has(path) ? obj.get(path) : JsonNodeFactory.instance.nullNode();
-            }
-        }
-
-        public void set(String path, Object value) {
-            setNested(root, path, value);
-        }
-
-        void setNested(final JsonNode node, final String path, final Object value) {
-            if (path.contains(".")) {
-                final String head = path.substring(0, path.indexOf('.'));
-                final String tail = path.substring(path.indexOf('.') + 1);
-                if (head.startsWith("[")) { // deal with arrays of structures
-                    final int index = Integer.parseInt(head.substring(1, head.length() - 1));
-                    if (node.has(index)) {
-                        setNested(node.get(index), tail, value);
-                    } else {
-                        System.err.println("Could not find index: " + index);
-                        if (verbose) Thread.dumpStack();
-                    }
-                } else if (node.has(head)) {
-                    if (tail.startsWith("[")) {
-                        setNested(node.get(head), tail, value);
-                    } else {
-                        setNested(node.get(head), tail, value);
-                    }
-                } else {
-                    System.err.println("Could not find sub-path: " + tail);
-                }
-            } else {
-                final JsonNodeFactory jsonNodeFactory = JsonNodeFactory.instance;
-                ObjectNode obj = null;
-                if (path.startsWith("[")) { // deal with arrays of values
-                    final int index = Integer.parseInt(path.substring(1, path.length() - 1));
-                    if (node.has(index)) {
-                        obj = (ObjectNode) node.get(index); // set node to the indexed element
-                    } else {
-                        System.err.println("Could not find index: " + index);
-                        if (verbose) Thread.dumpStack();
-                    }
-                } else {
-                    obj = (ObjectNode) node;
-                }
-
-                if (value == null) {
-                    obj.set(path, jsonNodeFactory.nullNode());
-                } else if (value instanceof JsonNode) {
-                    obj.set(path, (JsonNode) value);
-                } else if (value instanceof Boolean) {
-                    obj.set(path, jsonNodeFactory.booleanNode((Boolean) value));
-                } else if (value instanceof BigDecimal) {
-                    obj.set(path, jsonNodeFactory.numberNode((BigDecimal) value));
-                } else if (value instanceof String) {
-                    obj.set(path, jsonNodeFactory.textNode(value.toString()));
-                } else if (value instanceof double[]) { //value.getClass().isArray()) {
-                    final ArrayNode arrayNode = jsonNodeFactory.arrayNode();
-                    double[] array = (double[]) value;
-                    for (double d : array) {
-                        arrayNode.add(d);
-                    }
-                    obj.set(path, arrayNode);
-                } else if (value instanceof int[]) {
-                    final ArrayNode arrayNode = jsonNodeFactory.arrayNode();
-                    int[] array = (int[]) value;
-                    for (int i : array) {
-                        arrayNode.add(i);
-                    }
-                    obj.set(path, arrayNode);
-                }
-            }
-        }
-
-        public boolean has(final String path) {
-            return hasNested(root, path);
-        }
-
-        public boolean hasNested(final JsonNode obj, final String path) {
-            if (path.contains(".")) {
-                final String head = path.substring(0, path.indexOf('.'));
-                final String tail = path.substring(path.indexOf('.') + 1);
-                if (head.startsWith("[")) {
-                    final int index = Integer.parseInt(path.substring(1, path.length() - 1));
-                    if (! (obj instanceof ArrayNode)) {
-                        return false;
-                    }
-                    final ArrayNode array = (ArrayNode) obj;
-                    if (array.has(index)) {
-                        return hasNested(array.get(index), tail);
-                    } else {
-                        System.err.println("Could not find index: " + index);
-                        if (verbose) Thread.dumpStack();
-                        return false;
-                    }
-                } else {
-                    return obj.has(head) && hasNested(obj.get(head), tail);
-                }
-            }
-            if (path.startsWith("[")) {
-                final int index = Integer.parseInt(path.substring(1, path.length() - 1));
-                if (! (obj instanceof ArrayNode)) {
-                    return false;
-                }
-                return obj.has(index);
-            } else {
-                return obj.has(path);
-            }
-        }
-    }
-
     /**
-     * Borrowed from https://stackoverflow.com/questions/7387299/dynamically-adding-items-to-a-jcombobox
+     * Describes the tweets in a selection as they're scrolled into view,
+     * rather than all at once, as there may be millions of them.
      */
-    private class SortedComboBoxModel extends DefaultComboBoxModel<String> {
-
+    class SelectionListModel extends AbstractListModel<String> {
         private static final long serialVersionUID = 1L;
 
-        public SortedComboBoxModel(final String[] items) {
-            Stream.of(items).sorted().filter(Objects::nonNull).forEach(this::addElement);
-            setSelectedItem(items[0]);
-        }
+        private final int[] tweets;
 
-        @Override
-        public void addElement(final String element) {
-            if (element == null) return;
-            for (int i = 0; i < getSize(); i++) {
-                Object elementAtI = getElementAt(i);
-                if (elementAtI.equals(element)) {
-                    return; // already present
-                }
-            }
-
-            insertElementAt(element, 0);
+        SelectionListModel(final int[] tweets) {
+            this.tweets = tweets;
         }
 
         @Override
-        public void insertElementAt(final String element, int index) {
-            if (element == null) return;
-            int size = getSize();
-            //  Determine where to insert element to keep model in sorted order
-            for (index = 0; index < size; index++) {
-                Comparable<String> c = getElementAt(index);
-                if (c.compareTo(element) > 0) {
-                    break;
-                }
-            }
-            super.insertElementAt(element, index);
+        public int getSize() {
+            return tweets.length;
         }
 
-        public List<String> getElements() {
-            return IntStream.range(0, getSize()).mapToObj(this::getElementAt).collect(Collectors.toList());
+        @Override
+        public String getElementAt(final int i) {
+            return "@" + corpus.screenName(tweets[i]) + ": " + corpus.text(tweets[i]);
         }
     }
 
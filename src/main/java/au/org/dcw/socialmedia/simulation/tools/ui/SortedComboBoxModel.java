@@ -0,0 +1,260 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.ui;
+
+import javax.swing.AbstractListModel;
+import javax.swing.MutableComboBoxModel;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A {@link MutableComboBoxModel} of screen names kept in sorted order in a
+ * plain array, so lookups and insertion points are found by binary search
+ * rather than by scanning every element.
+ * <p>
+ * Names are ordered case-insensitively (ties broken by natural order), which
+ * means every name starting with a given prefix sits in one contiguous range.
+ * Setting a {@link #setFilter(String) filter} narrows the model's view to that
+ * range without copying anything, so a popup list only ever asks for the rows
+ * it actually displays.
+ */
+public class SortedComboBoxModel extends AbstractListModel<String> implements MutableComboBoxModel<String> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Comparator<String> ORDER =
+        String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+
+    private String[] elements = new String[16];
+    private int size = 0;
+
+    // the filtered view is the range [viewStart, viewEnd) of elements
+    private String filter = "";
+    private int viewStart = 0;
+    private int viewEnd = 0;
+
+    private Object selectedItem;
+
+    public SortedComboBoxModel(final String[] items) {
+        Arrays.stream(items).filter(Objects::nonNull).forEach(this::addElement);
+        if (items.length > 0) {
+            setSelectedItem(items[0]);
+        }
+    }
+
+    // ComboBoxModel
+
+    @Override
+    public void setSelectedItem(final Object item) {
+        if (! Objects.equals(selectedItem, item)) {
+            selectedItem = item;
+            fireContentsChanged(this, -1, -1);
+        }
+    }
+
+    @Override
+    public Object getSelectedItem() {
+        return selectedItem;
+    }
+
+    @Override
+    public int getSize() {
+        return viewEnd - viewStart;
+    }
+
+    @Override
+    public String getElementAt(final int index) {
+        if (index < 0 || index >= getSize()) {
+            return null;
+        }
+        return elements[viewStart + index];
+    }
+
+    // MutableComboBoxModel
+
+    @Override
+    public void addElement(final String element) {
+        if (element == null) return;
+        final int pos = Arrays.binarySearch(elements, 0, size, element, ORDER);
+        if (pos >= 0) {
+            return; // already present
+        }
+        final int insertAt = -(pos + 1);
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size * 2);
+        }
+        System.arraycopy(elements, insertAt, elements, insertAt + 1, size - insertAt);
+        elements[insertAt] = element;
+        size++;
+
+        if (size == 1 && selectedItem == null) {
+            selectedItem = element;
+        }
+        refreshView();
+    }
+
+    /**
+     * Adds many names at once with a single sort and merge, firing only one
+     * change event, which is far cheaper than repeated {@link #addElement}
+     * calls when loading a whole corpus of names.
+     *
+     * @param names The names to add; nulls and duplicates are ignored.
+     */
+    public void addAll(final Collection<String> names) {
+        final String[] incoming = names.stream().filter(Objects::nonNull).sorted(ORDER).toArray(String[]::new);
+        final String[] merged = new String[Math.max(16, size + incoming.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < size || j < incoming.length) {
+            final String next;
+            if (j == incoming.length || (i < size && ORDER.compare(elements[i], incoming[j]) <= 0)) {
+                next = elements[i++];
+            } else {
+                next = incoming[j++];
+            }
+            if (n == 0 || ! merged[n - 1].equals(next)) {
+                merged[n++] = next;
+            }
+        }
+        elements = merged;
+        size = n;
+        if (selectedItem == null && size > 0) {
+            selectedItem = elements[0];
+        }
+        refreshView();
+    }
+
+    /**
+     * The position of an element is dictated by the sort order, so the
+     * requested {@code index} is ignored.
+     */
+    @Override
+    public void insertElementAt(final String element, final int index) {
+        addElement(element);
+    }
+
+    @Override
+    public void removeElement(final Object obj) {
+        if (! (obj instanceof String)) return;
+        final int pos = Arrays.binarySearch(elements, 0, size, (String) obj, ORDER);
+        if (pos >= 0) {
+            removeAt(pos);
+        }
+    }
+
+    @Override
+    public void removeElementAt(final int index) {
+        if (index >= 0 && index < getSize()) {
+            removeAt(viewStart + index);
+        }
+    }
+
+    private void removeAt(final int pos) {
+        final String removed = elements[pos];
+        System.arraycopy(elements, pos + 1, elements, pos, size - pos - 1);
+        elements[--size] = null;
+        if (removed.equals(selectedItem)) {
+            selectedItem = size > 0 ? elements[Math.min(pos, size - 1)] : null;
+        }
+        refreshView();
+    }
+
+    // Name registry
+
+    public boolean contains(final String element) {
+        return element != null && Arrays.binarySearch(elements, 0, size, element, ORDER) >= 0;
+    }
+
+    /**
+     * @return The total number of names held, regardless of any filter.
+     */
+    public int getTotalSize() {
+        return size;
+    }
+
+    /**
+     * @return An unmodifiable view of all names held, in sorted order,
+     * regardless of any filter.
+     */
+    public List<String> getElements() {
+        return Collections.unmodifiableList(Arrays.asList(elements).subList(0, size));
+    }
+
+    // Filtering
+
+    /**
+     * Restricts the visible elements to those starting with {@code prefix},
+     * ignoring case. An empty or {@code null} prefix shows everything.
+     *
+     * @param prefix The prefix to filter by.
+     */
+    public void setFilter(final String prefix) {
+        final String newFilter = prefix == null ? "" : prefix;
+        if (! newFilter.equals(filter)) {
+            filter = newFilter;
+            refreshView();
+        }
+    }
+
+    public String getFilter() {
+        return filter;
+    }
+
+    private void refreshView() {
+        final int oldViewSize = getSize();
+        if (filter.isEmpty()) {
+            viewStart = 0;
+            viewEnd = size;
+        } else {
+            viewStart = firstIndexNotBefore(filter);
+            viewEnd = firstIndexAfterPrefix(filter);
+        }
+        fireContentsChanged(this, 0, Math.max(oldViewSize, getSize()) - 1);
+    }
+
+    /** The first element that is not less than {@code prefix}, ignoring case. */
+    private int firstIndexNotBefore(final String prefix) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (String.CASE_INSENSITIVE_ORDER.compare(elements[mid], prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** The first element that sorts after every element starting with {@code prefix}. */
+    private int firstIndexAfterPrefix(final String prefix) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            final String e = elements[mid];
+            final String head = e.length() > prefix.length() ? e.substring(0, prefix.length()) : e;
+            if (String.CASE_INSENSITIVE_ORDER.compare(head, prefix) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
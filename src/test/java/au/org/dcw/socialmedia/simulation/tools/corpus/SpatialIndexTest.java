@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.corpus;
+
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class SpatialIndexTest {
+
+    @Test
+    public void findsOnlyTheTweetsInTheBox() {
+        final SpatialIndex index = new SpatialIndex();
+        for (int i = 0; i < 100; i++) {
+            index.added(i, tweetAt(138.0 + i / 100.0, -35.0));
+        }
+        assertArrayEquals(new int[]{10, 11, 12}, index.query(138.095, -35.1, 138.125, -34.9));
+        assertArrayEquals(new int[0], index.query(0.0, 0.0, 10.0, 10.0));
+    }
+
+    @Test
+    public void findsASingleTweetOnlyInABoxAroundIt() {
+        final SpatialIndex index = new SpatialIndex();
+        index.added(0, tweetAt(138.6, -34.9));
+        assertArrayEquals(new int[0], index.query(0.0, 0.0, 10.0, 10.0));
+        assertArrayEquals(new int[]{0}, index.query(138.0, -35.0, 139.0, -34.0));
+    }
+
+    private static ObjectNode tweetAt(final double longitude, final double latitude) {
+        final ObjectNode tweet = Tweets.JSON.createObjectNode();
+        tweet.putObject("coordinates").put("type", "Point").putArray("coordinates").add(longitude).add(latitude);
+        return tweet;
+    }
+}
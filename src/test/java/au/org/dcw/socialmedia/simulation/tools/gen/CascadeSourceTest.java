@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.gen;
+
+import au.org.dcw.socialmedia.simulation.tools.model.TweetLinter;
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CascadeSourceTest {
+
+    @Test
+    public void mentionsTheTargetsAuthorWithTheRightIndices() throws InterruptedException {
+        final CascadeSource cascades = new CascadeSource(
+            new TweetGenerator(new Randomness(3L), 50, 1_500_000_000_000L, 1000L),
+            new Randomness(3L), 0.3, 0.3, 0.2, 1000
+        );
+        for (int i = 0; i < 2000; i++) {
+            final ObjectNode tweet = cascades.next();
+            final String text = tweet.get("full_text").asText();
+            if (tweet.has("in_reply_to_screen_name")) {
+                final String name = tweet.get("in_reply_to_screen_name").asText();
+                assertTrue(text, text.startsWith("@" + name + " "));
+                assertMention(tweet, name, 0);
+            } else if (tweet.path("retweeted_status").isObject()) {
+                final String name = tweet.path("retweeted_status").path("user").path("screen_name").asText();
+                assertTrue(text, text.startsWith("RT @" + name + ": "));
+                assertMention(tweet, name, 3);
+            }
+            assertEquals(tweet.toString(), 0, entityProblems(tweet).size());
+        }
+        assertTrue(cascades.replies() > 0 && cascades.retweets() > 0 && cascades.quotes() > 0);
+    }
+
+    @Test
+    public void keepsTheTextsEntitiesAfterThePrefix() throws InterruptedException {
+        final ObjectNode target = tweet(1L, "made.up.name", "@someone see #this");
+        final ObjectNode reply = tweet(2L, "other", "yes #that");
+        final CascadeSource cascades = new CascadeSource(
+            new TweetList(target, reply), new Randomness(1L), 1.0, 0.0, 0.0, 10
+        );
+        cascades.next();
+        cascades.next();
+
+        assertEquals("@made.up.name yes #that", reply.get("full_text").asText());
+        assertMention(reply, "made.up.name", 0);
+        assertEquals(1, reply.path("entities").path("user_mentions").size());
+        final JsonNode hashtag = reply.path("entities").path("hashtags").get(0);
+        assertEquals(18, hashtag.path("indices").get(0).asInt());
+        assertEquals(42, reply.path("entities").path("user_mentions").get(0).path("id").asLong());
+        assertTrue(TweetLinter.lint(reply).toString(), TweetLinter.lint(reply).isEmpty());
+    }
+
+    private static void assertMention(final ObjectNode tweet, final String name, final int at) {
+        final JsonNode mention = tweet.path("entities").path("user_mentions").get(0);
+        assertEquals(name, mention.path("screen_name").asText());
+        assertEquals(at, mention.path("indices").get(0).asInt());
+        assertEquals(at + 1 + name.length(), mention.path("indices").get(1).asInt());
+    }
+
+    private static List<TweetLinter.Problem> entityProblems(final JsonNode tweet) {
+        final List<TweetLinter.Problem> problems = new ArrayList<>();
+        for (final TweetLinter.Problem problem : TweetLinter.lint(tweet)) {
+            if (problem.rule == TweetLinter.Rule.ENTITY_INDICES) {
+                problems.add(problem);
+            }
+        }
+        return problems;
+    }
+
+    private static ObjectNode tweet(final long id, final String screenName, final String text) {
+        final ObjectNode tweet = Tweets.JSON.createObjectNode();
+        tweet.put("id", id).put("id_str", Long.toString(id)).put("full_text", text);
+        tweet.putObject("user").put("id", 42L).put("id_str", "42").put("screen_name", screenName);
+        tweet.set("entities", Tweets.extractEntitiesAsJsonNodeTree(text, null));
+        return tweet;
+    }
+
+    // the given tweets, then no more
+    private static final class TweetList implements TweetSource {
+        private final ObjectNode[] tweets;
+        private int next = 0;
+
+        TweetList(final ObjectNode... tweets) {
+            this.tweets = tweets;
+        }
+
+        @Override
+        public ObjectNode next() {
+            return next < tweets.length ? tweets[next++] : null;
+        }
+    }
+}
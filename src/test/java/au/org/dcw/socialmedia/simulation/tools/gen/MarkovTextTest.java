@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.gen;
+
+import au.org.dcw.socialmedia.simulation.tools.model.TweetLinter;
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MarkovTextTest {
+
+    @Test
+    public void onlyFollowsLearnedTransitions() {
+        final MarkovText markov = new MarkovText.Builder(1).add("the cat sat").add("the cat ran").build();
+        assertEquals(4, markov.tokenCount());
+        final SplittableRandom random = new SplittableRandom(1L);
+        for (int i = 0; i < 100; i++) {
+            final String text = markov.generate(random, 280);
+            assertTrue(text, text.equals("the cat sat") || text.equals("the cat ran"));
+        }
+    }
+
+    @Test
+    public void keepsWithinTheWeightedLength() {
+        // five CJK characters weigh ten, so three of them and their spaces weigh 32
+        final String word = "\u65E5\u672C\u8A9E\u306E\u6587";
+        final StringBuilder corpus = new StringBuilder();
+        for (int i = 0; i < 30; i++) {
+            corpus.append(word).append(' ');
+        }
+        final MarkovText markov = new MarkovText.Builder(1).add(corpus.toString()).build();
+        final SplittableRandom random = new SplittableRandom(2L);
+        for (int i = 0; i < 100; i++) {
+            final String text = markov.generate(random, 32);
+            assertFalse(text.isEmpty());
+            assertTrue(text, TweetLinter.weightedLength(text) <= 32);
+            assertTrue(text, text.length() <= word.length() * 3 + 2);
+        }
+    }
+
+    @Test
+    public void makesNothingWithNothingLearned() {
+        final MarkovText markov = new MarkovText.Builder(2).add("   ").build();
+        assertEquals(0, markov.tokenCount());
+        assertEquals("", markov.generate(new SplittableRandom(3L), 280));
+    }
+}
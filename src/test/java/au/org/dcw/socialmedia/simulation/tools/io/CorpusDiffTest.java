@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.io;
+
+import au.org.dcw.socialmedia.simulation.tools.model.TweetDiff;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CorpusDiffTest {
+
+    @Test
+    public void matchesTweetsByIdAndReportsOnlyWhatDiffers() throws IOException {
+        final Recorder recorder = new Recorder();
+        final CorpusDiff diff = new CorpusDiff();
+        diff.run(
+            TweetFormat.JSON, lines(
+                "{\"id\":1,\"text\":\"same\"}",
+                "{\"id\":2,\"text\":\"gone\"}",
+                "{\"id\":3,\"text\":\"old\",\"lat\":1}"
+            ),
+            TweetFormat.JSON, lines(
+                "{\"id\":1,\"text\":\"same\"}",
+                "{\"lat\":1.0,\"text\":\"new\",\"id\":3}",
+                "{\"id\":4,\"text\":\"new\"}"
+            ),
+            recorder
+        );
+
+        assertEquals(Arrays.asList("- 2", "~ 3 [~ text: \"old\" -> \"new\"]", "+ 4"), recorder.events);
+        assertEquals(3, diff.before());
+        assertEquals(3, diff.after());
+        assertEquals(1, diff.removed());
+        assertEquals(1, diff.added());
+        assertEquals(1, diff.changed());
+        assertEquals(1, diff.same());
+    }
+
+    @Test
+    public void refusesAnUnsortedVersion() throws IOException {
+        try {
+            new CorpusDiff().run(
+                TweetFormat.JSON, lines("{\"id\":1}", "{\"id\":3}"),
+                TweetFormat.JSON, lines("{\"id\":3}", "{\"id\":1}"),
+                new Recorder()
+            );
+            fail("Diffed an unsorted version");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("isn't sorted by ID"));
+        }
+    }
+
+    private static InputStream lines(final String... lines) {
+        return new ByteArrayInputStream((String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final class Recorder implements CorpusDiff.Listener {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void removed(final long id) {
+            events.add("- " + id);
+        }
+
+        @Override
+        public void added(final long id) {
+            events.add("+ " + id);
+        }
+
+        @Override
+        public void changed(final long id, final List<TweetDiff.Change> changes) {
+            events.add("~ " + id + " " + changes);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.io;
+
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RollingTweetSinkTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writesEveryTweet() throws IOException {
+        final File file = new File(folder.getRoot(), "tweets.json");
+        try (RollingTweetSink sink = smallSink(file)) {
+            for (int i = 0; i < 1000; i++) {
+                sink.write(tweet(i));
+            }
+        }
+        final List<String> lines = Files.readAllLines(file.toPath());
+        assertEquals(1000, lines.size());
+        assertTrue(lines.get(999).contains("\"id_str\":\"999\""));
+    }
+
+    // a file that can't be opened fails the background thread on its first buffer
+    @Test(timeout = 30_000)
+    public void closeThrowsRatherThanHangsAfterAWriteFailure() throws IOException {
+        for (int run = 0; run < 50; run++) {
+            final File file = new File(folder.getRoot(), "missing/tweets.json");
+            final RollingTweetSink sink = smallSink(file);
+            try {
+                for (int i = 0; i < 10_000; i++) {
+                    sink.write(tweet(i));
+                }
+                sink.close();
+                fail("Expected the failure to surface");
+            } catch (IOException e) {
+                // expected, from write or close
+            }
+            try {
+                sink.close();
+            } catch (IOException e) {
+                // expected, if the first close didn't get this far
+            }
+        }
+    }
+
+    private static RollingTweetSink smallSink(final File file) throws IOException {
+        return new RollingTweetSink(file.getPath(), TweetFormat.JSON, false, Compression.NONE, 0, 0, 1024, 2);
+    }
+
+    private static ObjectNode tweet(final int id) {
+        final ObjectNode tweet = Tweets.JSON.createObjectNode();
+        tweet.put("id", id);
+        tweet.put("id_str", Integer.toString(id));
+        tweet.put("text", "tweet number " + id);
+        return tweet;
+    }
+}
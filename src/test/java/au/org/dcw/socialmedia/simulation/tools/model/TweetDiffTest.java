@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TweetDiffTest {
+
+    @Test
+    public void findsNothingBetweenEqualTweetsInAnyFieldOrder() throws IOException {
+        final JsonNode before = json("{'id': 1, 'user': {'screen_name': 'alice', 'id': 2}, 'lat': 1}");
+        final JsonNode after = json("{'lat': 1.0, 'user': {'id': 2, 'screen_name': 'alice'}, 'id': 1}");
+        assertEquals(Collections.emptyList(), TweetDiff.diff(before, after));
+    }
+
+    @Test
+    public void findsAddedRemovedAndChangedFieldsByPath() throws IOException {
+        final JsonNode before = json(
+            "{'id': 1, 'geo': {'type': 'Point'}, 'place': {'name': 'Adelaide'}, 'entities': {'hashtags': [{'text': 'a'}]}}"
+        );
+        final JsonNode after = json(
+            "{'id': 1, 'place': {'name': 'Melbourne'}, 'entities': {'hashtags': [{'text': 'b'}, {'text': 'c'}]}, 'x': 0}"
+        );
+        final List<TweetDiff.Change> changes = TweetDiff.diff(before, after);
+
+        assertEquals(5, changes.size());
+        assertChange(changes.get(0), TweetDiff.Kind.REMOVED, "geo");
+        assertSame(before.get("geo"), changes.get(0).before);
+        assertNull(changes.get(0).after);
+        assertChange(changes.get(1), TweetDiff.Kind.CHANGED, "place.name");
+        assertEquals("Melbourne", changes.get(1).after.asText());
+        assertChange(changes.get(2), TweetDiff.Kind.CHANGED, "entities.hashtags.[0].text");
+        assertChange(changes.get(3), TweetDiff.Kind.ADDED, "entities.hashtags.[1]");
+        assertChange(changes.get(4), TweetDiff.Kind.ADDED, "x");
+        assertEquals("~ place.name: \"Adelaide\" -> \"Melbourne\"", changes.get(1).toString());
+    }
+
+    @Test
+    public void givesPathsTweetPathFollows() throws IOException {
+        final JsonNode before = json("{'entities': {'media': [{'url': 'a'}]}}");
+        final JsonNode after = json("{'entities': {'media': [{'url': 'b'}]}}");
+        final TweetDiff.Change change = TweetDiff.diff(before, after).get(0);
+
+        assertSame(after.path("entities").path("media").get(0).get("url"), TweetPath.compile(change.path).get(after));
+    }
+
+    @Test
+    public void comparesNumbersByValue() throws IOException {
+        assertTrue(TweetDiff.same(json("1"), json("1.0")));
+        assertTrue(TweetDiff.same(json("923456789012345678"), json("923456789012345678")));
+        assertTrue(TweetDiff.same(json("123456789012345678901234567890"), json("123456789012345678901234567890")));
+        assertFalse(TweetDiff.same(json("923456789012345678"), json("923456789012345679")));
+        assertFalse(TweetDiff.same(json("1"), json("\"1\"")));
+    }
+
+    private static void assertChange(final TweetDiff.Change change, final TweetDiff.Kind kind, final String path) {
+        assertEquals(change.toString(), kind, change.kind);
+        assertEquals(change.toString(), path, change.path);
+    }
+
+    private static JsonNode json(final String quoted) throws IOException {
+        return Tweets.JSON.readTree(quoted.replace('\'', '"'));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.model;
+
+import au.org.dcw.socialmedia.simulation.tools.gen.CascadeSource;
+import au.org.dcw.socialmedia.simulation.tools.gen.Randomness;
+import au.org.dcw.socialmedia.simulation.tools.gen.TweetGenerator;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TweetLinterTest {
+
+    @Test
+    public void weighsTextAsTwitterDoes() {
+        assertEquals(5, TweetLinter.weightedLength("hello"));
+        assertEquals(4, TweetLinter.weightedLength("\u65E5\u672C"));
+        assertEquals(2, TweetLinter.weightedLength("\uD83D\uDE00"));
+        assertEquals(1, TweetLinter.weightedLength("e\u0301"));
+        assertEquals(27, TweetLinter.weightedLength("see https://example.com/a/very/long/path/indeed"));
+    }
+
+    @Test
+    public void passesACleanTweet() {
+        final ObjectNode tweet = tweet(1L, "@alice look at #this https://example.com");
+        assertEquals(Collections.emptyList(), TweetLinter.lint(tweet));
+    }
+
+    @Test
+    public void flagsOverlongText() {
+        final String longest = repeat('a', TweetLinter.MAX_WEIGHTED_LENGTH);
+        assertEquals(Collections.emptyList(), TweetLinter.lint(tweet(1L, longest)));
+        assertRules(TweetLinter.lint(tweet(1L, longest + "a")), TweetLinter.Rule.TEXT_LENGTH);
+    }
+
+    @Test
+    public void letsARetweetsPrefixTakeItOverTheLimit() {
+        final ObjectNode original = tweet(1L, repeat('a', TweetLinter.MAX_WEIGHTED_LENGTH));
+        original.putObject("user").put("screen_name", "alice");
+        final ObjectNode retweet = tweet(2L, "RT @alice: " + original.get("full_text").asText());
+        retweet.set("retweeted_status", original);
+        assertEquals(Collections.emptyList(), TweetLinter.lint(retweet));
+
+        original.put("full_text", original.get("full_text").asText() + "a");
+        assertRules(TweetLinter.lint(retweet), TweetLinter.Rule.TEXT_LENGTH);
+        assertTrue(TweetLinter.lint(retweet).get(0).message.startsWith("retweeted_status.full_text"));
+    }
+
+    @Test
+    public void flagsMisplacedEntitiesMismatchedIdsAndSwappedCoordinates() {
+        final ObjectNode tweet = tweet(1L, "hi @alice");
+        tweet.put("full_text", "hi! @alice");
+        assertRules(TweetLinter.lint(tweet), TweetLinter.Rule.ENTITY_INDICES);
+
+        final ObjectNode ids = tweet(1L, "hi");
+        ids.put("id_str", "2");
+        assertRules(TweetLinter.lint(ids), TweetLinter.Rule.ID_STR);
+
+        final ObjectNode swapped = tweet(1L, "hi");
+        swapped.putObject("geo").put("type", "Point").putArray("coordinates").add(138.6).add(-34.9);
+        assertRules(TweetLinter.lint(swapped), TweetLinter.Rule.COORDINATES);
+    }
+
+    @Test
+    public void passesGeneratedRetweetsOfFullLengthTweets() throws InterruptedException {
+        final String text = repeat('a', TweetLinter.MAX_WEIGHTED_LENGTH - 10);
+        final CascadeSource cascades = new CascadeSource(
+            new TweetGenerator(new Randomness(4L), 20, 1_500_000_000_000L, 1000L)
+                .withTexts(Collections.singletonList(text)),
+            new Randomness(4L), 0.0, 0.8, 0.0, 100
+        );
+        for (int i = 0; i < 500; i++) {
+            final ObjectNode tweet = cascades.next();
+            assertEquals(tweet.toString(), Collections.emptyList(), TweetLinter.lint(tweet));
+        }
+        assertTrue(cascades.retweets() > 0);
+    }
+
+    private static void assertRules(final List<TweetLinter.Problem> problems, final TweetLinter.Rule rule) {
+        assertEquals(problems.toString(), 1, problems.size());
+        assertEquals(rule, problems.get(0).rule);
+    }
+
+    private static ObjectNode tweet(final long id, final String text) {
+        final ObjectNode tweet = Tweets.JSON.createObjectNode();
+        tweet.put("id", id).put("id_str", Long.toString(id)).put("full_text", text);
+        tweet.set("entities", Tweets.extractEntitiesAsJsonNodeTree(text, null));
+        return tweet;
+    }
+
+    private static String repeat(final char c, final int times) {
+        final StringBuilder builder = new StringBuilder(times);
+        for (int i = 0; i < times; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
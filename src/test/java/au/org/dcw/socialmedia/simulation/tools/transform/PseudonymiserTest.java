@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.transform;
+
+import au.org.dcw.socialmedia.simulation.tools.gen.Randomness;
+import au.org.dcw.socialmedia.simulation.tools.model.TweetLinter;
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PseudonymiserTest {
+
+    private static final String QUOTED = "https://twitter.com/RealAlice/status/923456789012345678";
+
+    @Test
+    public void replacesNamesAndIdsConsistently() {
+        final Pseudonymiser pseudonymiser = new Pseudonymiser(new Randomness(1L));
+        final ObjectNode tweet = tweet(923456789012345679L, "bob", "hi @RealAlice, and @carol");
+        pseudonymiser.apply(0, tweet);
+
+        final String alice = pseudonymiser.pseudonymOf("realalice");
+        assertEquals(pseudonymiser.pseudonymOf("bob"), tweet.path("user").path("screen_name").asText());
+        assertEquals("hi @" + alice + ", and @" + pseudonymiser.pseudonymOf("carol"), tweet.get("full_text").asText());
+        assertEquals(alice, tweet.path("entities").path("user_mentions").get(0).path("screen_name").asText());
+        assertEquals(Long.toString(pseudonymiser.tweetIdOf(923456789012345679L)), tweet.get("id_str").asText());
+        assertEquals(tweet.get("id").asLong(), tweet.get("id_str").asLong());
+        assertTrue(TweetLinter.lint(tweet).isEmpty());
+    }
+
+    @Test
+    public void rewritesPermalinks() {
+        final Pseudonymiser pseudonymiser = new Pseudonymiser(new Randomness(1L));
+        final ObjectNode tweet = tweet(923456789012345679L, "bob", "\uD83D\uDE00 look @carol " + QUOTED);
+        tweet.put("quoted_status_id", 923456789012345678L);
+        tweet.put("quoted_status_id_str", "923456789012345678");
+        tweet.putObject("quoted_status_permalink")
+            .put("url", "https://t.co/abcdefghij")
+            .put("expanded", QUOTED)
+            .put("expanded_url", QUOTED)
+            .put("display", "twitter.com/RealAlice/status/9\u2026");
+        ((ObjectNode) tweet.path("entities").path("urls").get(0)).put("expanded_url", "https://twitter.com/RealAlice");
+        pseudonymiser.apply(0, tweet);
+
+        final String fake = "https://twitter.com/" + pseudonymiser.pseudonymOf("RealAlice") + "/status/" +
+            pseudonymiser.tweetIdOf(923456789012345678L);
+        assertTrue(tweet.get("full_text").asText().endsWith(" " + fake));
+        assertEquals(fake, tweet.path("entities").path("urls").get(0).path("url").asText());
+        assertEquals(fake, tweet.path("quoted_status_permalink").path("expanded_url").asText());
+        assertEquals(Long.toString(pseudonymiser.tweetIdOf(923456789012345678L)),
+            tweet.get("quoted_status_id_str").asText());
+        // the indices of the link follow the longer or shorter mention before it
+        assertTrue(TweetLinter.lint(tweet).toString(), TweetLinter.lint(tweet).isEmpty());
+
+        final String json = tweet.toString();
+        assertFalse(json, json.contains("RealAlice"));
+        assertFalse(json, json.contains("923456789012345678"));
+        assertFalse(json, json.contains("carol"));
+    }
+
+    @Test
+    public void leavesOtherLinksAlone() {
+        final Pseudonymiser pseudonymiser = new Pseudonymiser(new Randomness(1L));
+        final ObjectNode tweet = tweet(1L, "bob", "see https://twitter.com/i/moments and https://example.com/bob/status/1");
+        pseudonymiser.apply(0, tweet);
+        assertEquals("see https://twitter.com/i/moments and https://example.com/bob/status/1",
+            tweet.get("full_text").asText());
+    }
+
+    @Test
+    public void dependsOnlyOnTheSeed() {
+        final JsonNode first = tweet(923456789012345679L, "bob", "@carol " + QUOTED);
+        final JsonNode second = first.deepCopy();
+        new Pseudonymiser(new Randomness(7L)).apply(0, first);
+        new Pseudonymiser(new Randomness(7L)).apply(5, second);
+        assertEquals(first, second);
+
+        final JsonNode third = tweet(923456789012345679L, "bob", "@carol " + QUOTED);
+        new Pseudonymiser(new Randomness(8L)).apply(0, third);
+        assertNotEquals(first, third);
+    }
+
+    @Test
+    public void scramblesTheIdsInDeleteNotices() throws IOException {
+        final Pseudonymiser pseudonymiser = new Pseudonymiser(new Randomness(1L));
+        final JsonNode notice = Tweets.JSON.readTree(
+            "{\"delete\":{\"status\":{\"id\":923456789012345678,\"id_str\":\"923456789012345678\"," +
+                "\"user_id\":12345,\"user_id_str\":\"12345\"},\"timestamp_ms\":\"1500000000000\"}}"
+        );
+        pseudonymiser.apply(0, notice);
+
+        final JsonNode status = notice.path("delete").path("status");
+        assertEquals(pseudonymiser.tweetIdOf(923456789012345678L), status.get("id").asLong());
+        assertEquals(status.get("id").asText(), status.get("id_str").asText());
+        assertEquals(pseudonymiser.userIdOf(12345L), status.get("user_id").asLong());
+        assertEquals(status.get("user_id").asText(), status.get("user_id_str").asText());
+        assertEquals("1500000000000", notice.path("delete").path("timestamp_ms").asText());
+        assertEquals(1, notice.size());
+    }
+
+    @Test
+    public void leavesLimitNoticesAlone() throws IOException {
+        final String limit = "{\"limit\":{\"track\":1234,\"timestamp_ms\":\"1500000000000\"}}";
+        final JsonNode notice = Tweets.JSON.readTree(limit);
+        new Pseudonymiser(new Randomness(1L)).apply(0, notice);
+        assertEquals(Tweets.JSON.readTree(limit), notice);
+    }
+
+    @Test
+    public void addsNoTextToATweetWithout() {
+        final ObjectNode tweet = tweet(1L, "bob", "hi");
+        tweet.remove("text");
+        tweet.remove("full_text");
+        new Pseudonymiser(new Randomness(1L)).apply(0, tweet);
+        assertFalse(tweet.toString(), tweet.has("text") || tweet.has("full_text"));
+    }
+
+    private static ObjectNode tweet(final long id, final String screenName, final String text) {
+        final ObjectNode tweet = Tweets.JSON.createObjectNode();
+        tweet.put("id", id);
+        tweet.put("id_str", Long.toString(id));
+        tweet.put("text", text);
+        tweet.put("full_text", text);
+        tweet.putObject("user").put("id", 12345L).put("id_str", "12345").put("screen_name", screenName);
+        tweet.set("entities", Tweets.extractEntitiesAsJsonNodeTree(text, NullNode.getInstance()));
+        return tweet;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.transform;
+
+import au.org.dcw.socialmedia.simulation.tools.gen.Randomness;
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class RelocatorTest {
+
+    private static final double DELTA = 1e-7;
+
+    @Test
+    public void shiftsTheOriginToTheDestination() {
+        final ObjectNode tweet = tweet(1L, -34.9285, 138.6007);
+        new Relocator(new Randomness(1L)).withShift(-34.9285, 138.6007, -37.8136, 144.9631).apply(0, tweet);
+
+        assertEquals(-37.8136, tweet.path("geo").path("coordinates").get(0).asDouble(), DELTA);
+        assertEquals(144.9631, tweet.path("geo").path("coordinates").get(1).asDouble(), DELTA);
+        assertEquals(144.9631, tweet.path("coordinates").path("coordinates").get(0).asDouble(), DELTA);
+    }
+
+    @Test
+    public void jittersEveryCopyOfATweetTheSame() {
+        final Relocator relocator = new Relocator(new Randomness(7L)).withJitter(500.0);
+        final ObjectNode original = tweet(5L, -34.9285, 138.6007);
+        final ObjectNode retweet = tweet(6L, -34.9285, 138.6007);
+        retweet.set("retweeted_status", tweet(5L, -34.9285, 138.6007));
+        final ObjectNode quote = tweet(7L, -34.9285, 138.6007);
+        quote.set("quoted_status", tweet(5L, -34.9285, 138.6007));
+        relocator.apply(0, original);
+        relocator.apply(1, retweet);
+        relocator.apply(2, quote);
+
+        final JsonNode where = original.path("geo");
+        assertNotEquals(-34.9285, where.path("coordinates").get(0).asDouble(), DELTA);
+        assertEquals(where, retweet.path("retweeted_status").path("geo"));
+        assertEquals(where, quote.path("quoted_status").path("geo"));
+        assertNotEquals(where, retweet.path("geo"));
+        assertNotEquals(retweet.path("geo"), quote.path("geo"));
+    }
+
+    @Test
+    public void jittersTweetsWithoutIdsByPosition() {
+        final ObjectNode first = withoutId(tweet(1L, -34.9285, 138.6007));
+        final ObjectNode second = withoutId(tweet(1L, -34.9285, 138.6007));
+        final ObjectNode third = withoutId(tweet(1L, -34.9285, 138.6007));
+        new Relocator(new Randomness(7L)).withJitter(500.0).apply(3, first);
+        new Relocator(new Randomness(7L)).withJitter(500.0).apply(3, second);
+        new Relocator(new Randomness(7L)).withJitter(500.0).apply(4, third);
+
+        assertEquals(first.path("geo"), second.path("geo"));
+        assertNotEquals(first.path("geo"), third.path("geo"));
+    }
+
+    private static ObjectNode tweet(final long id, final double latitude, final double longitude) {
+        final ObjectNode tweet = Tweets.JSON.createObjectNode();
+        tweet.put("id", id).put("id_str", Long.toString(id));
+        tweet.putObject("geo").put("type", "Point").putArray("coordinates").add(latitude).add(longitude);
+        tweet.putObject("coordinates").put("type", "Point").putArray("coordinates").add(longitude).add(latitude);
+        return tweet;
+    }
+
+    private static ObjectNode withoutId(final ObjectNode tweet) {
+        tweet.remove("id");
+        tweet.remove("id_str");
+        return tweet;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017 Derek Weber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.org.dcw.socialmedia.simulation.tools.transform;
+
+import au.org.dcw.socialmedia.simulation.tools.model.Tweets;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TweetPatchTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void appliesOperationsInOrderToMatchingTweets() throws IOException {
+        final TweetPatch patch = TweetPatch.parse(json(
+            "{'where': [{'path': 'user.screen_name', 'in': ['alice', 'bob']}, {'path': 'geo', 'exists': true}]," +
+            " 'ops': [{'op': 'set', 'path': 'place', 'value': {'name': 'Melbourne'}}," +
+            "         {'op': 'copy', 'from': 'full_text', 'path': 'text'}," +
+            "         {'op': 'remove', 'path': 'geo'}," +
+            "         {'op': 'set', 'path': 'entities.hashtags.[0]', 'value': {'text': 'added'}}]}"
+        ));
+        final ObjectNode alice = tweet("alice", "hello");
+        final ObjectNode carol = tweet("carol", "hi");
+        patch.apply(0, alice);
+        patch.apply(1, carol);
+
+        assertEquals("Melbourne", alice.path("place").path("name").asText());
+        assertEquals("hello", alice.path("text").asText());
+        assertFalse(alice.has("geo"));
+        assertEquals("added", alice.path("entities").path("hashtags").get(0).path("text").asText());
+        assertEquals(tweet("carol", "hi"), carol);
+        assertEquals(1, patch.matched());
+        assertEquals(4, patch.applied());
+        assertEquals(0, patch.skipped());
+    }
+
+    @Test
+    public void countsOperationsThatLeadNowhere() throws IOException {
+        final TweetPatch patch = TweetPatch.parse(json(
+            "[{'op': 'set', 'path': 'place.name', 'value': 'Melbourne'}, {'op': 'remove', 'path': 'place'}," +
+            " {'op': 'set', 'path': 'entities.hashtags.[5]', 'value': {}}]"
+        ));
+        final ObjectNode tweet = tweet("alice", "hello");
+        patch.apply(0, tweet);
+
+        assertEquals(tweet("alice", "hello"), tweet);
+        assertEquals(1, patch.matched());
+        assertEquals(0, patch.applied());
+        assertEquals(3, patch.skipped());
+    }
+
+    @Test
+    public void matchesByValueAndRegularExpression() throws IOException {
+        final TweetPatch patch = TweetPatch.parse(json(
+            "{'where': [{'path': 'id', 'equals': 1.0}, {'path': 'full_text', 'matches': '(?i)FLOOD'}]," +
+            " 'ops': [{'op': 'set', 'path': 'flagged', 'value': true}]}"
+        ));
+        final ObjectNode flood = tweet("alice", "a flood warning");
+        final ObjectNode fire = tweet("alice", "a fire warning");
+        patch.apply(0, flood);
+        patch.apply(1, fire);
+
+        assertTrue(flood.path("flagged").asBoolean());
+        assertFalse(fire.has("flagged"));
+    }
+
+    @Test
+    public void givesEachTweetItsOwnCopyOfASetValue() throws IOException {
+        final TweetPatch patch = TweetPatch.parse(json("[{'op': 'set', 'path': 'place', 'value': {'name': 'A'}}]"));
+        final ObjectNode first = tweet("alice", "one");
+        final ObjectNode second = tweet("bob", "two");
+        patch.apply(0, first);
+        patch.apply(1, second);
+        ((ObjectNode) first.get("place")).put("name", "B");
+
+        assertEquals("A", second.path("place").path("name").asText());
+    }
+
+    @Test
+    public void rejectsMalformedPatchesWithTheFileName() throws IOException {
+        final Path file = folder.newFile("bad.json").toPath();
+        Files.write(file, "{\"ops\": [{\"op\": \"move\", \"path\": \"geo\"}]}".getBytes(StandardCharsets.UTF_8));
+        try {
+            TweetPatch.load(file);
+            fail("Loaded a patch with an unknown op");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(file + ": "));
+            assertTrue(e.getMessage(), e.getMessage().contains("'move'"));
+        }
+        for (final String bad : new String[]{
+            "{'ops': []}",
+            "{'ops': [{'op': 'remove', 'path': 'geo'}], 'extra': 1}",
+            "[{'op': 'set', 'path': 'a..b', 'value': 1}]",
+            "[{'op': 'set', 'path': 'a'}]",
+            "{'where': [{'path': 'a'}], 'ops': [{'op': 'remove', 'path': 'geo'}]}",
+            "{'where': [{'path': 'a', 'matches': '('}], 'ops': [{'op': 'remove', 'path': 'geo'}]}"
+        }) {
+            try {
+                TweetPatch.parse(json(bad));
+                fail("Parsed " + bad);
+            } catch (IllegalArgumentException e) {
+                // as it should
+            }
+        }
+    }
+
+    private static JsonNode json(final String quoted) throws IOException {
+        return Tweets.JSON.readTree(quoted.replace('\'', '"'));
+    }
+
+    private static ObjectNode tweet(final String screenName, final String text) {
+        final ObjectNode tweet = Tweets.JSON.createObjectNode();
+        tweet.put("id", 1L).put("id_str", "1").put("full_text", text);
+        tweet.putObject("user").put("screen_name", screenName);
+        tweet.putObject("geo").put("type", "Point").putArray("coordinates").add(-34.9).add(138.6);
+        tweet.set("entities", Tweets.extractEntitiesAsJsonNodeTree(text, null));
+        return tweet;
+    }
+}